@@ -20,7 +20,10 @@
  */
 package elki.clustering.dbscan;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 import elki.Algorithm;
 import elki.clustering.ClusteringAlgorithm;
@@ -54,6 +57,7 @@ import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
 import elki.logging.statistics.StringStatistic;
+import elki.parallel.ParallelCore;
 import elki.result.Metadata;
 import elki.utilities.documentation.Reference;
 import elki.utilities.documentation.Title;
@@ -105,6 +109,11 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
    */
   private static final Logging LOG = Logging.getLogger(GriDBSCAN.class);
 
+  /**
+   * Minimum number of objects to process the grid cells in parallel.
+   */
+  protected static final int PARALLEL_THRESHOLD = 1 << 14;
+
   /**
    * Distance function used.
    */
@@ -246,11 +255,6 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
      */
     private WritableDataStore<Assignment> clusterids;
 
-    /**
-     * Temporary assignments of a single run.
-     */
-    private WritableIntegerDataStore temporary;
-
     /**
      * Indicates that the number of grid cells has overflown.
      */
@@ -299,38 +303,78 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
 
       // (Temporary) store the cluster ID assigned.
       clusterids = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP, Assignment.class);
-      temporary = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, UNPROCESSED);
-      final ArrayModifiableDBIDs activeSet = DBIDUtil.newArray();
       // Reserve the first two cluster ids:
       int clusterid = NOISE + 1;
       this.cores = new Core[2];
       this.borders = new Border[2];
 
-      // Reused storage for neighbors:
-      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList(minpts << 1);
+      // Only cells with enough objects can contain core points.
+      ModifiableDBIDs[] active = new ModifiableDBIDs[mincells];
+      int c = 0;
+      for(ModifiableDBIDs cellids : grid.values()) {
+        if(cellids.size() >= minpts) {
+          active[c++] = cellids;
+        }
+      }
       // Run DBSCAN on each cell that has enough objects.
       FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Processing grid cells", mincells, LOG) : null;
-      for(ModifiableDBIDs cellids : grid.values()) {
-        if(cellids.size() < minpts) {
-          continue; // Too few objects.
+      int[][] assignments = new int[mincells][];
+      final boolean parallel = size >= PARALLEL_THRESHOLD && mincells > 1 && ParallelCore.getCore().getParallelism() > 1;
+      if(parallel) {
+        // Cells are independent, so run them concurrently, with cell-local
+        // cluster numbers that are mapped to global numbers when merging.
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(mincells);
+        for(int i = 0; i < mincells; i++) {
+          final int cell = i;
+          tasks.add(ForkJoinTask.adapt(() -> {
+            final DBIDs cellids = active[cell];
+            WritableIntegerDataStore temp = DataStoreUtil.makeIntegerStorage(cellids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, UNPROCESSED);
+            assignments[cell] = runDBSCANOnCell(cellids, relation, temp, DBIDUtil.newDistanceDBIDList(minpts << 1), DBIDUtil.newArray(), null);
+            temp.destroy();
+            LOG.incrementProcessed(cprog);
+          }));
+        }
+        ParallelCore.getCore().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        for(int i = 0; i < mincells; i++) {
+          clusterid = mergeClusterInformation(active[i], assignments[i], clusterid);
+          assignments[i] = null;
         }
-        clusterid += runDBSCANOnCell(cellids, relation, neighbors, activeSet, clusterid);
-        // Post-process DBSCAN clustering result:
-        updateCoreBorderObjects(clusterid);
-        mergeClusterInformation(cellids, temporary, clusterids);
-        LOG.incrementProcessed(cprog);
+      }
+      else {
+        WritableIntegerDataStore temporary = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, UNPROCESSED);
+        final ArrayModifiableDBIDs activeSet = DBIDUtil.newArray();
+        // Reused storage for neighbors:
+        ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList(minpts << 1);
+        for(int i = 0; i < mincells; i++) {
+          final DBIDs cellids = active[i];
+          temporary.clear(); // Reset to "UNPROCESSED"
+          FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Running DBSCAN", cellids.size(), LOG) : null;
+          int[] assignment = runDBSCANOnCell(cellids, relation, temporary, neighbors, activeSet, pprog);
+          clusterid = mergeClusterInformation(cellids, assignment, clusterid);
+          LOG.incrementProcessed(cprog);
+        }
+        temporary.destroy();
       }
       LOG.ensureCompleted(cprog);
-      temporary.destroy();
 
       return buildResult(ids, clusterid);
     }
 
-    private int runDBSCANOnCell(DBIDs cellids, Relation<V> relation, ModifiableDoubleDBIDList neighbors, ArrayModifiableDBIDs activeSet, int clusterid) {
-      temporary.clear(); // Reset to "UNPROCESSED"
+    /**
+     * Run DBSCAN on a single grid cell.
+     *
+     * @param cellids Objects in the cell
+     * @param relation Data relation
+     * @param temporary Temporary assignment storage, must be unprocessed
+     * @param neighbors Reused storage for neighbors
+     * @param activeSet Reused storage for the active set
+     * @param pprog Object progress (may be {@code null})
+     * @return Cell-local assignments, in the order of {@code cellids}
+     */
+    private int[] runDBSCANOnCell(DBIDs cellids, Relation<V> relation, WritableIntegerDataStore temporary, ModifiableDoubleDBIDList neighbors, ArrayModifiableDBIDs activeSet, FiniteProgress pprog) {
       ProxyView<V> rel = new ProxyView<>(cellids, relation);
       RangeSearcher<DBIDRef> rq = new QueryBuilder<>(rel, distance).rangeByDBID(epsilon);
-      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Running DBSCAN", cellids.size(), LOG) : null;
+      int clusterid = NOISE + 1;
       for(DBIDIter id = cellids.iter(); id.valid(); id.advance()) {
         // Skip already processed ids.
         if(temporary.intValue(id) != UNPROCESSED) {
@@ -347,7 +391,12 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
         }
       }
       LOG.ensureCompleted(pprog);
-      return clusterid;
+      int[] assignment = new int[cellids.size()];
+      int i = 0;
+      for(DBIDIter id = cellids.iter(); id.valid(); id.advance()) {
+        assignment[i++] = temporary.intValue(id);
+      }
+      return assignment;
     }
 
     /**
@@ -560,13 +609,24 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
      * Merge cluster information.
      *
      * @param cellids IDs in current cell
-     * @param temporary Temporary assignments
-     * @param clusterids Merged cluster assignment
-     */
-    protected void mergeClusterInformation(ModifiableDBIDs cellids, WritableIntegerDataStore temporary, WritableDataStore<Assignment> clusterids) {
+     * @param assignment Cell-local assignments, in the order of cellids
+     * @param clusterid First unused global cluster number
+     * @return New first unused global cluster number
+     */
+    protected int mergeClusterInformation(DBIDs cellids, int[] assignment, int clusterid) {
+      // Map cell-local cluster numbers to global cluster numbers:
+      int maxlocal = NOISE;
+      for(int a : assignment) {
+        maxlocal = Math.max(maxlocal, Math.abs(a));
+      }
+      final int shift = clusterid - (NOISE + 1);
+      clusterid += maxlocal - NOISE;
+      updateCoreBorderObjects(clusterid);
       FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Collecting result", cellids.size(), LOG) : null;
+      int i = 0;
       for(DBIDIter id = cellids.iter(); id.valid(); id.advance()) {
-        int nclus = temporary.intValue(id);
+        int nclus = assignment[i++];
+        nclus = nclus > NOISE ? nclus + shift : nclus < 0 ? nclus - shift : nclus;
         if(nclus > NOISE) { // Core point
           Core core = cores[nclus];
           assert (core.num > NOISE);
@@ -623,6 +683,7 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
         LOG.incrementProcessed(mprog);
       }
       LOG.ensureCompleted(mprog);
+      return clusterid;
     }
 
     /**
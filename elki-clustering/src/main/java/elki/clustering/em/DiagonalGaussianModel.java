@@ -142,6 +142,30 @@ public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMMod
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel newPartialE() {
+    DiagonalGaussianModel partial = new DiagonalGaussianModel(weight, new double[mean.length]);
+    clear(partial.variances);
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, ?> partial) {
+    final DiagonalGaussianModel other = (DiagonalGaussianModel) partial;
+    if(other.wsum < Double.MIN_NORMAL) {
+      return;
+    }
+    final double nwsum = wsum + other.wsum;
+    // Combine the variances, with a correction for the mean difference
+    final double f = wsum * other.wsum / nwsum, g = other.wsum / nwsum;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = other.mean[i] - mean[i];
+      variances[i] += other.variances[i] + delta * delta * f;
+      mean[i] += delta * g;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = variances.length;
@@ -23,6 +23,7 @@ package elki.clustering.em;
 import static elki.math.linearalgebra.VMath.argmax;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import elki.clustering.ClusteringAlgorithm;
@@ -36,6 +37,8 @@ import elki.data.type.TypeUtil;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.ModifiableDBIDs;
@@ -44,6 +47,7 @@ import elki.database.relation.Relation;
 import elki.logging.Logging;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Description;
@@ -75,6 +79,13 @@ import net.jafama.FastMath;
  * Bayesian Regularization for Normal Mixture Estimation and Model-Based
  * Clustering<br>
  * J. Classification 24(2)
+ * <p>
+ * On large data sets, the probabilities of the objects are computed by
+ * multiple threads. To re-estimate the models, the objects are split into
+ * blocks, and the statistics of each block are aggregated in partial models
+ * (see {@link EMClusterModel#newPartialE}), which are merged in block order.
+ * Because of floating point rounding, the results can depend on the number of
+ * blocks, and hence on the number of threads.
  * 
  * @author Arthur Zimek
  * @author Erich Schubert
@@ -149,6 +160,11 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
    */
   private static final double MIN_LOGLIKELIHOOD = -100000;
 
+  /**
+   * Minimum number of objects to use multiple threads.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 10;
+
   /**
    * Soft assignment result type.
    */
@@ -304,37 +320,99 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     }
     // First pass, only for two-pass models.
     if(needsTwoPass) {
-      for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+      aggregateE(relation, probClusterIGivenX, models, true);
+      for(EMClusterModel<?, ?> m : models) {
+        m.finalizeFirstPassE();
+      }
+    }
+    double[] wsum = aggregateE(relation, probClusterIGivenX, models, false);
+    for(int i = 0; i < models.size(); i++) {
+      // MLE / MAP
+      final double weight = prior <= 0. ? wsum[i] / relation.size() : (wsum[i] + prior - 1) / (relation.size() + prior * k - k);
+      models.get(i).finalizeEStep(weight, prior);
+    }
+  }
+
+  /**
+   * Aggregate the statistics of the E step (or its first pass) in the models.
+   * <p>
+   * For large data sets, the data is split into blocks, and the statistics of
+   * each block are aggregated in partial models by a separate thread. These
+   * are then merged in block order.
+   *
+   * @param relation Vector data
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   * @param firstPass Aggregate the first pass of two-pass models
+   * @param <O> Object type
+   * @return Sum of weights of each cluster
+   */
+  private static <O> double[] aggregateE(Relation<? extends O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<O, ?>> models, boolean firstPass) {
+    final int k = models.size();
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int blocks = ParallelExecutor.numBlocks(ids.size(), PARALLEL_THRESHOLD, ids.size());
+    final List<List<EMClusterModel<O, ?>>> partials = blocks > 1 ? newPartialModels(models, blocks) : null;
+    // Without partial models, aggregate into the models directly.
+    final List<List<EMClusterModel<O, ?>>> ps = partials != null ? partials : Collections.singletonList(new ArrayList<>(models));
+    final double[][] wsums = new double[ps.size()][k];
+    ParallelExecutor.runRanges(ids.size(), ps.size(), (block, start, end) -> {
+      final List<EMClusterModel<O, ?>> ms = ps.get(block);
+      final double[] wsum = wsums[block];
+      for(DBIDArrayIter iditer = ids.iter().seek(start); iditer.getOffset() < end; iditer.advance()) {
         double[] clusterProbabilities = probClusterIGivenX.get(iditer);
         O instance = relation.get(iditer);
         for(int i = 0; i < clusterProbabilities.length; i++) {
           final double prob = clusterProbabilities[i];
           if(prob > 1e-10) {
-            models.get(i).firstPassE(instance, prob);
+            if(firstPass) {
+              ms.get(i).firstPassE(instance, prob);
+            }
+            else {
+              ms.get(i).updateE(instance, prob);
+            }
           }
+          wsum[i] += prob;
         }
       }
-      for(EMClusterModel<?, ?> m : models) {
-        m.finalizeFirstPassE();
+    });
+    if(partials != null) {
+      for(List<EMClusterModel<O, ?>> partial : partials) {
+        for(int i = 0; i < k; i++) {
+          models.get(i).mergeE(partial.get(i));
+        }
       }
     }
-    double[] wsum = new double[k];
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      double[] clusterProbabilities = probClusterIGivenX.get(iditer);
-      O instance = relation.get(iditer);
-      for(int i = 0; i < clusterProbabilities.length; i++) {
-        final double prob = clusterProbabilities[i];
-        if(prob > 1e-10) {
-          models.get(i).updateE(instance, prob);
-        }
-        wsum[i] += prob;
+    // Sum up the weights in block order, for reproducibility.
+    for(int b = 1; b < wsums.length; b++) {
+      for(int i = 0; i < k; i++) {
+        wsums[0][i] += wsums[b][i];
       }
     }
-    for(int i = 0; i < models.size(); i++) {
-      // MLE / MAP
-      final double weight = prior <= 0. ? wsum[i] / relation.size() : (wsum[i] + prior - 1) / (relation.size() + prior * k - k);
-      models.get(i).finalizeEStep(weight, prior);
+    return wsums[0];
+  }
+
+  /**
+   * Create partial models for each block.
+   *
+   * @param models Cluster models
+   * @param blocks Number of blocks
+   * @param <O> Object type
+   * @return Partial models, or {@code null} if not supported by all models
+   */
+  private static <O> List<List<EMClusterModel<O, ?>>> newPartialModels(List<? extends EMClusterModel<O, ?>> models, int blocks) {
+    List<List<EMClusterModel<O, ?>>> partials = new ArrayList<>(blocks);
+    for(int b = 0; b < blocks; b++) {
+      List<EMClusterModel<O, ?>> partial = new ArrayList<>(models.size());
+      for(EMClusterModel<O, ?> m : models) {
+        EMClusterModel<O, ?> p = m.newPartialE();
+        if(p == null) {
+          return null;
+        }
+        partial.add(p);
+      }
+      partials.add(partial);
     }
+    return partials;
   }
 
   /**
@@ -352,21 +430,31 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
    */
   public static <O> double assignProbabilitiesToInstances(Relation<? extends O> relation, List<? extends EMClusterModel<O, ?>> models, WritableDataStore<double[]> probClusterIGivenX) {
     final int k = models.size();
-    double emSum = 0.;
-
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      O vec = relation.get(iditer);
-      double[] probs = new double[k];
-      for(int i = 0; i < k; i++) {
-        double v = models.get(i).estimateLogDensity(vec);
-        probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
-      }
-      final double logP = logSumExp(probs);
-      for(int i = 0; i < k; i++) {
-        probs[i] = FastMath.exp(probs[i] - logP);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    // Keep the log likelihoods, to sum them up in a deterministic order, and
+    // write the probabilities afterwards, as the store need not be thread safe.
+    final double[] logPs = new double[ids.size()];
+    final double[][] probss = new double[ids.size()][];
+    ParallelExecutor.runRanges(ids.size(), ParallelExecutor.numBlocks(ids.size(), PARALLEL_THRESHOLD, ids.size()), (block, start, end) -> {
+      for(DBIDArrayIter iditer = ids.iter().seek(start); iditer.getOffset() < end; iditer.advance()) {
+        O vec = relation.get(iditer);
+        double[] probs = new double[k];
+        for(int i = 0; i < k; i++) {
+          double v = models.get(i).estimateLogDensity(vec);
+          probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+        }
+        final double logP = logSumExp(probs);
+        for(int i = 0; i < k; i++) {
+          probs[i] = FastMath.exp(probs[i] - logP);
+        }
+        probss[iditer.getOffset()] = probs;
+        logPs[iditer.getOffset()] = logP;
       }
-      probClusterIGivenX.put(iditer, probs);
-      emSum += logP;
+    });
+    double emSum = 0.;
+    for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      probClusterIGivenX.put(iditer, probss[iditer.getOffset()]);
+      emSum += logPs[iditer.getOffset()];
     }
     return emSum / relation.size();
   }
@@ -75,6 +75,30 @@ public interface EMClusterModel<O, M extends Model> {
    */
   void updateE(O vec, double weight);
 
+  /**
+   * Create a model with empty statistics, to aggregate a part of the data in
+   * the E step (or its first pass) in a separate thread. The statistics are
+   * then combined with {@link #mergeE}.
+   * <p>
+   * This must be called after {@link #beginEStep}, and for two-pass models
+   * again after {@link #finalizeFirstPassE}.
+   * <p>
+   * Models that cannot aggregate partial statistics may return {@code null};
+   * the data is then processed by a single thread, and {@link #mergeE} is not
+   * used.
+   *
+   * @return Model for partial statistics, or {@code null} if not supported
+   */
+  EMClusterModel<O, M> newPartialE();
+
+  /**
+   * Merge the statistics aggregated by a model obtained from
+   * {@link #newPartialE}.
+   *
+   * @param partial Partial statistics
+   */
+  void mergeE(EMClusterModel<O, ?> partial);
+
   /**
    * Finalize the E step.
    * 
@@ -151,6 +151,39 @@ public class MultivariateGaussianModel implements EMClusterModel<NumberVector, E
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public MultivariateGaussianModel newPartialE() {
+    MultivariateGaussianModel partial = new MultivariateGaussianModel(weight, new double[mean.length]);
+    clear(partial.covariance);
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, ?> partial) {
+    final MultivariateGaussianModel other = (MultivariateGaussianModel) partial;
+    if(other.wsum < Double.MIN_NORMAL) {
+      return;
+    }
+    final int dim = mean.length;
+    final double nwsum = wsum + other.wsum;
+    // Combine the scatter matrixes, with a correction for the mean difference
+    final double f = wsum * other.wsum / nwsum, g = other.wsum / nwsum;
+    for(int i = 0; i < dim; i++) {
+      nmea[i] = other.mean[i] - mean[i];
+    }
+    for(int i = 0; i < dim; i++) {
+      final double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      final double delta_i = nmea[i] * f;
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] + delta_i * nmea[j];
+      }
+    }
+    for(int i = 0; i < dim; i++) {
+      mean[i] += nmea[i] * g;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
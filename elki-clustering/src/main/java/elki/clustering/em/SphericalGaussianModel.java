@@ -131,6 +131,32 @@ public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMMo
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public SphericalGaussianModel newPartialE() {
+    SphericalGaussianModel partial = new SphericalGaussianModel(weight, new double[mean.length]);
+    partial.variance = 0.;
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, ?> partial) {
+    final SphericalGaussianModel other = (SphericalGaussianModel) partial;
+    if(other.wsum < Double.MIN_NORMAL) {
+      return;
+    }
+    final double nwsum = wsum + other.wsum;
+    // Combine the variances, with a correction for the mean difference
+    final double f = wsum * other.wsum / nwsum, g = other.wsum / nwsum;
+    double v = other.variance;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = other.mean[i] - mean[i];
+      v += delta * delta * f;
+      mean[i] += delta * g;
+    }
+    variance += v;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = mean.length;
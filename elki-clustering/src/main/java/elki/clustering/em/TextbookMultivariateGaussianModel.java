@@ -137,6 +137,27 @@ public class TextbookMultivariateGaussianModel implements EMClusterModel<NumberV
     wsum += wei;
   }
 
+  @Override
+  public TextbookMultivariateGaussianModel newPartialE() {
+    TextbookMultivariateGaussianModel partial = new TextbookMultivariateGaussianModel(weight, new double[mean.length]);
+    clear(partial.covariance);
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, ?> partial) {
+    final TextbookMultivariateGaussianModel other = (TextbookMultivariateGaussianModel) partial;
+    // Naive aggregates are simply added:
+    plusEquals(mean, other.mean);
+    for(int i = 0; i < mean.length; i++) {
+      final double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j];
+      }
+    }
+    wsum += other.wsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
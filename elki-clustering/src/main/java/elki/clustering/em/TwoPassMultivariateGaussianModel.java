@@ -169,6 +169,30 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     }
   }
 
+  @Override
+  public TwoPassMultivariateGaussianModel newPartialE() {
+    // In the second pass, the partial model needs the mean for centering.
+    TwoPassMultivariateGaussianModel partial = new TwoPassMultivariateGaussianModel(weight, copy(mean));
+    clear(partial.covariance);
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, ?> partial) {
+    final TwoPassMultivariateGaussianModel other = (TwoPassMultivariateGaussianModel) partial;
+    // Only the first pass aggregates weights, and the second pass the matrix.
+    if(other.wsum > 0) {
+      plusEquals(mean, other.mean);
+      wsum += other.wsum;
+    }
+    for(int i = 0; i < mean.length; i++) {
+      final double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j];
+      }
+    }
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
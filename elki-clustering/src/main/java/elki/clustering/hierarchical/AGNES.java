@@ -38,6 +38,7 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.Alias;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
@@ -151,7 +152,7 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
 
     // Compute the initial (lower triangular) distance matrix.
     MatrixParadigm mat = new MatrixParadigm(ids);
-    initializeDistanceMatrix(mat, dq, linkage);
+    initializeDistanceMatrix(mat, relation, distance, linkage);
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
@@ -193,29 +194,15 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    * Initialize a distance matrix.
    *
    * @param mat Matrix
-   * @param dq Distance query
+   * @param relation Data relation
+   * @param distance Distance function
    * @param linkage Linkage method
+   * @param <O> Object type
    */
-  protected static void initializeDistanceMatrix(MatrixParadigm mat, DistanceQuery<?> dq, Linkage linkage) {
-    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
-    final boolean issquare = dq.getDistance().isSquared();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", matrix.length, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert (pos == MatrixParadigm.triangleSize(x));
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = linkage.initial(dq.distance(ix, iy), issquare);
-      }
-      if(prog != null) {
-        prog.setProcessed(pos, LOG);
-      }
-    }
-    // Avoid logging errors in case scratch space was too large:
-    if(prog != null) {
-      prog.setProcessed(matrix.length, LOG);
-    }
+  protected static <O> void initializeDistanceMatrix(MatrixParadigm mat, Relation<O> relation, Distance<? super O> distance, Linkage linkage) {
+    final boolean issquare = distance.isSquared();
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", mat.size, LOG) : null;
+    mat.initializeWithDistances(relation, distance, d -> linkage.initial(d, issquare), LOG, prog);
     LOG.ensureCompleted(prog);
   }
 
@@ -229,29 +216,48 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    */
   protected int findMerge(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     assert (end > 0);
-    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
-    double mindist = Double.POSITIVE_INFINITY;
-    int x = -1, y = -1;
-    // Find minimum:
-    for(int ox = 0, xbase = 0; ox < end; xbase += ox++) {
-      // Skip if object has already joined a cluster:
-      if(builder.isLinked(ix.seek(ox))) {
-        continue;
-      }
-      assert (xbase == MatrixParadigm.triangleSize(ox));
-      for(int oy = 0; oy < ox; oy++) {
+    final int blocks = MatrixParadigm.numBlocks(end);
+    final double[] mindists = new double[blocks];
+    final int[] xs = new int[blocks], ys = new int[blocks];
+    // Find the minimum of each block of rows:
+    ParallelExecutor.runTriangleRanges(end, blocks, (block, start, stop) -> {
+      final DBIDArrayIter ix = blocks > 1 ? mat.ids.iter() : mat.ix;
+      final DBIDArrayIter iy = blocks > 1 ? mat.ids.iter() : mat.iy;
+      double mindist = Double.POSITIVE_INFINITY;
+      int x = -1, y = -1;
+      for(int ox = start; ox < stop; ox++) {
         // Skip if object has already joined a cluster:
-        if(builder.isLinked(iy.seek(oy))) {
+        if(builder.isLinked(ix.seek(ox))) {
           continue;
         }
-        final double dist = matrix[xbase + oy];
-        if(dist <= mindist) { // Prefer later on ==, to truncate more often.
-          mindist = dist;
-          x = ox;
-          y = oy;
+        final double[] row = mat.row(ox);
+        final int xbase = mat.rowStart(ox);
+        for(int oy = 0; oy < ox; oy++) {
+          // Skip if object has already joined a cluster:
+          if(builder.isLinked(iy.seek(oy))) {
+            continue;
+          }
+          final double dist = row[xbase + oy];
+          if(dist <= mindist) { // Prefer later on ==, to truncate more often.
+            mindist = dist;
+            x = ox;
+            y = oy;
+          }
         }
       }
+      mindists[block] = mindist;
+      xs[block] = x;
+      ys[block] = y;
+    });
+    // Combine the blocks, in the same order as a sequential scan:
+    double mindist = mindists[0];
+    int x = xs[0], y = ys[0];
+    for(int b = 1; b < blocks; b++) {
+      if(xs[b] >= 0 && mindists[b] <= mindist) {
+        mindist = mindists[b];
+        x = xs[b];
+        y = ys[b];
+      }
     }
     assert (x >= 0 && y >= 0);
     assert (y < x); // We could swap otherwise, but this shouldn't arise.
@@ -299,9 +305,8 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    */
   protected void updateMatrix(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: y < x
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
-    double[] scratch = mat.matrix;
+    final double[] xrow = mat.row(x), yrow = mat.row(y);
+    final int xbase = mat.rowStart(x), ybase = mat.rowStart(y);
     DBIDArrayIter ij = mat.ix;
 
     // Write to (y, j), with j < y
@@ -312,26 +317,27 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
       }
       assert (j < y); // Otherwise, ybase + j is the wrong position!
       final int yb = ybase + j;
-      scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], builder.getSize(ij), mindist);
+      yrow[yb] = linkage.combine(sizex, xrow[xbase + j], sizey, yrow[yb], builder.getSize(ij), mindist);
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
-    for(; j < x; jbase += j++) {
+    for(; j < x; j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
-      final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], builder.getSize(ij), mindist);
+      final double[] jrow = mat.row(j);
+      final int jb = mat.rowStart(j) + y;
+      jrow[jb] = linkage.combine(sizex, xrow[xbase + j], sizey, jrow[jb], builder.getSize(ij), mindist);
     }
-    jbase += j++; // Skip x
+    j++; // Skip x
     // Write to (j, y), with y < x < j
-    for(; j < end; jbase += j++) {
+    for(; j < end; j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
-      final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], builder.getSize(ij), mindist);
+      final double[] jrow = mat.row(j);
+      final int jbase = mat.rowStart(j), jb = jbase + y;
+      jrow[jb] = linkage.combine(sizex, jrow[jbase + x], sizey, jrow[jb], builder.getSize(ij), mindist);
     }
   }
 
@@ -20,6 +20,11 @@
  */
 package elki.clustering.hierarchical;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
 import elki.Algorithm;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
@@ -37,6 +42,7 @@ import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.math.MathUtil;
 import elki.math.geometry.PrimsMinimumSpanningTree;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.datastructures.heap.DoubleLongHeap;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
@@ -69,6 +75,11 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
     url = "https://doi.org/10.1007/978-3-642-37456-2_14", //
     bibkey = "DBLP:conf/pakdd/CampelloMS13")
 public abstract class AbstractHDBSCAN<O> implements Algorithm {
+  /**
+   * Minimum number of objects to use multiple threads.
+   */
+  protected static final int PARALLEL_THRESHOLD = 1 << 12;
+
   /**
    * MinPts parameter.
    */
@@ -111,6 +122,121 @@ public abstract class AbstractHDBSCAN<O> implements Algorithm {
     return coredists;
   }
 
+  /**
+   * Compute the core distances for all objects, using multiple threads.
+   *
+   * @param ids Objects
+   * @param knnQ kNN query factory, as kNN searchers need not be thread safe
+   * @param minPts Minimum neighborhood size
+   * @return Data store with core distances
+   */
+  protected WritableDoubleDataStore computeCoreDists(DBIDs ids, Supplier<KNNSearcher<DBIDRef>> knnQ, int minPts) {
+    final int n = ids.size(), blocks = ParallelExecutor.numBlocks(n, PARALLEL_THRESHOLD, n);
+    if(blocks <= 1) {
+      return computeCoreDists(ids, knnQ.get(), minPts);
+    }
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    // kNN searchers need not be thread safe, so use one per block.
+    final List<KNNSearcher<DBIDRef>> searchers = new ArrayList<>(blocks);
+    for(int b = 0; b < blocks; b++) {
+      searchers.add(knnQ.get());
+    }
+    final double[] buf = new double[n];
+    ParallelExecutor.runRanges(n, blocks, (block, start, end) -> {
+      final KNNSearcher<DBIDRef> knn = searchers.get(block);
+      for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        buf[it.getOffset()] = knn.getKNN(it, minPts).getKNNDistance();
+      }
+    });
+    // Write back sequentially, the data store need not be thread safe.
+    final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    for(DBIDArrayIter it = aids.iter(); it.valid(); it.advance()) {
+      coredists.putDouble(it, buf[it.getOffset()]);
+    }
+    return coredists;
+  }
+
+  /**
+   * Compute the minimum spanning tree of the mutual reachability graph with
+   * Prim's algorithm, as in {@link PrimsMinimumSpanningTree#processDense}.
+   * <p>
+   * For large data sets, each iteration scans the candidate edges with
+   * multiple threads. The tree (and the order of the edges) is the same as
+   * with the sequential version.
+   *
+   * @param ids Objects
+   * @param coredists Core distances
+   * @param distQ Distance query factory, as distance queries need not be
+   *        thread safe
+   * @param collector Edge collector
+   */
+  protected static void processDense(ArrayDBIDs ids, DoubleDataStore coredists, Supplier<? extends DistanceQuery<?>> distQ, PrimsMinimumSpanningTree.Collector collector) {
+    final int n = ids.size(), blocks = ParallelExecutor.numBlocks(n, PARALLEL_THRESHOLD, n);
+    if(blocks <= 1) {
+      PrimsMinimumSpanningTree.processDense(ids, new HDBSCANAdapter(ids, coredists, distQ.get()), collector);
+      return;
+    }
+    // Distance queries need not be thread safe, so use one per block.
+    final List<DistanceQuery<?>> queries = new ArrayList<>(blocks);
+    for(int b = 0; b < blocks; b++) {
+      queries.add(distQ.get());
+    }
+    // Best distance for each node
+    final double[] best = new double[n];
+    Arrays.fill(best, Double.POSITIVE_INFINITY);
+    // Best previous node
+    final int[] src = new int[n];
+    // Nodes already handled
+    final byte[] connected = new byte[n];
+    // Best candidate of each block
+    final double[] blockd = new double[blocks];
+    final int[] blocki = new int[blocks];
+    // We always start at "random" node 0
+    int current = 0;
+    connected[current] = 1;
+    best[current] = 0;
+    for(int i = n - 2; i >= 0; i--) {
+      final int cur = current;
+      ParallelExecutor.runRanges(n, blocks, (block, start, end) -> {
+        final DistanceQuery<?> distq = queries.get(block);
+        final DBIDArrayIter ip = ids.iter().seek(cur), iq = ids.iter();
+        final double coreP = coredists.doubleValue(ip);
+        int newbesti = -1;
+        double newbestd = Double.POSITIVE_INFINITY;
+        for(iq.seek(start); iq.getOffset() < end; iq.advance()) {
+          final int j = iq.getOffset();
+          if(connected[j] == 1) {
+            continue;
+          }
+          final double dist = MathUtil.max(coreP, coredists.doubleValue(iq), distq.distance(ip, iq));
+          if(dist < best[j]) {
+            best[j] = dist;
+            src[j] = cur;
+          }
+          if(best[j] < newbestd || newbesti == -1) {
+            newbestd = best[j];
+            newbesti = j;
+          }
+        }
+        blockd[block] = newbestd;
+        blocki[block] = newbesti;
+      });
+      // Combine the blocks, preferring the first on ties as the sequential scan
+      int newbesti = -1;
+      double newbestd = Double.POSITIVE_INFINITY;
+      for(int b = 0; b < blocks; b++) {
+        if(blocki[b] >= 0 && (blockd[b] < newbestd || newbesti == -1)) {
+          newbestd = blockd[b];
+          newbesti = blocki[b];
+        }
+      }
+      assert (newbesti >= 0);
+      connected[newbesti] = 1;
+      collector.addEdge(newbestd, src[newbesti], newbesti);
+      current = newbesti;
+    }
+  }
+
   /**
    * Class for processing the HDBSCAN G_mpts graph.
    *
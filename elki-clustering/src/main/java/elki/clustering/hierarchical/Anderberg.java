@@ -40,6 +40,7 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.Parameterizer;
@@ -123,12 +124,12 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     final int size = ids.size();
 
     // Position counter - must agree with computeOffset!
-    AGNES.initializeDistanceMatrix(mat, dq, linkage);
+    AGNES.initializeDistanceMatrix(mat, relation, distance, linkage);
 
     // Arrays used for caching:
     double[] bestd = new double[size];
     int[] besti = new int[size];
-    initializeNNCache(mat.matrix, bestd, besti);
+    initializeNNCache(mat, bestd, besti);
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
@@ -149,31 +150,34 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
   /**
    * Initialize the NN cache.
    *
-   * @param scratch Scratch space
+   * @param mat Matrix paradigm
    * @param bestd Best distance
    * @param besti Best index
    */
-  protected static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  protected static void initializeNNCache(MatrixParadigm mat, double[] bestd, int[] besti) {
     final int size = bestd.length;
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
     besti[0] = Integer.MAX_VALUE; // invalid, but not deactivated
-    int p = 0;
-    for(int x = 1; x < size; x++) {
-      double bestdx = Double.POSITIVE_INFINITY;
-      int bestix = -1;
-      for(int y = 0; y < x; y++) {
-        final double v = scratch[p++];
-        if(v < bestdx) {
-          bestdx = v;
-          bestix = y;
+    // Rows are independent, and can be scanned in parallel:
+    ParallelExecutor.runTriangleRanges(size, MatrixParadigm.numBlocks(size), (block, start, end) -> {
+      for(int x = Math.max(start, 1); x < end; x++) {
+        final double[] row = mat.row(x);
+        final int p = mat.rowStart(x);
+        double bestdx = Double.POSITIVE_INFINITY;
+        int bestix = -1;
+        for(int y = 0; y < x; y++) {
+          final double v = row[p + y];
+          if(v < bestdx) {
+            bestdx = v;
+            bestix = y;
+          }
         }
+        assert 0 <= bestix && bestix < x;
+        bestd[x] = bestdx;
+        besti[x] = bestix;
       }
-      assert 0 <= bestix && bestix < x;
-      bestd[x] = bestdx;
-      besti[x] = bestix;
-    }
-    assert p == MatrixParadigm.triangleSize(size);
+    });
   }
 
   /**
@@ -236,9 +240,9 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     final int sizex = builder.getSize(ix), sizey = builder.getSize(iy);
     builder.setSize(iy, sizex + sizey);
     besti[x] = -1; // Deactivate removed cluster.
-    updateMatrix(size, mat.matrix, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    updateMatrix(size, mat, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
     if(y > 0) {
-      findBest(mat.matrix, bestd, besti, y);
+      findBest(mat, bestd, besti, y);
     }
   }
 
@@ -246,7 +250,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * Update the scratch distance matrix.
    *
    * @param size Data set size
-   * @param scratch Scratch matrix.
+   * @param mat Matrix paradigm
    * @param ij Iterator to reuse
    * @param bestd Best distance
    * @param besti Index of best distance
@@ -257,10 +261,10 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param sizex Old size of first cluster, with {@code x > y}
    * @param sizey Old size of second cluster, with {@code y > x}
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, MatrixParadigm mat, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
+    final double[] xrow = mat.row(x), yrow = mat.row(y);
+    final int xbase = mat.rowStart(x), ybase = mat.rowStart(y);
 
     // Write to (y, j), with j < y
     int j = 0;
@@ -270,38 +274,39 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
       }
       final int sizej = builder.getSize(ij);
       final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final double d = yrow[yb] = linkage.combine(sizex, xrow[xbase + j], sizey, yrow[yb], sizej, mindist);
+      updateCache(mat, bestd, besti, x, y, j, d);
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
-    for(; j < x; jbase += j++) {
+    for(; j < x; j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final double[] jrow = mat.row(j);
+      final int jb = mat.rowStart(j) + y;
+      final double d = jrow[jb] = linkage.combine(sizex, xrow[xbase + j], sizey, jrow[jb], sizej, mindist);
+      updateCache(mat, bestd, besti, x, y, j, d);
     }
-    jbase += j++; // Skip x
+    j++; // Skip x
     // Write to (j, y), with y < x < j
-    for(; j < size; jbase += j++) {
+    for(; j < size; j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final double[] jrow = mat.row(j);
+      final int jbase = mat.rowStart(j), jb = jbase + y;
+      final double d = jrow[jb] = linkage.combine(sizex, jrow[jbase + x], sizey, jrow[jb], sizej, mindist);
+      updateCache(mat, bestd, besti, x, y, j, d);
     }
   }
 
   /**
    * Update the cache.
    *
-   * @param scratch Scratch matrix
+   * @param mat Matrix paradigm
    * @param bestd Best distance
    * @param besti Best index
    * @param x First cluster
@@ -309,7 +314,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param j Updated value d(y, j)
    * @param d New distance
    */
-  protected static void updateCache(double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  protected static void updateCache(MatrixParadigm mat, double[] bestd, int[] besti, int x, int y, int j, double d) {
     assert y < x;
     // New best
     if(y < j && d <= bestd[j]) {
@@ -319,27 +324,28 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     }
     // Needs slow update.
     if(besti[j] == x || besti[j] == y) {
-      findBest(scratch, bestd, besti, j);
+      findBest(mat, bestd, besti, j);
     }
   }
 
   /**
    * Find the best in a row of the triangular matrix.
    *
-   * @param scratch Scratch matrix
+   * @param mat Matrix paradigm
    * @param bestd Best distances cache
    * @param besti Best indexes cache
    * @param j Row to update
    */
-  protected static void findBest(double[] scratch, double[] bestd, int[] besti, int j) {
+  protected static void findBest(MatrixParadigm mat, double[] bestd, int[] besti, int j) {
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
     int bestij = -1;
-    for(int i = 0, o = MatrixParadigm.triangleSize(j); i < j; i++, o++) {
+    final double[] row = mat.row(j);
+    for(int i = 0, o = mat.rowStart(j); i < j; i++, o++) {
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = row[o];
       if(dist <= bestdj) {
         bestdj = dist;
         bestij = i;
@@ -0,0 +1,253 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import java.util.Arrays;
+
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDBIDDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.utilities.datastructures.heap.DoubleLongHeap;
+import elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
+import elki.utilities.documentation.Reference;
+
+/**
+ * HDBSCAN clustering using Boruvka's algorithm to build the minimum spanning
+ * tree of the mutual reachability graph.
+ * <p>
+ * In each round, every component searches for its closest neighbor in a
+ * different component, using the priority search of an index (e.g., a k-d-tree
+ * or a cover tree). The searches are pruned using the best candidate of the
+ * component found so far, and a lower bound for each object carried over from
+ * the previous rounds (as components only grow, the distance to the nearest
+ * other component cannot decrease). With a suitable index on low-dimensional
+ * data, this needs much fewer distance computations than the quadratic
+ * {@link HDBSCANLinearMemory}.
+ * <p>
+ * Without an index, the priority search falls back to a linear scan, and this
+ * will be slower than {@link HDBSCANLinearMemory}.
+ * <p>
+ * This implementation does <em>not</em> include the cluster extraction
+ * discussed as Step 4. This functionality should however already be provided by
+ * {@link elki.clustering.hierarchical.extraction.HDBSCANHierarchyExtraction}
+ * . For this reason, we also do <em>not include self-edges</em>.
+ * <p>
+ * Reference:
+ * <p>
+ * L. McInnes, J. Healy<br>
+ * Accelerated Hierarchical Density Based Clustering<br>
+ * IEEE Int. Conf. Data Mining Workshops (ICDMW)
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @has - - - PointerDensityHierarchyRepresentationResult
+ */
+@Reference(authors = "L. McInnes, J. Healy", //
+    title = "Accelerated Hierarchical Density Based Clustering", //
+    booktitle = "IEEE Int. Conf. Data Mining Workshops (ICDMW)", //
+    url = "https://doi.org/10.1109/ICDMW.2017.12", //
+    bibkey = "DBLP:conf/icdm/McInnesH17")
+public class HDBSCANBoruvka<O> extends AbstractHDBSCAN<O> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HDBSCANBoruvka.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public HDBSCANBoruvka(Distance<? super O> distance, int minPts) {
+    super(distance, minPts);
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Relation<O> relation) {
+    final QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    // We need array addressing later.
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+
+    // 1. Compute the core distances
+    // minPts + 1: ignore query point.
+    final WritableDoubleDataStore coredists = computeCoreDists(ids, () -> qb.kNNByDBID(minPts), minPts);
+
+    final int numedges = ids.size() - 1;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
+    // 2. Build spanning tree.
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
+    processBoruvka(ids, coredists, qb.priorityByDBID(), new HeapMSTCollector(heap, mprog, LOG));
+    LOG.ensureCompleted(mprog);
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, distance.isSquared(), coredists);
+  }
+
+  /**
+   * Build the minimum spanning tree of the mutual reachability graph using
+   * Boruvka's algorithm.
+   *
+   * @param ids Objects
+   * @param coredists Core distances
+   * @param searcher Priority searcher
+   * @param collector Edge collector
+   */
+  protected void processBoruvka(ArrayDBIDs ids, DoubleDataStore coredists, PrioritySearcher<DBIDRef> searcher, HeapMSTCollector collector) {
+    final int n = ids.size();
+    // Map objects to offsets, for the results of the priority search
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, uf.nextIndex(1));
+    }
+    // Lower bound of the distance to the nearest other component
+    final double[] bound = new double[n];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      bound[it.getOffset()] = coredists.doubleValue(it);
+    }
+    // Best candidate edge of each component, indexed by the component root
+    final double[] compbest = new double[n];
+    final int[] compsrc = new int[n], compdst = new int[n];
+    int components = n, rounds = 0;
+    long distcalc = 0;
+    DBIDArrayIter ip = ids.iter();
+    while(components > 1) {
+      Arrays.fill(compbest, Double.POSITIVE_INFINITY);
+      Arrays.fill(compdst, -1);
+      for(ip.seek(0); ip.valid(); ip.advance()) {
+        final int i = ip.getOffset(), ci = uf.find(i);
+        if(compdst[ci] >= 0 && bound[i] >= compbest[ci]) {
+          continue; // Cannot improve the current candidate of the component.
+        }
+        final double coreP = coredists.doubleValue(ip);
+        // Note: with too few neighbors, distances may be infinite.
+        double best = compbest[ci];
+        boolean known = compdst[ci] >= 0;
+        int bestj = -1;
+        for(searcher.search(ip, best); searcher.valid(); searcher.advance()) {
+          if(known && searcher.getLowerBound() >= best) {
+            continue;
+          }
+          final int j = offsets.intValue(searcher);
+          if(uf.find(j) == ci) {
+            continue;
+          }
+          final double coreQ = coredists.doubleValue(searcher);
+          if(known && coreQ >= best) {
+            continue;
+          }
+          final double dist = Math.max(Math.max(coreP, coreQ), searcher.computeExactDistance());
+          ++distcalc;
+          if(dist < best || !known) {
+            known = true;
+            best = dist;
+            bestj = j;
+            if(best <= coreP) {
+              break; // Cannot become any better.
+            }
+            searcher.decreaseCutoff(best);
+          }
+        }
+        // All objects closer than best have been inspected.
+        bound[i] = best;
+        if(bestj >= 0) {
+          compbest[ci] = best;
+          compsrc[ci] = i;
+          compdst[ci] = bestj;
+        }
+      }
+      // Add the candidate edges of all components.
+      int added = 0;
+      for(int c = 0; c < n; c++) {
+        final int j = compdst[c];
+        if(j < 0) {
+          continue;
+        }
+        final int i = compsrc[c];
+        if(uf.isConnected(i, j)) {
+          continue; // Tied edge, already joined.
+        }
+        uf.union(i, j);
+        collector.addEdge(compbest[c], i, j);
+        ++added;
+      }
+      if(added == 0) {
+        throw new IllegalStateException("Boruvka did not find an edge to connect " + components + " components.");
+      }
+      components -= added;
+      ++rounds;
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(HDBSCANBoruvka.class.getName() + ".rounds", rounds));
+      LOG.statistics(new LongStatistic(HDBSCANBoruvka.class.getName() + ".distance-computations", distcalc));
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author ELKI Development Team
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends AbstractHDBSCAN.Par<O> {
+    @Override
+    public HDBSCANBoruvka<O> make() {
+      return new HDBSCANBoruvka<>(distance, minPts);
+    }
+  }
+}
@@ -27,16 +27,12 @@ import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDBIDDataStore;
 import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.ids.ArrayDBIDs;
-import elki.database.ids.DBIDRef;
 import elki.database.ids.DBIDUtil;
 import elki.database.query.QueryBuilder;
-import elki.database.query.distance.DistanceQuery;
-import elki.database.query.knn.KNNSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
-import elki.math.geometry.PrimsMinimumSpanningTree;
 import elki.utilities.datastructures.heap.DoubleLongHeap;
 import elki.utilities.datastructures.heap.DoubleLongMinHeap;
 import elki.utilities.documentation.Description;
@@ -62,6 +58,9 @@ import elki.utilities.documentation.Title;
  * discussed as Step 4, which is provided in a separate step. For this reason,
  * we also do <em>not include self-edges</em>.
  * <p>
+ * On large data sets, the core distances and the spanning tree are computed
+ * with multiple threads.
+ * <p>
  * Reference:
  * <p>
  * R. J. G. B. Campello, D. Moulavi, J. Sander<br>
@@ -111,29 +110,25 @@ public class HDBSCANLinearMemory<O> extends AbstractHDBSCAN<O> implements Hierar
    */
   public PointerDensityHierarchyRepresentationResult run(Relation<O> relation) {
     final QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
-    final KNNSearcher<DBIDRef> knnQ = qb.kNNByDBID(minPts);
-    final DistanceQuery<O> distQ = qb.distanceQuery();
     // We need array addressing later.
     final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
 
     // 1. Compute the core distances
     // minPts + 1: ignore query point.
-    final WritableDoubleDataStore coredists = computeCoreDists(ids, knnQ, minPts);
+    final WritableDoubleDataStore coredists = computeCoreDists(ids, () -> qb.kNNByDBID(minPts), minPts);
 
     final int numedges = ids.size() - 1;
     DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
     // 2. Build spanning tree.
     FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
-    PrimsMinimumSpanningTree.processDense(ids, //
-        new HDBSCANAdapter(ids, coredists, distQ), //
-        new HeapMSTCollector(heap, mprog, LOG));
+    processDense(ids, coredists, () -> new QueryBuilder<>(relation, distance).distanceQuery(), new HeapMSTCollector(heap, mprog, LOG));
     LOG.ensureCompleted(mprog);
     // Storage for pointer representation:
     WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
     WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
     convertToPointerRepresentation(ids, heap, pi, lambda);
 
-    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, distQ.getDistance().isSquared(), coredists);
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, distance.isSquared(), coredists);
   }
 
   @Override
@@ -20,12 +20,21 @@
  */
 package elki.clustering.hierarchical;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
 import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
+import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
-import elki.utilities.exceptions.AbortException;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
 
 /**
  * Shared code for algorithms that work on a strict matrix paradigm.
@@ -37,20 +46,46 @@ import elki.utilities.exceptions.AbortException;
  * <p>
  * While this will usually store (merge-) distances when clustering, it can
  * store arbitrary doubles.
+ * <p>
+ * The matrix is stored in chunks of complete rows with about \(2^{27}\)
+ * values each, so the size is not limited by the maximum Java array size. Use
+ * {@link #row} and {@link #rowStart} to scan rows efficiently. The initial
+ * distances are computed in parallel.
  *
  * @author Erich Schubert
  * @since 0.7.5
  */
 public class MatrixParadigm {
+  /**
+   * Minimum number of matrix entries to process in parallel.
+   */
+  public static final long PARALLEL_THRESHOLD = 1L << 18;
+
   /**
    * Two iterators to reference to objects.
    */
   public final DBIDArrayIter ix, iy;
 
   /**
-   * Distance matrix (<b>modifiable</b>).
+   * Object ids, to obtain further iterators (e.g., for other threads).
+   */
+  public final ArrayDBIDs ids;
+
+  /**
+   * Target number of values per chunk.
+   */
+  private static final long CHUNK_SIZE = 1L << 27;
+
+  /**
+   * Storage array of each row (<b>modifiable</b>). Rows share the arrays of
+   * their chunk.
+   */
+  private final double[][] rows;
+
+  /**
+   * Start of each row within its storage array.
    */
-  public final double[] matrix;
+  private final int[] starts;
 
   /**
    * Number of rows/columns.
@@ -64,15 +99,25 @@ public class MatrixParadigm {
    */
   public MatrixParadigm(DBIDs ids) {
     size = ids.size();
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-          0x10000 // = 65535
-          + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
+    this.ids = DBIDUtil.ensureArray(ids);
+    ix = this.ids.iter();
+    iy = this.ids.iter();
+    rows = new double[size][];
+    starts = new int[size];
+    // Chunks consist of complete rows, so rows can be scanned efficiently.
+    for(int first = 0; first < size;) {
+      int end = first + 1;
+      while(end < size && triangleSize(end + 1) - triangleSize(first) <= CHUNK_SIZE) {
+        end++;
+      }
+      final long base = triangleSize(first);
+      final double[] chunk = new double[(int) (triangleSize(end) - base)];
+      for(int x = first; x < end; x++) {
+        rows[x] = chunk;
+        starts[x] = (int) (triangleSize(x) - base);
+      }
+      first = end;
     }
-    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-    ix = aids.iter();
-    iy = aids.iter();
-    matrix = new double[triangleSize(size)];
   }
 
   /**
@@ -81,8 +126,8 @@ public class MatrixParadigm {
    * @param x Offset
    * @return Size of complete triangle
    */
-  public static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  public static long triangleSize(int x) {
+    return ((long) x * (x - 1)) >>> 1;
   }
 
   /**
@@ -96,7 +141,46 @@ public class MatrixParadigm {
    * @return Distance
    */
   public double get(int x, int y) {
-    return x == y ? 0 : x < y ? matrix[triangleSize(y) + x] : matrix[triangleSize(x) + y];
+    return x == y ? 0 : x < y ? rows[y][starts[y] + x] : rows[x][starts[x] + y];
+  }
+
+  /**
+   * Set a value in the (upper triangular) distance matrix.
+   *
+   * @param x First object
+   * @param y Second object, must be different from x
+   * @param value New value
+   */
+  public void set(int x, int y, double value) {
+    assert x != y;
+    if(x < y) {
+      rows[y][starts[y] + x] = value;
+    }
+    else {
+      rows[x][starts[x] + y] = value;
+    }
+  }
+
+  /**
+   * Get the storage array of a row, for efficient scans of the row. The
+   * values \((x,y)\) for \(y&lt;x\) are stored at
+   * {@code row(x)[rowStart(x) + y]}.
+   *
+   * @param x Row
+   * @return Storage array (<b>modifiable</b>)
+   */
+  public double[] row(int x) {
+    return rows[x];
+  }
+
+  /**
+   * Get the start of a row in its storage array.
+   *
+   * @param x Row
+   * @return Offset of \((x,0)\) in {@link #row}
+   */
+  public int rowStart(int x) {
+    return starts[x];
   }
 
   /**
@@ -106,16 +190,67 @@ public class MatrixParadigm {
    * @return this
    */
   public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
-    final DBIDArrayIter ix = this.ix, iy = this.iy;
-    final double[] matrix = this.matrix;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
+    initializeRows(dq, DoubleUnaryOperator.identity(), 0, size, null, null);
+    return this;
+  }
+
+  /**
+   * Initialize a distance matrix, in parallel. Distance queries need not be
+   * thread safe, so each block uses its own query.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param transform Transformation applied to each distance
+   * @param log Logger for progress, may be {@code null}
+   * @param prog Progress (counting rows), may be {@code null}
+   * @param <O> Object type
+   * @return this
+   */
+  public <O> MatrixParadigm initializeWithDistances(Relation<O> relation, Distance<? super O> distance, DoubleUnaryOperator transform, Logging log, FiniteProgress prog) {
+    final int blocks = numBlocks(size);
+    final List<DistanceQuery<O>> queries = new ArrayList<>(blocks);
+    for(int b = 0; b < blocks; b++) {
+      queries.add(new QueryBuilder<>(relation, distance).distanceQuery());
+    }
+    ParallelExecutor.runTriangleRanges(size, blocks, (block, start, end) -> {
+      initializeRows(queries.get(block), transform, start, end, log, prog);
+    });
+    return this;
+  }
+
+  /**
+   * Initialize a range of rows of the distance matrix.
+   *
+   * @param dq Distance query
+   * @param transform Transformation applied to each distance
+   * @param start First row
+   * @param end End row (exclusive)
+   * @param log Logger for progress, may be {@code null}
+   * @param prog Progress (counting rows), may be {@code null}
+   */
+  private void initializeRows(DistanceQuery<?> dq, DoubleUnaryOperator transform, int start, int end, Logging log, FiniteProgress prog) {
+    final DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
       final int x = ix.getOffset();
-      assert (pos == triangleSize(x));
+      final double[] row = rows[x];
+      int pos = starts[x];
       for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = dq.distance(ix, iy);
+        row[pos++] = transform.applyAsDouble(dq.distance(ix, iy));
+      }
+      if(log != null) {
+        log.incrementProcessed(prog);
       }
     }
-    return this;
+  }
+
+  /**
+   * Choose the number of blocks to process the first rows of the matrix with
+   * {@link ParallelExecutor#runTriangleRanges}.
+   *
+   * @param end Number of rows
+   * @return Number of blocks, 1 for sequential processing
+   */
+  public static int numBlocks(int end) {
+    return ParallelExecutor.numBlocks(triangleSize(end), PARALLEL_THRESHOLD, end);
   }
 }
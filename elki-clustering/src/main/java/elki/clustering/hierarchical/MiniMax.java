@@ -32,6 +32,7 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
@@ -112,7 +113,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
 
     // Allocate working space:
     MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(size));
+    ArrayModifiableDBIDs prots = newPrototypeArray(size);
     initializeMatrices(mat, prots, dq);
 
     DBIDArrayMIter protiter = prots.iter();
@@ -127,6 +128,23 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
   }
 
+  /**
+   * Allocate the prototype storage, with one entry for each pair of objects.
+   * <p>
+   * Because this uses a single array, it is limited to 65536 objects, unlike
+   * the distance matrix.
+   *
+   * @param size Number of objects
+   * @return Prototype array
+   */
+  protected static ArrayModifiableDBIDs newPrototypeArray(int size) {
+    if(size > 0x10000) {
+      throw new AbortException("MiniMax stores a prototype for every pair, and does not scale to data sets larger than " + //
+          0x10000 + " instances, at which point the Java maximum array size is reached.");
+    }
+    return DBIDUtil.newArray((int) MatrixParadigm.triangleSize(size));
+  }
+
   /**
    * Initializes the inter-cluster distance matrix of possible merges
    * 
@@ -135,15 +153,13 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    */
   protected static <O> void initializeMatrices(MatrixParadigm mat, ArrayModifiableDBIDs prots, DistanceQuery<O> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
-    int pos = 0;
+    mat.initializeWithDistances(dq);
     for(ix.seek(0); ix.valid(); ix.advance()) {
       for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        distances[pos++] = dq.distance(ix, iy);
         prots.add(iy);
       }
     }
-    assert (prots.size() == pos);
+    assert (prots.size() == MatrixParadigm.triangleSize(mat.size));
   }
 
   /**
@@ -158,7 +174,6 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    */
   protected static int findMerge(int end, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
 
@@ -167,7 +182,8 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
       if(builder.isLinked(ix.seek(dx))) {
         continue;
       }
-      final int xoffset = MatrixParadigm.triangleSize(dx);
+      final double[] row = mat.row(dx);
+      final int xoffset = mat.rowStart(dx);
 
       for(int dy = 0; dy < dx; dy++) {
         // Skip if object is already linked
@@ -175,7 +191,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
           continue;
         }
 
-        double dist = distances[xoffset + dy];
+        double dist = row[xoffset + dy];
         if(dist < mindist) {
           mindist = dist;
           x = dx;
@@ -205,11 +221,10 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
   protected static void merge(int size, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
-    final double[] distances = mat.matrix;
-    int offset = MatrixParadigm.triangleSize(x) + y;
+    final int offset = (int) MatrixParadigm.triangleSize(x) + y;
 
     if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances[offset]);
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + mat.get(x, y));
     }
 
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
@@ -229,7 +244,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     clusters.put(y, cy);
 
     // parent of x is set to y
-    builder.add(ix, distances[offset], iy, prots.seek(offset));
+    builder.add(ix, mat.get(x, y), iy, prots.seek(offset));
 
     updateMatrices(size, mat, prots, builder, clusters, dq, y);
   }
@@ -285,7 +300,6 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
   protected static void updateEntry(MatrixParadigm mat, DBIDArrayMIter prots, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
 
     DBIDVar prototype = DBIDUtil.newVar(ix.seek(x)); // Default prototype
@@ -308,9 +322,8 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
       prototype.set(ix);
     }
 
-    final int offset = MatrixParadigm.triangleSize(x) + y;
-    distances[offset] = minMaxDist;
-    prots.seek(offset).setDBID(prototype);
+    mat.set(x, y, minMaxDist);
+    prots.seek((int) MatrixParadigm.triangleSize(x) + y).setDBID(prototype);
   }
 
   /**
@@ -20,18 +20,21 @@
  */
 package elki.clustering.hierarchical;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
 import elki.database.datastore.*;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
-import elki.database.query.knn.KNNSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.math.MathUtil;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.documentation.Reference;
 
 /**
@@ -47,6 +50,9 @@ import elki.utilities.documentation.Reference;
  * closely related to Prim's minimum spanning tree, but produces the more
  * compact pointer representation instead of an edges list.
  * <p>
+ * On large data sets, the core distances and the distances to the previously
+ * processed objects are computed with multiple threads.
+ * <p>
  * This implementation does <em>not</em> include the cluster extraction
  * discussed as Step 4. This functionality should however already be provided by
  * {@link elki.clustering.hierarchical.extraction.HDBSCANHierarchyExtraction}
@@ -98,28 +104,41 @@ public class SLINKHDBSCANLinearMemory<O> extends AbstractHDBSCAN<O> implements H
   public PointerDensityHierarchyRepresentationResult run(Relation<O> relation) {
     final QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
     final DistanceQuery<O> distQ = qb.distanceQuery();
-    final KNNSearcher<DBIDRef> knnQ = qb.kNNByDBID(minPts);
     // We need array addressing later.
     final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
 
     // Compute the core distances
     // minPts + 1: ignore query point.
-    final WritableDoubleDataStore coredists = computeCoreDists(ids, knnQ, minPts);
+    final WritableDoubleDataStore coredists = computeCoreDists(ids, () -> qb.kNNByDBID(minPts), minPts);
 
     WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
     WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
     // Temporary storage for m.
     WritableDoubleDataStore m = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    // Buffer for the parallel computation of m, as the store is not thread safe
+    double[] buf = null;
+    // Distance queries need not be thread safe, so use one per block.
+    final List<DistanceQuery<O>> queries = new ArrayList<>();
 
     FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Running HDBSCAN*-SLINK", ids.size(), LOG) : null;
     // has to be an array for monotonicity reasons!
     ModifiableDBIDs processedIDs = DBIDUtil.newArray(ids.size());
 
-    for(DBIDIter id = ids.iter(); id.valid(); id.advance()) {
+    for(DBIDArrayIter id = ids.iter(); id.valid(); id.advance()) {
       // Steps 1,3,4 are exactly as in SLINK
       pi.put(id, id);
       // Step 2 is modified to use a different distance
-      step2(id, processedIDs, distQ, coredists, m);
+      final int blocks = ParallelExecutor.numBlocks(id.getOffset(), PARALLEL_THRESHOLD, id.getOffset());
+      if(blocks > 1) {
+        buf = buf != null ? buf : new double[ids.size()];
+        while(queries.size() < blocks) {
+          queries.add(new QueryBuilder<>(relation, distance).distanceQuery());
+        }
+        step2(id.getOffset(), ids, blocks, queries, coredists, buf, m);
+      }
+      else {
+        step2(id, processedIDs, distQ, coredists, m);
+      }
       step3(id, pi, lambda, processedIDs, m);
       step4(id, pi, lambda, processedIDs);
 
@@ -140,6 +159,7 @@ public class SLINKHDBSCANLinearMemory<O> extends AbstractHDBSCAN<O> implements H
    *        representation
    * @param processedIDs the already processed ids
    * @param distQuery Distance query
+   * @param coredists Core distances
    * @param m Data store
    */
   private void step2(DBIDRef id, DBIDs processedIDs, DistanceQuery<? super O> distQuery, DoubleDataStore coredists, WritableDoubleDataStore m) {
@@ -152,6 +172,35 @@ public class SLINKHDBSCANLinearMemory<O> extends AbstractHDBSCAN<O> implements H
     }
   }
 
+  /**
+   * Second step, using multiple threads: Determine the pairwise distances from
+   * all objects in the pointer representation to the new object.
+   *
+   * @param i Offset of the new object; all objects before have been processed
+   * @param ids Object ids
+   * @param blocks Number of blocks to process in parallel
+   * @param queries Distance queries, one for each block, as distance queries
+   *        need not be thread safe
+   * @param coredists Core distances
+   * @param buf Buffer for the distances, at least of size i
+   * @param m Data store
+   */
+  private void step2(int i, ArrayDBIDs ids, int blocks, List<? extends DistanceQuery<? super O>> queries, DoubleDataStore coredists, double[] buf, WritableDoubleDataStore m) {
+    ParallelExecutor.runRanges(i, blocks, (block, start, end) -> {
+      final DistanceQuery<? super O> distQuery = queries.get(block);
+      final DBIDArrayIter id = ids.iter().seek(i), it = ids.iter();
+      final double coreP = coredists.doubleValue(id);
+      for(it.seek(start); it.getOffset() < end; it.advance()) {
+        // M(i) = dist(i, n+1)
+        buf[it.getOffset()] = MathUtil.max(coreP, coredists.doubleValue(it), distQuery.distance(id, it));
+      }
+    });
+    // Write back sequentially, the data store need not be thread safe.
+    for(DBIDArrayIter it = ids.iter(); it.getOffset() < i; it.advance()) {
+      m.putDouble(it, buf[it.getOffset()]);
+    }
+  }
+
   /**
    * Third step: Determine the values for P and L
    *
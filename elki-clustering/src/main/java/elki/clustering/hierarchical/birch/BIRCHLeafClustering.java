@@ -30,11 +30,14 @@ import elki.data.NumberVector;
 import elki.data.model.MeanModel;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
-import elki.database.ids.DBIDIter;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.ModifiableDBIDs;
 import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
+import elki.datasource.bundle.BundleStreamSource;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.Parameterizer;
@@ -102,9 +105,17 @@ public class BIRCHLeafClustering implements ClusteringAlgorithm<Clustering<MeanM
     // The CFTree does not store points. We have to reassign them (and the
     // quality is better than if we used the initial assignment, because centers
     // move in particular in the beginning, so we always had many outliers.
+    // The tree is not modified anymore, so the leaves can be found in parallel.
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    ClusteringFeature[] leaves = new ClusteringFeature[ids.size()];
+    ParallelExecutor.runRanges(ids.size(), ParallelExecutor.numBlocks(ids.size(), CFTree.PARALLEL_THRESHOLD, ids.size()), (b, start, end) -> {
+      for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+        leaves[iter.getOffset()] = tree.findLeaf(relation.get(iter));
+      }
+    });
     Map<ClusteringFeature, ModifiableDBIDs> idmap = new HashMap<>(tree.leaves);
-    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-      idmap.computeIfAbsent(tree.findLeaf(relation.get(iter)), x -> DBIDUtil.newArray(x.n)) //
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      idmap.computeIfAbsent(leaves[iter.getOffset()], x -> DBIDUtil.newArray(x.n)) //
           .add(iter);
     }
     Clustering<MeanModel> result = new Clustering<>();
@@ -120,6 +131,21 @@ public class BIRCHLeafClustering implements ClusteringAlgorithm<Clustering<MeanM
     return result;
   }
 
+  /**
+   * Build the CF-tree from a data stream, in a single pass and without storing
+   * the data. The leaves of the tree are the clusters.
+   * <p>
+   * As there is no relation to assign, this only returns the tree. A second
+   * pass over the data can use {@link CFTree#findLeaf} to assign each object to
+   * its cluster.
+   *
+   * @param source Data source, e.g., a streaming parser
+   * @return CF-tree
+   */
+  public CFTree processStream(BundleStreamSource source) {
+    return cffactory.newTree(source);
+  }
+
   /**
    * Parameterization class.
    *
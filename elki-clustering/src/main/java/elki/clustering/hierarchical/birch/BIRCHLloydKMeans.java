@@ -34,13 +34,16 @@ import elki.data.model.KMeansModel;
 import elki.data.model.MeanModel;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
-import elki.database.ids.DBIDIter;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.ModifiableDBIDs;
 import elki.database.relation.Relation;
+import elki.datasource.bundle.BundleStreamSource;
 import elki.logging.Logging;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.Parameterizer;
@@ -132,21 +135,8 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
    */
   public Clustering<KMeansModel> run(Relation<NumberVector> relation) {
     CFTree tree = cffactory.newTree(relation.getDBIDs(), relation);
-
-    // For efficiency, we also need the mean of each CF:
-    ClusteringFeature[] cfs = new ClusteringFeature[tree.leaves];
-    double[][] cfmeans = new double[tree.leaves][];
-
-    int z = 0;
-    for(LeafIterator iter = tree.leafIterator(); iter.valid(); iter.advance()) {
-      ClusteringFeature f = cfs[z] = iter.get();
-      cfmeans[z] = times(f.ls, 1. / f.n);
-      z++;
-    }
-
-    int[] assignment = new int[tree.leaves], weights = new int[k];
-    Arrays.fill(assignment, -1);
-    double[][] means = kmeans(cfmeans, cfs, assignment, weights);
+    int[] weights = new int[k];
+    double[][] means = kmeans(tree, weights);
 
     // The CFTree does not store points. We have to reassign them; but rather
     // than assigning them to n > k cluster features, we just assign them to the
@@ -158,18 +148,29 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
     for(int i = 0; i < k; i++) {
       ids[i] = DBIDUtil.newArray(weights[i]);
     }
-    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-      NumberVector fv = relation.get(iter);
-      double mindist = distance(fv, means[0]);
-      int minIndex = 0;
-      for(int i = 1; i < k; i++) {
-        double dist = distance(fv, means[i]);
-        if(dist < mindist) {
-          minIndex = i;
-          mindist = dist;
+    // Find the nearest means in parallel, but collect the results in order.
+    ArrayDBIDs aids = DBIDUtil.ensureArray(relation.getDBIDs());
+    int[] nearest = new int[aids.size()];
+    double[] dists = new double[aids.size()];
+    ParallelExecutor.runRanges(aids.size(), ParallelExecutor.numBlocks(aids.size(), CFTree.PARALLEL_THRESHOLD, aids.size()), (b, start, end) -> {
+      for(DBIDArrayIter iter = aids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+        NumberVector fv = relation.get(iter);
+        double mindist = distance(fv, means[0]);
+        int minIndex = 0;
+        for(int i = 1; i < k; i++) {
+          double dist = distance(fv, means[i]);
+          if(dist < mindist) {
+            minIndex = i;
+            mindist = dist;
+          }
         }
+        nearest[iter.getOffset()] = minIndex;
+        dists[iter.getOffset()] = mindist;
       }
-      varsum[minIndex] += mindist;
+    });
+    for(DBIDArrayIter iter = aids.iter(); iter.valid(); iter.advance()) {
+      final int minIndex = nearest[iter.getOffset()];
+      varsum[minIndex] += dists[iter.getOffset()];
       ids[minIndex].add(iter);
     }
     Clustering<KMeansModel> result = new Clustering<>();
@@ -181,6 +182,44 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
     return result;
   }
 
+  /**
+   * Run the clustering algorithm on a data stream, in a single pass and without
+   * storing the data. Only the CF-tree is kept in memory.
+   * <p>
+   * As there is no relation to assign, this only returns the cluster means. A
+   * second pass over the data can assign each object to the nearest mean.
+   *
+   * @param source Data source, e.g., a streaming parser
+   * @return Cluster means
+   */
+  public double[][] processStream(BundleStreamSource source) {
+    return kmeans(cffactory.newTree(source), new int[k]);
+  }
+
+  /**
+   * Perform k-means clustering on the leaves of a CF-tree.
+   *
+   * @param tree CF-tree
+   * @param weights Cluster weight output
+   * @return Cluster means
+   */
+  private double[][] kmeans(CFTree tree, int[] weights) {
+    // For efficiency, we also need the mean of each CF:
+    ClusteringFeature[] cfs = new ClusteringFeature[tree.leaves];
+    double[][] cfmeans = new double[tree.leaves][];
+
+    int z = 0;
+    for(LeafIterator iter = tree.leafIterator(); iter.valid(); iter.advance()) {
+      ClusteringFeature f = cfs[z] = iter.get();
+      cfmeans[z] = times(f.ls, 1. / f.n);
+      z++;
+    }
+
+    int[] assignment = new int[tree.leaves];
+    Arrays.fill(assignment, -1);
+    return kmeans(cfmeans, cfs, assignment, weights);
+  }
+
   /**
    * Perform k-means clustering.
    *
@@ -255,24 +294,33 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
    */
   private int assignToNearestCluster(int[] assignment, double[][] means, double[][] cfmeans, ClusteringFeature[] cfs, int[] weights) {
     Arrays.fill(weights, 0);
-    int changed = 0;
-    for(int i = 0; i < cfmeans.length; i++) {
-      double mindist = distance(cfmeans[i], means[0]);
-      int minIndex = 0;
-      for(int j = 1; j < k; j++) {
-        double dist = distance(cfmeans[i], means[j]);
-        if(dist < mindist) {
-          minIndex = j;
-          mindist = dist;
+    final int n = cfmeans.length;
+    int[] changed = new int[ParallelExecutor.numBlocks(n, CFTree.PARALLEL_THRESHOLD, n)];
+    ParallelExecutor.runRanges(n, changed.length, (b, start, end) -> {
+      for(int i = start; i < end; i++) {
+        double mindist = distance(cfmeans[i], means[0]);
+        int minIndex = 0;
+        for(int j = 1; j < k; j++) {
+          double dist = distance(cfmeans[i], means[j]);
+          if(dist < mindist) {
+            minIndex = j;
+            mindist = dist;
+          }
+        }
+        if(assignment[i] != minIndex) {
+          changed[b]++;
+          assignment[i] = minIndex;
         }
       }
-      if(assignment[i] != minIndex) {
-        changed++;
-        assignment[i] = minIndex;
-      }
-      weights[minIndex] += cfs[i].n;
+    });
+    for(int i = 0; i < n; i++) {
+      weights[assignment[i]] += cfs[i].n;
+    }
+    int total = 0;
+    for(int c : changed) {
+      total += c;
     }
-    return changed;
+    return total;
   }
 
   /**
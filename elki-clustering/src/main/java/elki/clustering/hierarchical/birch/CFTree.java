@@ -24,13 +24,23 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.relation.Relation;
+import elki.datasource.bundle.BundleMeta;
+import elki.datasource.bundle.BundleStreamSource;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.logging.progress.IndefiniteProgress;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.datastructures.iterator.Iter;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.io.FormatUtil;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.OptionID;
@@ -38,6 +48,7 @@ import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.constraints.GreaterEqualConstraint;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -89,6 +100,11 @@ public class CFTree {
    */
   public static final Logging LOG = Logging.getLogger(CFTree.class);
 
+  /**
+   * Minimum number of objects to process in parallel.
+   */
+  protected static final int PARALLEL_THRESHOLD = 1 << 14;
+
   /**
    * Distance function to use.
    */
@@ -184,13 +200,49 @@ public class CFTree {
     root.addToStatistics(first);
     ++leaves;
     for(iter.advance(); iter.valid(); iter.advance()) {
-      TreeNode other = insert(root, iter.get());
-      // Handle root overflow:
-      if(other != null) {
-        TreeNode newnode = new TreeNode(dim, capacity);
-        newnode.addToStatistics(newnode.children[0] = root);
-        newnode.addToStatistics(newnode.children[1] = other);
-        root = newnode;
+      insert(iter.get());
+    }
+  }
+
+  /**
+   * Insert a leaf entry into the tree, handling root overflow.
+   *
+   * @param leaf Leaf entry
+   */
+  private void insert(ClusteringFeature leaf) {
+    TreeNode other = insert(root, leaf);
+    // Handle root overflow:
+    if(other != null) {
+      TreeNode newnode = new TreeNode(root.getDimensionality(), capacity);
+      newnode.addToStatistics(newnode.children[0] = root);
+      newnode.addToStatistics(newnode.children[1] = other);
+      root = newnode;
+    }
+  }
+
+  /**
+   * Merge the leaf entries of another tree into this tree. The other tree must
+   * not be used afterwards, as its leaves may be modified or shared.
+   *
+   * @param other Other tree
+   * @param max Maximum number of leaves before the tree is rebuilt
+   */
+  protected void merge(CFTree other, double max) {
+    if(other.root == null) {
+      return;
+    }
+    if(root == null) {
+      root = other.root;
+      leaves = other.leaves;
+      thresholdsq = Math.max(thresholdsq, other.thresholdsq);
+      return;
+    }
+    // Use the larger threshold, as the other tree was condensed with it.
+    thresholdsq = Math.max(thresholdsq, other.thresholdsq);
+    for(LeafIterator iter = new LeafIterator(other.root); iter.valid(); iter.advance()) {
+      insert(iter.get());
+      if(leaves > max) {
+        rebuildTree();
       }
     }
   }
@@ -623,6 +675,11 @@ public class CFTree {
      */
     double maxleaves;
 
+    /**
+     * Build partial trees in parallel.
+     */
+    boolean parallel;
+
     /**
      * Constructor.
      *
@@ -633,11 +690,26 @@ public class CFTree {
      * @param maxleaves Maximum number of leaves
      */
     public Factory(BIRCHDistance distance, BIRCHAbsorptionCriterion absorption, double threshold, int branchingFactor, double maxleaves) {
+      this(distance, absorption, threshold, branchingFactor, maxleaves, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     * @param absorption Absorption criterion (diameter, distance).
+     * @param threshold Distance threshold
+     * @param branchingFactor Maximum branching factor.
+     * @param maxleaves Maximum number of leaves
+     * @param parallel Build partial trees in parallel for large data sets
+     */
+    public Factory(BIRCHDistance distance, BIRCHAbsorptionCriterion absorption, double threshold, int branchingFactor, double maxleaves, boolean parallel) {
       this.distance = distance;
       this.absorption = absorption;
       this.threshold = threshold;
       this.branchingFactor = branchingFactor;
       this.maxleaves = maxleaves;
+      this.parallel = parallel;
     }
 
     /**
@@ -648,10 +720,14 @@ public class CFTree {
      * @return New tree
      */
     public CFTree newTree(DBIDs ids, Relation<? extends NumberVector> relation) {
-      CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
       final double max = maxleaves <= 1 ? maxleaves * ids.size() : maxleaves;
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building tree", relation.size(), LOG) : null;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int p = ParallelCore.getCore().getParallelism();
+      if(parallel && p > 1 && ids.size() >= PARALLEL_THRESHOLD) {
+        return newTreeParallel(DBIDUtil.ensureArray(ids), relation, max, p);
+      }
+      CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building tree", ids.size(), LOG) : null;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
         tree.insert(relation.get(it));
         if(tree.leaves > max) {
           if(LOG.isVerbose()) {
@@ -665,6 +741,101 @@ public class CFTree {
       return tree;
     }
 
+    /**
+     * Make a new tree from a data stream, in a single pass and without storing
+     * the data. The vectors are taken from the first vector column of the
+     * stream.
+     * <p>
+     * As the stream size is not known in advance, a relative maximum number of
+     * leaves is interpreted relative to the number of objects read so far.
+     * Because the threshold never decreases, enforcing this limit on the first
+     * few objects would make the tree much too coarse. Hence, we allow at least
+     * one node of leaves while reading, and compact the tree to the relative
+     * limit at the end of the stream.
+     *
+     * @param source Data source, e.g., a streaming parser
+     * @return New tree
+     */
+    public CFTree newTree(BundleStreamSource source) {
+      CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Building tree", LOG) : null;
+      int col = -1;
+      long count = 0;
+      for(BundleStreamSource.Event ev = source.nextEvent(); ev != BundleStreamSource.Event.END_OF_STREAM; ev = source.nextEvent()) {
+        if(ev == BundleStreamSource.Event.META_CHANGED) {
+          BundleMeta meta = source.getMeta();
+          for(col = 0; col < meta.size(); col++) {
+            if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(col))) {
+              break;
+            }
+          }
+          if(col == meta.size()) {
+            throw new AbortException("The data stream does not contain a vector column.");
+          }
+          continue;
+        }
+        tree.insert((NumberVector) source.data(col));
+        ++count;
+        if(tree.leaves > (maxleaves <= 1 ? Math.max(maxleaves * count, branchingFactor) : maxleaves)) {
+          if(LOG.isVerbose()) {
+            LOG.verbose("Compacting CF-tree.");
+          }
+          tree.rebuildTree();
+        }
+        LOG.incrementProcessed(prog);
+      }
+      LOG.setCompleted(prog);
+      if(tree.root == null) {
+        throw new AbortException("The data stream was empty.");
+      }
+      // Enforce the relative limit, unless the threshold no longer increases.
+      for(int prev = Integer.MAX_VALUE; maxleaves <= 1 && tree.leaves > maxleaves * count && tree.leaves < prev;) {
+        prev = tree.leaves;
+        tree.rebuildTree();
+      }
+      return tree;
+    }
+
+    /**
+     * Build one tree per block of the data in parallel, then merge the leaf
+     * entries of all trees (in block order) into the first tree. The additivity
+     * of clustering features makes this merge exact; only the decisions which
+     * entries are absorbed differ from sequential insertion, hence the result
+     * depends on the number of blocks.
+     * <p>
+     * The leaf budget is split across the partial trees, so that the memory
+     * use does not grow with the number of blocks.
+     *
+     * @param ids DBIDs to insert
+     * @param relation Data relation
+     * @param max Maximum number of leaves
+     * @param blocks Number of blocks
+     * @return New tree
+     */
+    private CFTree newTreeParallel(ArrayDBIDs ids, Relation<? extends NumberVector> relation, double max, int blocks) {
+      CFTree[] trees = new CFTree[blocks];
+      final double pmax = Math.max(max / blocks, branchingFactor);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building tree", ids.size(), LOG) : null;
+      ParallelExecutor.runRanges(ids.size(), blocks, (b, start, end) -> {
+        CFTree tree = trees[b] = new CFTree(distance, absorption, threshold, branchingFactor);
+        for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+          tree.insert(relation.get(it));
+          if(tree.leaves > pmax) {
+            tree.rebuildTree();
+          }
+        }
+        if(prog != null) {
+          prog.incrementProcessed(end - start, LOG);
+        }
+      });
+      LOG.ensureCompleted(prog);
+      CFTree tree = trees[0];
+      for(int b = 1; b < blocks; b++) {
+        tree.merge(trees[b], max);
+      }
+      return tree;
+    }
+
     /**
      * Parameterization class for CFTrees.
      *
@@ -696,6 +867,11 @@ public class CFTree {
        */
       public static final OptionID MAXLEAVES_ID = new OptionID("cftree.maxleaves", "Maximum number of leaves (if less than 1, the values is assumed to be relative)");
 
+      /**
+       * Build partial trees in parallel.
+       */
+      public static final OptionID PARALLEL_ID = new OptionID("cftree.parallel", "Build one partial tree per thread for large data sets, and merge them. The result then depends on the number of threads.");
+
       /**
        * BIRCH distance function to use
        */
@@ -721,6 +897,11 @@ public class CFTree {
        */
       double maxleaves;
 
+      /**
+       * Build partial trees in parallel.
+       */
+      boolean parallel;
+
       @Override
       public void configure(Parameterization config) {
         new ObjectParameter<BIRCHDistance>(DISTANCE_ID, BIRCHDistance.class, VarianceIncreaseDistance.class) //
@@ -739,11 +920,12 @@ public class CFTree {
             .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
             .setDefaultValue(0.05) //
             .grab(config, x -> maxleaves = x);
+        new Flag(PARALLEL_ID).grab(config, x -> parallel = x);
       }
 
       @Override
       public CFTree.Factory make() {
-        return new CFTree.Factory(distance, absorption, threshold, branchingFactor, maxleaves);
+        return new CFTree.Factory(distance, absorption, threshold, branchingFactor, maxleaves, parallel);
       }
     }
   }
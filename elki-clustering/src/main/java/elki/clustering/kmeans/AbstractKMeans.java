@@ -343,7 +343,7 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
     /**
      * Cluster means.
      */
-    double[][] means;
+    protected double[][] means;
 
     /**
      * Store the elements per cluster.
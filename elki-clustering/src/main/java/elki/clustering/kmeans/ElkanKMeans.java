@@ -93,7 +93,7 @@ public class ElkanKMeans<V extends NumberVector> extends SimplifiedElkanKMeans<V
     /**
      * Cluster center distances
      */
-    double[][] cdist = new double[k][k];
+    protected double[][] cdist = new double[k][k];
 
     /**
      * Constructor.
@@ -0,0 +1,403 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.Relation;
+import elki.datasource.bundle.BundleMeta;
+import elki.datasource.bundle.BundleStreamSource;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.progress.IndefiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Mini-batch k-means: in each iteration, a small random sample of the data is
+ * assigned to the nearest centers, and the centers are moved towards the
+ * sampled points with a per-center learning rate of 1/count. A final pass
+ * assigns all objects to the nearest center to produce the clustering.
+ * <p>
+ * Because the data set is only accessed through small batches, this can also
+ * be used in a single pass over a data stream that is never stored, see
+ * {@link #processStream}; for example with a
+ * {@link elki.datasource.parser.StreamingParser}.
+ * <p>
+ * Reference:
+ * <p>
+ * D. Sculley<br>
+ * Web-scale k-means clustering<br>
+ * Proc. 19th Int. Conf. World Wide Web (WWW 2010)
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @navassoc - - - KMeansModel
+ *
+ * @param <V> vector type to use
+ */
+@Reference(authors = "D. Sculley", //
+    title = "Web-scale k-means clustering", //
+    booktitle = "Proc. 19th Int. Conf. World Wide Web (WWW 2010)", //
+    url = "https://doi.org/10.1145/1772690.1772862", //
+    bibkey = "DBLP:conf/www/Sculley10")
+public class MiniBatchKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(MiniBatchKMeans.class);
+
+  /**
+   * Size of each mini batch.
+   */
+  protected int batchsize;
+
+  /**
+   * Random generator for sampling the batches.
+   */
+  protected RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maximum number of batches
+   * @param initializer Initialization method
+   * @param batchsize Batch size
+   * @param random Random generator for sampling the batches
+   */
+  public MiniBatchKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, int batchsize, RandomFactory random) {
+    super(distance, k, maxiter, initializer);
+    this.batchsize = batchsize;
+    this.random = random;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation), batchsize, random.getSingleThreadedRandom());
+    instance.run(maxiter);
+    // Final pass to obtain the clusters.
+    instance.assignToNearestCluster();
+    return instance.buildResult();
+  }
+
+  /**
+   * Run mini-batch k-means in a single pass over a stream of vectors, without
+   * storing the data. Each batch of consecutive vectors is used for one update,
+   * and the first batch is also used to choose the initial means.
+   * <p>
+   * The vectors are taken from the first vector column of the stream.
+   *
+   * @param source Data source, e.g., a streaming parser
+   * @return Final cluster means
+   */
+  public double[][] processStream(BundleStreamSource source) {
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Processed batches", LOG) : null;
+    List<NumberVector> batch = new ArrayList<>(batchsize);
+    SimpleTypeInformation<?> type = null;
+    double[][] means = null;
+    long[] counts = new long[k];
+    int col = -1;
+    for(BundleStreamSource.Event ev = source.nextEvent(); ev != BundleStreamSource.Event.END_OF_STREAM; ev = source.nextEvent()) {
+      if(ev == BundleStreamSource.Event.META_CHANGED) {
+        BundleMeta meta = source.getMeta();
+        for(col = 0; col < meta.size(); col++) {
+          if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(col))) {
+            break;
+          }
+        }
+        if(col == meta.size()) {
+          throw new AbortException("The data stream does not contain a vector column.");
+        }
+        type = meta.get(col);
+        continue;
+      }
+      batch.add((NumberVector) source.data(col));
+      if(batch.size() == batchsize) {
+        means = means != null ? means : initialMeans(batch, type);
+        updateMeans(distance, means, counts, batch);
+        batch.clear();
+        LOG.incrementProcessed(prog);
+      }
+    }
+    if(!batch.isEmpty()) {
+      means = means != null ? means : initialMeans(batch, type);
+      updateMeans(distance, means, counts, batch);
+      LOG.incrementProcessed(prog);
+    }
+    LOG.setCompleted(prog);
+    if(means == null) {
+      throw new AbortException("The data stream was empty.");
+    }
+    return means;
+  }
+
+  /**
+   * Choose the initial means from the first batch of a stream.
+   *
+   * @param batch First batch
+   * @param type Vector type
+   * @return Initial means
+   */
+  private double[][] initialMeans(List<NumberVector> batch, SimpleTypeInformation<?> type) {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(batch.size());
+    WritableDataStore<NumberVector> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP, NumberVector.class);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      store.put(it, batch.get(it.getOffset()));
+    }
+    @SuppressWarnings("unchecked")
+    SimpleTypeInformation<NumberVector> vtype = (SimpleTypeInformation<NumberVector>) type;
+    double[][] means = initializer.chooseInitialMeans(new MaterializedRelation<>("Initial batch", vtype, ids, store), k, distance);
+    DBIDUtil.deallocateDBIDRange(ids);
+    return means;
+  }
+
+  /**
+   * Perform one mini-batch update: assign all objects of the batch to the
+   * nearest mean, then move the means towards their objects.
+   *
+   * @param distance Distance function
+   * @param means Current means, will be modified
+   * @param counts Number of objects assigned to each mean so far
+   * @param batch Batch of objects
+   */
+  protected static void updateMeans(NumberVectorDistance<?> distance, double[][] means, long[] counts, List<? extends NumberVector> batch) {
+    int[] nearest = new int[batch.size()];
+    for(int j = 0; j < nearest.length; j++) {
+      nearest[j] = nearestMean(distance, means, batch.get(j));
+    }
+    for(int j = 0; j < nearest.length; j++) {
+      final int c = nearest[j];
+      updateMean(means[c], batch.get(j), ++counts[c]);
+    }
+  }
+
+  /**
+   * Find the nearest mean.
+   *
+   * @param distance Distance function
+   * @param means Means
+   * @param fv Object
+   * @return Index of the nearest mean
+   */
+  private static int nearestMean(NumberVectorDistance<?> distance, double[][] means, NumberVector fv) {
+    double mindist = Double.POSITIVE_INFINITY;
+    int minIndex = 0;
+    for(int i = 0; i < means.length; i++) {
+      double dist = distance.distance(fv, DoubleVector.wrap(means[i]));
+      if(dist < mindist) {
+        minIndex = i;
+        mindist = dist;
+      }
+    }
+    return minIndex;
+  }
+
+  /**
+   * Move a mean towards an object, with learning rate 1/count.
+   *
+   * @param mean Mean to update
+   * @param vec Object
+   * @param count Number of objects seen by this mean, including vec
+   */
+  private static void updateMean(double[] mean, NumberVector vec, long count) {
+    final double rate = 1. / count;
+    for(int d = 0; d < mean.length; d++) {
+      mean[d] += (vec.doubleValue(d) - mean[d]) * rate;
+    }
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author ELKI Development Team
+   */
+  protected static class Instance extends AbstractKMeans.Instance {
+    /**
+     * Size of each mini batch.
+     */
+    protected int batchsize;
+
+    /**
+     * Random generator for sampling the batches.
+     */
+    protected Random rnd;
+
+    /**
+     * Number of objects assigned to each mean so far.
+     */
+    protected long[] counts;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param batchsize Batch size
+     * @param rnd Random generator
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, int batchsize, Random rnd) {
+      super(relation, df, means);
+      this.batchsize = Math.min(batchsize, relation.size());
+      this.rnd = rnd;
+      this.counts = new long[k];
+    }
+
+    /**
+     * Process the given number of mini batches. Mini-batch k-means has no
+     * convergence criterion: a batch without reassignments still moves the
+     * means.
+     *
+     * @param maxiter Number of mini batches
+     */
+    @Override
+    protected void run(int maxiter) {
+      final Logging log = getLogger();
+      FiniteProgress prog = log.isVerbose() ? new FiniteProgress("Mini batches", maxiter, log) : null;
+      for(int iteration = 1; iteration <= maxiter; iteration++) {
+        final int changed = iterate(iteration);
+        if(log.isStatistics()) {
+          log.statistics(new LongStatistic(key + "." + iteration + ".reassignments", changed));
+        }
+        log.incrementProcessed(prog);
+      }
+      log.ensureCompleted(prog);
+      log.statistics(new LongStatistic(key + ".iterations", maxiter));
+    }
+
+    @Override
+    protected int iterate(int iteration) {
+      ArrayDBIDs batch = DBIDUtil.ensureArray(DBIDUtil.randomSample(relation.getDBIDs(), batchsize, rnd));
+      int[] nearest = new int[batch.size()];
+      int changed = 0;
+      // Assign the batch to the current means first.
+      DBIDArrayIter it = batch.iter();
+      for(; it.valid(); it.advance()) {
+        NumberVector fv = relation.get(it);
+        double mindist = Double.POSITIVE_INFINITY;
+        int minIndex = 0;
+        for(int i = 0; i < k; i++) {
+          double dist = distance(fv, means[i]);
+          if(dist < mindist) {
+            minIndex = i;
+            mindist = dist;
+          }
+        }
+        nearest[it.getOffset()] = minIndex;
+        if(assignment.putInt(it, minIndex) != minIndex) {
+          ++changed;
+        }
+      }
+      // Then move the means.
+      for(it.seek(0); it.valid(); it.advance()) {
+        final int c = nearest[it.getOffset()];
+        updateMean(means[c], relation.get(it), ++counts[c]);
+      }
+      return changed;
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author ELKI Development Team
+   */
+  public static class Par<V extends NumberVector> extends AbstractKMeans.Par<V> {
+    /**
+     * Parameter for the batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.minibatch.size", "Number of objects in each mini batch.");
+
+    /**
+     * Parameter for the random generator used for sampling.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.minibatch.random", "Random generator for sampling the mini batches.");
+
+    /**
+     * Size of each mini batch.
+     */
+    protected int batchsize;
+
+    /**
+     * Random generator for sampling the batches.
+     */
+    protected RandomFactory random;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> batchsize = x);
+      new RandomParameter(RANDOM_ID).grab(config, x -> random = x);
+    }
+
+    @Override
+    protected void getParameterMaxIter(Parameterization config) {
+      new IntParameter(MAXITER_ID, 100)//
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> maxiter = x);
+    }
+
+    @Override
+    public MiniBatchKMeans<V> make() {
+      return new MiniBatchKMeans<>(distance, k, maxiter, initializer, batchsize, random);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import java.util.List;
+
+import elki.clustering.kmeans.AbstractKMeans;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.ModifiableDBIDs;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.parallel.processor.Processor;
+
+/**
+ * Worker for the parallel bound-based k-means variants.
+ * <p>
+ * Each worker accumulates the changes of the cluster sums, the cluster
+ * memberships, and the statistics locally, which are then merged into the
+ * shared state in {@link #merge}. The bounds are stored per object, and hence
+ * can be updated concurrently.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public abstract class BoundedKMeansWorker implements Processor.Instance {
+  /**
+   * Distance function.
+   */
+  private NumberVectorDistance<?> df;
+
+  /**
+   * Indicates whether the distance function is squared Euclidean.
+   */
+  private boolean fastpath;
+
+  /**
+   * Changes to the cluster sums.
+   */
+  protected double[][] sums;
+
+  /**
+   * Objects added to each cluster.
+   */
+  protected ArrayModifiableDBIDs[] added;
+
+  /**
+   * Objects removed from each cluster.
+   */
+  protected ArrayModifiableDBIDs[] removed;
+
+  /**
+   * Number of reassigned objects.
+   */
+  protected int changed = 0;
+
+  /**
+   * Number of distance computations.
+   */
+  protected long diststat = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param df Distance function
+   * @param k Number of clusters
+   * @param dim Dimensionality
+   */
+  public BoundedKMeansWorker(NumberVectorDistance<?> df, int k, int dim) {
+    super();
+    this.df = df;
+    this.fastpath = df.getClass() == SquaredEuclideanDistance.class;
+    this.sums = new double[k][dim];
+    this.added = new ArrayModifiableDBIDs[k];
+    this.removed = new ArrayModifiableDBIDs[k];
+  }
+
+  /**
+   * Compute a distance (and count the distance computations).
+   *
+   * @param x First object
+   * @param y Second object
+   * @return Distance
+   */
+  protected double distance(NumberVector x, double[] y) {
+    ++diststat;
+    if(fastpath) {
+      double v = 0;
+      for(int i = 0; i < y.length; i++) {
+        double d = x.doubleValue(i) - y[i];
+        v += d * d;
+      }
+      return v;
+    }
+    return df.distance(x, DoubleVector.wrap(y));
+  }
+
+  /**
+   * Initial assignment of an object to a cluster.
+   *
+   * @param id Object
+   * @param fv Object vector
+   * @param c Cluster
+   */
+  protected void assign(DBIDRef id, NumberVector fv, int c) {
+    (added[c] != null ? added[c] : (added[c] = DBIDUtil.newArray())).add(id);
+    AbstractKMeans.plusEquals(sums[c], fv);
+    ++changed;
+  }
+
+  /**
+   * Reassignment of an object to a different cluster.
+   *
+   * @param id Object
+   * @param fv Object vector
+   * @param from Previous cluster
+   * @param to New cluster
+   */
+  protected void reassign(DBIDRef id, NumberVector fv, int from, int to) {
+    (added[to] != null ? added[to] : (added[to] = DBIDUtil.newArray())).add(id);
+    (removed[from] != null ? removed[from] : (removed[from] = DBIDUtil.newArray())).add(id);
+    AbstractKMeans.plusMinusEquals(sums[to], sums[from], fv);
+    ++changed;
+  }
+
+  /**
+   * Merge the local changes into the shared state. The caller is responsible
+   * for synchronization.
+   *
+   * @param clusters Cluster memberships
+   * @param csums Cluster sums
+   */
+  protected void merge(List<ModifiableDBIDs> clusters, double[][] csums) {
+    for(int i = 0; i < sums.length; i++) {
+      if(removed[i] != null) {
+        clusters.get(i).removeDBIDs(removed[i]);
+      }
+      if(added[i] != null) {
+        clusters.get(i).addDBIDs(added[i]);
+      }
+      final double[] src = sums[i], dst = csums[i];
+      for(int d = 0; d < src.length; d++) {
+        dst[d] += src[d];
+      }
+    }
+  }
+}
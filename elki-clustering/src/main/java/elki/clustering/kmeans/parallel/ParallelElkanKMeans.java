@@ -0,0 +1,278 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.ElkanKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel implementation of Elkan's fast k-means.
+ * <p>
+ * The objects are partitioned across worker threads, each of which maintains
+ * the bounds of its objects and accumulates partial cluster sums that are
+ * merged after each iteration.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @has - - - Instance
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelElkanKMeans<V extends NumberVector> extends ElkanKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelElkanKMeans.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelElkanKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat) {
+    super(distance, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation));
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author ELKI Development Team
+   *
+   * @has - - - Worker
+   */
+  protected static class Instance extends ElkanKMeans.Instance implements Processor {
+    /**
+     * Distance function.
+     */
+    NumberVectorDistance<?> df;
+
+    /**
+     * Distance moved by each center.
+     */
+    double[] move;
+
+    /**
+     * Flag for the initial assignment.
+     */
+    boolean initial;
+
+    /**
+     * Number of changes in the current iteration.
+     */
+    int changed;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means) {
+      super(relation, df, means);
+      this.df = df;
+      this.move = new double[k];
+    }
+
+    @Override
+    protected int iterate(int iteration) {
+      if(initial = (iteration == 1)) {
+        initialSeperation(cdist);
+      }
+      else {
+        meansFromSums(newmeans, sums);
+        movedDistance(means, newmeans, move);
+        copyMeans(newmeans, means);
+        recomputeSeperation(sep, cdist);
+      }
+      changed = 0;
+      ParallelExecutor.run(relation.getDBIDs(), this);
+      return changed;
+    }
+
+    @Override
+    public Worker instantiate(Executor executor) {
+      return new Worker();
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      Worker worker = (Worker) inst;
+      worker.merge(clusters, sums);
+      changed += worker.changed;
+      diststat += worker.diststat;
+    }
+
+    // Overridden for access from the enclosing class, in a different package
+    @Override
+    protected void run(int maxiter) {
+      super.run(maxiter);
+    }
+
+    @Override
+    protected Clustering<KMeansModel> buildResult(boolean varstat, Relation<? extends NumberVector> relation) {
+      return super.buildResult(varstat, relation);
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    /**
+     * Worker processing a part of the data set, for a single iteration.
+     *
+     * @author ELKI Development Team
+     */
+    protected class Worker extends BoundedKMeansWorker {
+      /**
+       * Constructor.
+       */
+      protected Worker() {
+        super(df, k, means[0].length);
+      }
+
+      @Override
+      public void map(DBIDRef it) {
+        if(initial) {
+          initialAssign(it);
+          return;
+        }
+        final int orig = assignment.intValue(it);
+        // Update the bounds:
+        double[] l = lower.get(it);
+        for(int j = 0; j < k; j++) {
+          l[j] -= move[j];
+        }
+        double u = upper.doubleValue(it) + move[orig];
+        // Upper bound check (#2):
+        if(u <= sep[orig]) {
+          upper.putDouble(it, u);
+          return;
+        }
+        boolean recompute_u = true; // Elkan's r(x)
+        NumberVector fv = relation.get(it);
+        // Check all (other) means:
+        int cur = orig;
+        for(int j = 0; j < k; j++) {
+          if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+            continue; // Condition #3 i-iii not satisfied
+          }
+          if(recompute_u) { // Need to update bound? #3a
+            u = distance(fv, means[cur]);
+            u = isSquared ? FastMath.sqrt(u) : u;
+            recompute_u = false; // Once only
+            if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+              continue;
+            }
+          }
+          double dist = distance(fv, means[j]);
+          dist = isSquared ? FastMath.sqrt(dist) : dist;
+          l[j] = dist;
+          if(dist < u) {
+            cur = j;
+            u = dist;
+          }
+        }
+        upper.putDouble(it, u);
+        // Object is to be reassigned.
+        if(cur != orig) {
+          assignment.putInt(it, cur);
+          reassign(it, fv, orig, cur);
+        }
+      }
+
+      /**
+       * Perform the initial cluster assignment of an object.
+       *
+       * @param it Object
+       */
+      private void initialAssign(DBIDRef it) {
+        NumberVector fv = relation.get(it);
+        double[] l = lower.get(it);
+        // Check all (other) means:
+        double best = distance(fv, means[0]);
+        l[0] = best = isSquared ? FastMath.sqrt(best) : best;
+        int minIndex = 0;
+        for(int j = 1; j < k; j++) {
+          if(best > cdist[minIndex][j]) {
+            double dist = distance(fv, means[j]);
+            l[j] = dist = isSquared ? FastMath.sqrt(dist) : dist;
+            if(dist < best) {
+              minIndex = j;
+              best = dist;
+            }
+          }
+        }
+        for(int j = 1; j < k; j++) {
+          if(l[j] == 0. && j != minIndex) {
+            l[j] = 2 * cdist[minIndex][j] - best;
+          }
+        }
+        // Assign to nearest cluster.
+        assignment.putInt(it, minIndex);
+        upper.putDouble(it, best);
+        assign(it, fv, minIndex);
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author ELKI Development Team
+   */
+  public static class Par<V extends NumberVector> extends ElkanKMeans.Par<V> {
+    @Override
+    public ParallelElkanKMeans<V> make() {
+      return new ParallelElkanKMeans<>(distance, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.ExponionKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel implementation of Newling's exponion k-means.
+ * <p>
+ * The objects are partitioned across worker threads, each of which maintains
+ * the bounds of its objects and accumulates partial cluster sums that are
+ * merged after each iteration.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @has - - - Instance
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelExponionKMeans<V extends NumberVector> extends ExponionKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelExponionKMeans.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelExponionKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat) {
+    super(distance, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation));
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author ELKI Development Team
+   *
+   * @has - - - Worker
+   */
+  protected static class Instance extends ExponionKMeans.Instance implements Processor {
+    /**
+     * Distance function.
+     */
+    NumberVectorDistance<?> df;
+
+    /**
+     * Distance moved by each center.
+     */
+    double[] move;
+
+    /**
+     * Maximum distance moved.
+     */
+    double delta;
+
+    /**
+     * Flag for the initial assignment.
+     */
+    boolean initial;
+
+    /**
+     * Number of changes in the current iteration.
+     */
+    int changed;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means) {
+      super(relation, df, means);
+      this.df = df;
+      this.move = new double[k];
+    }
+
+    @Override
+    protected int iterate(int iteration) {
+      if(initial = (iteration == 1)) {
+        computeSquaredSeparation(cdist);
+      }
+      else {
+        meansFromSums(newmeans, sums);
+        delta = movedDistance(means, newmeans, move);
+        copyMeans(newmeans, means);
+        recomputeSeperation(sep, cdist);
+        nearestMeans(cdist, cnum);
+      }
+      changed = 0;
+      ParallelExecutor.run(relation.getDBIDs(), this);
+      return changed;
+    }
+
+    @Override
+    public Worker instantiate(Executor executor) {
+      return new Worker();
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      Worker worker = (Worker) inst;
+      worker.merge(clusters, sums);
+      changed += worker.changed;
+      diststat += worker.diststat;
+    }
+
+    // Overridden for access from the enclosing class, in a different package
+    @Override
+    protected void run(int maxiter) {
+      super.run(maxiter);
+    }
+
+    @Override
+    protected Clustering<KMeansModel> buildResult(boolean varstat, Relation<? extends NumberVector> relation) {
+      return super.buildResult(varstat, relation);
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    /**
+     * Worker processing a part of the data set, for a single iteration.
+     *
+     * @author ELKI Development Team
+     */
+    protected class Worker extends BoundedKMeansWorker {
+      /**
+       * Constructor.
+       */
+      protected Worker() {
+        super(df, k, means[0].length);
+      }
+
+      @Override
+      public void map(DBIDRef it) {
+        if(initial) {
+          initialAssign(it);
+          return;
+        }
+        final int cur = assignment.intValue(it);
+        // Update and check the bounds:
+        final double z = lower.doubleValue(it) - delta;
+        final double sa = sep[cur];
+        double u = upper.doubleValue(it) + move[cur];
+        if(u <= z || u <= sa) {
+          upper.putDouble(it, u);
+          lower.putDouble(it, z);
+          return;
+        }
+        // Update the upper bound
+        NumberVector fv = relation.get(it);
+        double curd2 = distance(fv, means[cur]);
+        u = isSquared ? FastMath.sqrt(curd2) : curd2;
+        if(u <= z || u <= sa) {
+          upper.putDouble(it, u);
+          lower.putDouble(it, z);
+          return;
+        }
+        double r = u + 0.5 * sa; // Our cdist are scaled 0.5
+        // Find closest center, and distance to two closest centers
+        double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = cur;
+        for(int i = 0; i < k - 1; i++) {
+          int c = cnum[cur][i];
+          if(cdist[cur][c] > r) {
+            break;
+          }
+          double dist = distance(fv, means[c]);
+          if(dist < min1) {
+            minIndex = c;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        if(minIndex != cur) {
+          assignment.putInt(it, minIndex);
+          reassign(it, fv, cur, minIndex);
+          u = min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1;
+        }
+        upper.putDouble(it, u);
+        lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
+      }
+
+      /**
+       * Perform the initial cluster assignment of an object.
+       *
+       * @param it Object
+       */
+      private void initialAssign(DBIDRef it) {
+        NumberVector fv = relation.get(it);
+        // Find closest center, and distance to two closest centers
+        double min1 = distance(fv, means[0]), min2 = distance(fv, means[1]);
+        int minIndex = 0;
+        if(min2 < min1) {
+          double tmp = min1;
+          min1 = min2;
+          min2 = tmp;
+          minIndex = 1;
+        }
+        for(int i = 2; i < k; i++) {
+          if(min2 > cdist[minIndex][i]) {
+            double dist = distance(fv, means[i]);
+            if(dist < min1) {
+              minIndex = i;
+              min2 = min1;
+              min1 = dist;
+            }
+            else if(dist < min2) {
+              min2 = dist;
+            }
+          }
+        }
+        // Assign to nearest cluster.
+        assignment.putInt(it, minIndex);
+        assign(it, fv, minIndex);
+        upper.putDouble(it, isSquared ? FastMath.sqrt(min1) : min1);
+        lower.putDouble(it, isSquared ? FastMath.sqrt(min2) : min2);
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author ELKI Development Team
+   */
+  public static class Par<V extends NumberVector> extends ExponionKMeans.Par<V> {
+    @Override
+    public ParallelExponionKMeans<V> make() {
+      return new ParallelExponionKMeans<>(distance, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -20,7 +20,10 @@
  */
 package elki.clustering.kmedoids;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import elki.clustering.ClusteringAlgorithmUtil;
 import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
@@ -38,8 +41,11 @@ import elki.distance.Distance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
@@ -49,15 +55,18 @@ import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.RandomParameter;
 import elki.utilities.random.RandomFactory;
 
-import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 
 /**
  * Clustering Large Applications (CLARA) is a clustering method for large data
  * sets based on PAM, partitioning around medoids ({@link PAM}) based on
  * sampling.
  * <p>
- * TODO: use a triangular distance matrix, rather than a hash-map based cache,
- * for a bit better performance and less memory.
+ * The distances within each sample are precomputed into a triangular matrix,
+ * and both the matrix and the assignment of the remaining objects are computed
+ * with multiple threads on large data sets. Independent samples (see
+ * {@link Par#NOKEEPMED_ID}) are also evaluated concurrently. The results are
+ * the same as with a single thread.
  * <p>
  * Reference:
  * <p>
@@ -134,47 +143,94 @@ public class CLARA<V> extends PAM<V> {
 
   @Override
   public Clustering<MedoidModel> run(Relation<V> relation) {
+    return runSamples(relation, distance, k, initializer, numsamples, sampling, keepmed, random, //
+        (cachedQ, rids, assignment, medoids) -> new /* PAM */Instance(cachedQ, cachedQ::copy, rids, assignment).run(medoids, maxiter), //
+        LOG, getClass().getName());
+  }
+
+  /**
+   * Run the optimization on random samples, and keep the best result.
+   * <p>
+   * Independent samples (without keeping the previous medoids) are evaluated
+   * concurrently, in batches of one sample per thread. The samples are drawn
+   * and initialized in sample order, and the best sample is chosen in sample
+   * order, so the result does not depend on the number of threads.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param k Number of clusters
+   * @param initializer Initialization
+   * @param numsamples Number of samples
+   * @param sampling Sampling rate (absolute or relative)
+   * @param keepmed Keep the previous medoids in the next sample
+   * @param random Random generator
+   * @param optimizer Optimization of a single sample
+   * @param log Logger
+   * @param key Statistics key
+   * @return Clustering
+   */
+  static <V> Clustering<MedoidModel> runSamples(Relation<V> relation, Distance<? super V> distance, int k, KMedoidsInitialization<V> initializer, int numsamples, double sampling, boolean keepmed, RandomFactory random, SampleOptimizer<V> optimizer, Logging log, String key) {
     DBIDs ids = relation.getDBIDs();
     DistanceQuery<V> distQ = new QueryBuilder<>(relation, distance).distanceQuery();
     int samplesize = Math.min(ids.size(), (int) (sampling <= 1 ? sampling * ids.size() : sampling));
     if(samplesize < 3 * k) {
-      LOG.warning("The sampling size is set to a very small value, it should be much larger than k.");
+      log.warning("The sampling size is set to a very small value, it should be much larger than k.");
+    }
+    // Number of samples to process concurrently
+    final int batch = keepmed ? 1 : Math.max(1, Math.min(numsamples, ParallelCore.getCore().getParallelism()));
+    // Each concurrent sample needs its own queries and distance matrix.
+    List<DistanceQuery<V>> queries = blockQueries(distQ, () -> newDistanceQuery(distQ), batch);
+    List<CachedDistanceQuery<V>> cachedQs = new ArrayList<>(batch);
+    for(DistanceQuery<V> dq : queries) {
+      cachedQs.add(new CachedDistanceQuery<V>(dq, samplesize));
     }
-
-    CachedDistanceQuery<V> cachedQ = new CachedDistanceQuery<V>(distQ, (samplesize * (samplesize - 1)) >> 1);
 
     double best = Double.POSITIVE_INFINITY;
     ArrayModifiableDBIDs bestmedoids = null;
     WritableIntegerDataStore bestclusters = null;
 
     Random rnd = random.getSingleThreadedRandom();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, LOG) : null;
-    for(int j = 0; j < numsamples; j++) {
-      DBIDs rids = randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
-      cachedQ.clear(); // TODO: an actual matrix would be better.
-
-      // Choose initial medoids
-      ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, cachedQ));
-      // Setup cluster assignment store
-      WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
-      double score = new /* PAM */Instance(cachedQ, rids, assignment).run(medoids, maxiter) //
-          + assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
-      if(LOG.isStatistics()) {
-        LOG.statistics(new DoubleStatistic(getClass().getName() + ".sample-" + j + ".cost", score));
+    FiniteProgress prog = log.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, log) : null;
+    final DBIDs[] rids = new DBIDs[batch];
+    final ArrayModifiableDBIDs[] medoids = new ArrayModifiableDBIDs[batch];
+    final WritableIntegerDataStore[] assignments = new WritableIntegerDataStore[batch];
+    final double[] scores = new double[batch];
+    for(int j = 0; j < numsamples; j += batch) {
+      final int size = Math.min(batch, numsamples - j);
+      for(int b = 0; b < size; b++) {
+        rids[b] = randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
       }
-      if(score < best) {
-        best = score;
-        bestmedoids = medoids;
-        bestclusters = assignment;
+      ParallelExecutor.runRanges(size, size, (b, start, end) -> cachedQs.get(b).initialize(rids[b]));
+      // The initialization may be randomized, so keep the sample order.
+      for(int b = 0; b < size; b++) {
+        medoids[b] = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids[b], cachedQs.get(b)));
+        // Setup cluster assignment store
+        assignments[b] = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
       }
-      if(cachedQ.hasUncachedQueries()) {
-        LOG.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
+      ParallelExecutor.runRanges(size, size, (b, start, end) -> {
+        CachedDistanceQuery<V> cachedQ = cachedQs.get(b);
+        scores[b] = optimizer.optimize(cachedQ, rids[b], assignments[b], medoids[b]) //
+            + assignRemainingToNearestCluster(medoids[b], ids, rids[b], assignments[b], queries.get(b));
+      });
+      // Choose the best sample in sample order.
+      for(int b = 0; b < size; b++) {
+        if(log.isStatistics()) {
+          log.statistics(new DoubleStatistic(key + ".sample-" + (j + b) + ".cost", scores[b]));
+        }
+        if(scores[b] < best) {
+          best = scores[b];
+          bestmedoids = medoids[b];
+          bestclusters = assignments[b];
+        }
+        if(cachedQs.get(b).hasUncachedQueries()) {
+          log.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
+        }
+        log.incrementProcessed(prog);
       }
-      LOG.incrementProcessed(prog);
     }
-    LOG.ensureCompleted(prog);
-    if(LOG.isStatistics()) {
-      LOG.statistics(new DoubleStatistic(getClass().getName() + ".final-cost", best));
+    log.ensureCompleted(prog);
+    if(log.isStatistics()) {
+      log.statistics(new DoubleStatistic(key + ".final-cost", best));
     }
     if(bestmedoids == null) {
       throw new IllegalStateException("numsamples must be larger than 0.");
@@ -192,6 +248,27 @@ public class CLARA<V> extends PAM<V> {
     return result;
   }
 
+  /**
+   * Optimization of the medoids of a single sample.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Data type
+   */
+  @FunctionalInterface
+  interface SampleOptimizer<V> {
+    /**
+     * Optimize the medoids of a sample.
+     *
+     * @param cachedQ Distance query of the sample
+     * @param rids Sample
+     * @param assignment Cluster assignment
+     * @param medoids Initial medoids, will be modified
+     * @return Cost of the sample
+     */
+    double optimize(CachedDistanceQuery<V> cachedQ, DBIDs rids, WritableIntegerDataStore assignment, ArrayModifiableDBIDs medoids);
+  }
+
   /**
    * Draw a random sample of the desired size.
    * 
@@ -232,31 +309,52 @@ public class CLARA<V> extends PAM<V> {
    * @return Sum of distances.
    */
   static double assignRemainingToNearestCluster(ArrayDBIDs means, DBIDs ids, DBIDs rids, WritableIntegerDataStore assignment, DistanceQuery<?> distQ) {
-    rids = DBIDUtil.ensureSet(rids); // Ensure we have fast contains
-    double distsum = 0.;
-    DBIDArrayIter miter = means.iter();
-    for(DBIDIter iditer = distQ.getRelation().iterDBIDs(); iditer.valid(); iditer.advance()) {
-      if(rids.contains(iditer)) {
-        continue;
-      }
-      double mindist = Double.POSITIVE_INFINITY;
-      int minIndex = 0;
-      miter.seek(0); // Reuse iterator.
-      for(int i = 0; miter.valid(); miter.advance(), i++) {
-        double dist = distQ.distance(iditer, miter);
-        if(dist < mindist) {
-          minIndex = i;
-          mindist = dist;
+    final DBIDs sample = DBIDUtil.ensureSet(rids); // Ensure we have fast contains
+    final ArrayDBIDs all = DBIDUtil.ensureArray(distQ.getRelation().getDBIDs());
+    // Store the distances, to sum them up in a deterministic order.
+    final double[] mindists = new double[all.size()];
+    // Data stores are not thread safe, so collect the assignments first.
+    final int[] minindexes = new int[all.size()];
+    final int blocks = ParallelExecutor.numBlocks(means.size() * (long) all.size(), PAM.PARALLEL_THRESHOLD, all.size());
+    final List<DistanceQuery<?>> queries = blockQueries(distQ, () -> newDistanceQuery(distQ), blocks);
+    ParallelExecutor.runRanges(all.size(), blocks, (block, start, end) -> {
+      final DistanceQuery<?> dq = queries.get(block);
+      DBIDArrayIter iditer = all.iter(), miter = means.iter();
+      for(iditer.seek(start); iditer.getOffset() < end; iditer.advance()) {
+        if(sample.contains(iditer)) {
+          minindexes[iditer.getOffset()] = -1;
+          continue;
+        }
+        double mindist = Double.POSITIVE_INFINITY;
+        int minIndex = 0;
+        miter.seek(0); // Reuse iterator.
+        for(int i = 0; miter.valid(); miter.advance(), i++) {
+          double dist = dq.distance(iditer, miter);
+          if(dist < mindist) {
+            minIndex = i;
+            mindist = dist;
+          }
         }
+        mindists[iditer.getOffset()] = mindist;
+        minindexes[iditer.getOffset()] = minIndex;
       }
-      distsum += mindist;
-      assignment.put(iditer, minIndex);
+    });
+    double distsum = 0.;
+    for(DBIDArrayIter iditer = all.iter(); iditer.valid(); iditer.advance()) {
+      final int off = iditer.getOffset();
+      if(minindexes[off] >= 0) {
+        assignment.putInt(iditer, minindexes[off]);
+      }
+      distsum += mindists[off];
     }
     return distsum;
   }
 
   /**
-   * Cached distance query.
+   * Cached distance query, using a precomputed distance matrix of the sample.
+   * <p>
+   * After initialization, the cache is read-only. Uncached distances use the
+   * inner distance query, so each thread needs its own {@link #copy()}.
    *
    * @author Erich Schubert
    *
@@ -269,42 +367,94 @@ public class CLARA<V> extends PAM<V> {
     DistanceQuery<V> inner;
 
     /**
-     * Cache
+     * Offsets of the sample objects in the matrix.
+     */
+    Int2IntOpenHashMap index;
+
+    /**
+     * Triangular distance matrix of the sample.
      */
-    Long2DoubleOpenHashMap cache;
+    double[] matrix;
 
     /**
-     * Number of uncacheable queries
+     * Number of uncacheable queries, shared by all copies.
      */
-    int bad;
+    AtomicLong bad;
 
     /**
      * Constructor.
      *
      * @param inner Inner query
-     * @param size Initial size of map
+     * @param size Maximum sample size
      */
     public CachedDistanceQuery(DistanceQuery<V> inner, int size) {
       this.inner = inner;
-      this.cache = new Long2DoubleOpenHashMap(size);
-      this.cache.defaultReturnValue(Double.NaN);
+      final long msize = (size * (long) (size - 1)) >>> 1;
+      if(msize > Integer.MAX_VALUE - 8) {
+        throw new AbortException("Sample size " + size + " is too large for a distance matrix.");
+      }
+      this.index = new Int2IntOpenHashMap(size);
+      this.index.defaultReturnValue(-1);
+      this.matrix = new double[(int) msize];
+      this.bad = new AtomicLong();
     }
 
     /**
-     * Check if any queries were uncached (not using DBIDs).
+     * Constructor for copies sharing the cache.
      *
-     * @return True if uncached distances were used
+     * @param inner Inner query
+     * @param other Query to share the cache with
      */
-    public boolean hasUncachedQueries() {
-      return bad > 0;
+    private CachedDistanceQuery(DistanceQuery<V> inner, CachedDistanceQuery<V> other) {
+      this.inner = inner;
+      this.index = other.index;
+      this.matrix = other.matrix;
+      this.bad = other.bad;
     }
 
     /**
-     * Clear the distance cache.
+     * Get a copy for use by another thread, sharing the cache, but using a
+     * new inner query.
+     *
+     * @return Copy of this query
      */
-    public void clear() {
-      cache.clear();
-      bad = 0;
+    public CachedDistanceQuery<V> copy() {
+      return new CachedDistanceQuery<>(newDistanceQuery(inner), this);
+    }
+
+    /**
+     * Compute the distance matrix for a new sample.
+     *
+     * @param sample Sample objects
+     */
+    public void initialize(DBIDs sample) {
+      final ArrayDBIDs aids = DBIDUtil.ensureArray(sample);
+      final int n = aids.size(), blocks = ParallelExecutor.numBlocks((n * (n - 1L)) >>> 1, PAM.PARALLEL_THRESHOLD, n);
+      index.clear();
+      for(DBIDArrayIter it = aids.iter(); it.valid(); it.advance()) {
+        index.put(it.internalGetIndex(), it.getOffset());
+      }
+      final List<DistanceQuery<V>> queries = blockQueries(inner, () -> newDistanceQuery(inner), blocks);
+      ParallelExecutor.runTriangleRanges(n, blocks, (block, start, end) -> {
+        final DistanceQuery<V> dq = queries.get(block);
+        DBIDArrayIter ix = aids.iter(), iy = aids.iter();
+        for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+          final int x = ix.getOffset(), off = (x * (x - 1)) >>> 1;
+          for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
+            matrix[off + iy.getOffset()] = dq.distance(ix, iy);
+          }
+        }
+      });
+      bad.set(0);
+    }
+
+    /**
+     * Check if any queries were uncached (not using DBIDs).
+     *
+     * @return True if uncached distances were used
+     */
+    public boolean hasUncachedQueries() {
+      return bad.get() > 0;
     }
 
     @Override
@@ -312,33 +462,29 @@ public class CLARA<V> extends PAM<V> {
       if(DBIDUtil.equal(id1, id2)) {
         return 0.;
       }
-      if(DBIDUtil.compare(id1, id2) > 0) {
-        return distance(id2, id1);
-      }
-      int i = id1.internalGetIndex(), j = id2.internalGetIndex();
-      long idx = (((long) i) << 32) | j;
-      double v = cache.get(idx);
-      if(Double.isNaN(v)) {
-        cache.put(idx, v = inner.distance(id1, id2));
+      final int x = index.get(id1.internalGetIndex()), y = index.get(id2.internalGetIndex());
+      if(x < 0 || y < 0) {
+        bad.incrementAndGet();
+        return inner.distance(id1, id2);
       }
-      return v;
+      return x > y ? matrix[((x * (x - 1)) >>> 1) + y] : matrix[((y * (y - 1)) >>> 1) + x];
     }
 
     @Override
     public double distance(V o1, DBIDRef id2) {
-      ++bad;
+      bad.incrementAndGet();
       return inner.distance(o1, id2);
     }
 
     @Override
     public double distance(DBIDRef id1, V o2) {
-      ++bad;
+      bad.incrementAndGet();
       return inner.distance(id1, o2);
     }
 
     @Override
     public double distance(V o1, V o2) {
-      ++bad;
+      bad.incrementAndGet();
       return inner.distance(o1, o2);
     }
 
@@ -21,6 +21,8 @@
 package elki.clustering.kmedoids;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 
 import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
 import elki.clustering.kmedoids.initialization.LAB;
@@ -32,6 +34,7 @@ import elki.logging.Logging;
 import elki.logging.progress.IndefiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
@@ -148,6 +151,20 @@ public class FastPAM<V> extends FastPAM1<V> {
       this.fastswap = 1 - fasttol;
     }
 
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param queries Factory for the distance queries of the worker threads
+     * @param ids IDs to process
+     * @param assignment Cluster assignment
+     * @param fasttol Tolerance for fast swapping
+     */
+    public Instance(DistanceQuery<?> distQ, Supplier<? extends DistanceQuery<?>> queries, DBIDs ids, WritableIntegerDataStore assignment, double fasttol) {
+      super(distQ, queries, ids, assignment);
+      this.fastswap = 1 - fasttol;
+    }
+
     /**
      * Run the PAM optimization phase.
      *
@@ -170,12 +187,17 @@ public class FastPAM<V> extends FastPAM1<V> {
       DBIDArrayIter m = medoids.iter();
       ArrayModifiableDBIDs bestids = DBIDUtil.newArray(k);
       DBIDVar bestid = DBIDUtil.newVar();
-      double[] best = new double[k], cost = new double[k];
+      double[] best = new double[k];
+      final int n = aids.size(), blocks = ParallelExecutor.numBlocks(k * (long) n * n, PARALLEL_THRESHOLD, n);
+      // Best candidates of each block, as offsets into aids
+      final double[][] bbest = new double[blocks][k];
+      final int[][] bh = new int[blocks][k];
+      final List<DistanceQuery<?>> bqueries = blockQueries(distQ, queries, blocks);
       int iteration = 0;
       while(iteration < maxiter || maxiter <= 0) {
         ++iteration;
         LOG.incrementProcessed(prog);
-        findBestSwaps(m, bestids, best, cost);
+        findBestSwaps(medoids, bestids, best, bqueries, bbest, bh);
         // Convergence check
         int min = argmin(best);
         if(!(best[min] < -1e-12 * tc)) {
@@ -196,7 +218,7 @@ public class FastPAM<V> extends FastPAM1<V> {
             }
             final double hdist = nearest.doubleValue(bestid); // Current cost
             // hdist is the cost we get back by making the non-medoid h medoid.
-            double c = computeReassignmentCost(bestid, min) - hdist;
+            double c = computeReassignmentCost(distQ, bestid, min) - hdist;
             if(c <= best[min] * fastswap) {
               best[min] = c;
               ++fastswaps;
@@ -225,30 +247,54 @@ public class FastPAM<V> extends FastPAM1<V> {
 
     /**
      * Find the best swaps.
+     * <p>
+     * On large data sets, the non-medoids are processed in blocks by multiple
+     * threads, and the block results are merged in order. This yields the same
+     * result as a sequential scan.
      *
-     * @param m Medoids
+     * @param medoids Medoids
      * @param bestids Storage for best non-medois
      * @param best Storage for best cost
-     * @param cost Scratch space for cost
+     * @param bqueries Distance queries, one per block
+     * @param bbest Storage for the best cost of each block
+     * @param bh Storage for the best non-medoids of each block
      */
-    protected void findBestSwaps(DBIDArrayIter m, ArrayModifiableDBIDs bestids, double[] best, double[] cost) {
-      Arrays.fill(best, Double.POSITIVE_INFINITY);
-      // Iterate over all non-medoids:
-      for(DBIDIter h = ids.iter(); h.valid(); h.advance()) {
-        // Compare object to its own medoid.
-        if(DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
-          continue; // This is a medoid.
-        }
-        // The cost we get back by making the non-medoid h medoid.
-        Arrays.fill(cost, -nearest.doubleValue(h));
-        computeReassignmentCost(h, cost);
+    protected void findBestSwaps(ArrayDBIDs medoids, ArrayModifiableDBIDs bestids, double[] best, List<DistanceQuery<?>> bqueries, double[][] bbest, int[][] bh) {
+      final int k = best.length, blocks = bqueries.size();
+      ParallelExecutor.runRanges(aids.size(), blocks, (block, start, end) -> {
+        final DistanceQuery<?> dq = bqueries.get(block);
+        DBIDArrayIter h = aids.iter(), m = medoids.iter();
+        final double[] cost = new double[k], lbest = bbest[block];
+        final int[] lh = bh[block];
+        Arrays.fill(lbest, Double.POSITIVE_INFINITY);
+        // Iterate over all non-medoids:
+        for(h.seek(start); h.getOffset() < end; h.advance()) {
+          // Compare object to its own medoid.
+          if(DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
+            continue; // This is a medoid.
+          }
+          // The cost we get back by making the non-medoid h medoid.
+          Arrays.fill(cost, -nearest.doubleValue(h));
+          computeReassignmentCost(dq, h, cost);
 
-        // Find the best possible swap for each medoid:
-        for(int i = 0; i < cost.length; i++) {
-          final double costi = cost[i];
-          if(costi < best[i]) {
-            best[i] = costi;
-            bestids.set(i, h);
+          // Find the best possible swap for each medoid:
+          for(int i = 0; i < k; i++) {
+            final double costi = cost[i];
+            if(costi < lbest[i]) {
+              lbest[i] = costi;
+              lh[i] = h.getOffset();
+            }
+          }
+        }
+      });
+      // Merge the blocks in order.
+      Arrays.fill(best, Double.POSITIVE_INFINITY);
+      DBIDVar tmp = DBIDUtil.newVar();
+      for(int b = 0; b < blocks; b++) {
+        for(int i = 0; i < k; i++) {
+          if(bbest[b][i] < best[i]) {
+            best[i] = bbest[b][i];
+            bestids.set(i, aids.assignVar(bh[b][i], tmp));
           }
         }
       }
@@ -276,11 +322,12 @@ public class FastPAM<V> extends FastPAM1<V> {
     /**
      * Compute the reassignment cost of one swap.
      *
+     * @param dq Distance query of the current thread
      * @param h Current object to swap with the medoid
      * @param mnum Medoid number to be replaced
      * @return cost
      */
-    protected double computeReassignmentCost(DBIDRef h, int mnum) {
+    protected double computeReassignmentCost(DistanceQuery<?> dq, DBIDRef h, int mnum) {
       double cost = 0.;
       // Compute costs of reassigning other objects j:
       for(DBIDIter j = ids.iter(); j.valid(); j.advance()) {
@@ -290,7 +337,7 @@ public class FastPAM<V> extends FastPAM1<V> {
         // distance(j, i) to nearest medoid
         final double distcur = nearest.doubleValue(j);
         // distance(j, h) to new medoid
-        final double dist_h = distQ.distance(h, j);
+        final double dist_h = dq.distance(h, j);
         // Check if current medoid of j is removed:
         if((assignment.intValue(j) & 0x7FFF) == mnum) {
           // distance(j, o) to second nearest / possible reassignment
@@ -21,6 +21,8 @@
 package elki.clustering.kmedoids;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 
 import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
 import elki.database.datastore.WritableIntegerDataStore;
@@ -31,6 +33,7 @@ import elki.logging.Logging;
 import elki.logging.progress.IndefiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Reference;
 import elki.utilities.exceptions.AbortException;
@@ -109,6 +112,18 @@ public class FastPAM1<V> extends PAM<V> {
       super(distQ, ids, assignment);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param queries Factory for the distance queries of the worker threads
+     * @param ids IDs to process
+     * @param assignment Cluster assignment
+     */
+    public Instance(DistanceQuery<?> distQ, Supplier<? extends DistanceQuery<?>> queries, DBIDs ids, WritableIntegerDataStore assignment) {
+      super(distQ, queries, ids, assignment);
+    }
+
     /**
      * Run the PAM optimization phase.
      *
@@ -129,32 +144,54 @@ public class FastPAM1<V> extends PAM<V> {
       // Swap phase
       DBIDVar bestid = DBIDUtil.newVar();
       DBIDArrayIter m = medoids.iter();
-      double[] cost = new double[k];
+      final int n = aids.size(), blocks = ParallelExecutor.numBlocks(k * (long) n * n, PARALLEL_THRESHOLD, n);
+      // Best swap of each block, as offsets into aids
+      final double[] bbest = new double[blocks];
+      final int[] bh = new int[blocks], bcluster = new int[blocks];
+      final List<DistanceQuery<?>> bqueries = blockQueries(distQ, queries, blocks);
       int iteration = 0;
       while(iteration < maxiter || maxiter <= 0) {
         ++iteration;
         LOG.incrementProcessed(prog);
-        double best = Double.POSITIVE_INFINITY;
-        int bestcluster = -1;
-        // Iterate over all non-medoids:
-        for(DBIDIter h = ids.iter(); h.valid(); h.advance()) {
-          // Compare object to its own medoid.
-          if(DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
-            continue; // This is a medoid.
-          }
-          // The cost we get back by making the non-medoid h medoid.
-          Arrays.fill(cost, -nearest.doubleValue(h));
-          computeReassignmentCost(h, cost);
+        ParallelExecutor.runRanges(aids.size(), blocks, (block, start, end) -> {
+          final DistanceQuery<?> dq = bqueries.get(block);
+          DBIDArrayIter h = aids.iter(), mi = medoids.iter();
+          double[] cost = new double[k];
+          double best = Double.POSITIVE_INFINITY;
+          int besth = -1, bestcluster = -1;
+          // Iterate over all non-medoids:
+          for(h.seek(start); h.getOffset() < end; h.advance()) {
+            // Compare object to its own medoid.
+            if(DBIDUtil.equal(mi.seek(assignment.intValue(h) & 0x7FFF), h)) {
+              continue; // This is a medoid.
+            }
+            // The cost we get back by making the non-medoid h medoid.
+            Arrays.fill(cost, -nearest.doubleValue(h));
+            computeReassignmentCost(dq, h, cost);
 
-          // Find the best possible swap for h:
-          for(int i = 0; i < k; i++) {
-            final double costi = cost[i];
-            if(costi < best) {
-              best = costi;
-              bestid.set(h);
-              bestcluster = i;
+            // Find the best possible swap for h:
+            for(int i = 0; i < k; i++) {
+              final double costi = cost[i];
+              if(costi < best) {
+                best = costi;
+                besth = h.getOffset();
+                bestcluster = i;
+              }
             }
           }
+          bbest[block] = best;
+          bh[block] = besth;
+          bcluster[block] = bestcluster;
+        });
+        // Combine blocks in order, to get the same result as sequentially.
+        double best = Double.POSITIVE_INFINITY;
+        int bestcluster = -1;
+        for(int b = 0; b < blocks; b++) {
+          if(bbest[b] < best) {
+            best = bbest[b];
+            aids.assignVar(bh[b], bestid);
+            bestcluster = bcluster[b];
+          }
         }
         if(!(best < -1e-12 * tc)) {
           break; // Converged
@@ -220,10 +257,11 @@ public class FastPAM1<V> extends PAM<V> {
     /**
      * Compute the reassignment cost, for all medoids in one pass.
      *
+     * @param dq Distance query of the current thread
      * @param h Current object to swap with any medoid.
      * @param cost Cost aggregation array, must have size k
      */
-    protected void computeReassignmentCost(DBIDRef h, double[] cost) {
+    protected void computeReassignmentCost(DistanceQuery<?> dq, DBIDRef h, double[] cost) {
       // Compute costs of reassigning other objects j:
       for(DBIDIter j = ids.iter(); j.valid(); j.advance()) {
         if(DBIDUtil.equal(h, j)) {
@@ -234,7 +272,7 @@ public class FastPAM1<V> extends PAM<V> {
         // distance(j, o) to second nearest / possible reassignment
         final double distsec = second.doubleValue(j);
         // distance(j, h) to new medoid
-        final double dist_h = distQ.distance(h, j);
+        final double dist_h = dq.distance(h, j);
         // Case 1b: j switches to new medoid, or to the second nearest:
         final int pj = assignment.intValue(j) & 0x7FFF;
         cost[pj] += Math.min(dist_h, distsec) - distcur;
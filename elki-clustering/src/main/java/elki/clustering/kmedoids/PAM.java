@@ -20,6 +20,10 @@
  */
 package elki.clustering.kmedoids;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
 import elki.Algorithm;
 import elki.clustering.ClusteringAlgorithm;
 import elki.clustering.ClusteringAlgorithmUtil;
@@ -47,6 +51,7 @@ import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
 import elki.logging.statistics.StringStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Reference;
@@ -106,6 +111,11 @@ public class PAM<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
    */
   private static final Logging LOG = Logging.getLogger(PAM.class);
 
+  /**
+   * Minimum number of distance computations to use multiple threads.
+   */
+  protected static final long PARALLEL_THRESHOLD = 1L << 16;
+
   /**
    * Distance function used.
    */
@@ -226,11 +236,22 @@ public class PAM<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
      */
     DBIDs ids;
 
+    /**
+     * Ids to process, for splitting into blocks.
+     */
+    ArrayDBIDs aids;
+
     /**
      * Distance function to use.
      */
     DistanceQuery<?> distQ;
 
+    /**
+     * Factory for the distance queries of the worker threads, as distance
+     * queries need not be thread safe.
+     */
+    Supplier<? extends DistanceQuery<?>> queries;
+
     /**
      * Distance to the nearest medoid of each point.
      */
@@ -254,8 +275,22 @@ public class PAM<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
      * @param assignment Cluster assignment
      */
     public Instance(DistanceQuery<?> distQ, DBIDs ids, WritableIntegerDataStore assignment) {
+      this(distQ, () -> newDistanceQuery(distQ), ids, assignment);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param queries Factory for the distance queries of the worker threads
+     * @param ids IDs to process
+     * @param assignment Cluster assignment
+     */
+    public Instance(DistanceQuery<?> distQ, Supplier<? extends DistanceQuery<?>> queries, DBIDs ids, WritableIntegerDataStore assignment) {
       this.distQ = distQ;
+      this.queries = queries;
       this.ids = ids;
+      this.aids = DBIDUtil.ensureArray(ids);
       this.assignment = assignment;
       this.nearest = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
       this.second = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
@@ -283,33 +318,55 @@ public class PAM<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
       IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("PAM iteration", LOG) : null;
       // Swap phase
       DBIDVar bestid = DBIDUtil.newVar();
-      DBIDArrayIter m = medoids.iter();
+      final int n = aids.size(), blocks = ParallelExecutor.numBlocks(k * (long) n * n, PARALLEL_THRESHOLD, n);
+      // Best swap of each block, as offsets into aids
+      final double[] bbest = new double[blocks];
+      final int[] bh = new int[blocks], bcluster = new int[blocks];
+      final List<DistanceQuery<?>> bqueries = blockQueries(distQ, queries, blocks);
       int iteration = 0;
       while(iteration < maxiter || maxiter <= 0) {
         ++iteration;
         LOG.incrementProcessed(prog);
         // Try to swap a non-medoid with a medoid member:
+        ParallelExecutor.runRanges(aids.size(), blocks, (block, start, end) -> {
+          final DistanceQuery<?> dq = bqueries.get(block);
+          DBIDArrayIter h = aids.iter(), m = medoids.iter();
+          double best = Double.POSITIVE_INFINITY;
+          int besth = -1, bestcluster = -1;
+          // Iterate over all non-medoids:
+          for(h.seek(start); h.getOffset() < end; h.advance()) {
+            // Compare object to its own medoid.
+            if(DBIDUtil.equal(m.seek(assignment.intValue(h)), h)) {
+              continue; // This is a medoid.
+            }
+            final double hdist = nearest.doubleValue(h); // Current cost of h.
+            if(metric && hdist <= 0.) {
+              continue; // Duplicate of a medoid.
+            }
+            // Find the best possible swap for h:
+            for(int pi = 0; pi < k; pi++) {
+              // hdist is the cost we get back by making the non-medoid h
+              // medoid.
+              final double cpi = computeReassignmentCost(dq, h, pi) - hdist;
+              if(cpi < best) {
+                best = cpi;
+                besth = h.getOffset();
+                bestcluster = pi;
+              }
+            }
+          }
+          bbest[block] = best;
+          bh[block] = besth;
+          bcluster[block] = bestcluster;
+        });
+        // Combine blocks in order, to get the same result as sequentially.
         double best = Double.POSITIVE_INFINITY;
         int bestcluster = -1;
-        // Iterate over all non-medoids:
-        for(DBIDIter h = ids.iter(); h.valid(); h.advance()) {
-          // Compare object to its own medoid.
-          if(DBIDUtil.equal(m.seek(assignment.intValue(h)), h)) {
-            continue; // This is a medoid.
-          }
-          final double hdist = nearest.doubleValue(h); // Current cost of h.
-          if(metric && hdist <= 0.) {
-            continue; // Duplicate of a medoid.
-          }
-          // Find the best possible swap for h:
-          for(int pi = 0; pi < k; pi++) {
-            // hdist is the cost we get back by making the non-medoid h medoid.
-            final double cpi = computeReassignmentCost(h, pi) - hdist;
-            if(cpi < best) {
-              best = cpi;
-              bestid.set(h);
-              bestcluster = pi;
-            }
+        for(int b = 0; b < blocks; b++) {
+          if(bbest[b] < best) {
+            best = bbest[b];
+            aids.assignVar(bh[b], bestid);
+            bestcluster = bcluster[b];
           }
         }
         if(!(best < -1e-12 * tc)) {
@@ -342,11 +399,12 @@ public class PAM<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
     /**
      * Compute the reassignment cost of one swap.
      *
+     * @param dq Distance query of the current thread
      * @param h Current object to swap with the medoid
      * @param mnum Medoid number to be replaced
      * @return cost
      */
-    protected double computeReassignmentCost(DBIDRef h, int mnum) {
+    protected double computeReassignmentCost(DistanceQuery<?> dq, DBIDRef h, int mnum) {
       double cost = 0.;
       // Compute costs of reassigning other objects j:
       for(DBIDIter j = ids.iter(); j.valid(); j.advance()) {
@@ -356,7 +414,7 @@ public class PAM<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
         // distance(j, i) to nearest medoid
         final double distcur = nearest.doubleValue(j);
         // distance(j, h) to new medoid
-        final double dist_h = distQ.distance(h, j);
+        final double dist_h = dq.distance(h, j);
         // Check if current medoid of j is removed:
         if(assignment.intValue(j) == mnum) {
           // Case 1b: j switches to new medoid, or to the second nearest:
@@ -406,6 +464,40 @@ public class PAM<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
     }
   }
 
+  /**
+   * Get a new distance query for the relation and distance of an existing
+   * query. This will reuse an existing index, such as a precomputed distance
+   * matrix.
+   *
+   * @param distQ Existing distance query
+   * @param <O> Object type
+   * @return New distance query
+   */
+  protected static <O> DistanceQuery<O> newDistanceQuery(DistanceQuery<O> distQ) {
+    @SuppressWarnings("unchecked")
+    final Relation<O> relation = (Relation<O>) distQ.getRelation();
+    return new QueryBuilder<>(relation, distQ.getDistance()).distanceQuery();
+  }
+
+  /**
+   * Get one distance query per block, as distance queries need not be thread
+   * safe. The first block uses the existing query.
+   *
+   * @param first Existing distance query
+   * @param factory Factory for additional queries
+   * @param blocks Number of blocks
+   * @param <Q> Query type
+   * @return Distance queries
+   */
+  protected static <Q> List<Q> blockQueries(Q first, Supplier<? extends Q> factory, int blocks) {
+    List<Q> queries = new ArrayList<>(blocks);
+    queries.add(first);
+    for(int b = 1; b < blocks; b++) {
+      queries.add(factory.get());
+    }
+    return queries;
+  }
+
   /**
    * Get the static class logger.
    */
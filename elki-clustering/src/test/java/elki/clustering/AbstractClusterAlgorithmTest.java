@@ -21,16 +21,22 @@
 package elki.clustering;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
+import elki.Algorithm;
 import elki.algorithm.AbstractSimpleAlgorithmTest;
 import elki.clustering.trivial.ByLabelClustering;
 import elki.data.Cluster;
 import elki.data.Clustering;
+import elki.data.model.MedoidModel;
 import elki.data.model.Model;
 import elki.database.Database;
+import elki.database.ids.DBIDUtil;
 import elki.evaluation.clustering.ClusterContingencyTable;
 import elki.logging.Logging;
 import elki.utilities.io.FormatUtil;
@@ -95,4 +101,63 @@ public abstract class AbstractClusterAlgorithmTest extends AbstractSimpleAlgorit
       assertEquals("Cluster size does not match at position " + i + " in " + FormatUtil.format(sizes), expected[i], sizes[i]);
     }
   }
+
+  /**
+   * Validate that two clusterings partition the data the same way, e.g., the
+   * results of the sequential and the parallel code path.
+   *
+   * @param expected Expected clustering
+   * @param actual Clustering to test
+   */
+  protected void assertSameClustering(Clustering<?> expected, Clustering<?> actual) {
+    assertEquals("Number of clusters does not match.", expected.getAllClusters().size(), actual.getAllClusters().size());
+    double score = new ClusterContingencyTable(true, false, expected, actual).getPaircount().f1Measure();
+    assertEquals("Clusterings differ.", 1., score, 1e-15);
+  }
+
+  /**
+   * Validate that two k-medoids clusterings chose the same medoids, in the
+   * same order.
+   *
+   * @param expected Expected clustering
+   * @param actual Clustering to test
+   */
+  protected void assertSameMedoids(Clustering<?> expected, Clustering<?> actual) {
+    List<? extends Cluster<?>> ec = expected.getAllClusters(), ac = actual.getAllClusters();
+    assertEquals("Number of clusters does not match.", ec.size(), ac.size());
+    for(int i = 0; i < ec.size(); i++) {
+      assertTrue("Medoids differ at position " + i, DBIDUtil.equal(((MedoidModel) ec.get(i).getModel()).getMedoid(), ((MedoidModel) ac.get(i).getModel()).getMedoid()));
+    }
+    assertSameClustering(expected, actual);
+  }
+
+  /**
+   * Run an algorithm with a single thread and with four threads, and validate
+   * that both partition the data the same way.
+   *
+   * @param database Database to test
+   * @param algorithm Algorithm factory, a new instance is used for each run to
+   *        get the same random initialization
+   * @return Single-threaded clustering
+   */
+  protected Clustering<?> assertSameWithParallelism(Database database, Supplier<? extends Algorithm> algorithm) {
+    return assertSameWithParallelism(database, algorithm, this::assertSameClustering);
+  }
+
+  /**
+   * Run an algorithm with a single thread and with four threads, and compare
+   * the results.
+   *
+   * @param database Database to test
+   * @param algorithm Algorithm factory, a new instance is used for each run to
+   *        get the same random initialization
+   * @param compare Comparison of the single-threaded and the parallel result
+   * @return Single-threaded clustering
+   */
+  protected Clustering<?> assertSameWithParallelism(Database database, Supplier<? extends Algorithm> algorithm, BiConsumer<Clustering<?>, Clustering<?>> compare) {
+    Clustering<?> sequential = withParallelism(1, () -> findSingleClustering(algorithm.get().autorun(database)));
+    Clustering<?> parallel = withParallelism(4, () -> findSingleClustering(algorithm.get().autorun(database)));
+    compare.accept(sequential, parallel);
+    return sequential;
+  }
 }
@@ -83,4 +83,23 @@ public class GriDBSCANTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, result, 0.954382);
     assertClusterSizes(result, new int[] { 11, 200, 203, 224 });
   }
+
+  /**
+   * Run on a larger data set to process the grid cells in parallel, and
+   * compare to the result of sequential DBSCAN.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeRandomDatabase(20000, 2, 0L);
+    Clustering<Model> expected = withParallelism(1, () -> new ELKIBuilder<DBSCAN<DoubleVector>>(DBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 0.02) //
+        .with(DBSCAN.Par.MINPTS_ID, 20) //
+        .build().autorun(db));
+    Clustering<Model> result = withParallelism(4, () -> new ELKIBuilder<GriDBSCAN<DoubleVector>>(GriDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 0.02) //
+        .with(DBSCAN.Par.MINPTS_ID, 20) //
+        .with(GriDBSCAN.Par.GRID_ID, 0.2) //
+        .build().autorun(db));
+    assertSameClustering(expected, result);
+  }
 }
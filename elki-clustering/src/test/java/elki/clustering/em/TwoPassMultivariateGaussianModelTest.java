@@ -84,4 +84,18 @@ public class TwoPassMultivariateGaussianModelTest extends AbstractClusterAlgorit
     assertFMeasure(db, result, 1.);
     assertClusterSizes(result, new int[] { 100, 100 });
   }
+
+  /**
+   * Run on a larger data set to use the parallel E and M steps, and compare
+   * to the sequential result.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeRandomDatabase(5000, 3, 0L);
+    assertSameWithParallelism(db, () -> new ELKIBuilder<EM<DoubleVector, ?>>(EM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 5) //
+        .with(EM.Par.INIT_ID, TwoPassMultivariateGaussianModelFactory.class) //
+        .build());
+  }
 }
@@ -78,4 +78,18 @@ public class HDBSCANLinearMemoryTest extends AbstractClusterAlgorithmTest {
         .with(HDBSCANLinearMemory.Par.MIN_PTS_ID, 20) //
         .build().autorun(db);
   }
+
+  /**
+   * Run on a larger data set to use the parallel code paths, and compare to
+   * the sequential result.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeRandomDatabase(5000, 2, 0L);
+    assertSameWithParallelism(db, () -> new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 10) //
+        .with(Algorithm.Utils.ALGORITHM_ID, HDBSCANLinearMemory.class) //
+        .with(HDBSCANLinearMemory.Par.MIN_PTS_ID, 20) //
+        .build());
+  }
 }
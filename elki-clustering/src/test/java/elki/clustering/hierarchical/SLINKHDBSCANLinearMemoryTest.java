@@ -53,4 +53,18 @@ public class SLINKHDBSCANLinearMemoryTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.686953412);
     assertClusterSizes(clustering, new int[] { 1, 200, 437 });
   }
+
+  /**
+   * Run on a larger data set to use the parallel code paths, and compare to
+   * the sequential result.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeRandomDatabase(5000, 2, 0L);
+    assertSameWithParallelism(db, () -> new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 10) //
+        .with(Algorithm.Utils.ALGORITHM_ID, SLINKHDBSCANLinearMemory.class) //
+        .with(SLINKHDBSCANLinearMemory.Par.MIN_PTS_ID, 20) //
+        .build());
+  }
 }
@@ -20,9 +20,13 @@
  */
 package elki.clustering.hierarchical.birch;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
 import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.database.Database;
 import elki.utilities.ELKIBuilder;
@@ -126,4 +130,34 @@ public class BIRCHLeafClusteringTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.89558);
     assertClusterSizes(clustering, new int[] { 65, 156, 198, 219 });
   }
+
+  /**
+   * The sequential tree does not depend on the number of threads, and the
+   * parallel tree build falls back to it with a single thread.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeRandomDatabase(20000, 2, 0L);
+    Clustering<?> sequential = withParallelism(1, () -> makeBIRCH(false).autorun(db));
+    assertSameClustering(sequential, withParallelism(4, () -> makeBIRCH(false).autorun(db)));
+    assertSameClustering(sequential, withParallelism(1, () -> makeBIRCH(true).autorun(db)));
+    // The merged partial trees must respect the leaf limit.
+    Clustering<?> parallel = withParallelism(4, () -> makeBIRCH(true).autorun(db));
+    assertTrue("Too many leaves.", parallel.getAllClusters().size() <= 50);
+    int total = 0;
+    for(Cluster<?> c : parallel.getAllClusters()) {
+      total += c.size();
+    }
+    assertEquals("Not all objects assigned.", 20000, total);
+  }
+
+  private static BIRCHLeafClustering makeBIRCH(boolean parallel) {
+    ELKIBuilder<BIRCHLeafClustering> builder = new ELKIBuilder<>(BIRCHLeafClustering.class) //
+        .with(CFTree.Factory.Par.ABSORPTION_ID, DiameterCriterion.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, 50);
+    if(parallel) {
+      builder.with(CFTree.Factory.Par.PARALLEL_ID);
+    }
+    return builder.build();
+  }
 }
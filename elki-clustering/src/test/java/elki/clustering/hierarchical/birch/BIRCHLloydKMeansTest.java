@@ -20,12 +20,26 @@
  */
 package elki.clustering.hierarchical.birch;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.List;
+
 import org.junit.Test;
 
 import elki.clustering.AbstractClusterAlgorithmTest;
 import elki.clustering.kmeans.AbstractKMeans;
+import elki.data.Cluster;
 import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.data.type.TypeUtil;
 import elki.database.Database;
+import elki.database.relation.Relation;
+import elki.datasource.parser.NumberVectorLabelParser;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -46,4 +60,67 @@ public class BIRCHLloydKMeansTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.84944);
     assertClusterSizes(clustering, new int[] { 96, 104, 211, 227 });
   }
+
+  @Test
+  public void testStream() throws Exception {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    List<? extends Cluster<KMeansModel>> clusters = makeBIRCH().run(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD)).getAllClusters();
+    // A single pass over the same data in the same order yields the same tree.
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(UNITTEST + "single-link-effect.ascii")) {
+      parser.initStream(in);
+      double[][] means = makeBIRCH().processStream(parser);
+      assertEquals("Number of means", clusters.size(), means.length);
+      for(int i = 0; i < means.length; i++) {
+        assertArrayEquals("Means differ", clusters.get(i).getModel().getMean(), means[i], 1e-10);
+      }
+    }
+  }
+
+  /**
+   * With the default relative limit, the tree built from a stream should have
+   * about as many leaves as the tree built from the relation.
+   */
+  @Test
+  public void testStreamRelativeLimit() throws Exception {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    CFTree.Factory factory = new ELKIBuilder<>(CFTree.Factory.class).build();
+    int expected = countLeaves(factory.newTree(relation.getDBIDs(), relation));
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(UNITTEST + "single-link-effect.ascii")) {
+      parser.initStream(in);
+      int leaves = countLeaves(factory.newTree(parser));
+      assertTrue("Too many leaves: " + leaves, leaves <= 0.05 * relation.size());
+      assertTrue("Too few leaves: " + leaves + " instead of about " + expected, leaves >= 0.75 * expected);
+    }
+  }
+
+  /**
+   * Count the leaves of a tree.
+   *
+   * @param tree Tree
+   * @return Number of leaves
+   */
+  private static int countLeaves(CFTree tree) {
+    int leaves = 0;
+    for(CFTree.LeafIterator it = tree.leafIterator(); it.valid(); it.advance()) {
+      leaves++;
+    }
+    return leaves;
+  }
+
+  /**
+   * Make a fresh instance, so that both runs use the same random seed.
+   *
+   * @return BIRCH k-means instance
+   */
+  private static BIRCHLloydKMeans makeBIRCH() {
+    return new ELKIBuilder<>(BIRCHLloydKMeans.class) //
+        .with(CFTree.Factory.Par.ABSORPTION_ID, EuclideanDistanceCriterion.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, 50) //
+        .with(AbstractKMeans.K_ID, 4) //
+        .with(AbstractKMeans.SEED_ID, 0) //
+        .build();
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.data.Clustering;
+import elki.data.Cluster;
+import elki.data.DoubleVector;
+import elki.data.model.KMeansModel;
+import elki.database.Database;
+import elki.datasource.parser.NumberVectorLabelParser;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Performs a full mini-batch KMeans run, and compares the result with a
+ * clustering derived from the data set labels.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class MiniBatchKMeansTest extends AbstractClusterAlgorithmTest {
+  /**
+   * Run mini-batch KMeans with fixed parameters and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testKMeansMiniBatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<?> result = new ELKIBuilder<MiniBatchKMeans<DoubleVector>>(MiniBatchKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(MiniBatchKMeans.Par.BATCHSIZE_ID, 100) //
+        .with(MiniBatchKMeans.Par.RANDOM_ID, 0) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Run mini-batch KMeans in a single pass over a parser stream, and compare
+   * the means to a run on the relation. With a single batch of all objects,
+   * both use the same initial means and perform the same update.
+   */
+  @Test
+  public void testKMeansMiniBatchStream() throws Exception {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<KMeansModel> result = new ELKIBuilder<MiniBatchKMeans<DoubleVector>>(MiniBatchKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(KMeans.MAXITER_ID, 1) //
+        .with(MiniBatchKMeans.Par.BATCHSIZE_ID, 1000) //
+        .build().autorun(db);
+    MiniBatchKMeans<DoubleVector> km = new ELKIBuilder<MiniBatchKMeans<DoubleVector>>(MiniBatchKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(MiniBatchKMeans.Par.BATCHSIZE_ID, 1000) //
+        .build();
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(UNITTEST + "different-densities-2d-no-noise.ascii")) {
+      parser.initStream(in);
+      double[][] means = km.processStream(parser);
+      List<Cluster<KMeansModel>> clusters = result.getAllClusters();
+      assertEquals("Number of means", clusters.size(), means.length);
+      // The initial means may be chosen in a different order.
+      for(Cluster<KMeansModel> c : clusters) {
+        double[] expected = c.getModel().getMean();
+        boolean found = false;
+        for(double[] mean : means) {
+          found |= Math.abs(mean[0] - expected[0]) < 1e-8 && Math.abs(mean[1] - expected[1]) < 1e-8;
+        }
+        assertTrue("Mean not found in the stream result.", found);
+      }
+    }
+  }
+}
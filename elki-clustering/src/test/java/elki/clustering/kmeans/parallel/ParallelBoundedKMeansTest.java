@@ -0,0 +1,90 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.kmeans.ElkanKMeans;
+import elki.clustering.kmeans.ExponionKMeans;
+import elki.clustering.kmeans.HamerlyKMeans;
+import elki.clustering.kmeans.KMeans;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the parallel k-means variants using bounds, which must
+ * produce the same result as their sequential counterparts.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class ParallelBoundedKMeansTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testParallelKMeansElkan() {
+    assertRegression(new ELKIBuilder<ParallelElkanKMeans<DoubleVector>>(ParallelElkanKMeans.class));
+    assertSameAsSequential(new ELKIBuilder<ElkanKMeans<DoubleVector>>(ElkanKMeans.class), //
+        new ELKIBuilder<ParallelElkanKMeans<DoubleVector>>(ParallelElkanKMeans.class));
+  }
+
+  @Test
+  public void testParallelKMeansHamerly() {
+    assertRegression(new ELKIBuilder<ParallelHamerlyKMeans<DoubleVector>>(ParallelHamerlyKMeans.class));
+    assertSameAsSequential(new ELKIBuilder<HamerlyKMeans<DoubleVector>>(HamerlyKMeans.class), //
+        new ELKIBuilder<ParallelHamerlyKMeans<DoubleVector>>(ParallelHamerlyKMeans.class));
+  }
+
+  @Test
+  public void testParallelKMeansExponion() {
+    assertRegression(new ELKIBuilder<ParallelExponionKMeans<DoubleVector>>(ParallelExponionKMeans.class));
+    assertSameAsSequential(new ELKIBuilder<ExponionKMeans<DoubleVector>>(ExponionKMeans.class), //
+        new ELKIBuilder<ParallelExponionKMeans<DoubleVector>>(ParallelExponionKMeans.class));
+  }
+
+  /**
+   * Compare to the known result on a small data set, with few and with many
+   * clusters.
+   *
+   * @param builder Algorithm builder
+   */
+  private void assertRegression(ELKIBuilder<? extends KMeans<DoubleVector, ?>> builder) {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<?> result = builder.with(KMeans.K_ID, 5).with(KMeans.SEED_ID, 7).build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Run the sequential and the parallel variant on a larger data set, and
+   * compare the results.
+   *
+   * @param sequential Sequential algorithm
+   * @param parallel Parallel algorithm
+   */
+  private void assertSameAsSequential(ELKIBuilder<? extends KMeans<DoubleVector, ?>> sequential, ELKIBuilder<? extends KMeans<DoubleVector, ?>> parallel) {
+    Database db = makeRandomDatabase(10000, 3, 0L);
+    Clustering<?> expected = sequential.with(KMeans.K_ID, 20).with(KMeans.SEED_ID, 7).build().autorun(db);
+    Clustering<?> result = withParallelism(4, () -> parallel.with(KMeans.K_ID, 20).with(KMeans.SEED_ID, 7).build().autorun(db));
+    assertSameClustering(expected, result);
+  }
+}
@@ -27,6 +27,7 @@ import elki.clustering.kmeans.KMeans;
 import elki.data.Clustering;
 import elki.data.DoubleVector;
 import elki.database.Database;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -54,4 +55,26 @@ public class ParallelLloydKMeansTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, result, 0.998005);
     assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
+
+  /**
+   * Run KMeans with work-stealing parallelism, which must yield the same
+   * result.
+   */
+  @Test
+  public void testParallelKMeansLloydWorkStealing() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    boolean prev = ParallelExecutor.isWorkStealing();
+    try {
+      ParallelExecutor.setWorkStealing(true);
+      Clustering<?> result = new ELKIBuilder<ParallelLloydKMeans<DoubleVector>>(ParallelLloydKMeans.class) //
+          .with(KMeans.K_ID, 5) //
+          .with(KMeans.SEED_ID, 7) //
+          .build().autorun(db);
+      assertFMeasure(db, result, 0.998005);
+      assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+    }
+    finally {
+      ParallelExecutor.setWorkStealing(prev);
+    }
+  }
 }
@@ -54,4 +54,37 @@ public class CLARATest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, result, 0.998005);
     assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
+
+  /**
+   * Run with a large sample to use the parallel swap evaluation and distance
+   * matrix computation, and compare to the sequential result.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeRandomDatabase(2000, 2, 0L);
+    assertSameWithParallelism(db, () -> new ELKIBuilder<CLARA<DoubleVector>>(CLARA.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(CLARA.Par.RANDOM_ID, 1) //
+        .with(CLARA.Par.NUMSAMPLES_ID, 2) //
+        .with(CLARA.Par.SAMPLESIZE_ID, 1100) //
+        .build(), this::assertSameMedoids);
+  }
+
+  /**
+   * Evaluate independent samples concurrently, and compare to the sequential
+   * result.
+   */
+  @Test
+  public void testParallelIndependent() {
+    Database db = makeRandomDatabase(2000, 2, 0L);
+    assertSameWithParallelism(db, () -> new ELKIBuilder<CLARA<DoubleVector>>(CLARA.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(CLARA.Par.RANDOM_ID, 1) //
+        .with(CLARA.Par.NUMSAMPLES_ID, 6) //
+        .with(CLARA.Par.SAMPLESIZE_ID, 200) //
+        .with(CLARA.Par.NOKEEPMED_ID) //
+        .build(), this::assertSameMedoids);
+  }
 }
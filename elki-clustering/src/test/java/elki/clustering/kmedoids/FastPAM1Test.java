@@ -49,4 +49,17 @@ public class FastPAM1Test extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, result, 0.998005);
     assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
+
+  /**
+   * Run on a larger data set to use the parallel swap evaluation, and compare
+   * to the sequential result.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeRandomDatabase(1500, 2, 0L);
+    assertSameWithParallelism(db, () -> new ELKIBuilder<FastPAM1<DoubleVector>>(FastPAM1.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 0) //
+        .build(), this::assertSameMedoids);
+  }
 }
@@ -0,0 +1,77 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.knn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.KNNList;
+
+/**
+ * Interface for kNN searchers that can process a batch of queries at once.
+ * <p>
+ * Answering many queries together allows sharing work across the queries,
+ * e.g., a linear scan can load each data object once for a whole block of
+ * queries, instead of once per query; an index can process queries in an
+ * order that exhibits locality.
+ * <p>
+ * The queries are given as DBIDs of the relation the searcher was created
+ * for.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @navhas - create - KNNList
+ */
+public interface BatchKNNSearcher {
+  /**
+   * Get the k nearest neighbors for a batch of query points.
+   *
+   * @param ids Query points
+   * @param k Number of neighbors requested
+   * @return neighbors, in the same order as the query points
+   */
+  List<KNNList> getKNNBatch(ArrayDBIDs ids, int k);
+
+  /**
+   * Get the k nearest neighbors for a batch of query points, using batch
+   * processing if the searcher supports it, and one query at a time
+   * otherwise.
+   *
+   * @param knnq kNN searcher
+   * @param ids Query points
+   * @param k Number of neighbors requested
+   * @return neighbors, in the same order as the query points
+   */
+  static List<KNNList> getKNNBatch(KNNSearcher<DBIDRef> knnq, ArrayDBIDs ids, int k) {
+    if(knnq instanceof BatchKNNSearcher) {
+      return ((BatchKNNSearcher) knnq).getKNNBatch(ids, k);
+    }
+    List<KNNList> result = new ArrayList<>(ids.size());
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      result.add(knnq.getKNN(it, k));
+    }
+    return result;
+  }
+}
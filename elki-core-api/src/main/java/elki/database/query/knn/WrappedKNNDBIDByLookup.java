@@ -20,6 +20,11 @@
  */
 package elki.database.query.knn;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDRef;
 import elki.database.ids.KNNList;
 import elki.database.query.LinearScanQuery;
@@ -27,12 +32,15 @@ import elki.database.relation.Relation;
 
 /**
  * Find nearest neighbors by querying with the original object.
+ * <p>
+ * Batches of queries are passed on to the inner searcher, if it supports
+ * batch processing.
  *
  * @author Erich Schubert
  *
  * @param <O> relation object type
  */
-public class WrappedKNNDBIDByLookup<O> implements KNNSearcher<DBIDRef> {
+public class WrappedKNNDBIDByLookup<O> implements KNNSearcher<DBIDRef>, BatchKNNSearcher {
   /**
    * Data relation.
    */
@@ -60,6 +68,18 @@ public class WrappedKNNDBIDByLookup<O> implements KNNSearcher<DBIDRef> {
     return inner.getKNN(relation.get(id), k);
   }
 
+  @Override
+  public List<KNNList> getKNNBatch(ArrayDBIDs ids, int k) {
+    if(inner instanceof BatchKNNSearcher) {
+      return ((BatchKNNSearcher) inner).getKNNBatch(ids, k);
+    }
+    List<KNNList> result = new ArrayList<>(ids.size());
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      result.add(inner.getKNN(relation.get(it), k));
+    }
+    return result;
+  }
+
   /**
    * Linear scan searcher.
    * 
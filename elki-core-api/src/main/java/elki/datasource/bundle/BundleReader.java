@@ -21,6 +21,7 @@
 package elki.datasource.bundle;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -35,7 +36,9 @@ import elki.utilities.io.ByteBufferSerializer;
 /**
  * Read an ELKI bundle file into a data stream.
  * <p>
- * TODO: resize buffer when necessary?
+ * Files are mapped in segments of at most 1 GB, because a single mapping is
+ * limited to 2 GB. Whenever a record crosses the end of a segment, the file is
+ * remapped starting at this record.
  * 
  * @author Erich Schubert
  * @since 0.5.5
@@ -49,6 +52,11 @@ public class BundleReader implements BundleStreamSource {
    */
   public static final int MAGIC = BundleWriter.MAGIC;
 
+  /**
+   * Default size of the mapped segments.
+   */
+  static final long SEGMENT_SIZE = 1L << 30;
+
   /**
    * The stream buffer.
    */
@@ -64,6 +72,16 @@ public class BundleReader implements BundleStreamSource {
    */
   FileChannel input = null;
 
+  /**
+   * Size of the mapped segments.
+   */
+  long segmentsize;
+
+  /**
+   * File position of the mapped segment, and size of the input file.
+   */
+  long position = 0, size;
+
   /**
    * Serializers to use.
    */
@@ -96,8 +114,20 @@ public class BundleReader implements BundleStreamSource {
    * @param input Input channel
    */
   public BundleReader(FileChannel input) {
+    this(input, SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param input Input channel
+   * @param segmentsize Size of the mapped segments, must be larger than any
+   *        record
+   */
+  BundleReader(FileChannel input, long segmentsize) {
     super();
     this.input = input;
+    this.segmentsize = segmentsize;
   }
 
   @Override
@@ -110,16 +140,32 @@ public class BundleReader implements BundleStreamSource {
   }
 
   /**
-   * Map the input file.
+   * Map the first segment of the input file.
    */
   void openBuffer() {
     if(buffer == null) {
       try {
-        buffer = input.map(MapMode.READ_ONLY, 0, input.size());
+        size = input.size();
       }
       catch(IOException e) {
         throw new AbortException("Cannot map input bundle.", e);
       }
+      mapSegment(0);
+    }
+  }
+
+  /**
+   * Map a segment of the input file.
+   *
+   * @param start File position to start at
+   */
+  private void mapSegment(long start) {
+    try {
+      position = start;
+      buffer = input.map(MapMode.READ_ONLY, start, Math.min(size - start, segmentsize));
+    }
+    catch(IOException e) {
+      throw new AbortException("Cannot map input bundle.", e);
     }
   }
 
@@ -161,6 +207,29 @@ public class BundleReader implements BundleStreamSource {
    * Read an object.
    */
   void readObject() {
+    final int start = buffer.position();
+    try {
+      readFields();
+    }
+    catch(BufferUnderflowException e) {
+      // The record crosses the end of the segment: remap and try again.
+      if(input == null || start == 0 || position + buffer.limit() >= size) {
+        throw new AbortException("Bundle file is truncated, or a record is larger than the segment size.", e);
+      }
+      mapSegment(position + start);
+      try {
+        readFields();
+      }
+      catch(BufferUnderflowException e2) {
+        throw new AbortException("Bundle file is truncated, or a record is larger than the segment size.", e2);
+      }
+    }
+  }
+
+  /**
+   * Read the fields of an object from the buffer.
+   */
+  private void readFields() {
     for(int i = 0; i < sers.length; ++i) {
       try {
         data[i] = sers[i].fromByteBuffer(buffer);
@@ -180,7 +249,7 @@ public class BundleReader implements BundleStreamSource {
     if(meta == null) {
       return Event.META_CHANGED;
     }
-    if(buffer != null && buffer.remaining() == 0) {
+    if(buffer != null && buffer.remaining() == 0 && (input == null || position + buffer.limit() >= size)) {
       buffer = null;
       return Event.END_OF_STREAM;
     }
@@ -0,0 +1,116 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.data;
+
+import java.nio.ByteBuffer;
+
+import elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Vector type that is a view on a range of a (shared) {@link ByteBuffer},
+ * storing the values as big-endian floats.
+ * <p>
+ * Single precision variant of {@link ByteBufferDoubleVector}, for files
+ * written with a {@link FloatVector} serializer.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class ByteBufferFloatVector extends FloatVector {
+  /**
+   * Shared data buffer.
+   */
+  private final ByteBuffer data;
+
+  /**
+   * Byte position of the first value.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Create a view on a buffer. The data is <em>not</em> copied.
+   *
+   * @param data Shared data buffer
+   * @param offset Byte position of the first value
+   * @param dim Dimensionality
+   */
+  public ByteBufferFloatVector(ByteBuffer data, int offset, int dim) {
+    super(null, true);
+    this.data = data;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public Float getValue(int dimension) {
+    assert dimension < dim;
+    return data.getFloat(offset + (dimension << 2));
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    assert dimension < dim;
+    return data.getFloat(offset + (dimension << 2));
+  }
+
+  @Override
+  public float floatValue(int dimension) {
+    assert dimension < dim;
+    return data.getFloat(offset + (dimension << 2));
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    assert dimension < dim;
+    return (long) data.getFloat(offset + (dimension << 2));
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] values = new double[dim];
+    for(int i = 0, j = offset; i < dim; i++, j += ByteArrayUtil.SIZE_FLOAT) {
+      values[i] = data.getFloat(j);
+    }
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      featureLine.append(data.getFloat(offset + (i << 2)));
+      if(i + 1 < dim) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+}
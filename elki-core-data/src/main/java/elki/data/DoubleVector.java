@@ -65,12 +65,12 @@ public class DoubleVector implements NumberVector {
   private final double[] values;
 
   /**
-   * Private constructor. NOT for public use.
+   * Constructor without copying, also used by subclasses. NOT for public use.
    *
    * @param values Values to use
    * @param nocopy Flag to not copy the array
    */
-  private DoubleVector(double[] values, boolean nocopy) {
+  protected DoubleVector(double[] values, boolean nocopy) {
     this.values = nocopy ? values : values.clone();
   }
 
@@ -219,17 +219,17 @@ public class DoubleVector implements NumberVector {
 
     @Override
     public void toByteBuffer(ByteBuffer buffer, DoubleVector vec) throws IOException {
-      assert (vec.values.length < Byte.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Byte.MAX_VALUE + "!";
-      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.values.length) : "Not enough space remaining in buffer to write " + vec.values.length + " doubles";
-      buffer.put((byte) vec.values.length);
-      for(int i = 0; i < vec.values.length; i++) {
-        buffer.putDouble(vec.values[i]);
+      assert (vec.getDimensionality() < Byte.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Byte.MAX_VALUE + "!";
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality()) : "Not enough space remaining in buffer to write " + vec.getDimensionality() + " doubles";
+      buffer.put((byte) vec.getDimensionality());
+      for(int i = 0; i < vec.getDimensionality(); i++) {
+        buffer.putDouble(vec.doubleValue(i));
       }
     }
 
     @Override
     public int getByteSize(DoubleVector vec) {
-      assert (vec.values.length < Byte.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Byte.MAX_VALUE + "!";
+      assert (vec.getDimensionality() < Byte.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Byte.MAX_VALUE + "!";
       return ByteArrayUtil.SIZE_BYTE + ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality();
     }
   }
@@ -258,17 +258,17 @@ public class DoubleVector implements NumberVector {
 
     @Override
     public void toByteBuffer(ByteBuffer buffer, DoubleVector vec) throws IOException {
-      assert (vec.values.length < Short.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Short.MAX_VALUE + "!";
-      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.values.length) : "Not enough space remaining in buffer to write " + vec.values.length + " doubles";
-      buffer.putShort((short) vec.values.length);
-      for(int i = 0; i < vec.values.length; i++) {
-        buffer.putDouble(vec.values[i]);
+      assert (vec.getDimensionality() < Short.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Short.MAX_VALUE + "!";
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality()) : "Not enough space remaining in buffer to write " + vec.getDimensionality() + " doubles";
+      buffer.putShort((short) vec.getDimensionality());
+      for(int i = 0; i < vec.getDimensionality(); i++) {
+        buffer.putDouble(vec.doubleValue(i));
       }
     }
 
     @Override
     public int getByteSize(DoubleVector vec) {
-      assert (vec.values.length < Short.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Short.MAX_VALUE + "!";
+      assert (vec.getDimensionality() < Short.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Short.MAX_VALUE + "!";
       return ByteArrayUtil.SIZE_SHORT + ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality();
     }
   }
@@ -294,16 +294,16 @@ public class DoubleVector implements NumberVector {
 
     @Override
     public void toByteBuffer(ByteBuffer buffer, DoubleVector vec) throws IOException {
-      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.values.length) : "Not enough space remaining in buffer to write " + vec.values.length + " doubles";
-      ByteArrayUtil.writeUnsignedVarint(buffer, vec.values.length);
-      for(int i = 0; i < vec.values.length; i++) {
-        buffer.putDouble(vec.values[i]);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality()) : "Not enough space remaining in buffer to write " + vec.getDimensionality() + " doubles";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.getDimensionality());
+      for(int i = 0; i < vec.getDimensionality(); i++) {
+        buffer.putDouble(vec.doubleValue(i));
       }
     }
 
     @Override
     public int getByteSize(DoubleVector vec) {
-      return ByteArrayUtil.getUnsignedVarintSize(vec.values.length) + ByteArrayUtil.SIZE_DOUBLE * vec.values.length;
+      return ByteArrayUtil.getUnsignedVarintSize(vec.getDimensionality()) + ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality();
     }
   }
 }
@@ -0,0 +1,95 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.data;
+
+/**
+ * Double vector that is a view on a range of a (shared) {@code double[]}
+ * array.
+ * <p>
+ * This allows storing many vectors in a single packed array (without a
+ * separate array object per vector), while remaining a {@link DoubleVector}
+ * for all users of the data.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class PackedDoubleVector extends DoubleVector {
+  /**
+   * Offset of the first value.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Create a view on a packed array. The data is <em>not</em> copied.
+   *
+   * @param data Shared data array
+   * @param offset Offset of the first value
+   * @param dim Dimensionality
+   */
+  public PackedDoubleVector(double[] data, int offset, int dim) {
+    super(data, true);
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    assert dimension < dim;
+    return super.doubleValue(offset + dimension);
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    assert dimension < dim;
+    return super.longValue(offset + dimension);
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] values = new double[dim];
+    for(int i = 0; i < dim; i++) {
+      values[i] = super.doubleValue(offset + i);
+    }
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      featureLine.append(super.doubleValue(offset + i));
+      if(i + 1 < dim) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+}
@@ -229,6 +229,34 @@ public class CovarianceMatrix {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  /**
+   * Join the data of another covariance matrix builder, e.g., computed on a
+   * different partition of the data.
+   * 
+   * @param other Other covariance matrix builder
+   */
+  public void put(CovarianceMatrix other) {
+    assert (other.mean.length == mean.length);
+    final double ow = other.wsum, nwsum = wsum + ow;
+    if(ow <= 0.) {
+      return;
+    }
+    final double f = wsum * ow / nwsum;
+    for(int i = 0; i < mean.length; i++) {
+      nmea[i] = other.mean[i] - mean[i];
+    }
+    for(int i = 0; i < mean.length; i++) {
+      final double[] ei = elements[i], oi = other.elements[i];
+      for(int j = 0; j < mean.length; j++) {
+        ei[j] += oi[j] + f * nmea[i] * nmea[j];
+      }
+    }
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += nmea[i] * ow / nwsum;
+    }
+    wsum = nwsum;
+  }
+
   /**
    * Get the weight sum, to test whether the covariance matrix can be
    * materialized.
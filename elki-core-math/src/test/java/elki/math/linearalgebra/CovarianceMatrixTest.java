@@ -0,0 +1,59 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.math.linearalgebra;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test {@link CovarianceMatrix}.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class CovarianceMatrixTest {
+  @Test
+  public void testMerge() {
+    final int dim = 3;
+    CovarianceMatrix all = new CovarianceMatrix(dim);
+    CovarianceMatrix first = new CovarianceMatrix(dim), second = new CovarianceMatrix(dim);
+    Random r = new Random(0L);
+    double[] v = new double[dim];
+    for(int i = 0; i < 1000; i++) {
+      for(int d = 0; d < dim; d++) {
+        v[d] = r.nextDouble() * (d + 1) + (i < 300 ? d : -d);
+      }
+      all.put(v);
+      (i < 300 ? first : second).put(v);
+    }
+    first.put(second);
+    assertEquals("Weight", all.getWeight(), first.getWeight(), 0.);
+    assertArrayEquals("Mean", all.getMeanVector(), first.getMeanVector(), 1e-13);
+    double[][] ca = all.makeSampleMatrix(), cm = first.makeSampleMatrix();
+    for(int d = 0; d < dim; d++) {
+      assertArrayEquals("Covariance", ca[d], cm[d], 1e-13);
+    }
+  }
+}
@@ -25,7 +25,11 @@ import java.util.concurrent.*;
 /**
  * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
  * <p>
- * TODO: make configurable how many threads are used.
+ * For work-stealing execution, a {@link ForkJoinPool} with the same level of
+ * parallelism is available via {@link #invoke}.
+ * <p>
+ * The number of threads defaults to the number of available processors, and
+ * can be changed with {@link #setParallelism}.
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -46,6 +50,11 @@ public class ParallelCore {
    */
   private volatile ThreadPoolExecutor executor;
 
+  /**
+   * Fork-join pool for work-stealing tasks, created on demand.
+   */
+  private volatile ForkJoinPool forkjoin;
+
   /**
    * Number of connected submitters.
    */
@@ -54,7 +63,7 @@ public class ParallelCore {
   /**
    * Maximum number of processors to use.
    */
-  private int processors;
+  private volatile int processors;
 
   /**
    * Constructor.
@@ -82,6 +91,37 @@ public class ParallelCore {
     return executor != null ? executor.getMaximumPoolSize() : processors;
   }
 
+  /**
+   * Set the desired level of parallelism.
+   * <p>
+   * This is mostly useful for benchmarking and testing, and should not be
+   * called while tasks are running: the work-stealing pool is replaced.
+   *
+   * @param processors Number of threads to run in parallel, 0 for all
+   *        available processors
+   */
+  public synchronized void setParallelism(int processors) {
+    final int p = processors > 0 ? processors : ALL_PROCESSORS;
+    this.processors = p;
+    if(executor != null) {
+      // The core pool size must never exceed the maximum pool size.
+      final int core = connected > 0 ? p : 0;
+      if(p > executor.getMaximumPoolSize()) {
+        executor.setMaximumPoolSize(p);
+        executor.setCorePoolSize(core);
+      }
+      else {
+        executor.setCorePoolSize(core);
+        executor.setMaximumPoolSize(p);
+      }
+    }
+    ForkJoinPool pool = forkjoin;
+    forkjoin = null;
+    if(pool != null) {
+      pool.shutdown();
+    }
+  }
+
   /**
    * Submit a task to the executor core.
    * 
@@ -93,6 +133,27 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Run a fork-join task in the work-stealing pool, and wait for the result.
+   * <p>
+   * Idle threads of this pool terminate automatically, so no explicit
+   * connect/disconnect is necessary.
+   *
+   * @param task Task to run
+   * @return Task result
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    ForkJoinPool pool = forkjoin;
+    if(pool == null) {
+      synchronized(this) {
+        if((pool = forkjoin) == null) {
+          forkjoin = pool = new ForkJoinPool(processors);
+        }
+      }
+    }
+    return pool.invoke(task);
+  }
+
   /**
    * Connect to the executor.
    */
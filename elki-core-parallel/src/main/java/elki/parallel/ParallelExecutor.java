@@ -24,8 +24,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
@@ -37,6 +40,12 @@ import elki.parallel.variables.SharedVariable.Instance;
 
 /**
  * Class to run processors in parallel, on all available cores.
+ * <p>
+ * Two strategies are available: static partitioning into a fixed number of
+ * blocks, and a fork-join mode with adaptive splitting, where idle workers
+ * steal work from busy workers. The latter is preferable when the cost per
+ * object is skewed (e.g., kNN queries in dense regions). The default can be
+ * chosen with the system property {@code elki.parallel.workstealing}.
  *
  * TODO: add progress
  *
@@ -44,9 +53,15 @@ import elki.parallel.variables.SharedVariable.Instance;
  * @since 0.7.0
  *
  * @has - - - BlockArrayRunner
+ * @has - - - ForkJoinRunner
  * @assoc - - - ParallelCore
  */
 public final class ParallelExecutor {
+  /**
+   * Use work-stealing execution by default.
+   */
+  private static boolean workStealing = Boolean.parseBoolean(System.getProperty("elki.parallel.workstealing", "false"));
+
   /**
    * Private constructor. Static methods only.
    */
@@ -55,12 +70,47 @@ public final class ParallelExecutor {
   }
 
   /**
-   * Run a task on all available CPUs.
+   * Choose the default execution strategy used by
+   * {@link #run(DBIDs, Processor...)}.
+   *
+   * @param enable {@code true} to use fork-join work stealing, {@code false}
+   *        for static blocks.
+   */
+  public static void setWorkStealing(boolean enable) {
+    workStealing = enable;
+  }
+
+  /**
+   * Check whether work stealing is used by default.
+   *
+   * @return {@code true} when fork-join work stealing is used.
+   */
+  public static boolean isWorkStealing() {
+    return workStealing;
+  }
+
+  /**
+   * Run a task on all available CPUs, using the default strategy.
    *
    * @param ids IDs to process
    * @param procs Processors to run
    */
   public static void run(DBIDs ids, Processor... procs) {
+    if(workStealing) {
+      runWorkStealing(ids, procs);
+    }
+    else {
+      runBlocks(ids, procs);
+    }
+  }
+
+  /**
+   * Run a task on all available CPUs, using a fixed partitioning into blocks.
+   *
+   * @param ids IDs to process
+   * @param procs Processors to run
+   */
+  public static void runBlocks(DBIDs ids, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
     core.connect();
     try {
@@ -95,6 +145,119 @@ public final class ParallelExecutor {
     }
   }
 
+  /**
+   * Run a task on all available CPUs, using fork-join work stealing with
+   * adaptive splitting of the ID range.
+   * <p>
+   * Each worker thread uses its own processor and shared variable instances,
+   * as with {@link #runBlocks}, but the number of objects processed by each
+   * worker adapts to the actual load.
+   *
+   * @param ids IDs to process
+   * @param procs Processors to run
+   */
+  public static void runWorkStealing(DBIDs ids, Processor... procs) {
+    ParallelCore core = ParallelCore.getCore();
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size();
+    // Do not split below this size, to amortize the task overhead.
+    final int granularity = Math.max(1, size / (core.getParallelism() << 6));
+    ConcurrentHashMap<Thread, WorkerState> workers = new ConcurrentHashMap<>();
+    try {
+      core.invoke(new ForkJoinRunner(aids, 0, size, granularity, procs, workers));
+    }
+    catch(RuntimeException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    for(WorkerState worker : workers.values()) {
+      worker.cleanup();
+    }
+  }
+
+  /**
+   * Choose the number of blocks for {@link #runRanges} and
+   * {@link #runTriangleRanges}.
+   * <p>
+   * Small problems and single-core systems use a single block, i.e., are
+   * processed sequentially. Otherwise, we use four blocks per core to balance
+   * the load, but at most {@code max} blocks.
+   *
+   * @param work Amount of work (e.g., number of objects or distances)
+   * @param threshold Minimum amount of work for parallel processing
+   * @param max Maximum number of blocks
+   * @return Number of blocks, 1 for sequential processing
+   */
+  public static int numBlocks(long work, long threshold, int max) {
+    final int p = ParallelCore.getCore().getParallelism();
+    return work < threshold || p <= 1 || max <= 1 ? 1 : Math.min(p << 2, max);
+  }
+
+  /**
+   * Process the range {@code [0, n)} in consecutive blocks of about equal
+   * size. When there is more than one block, the blocks are processed in
+   * parallel, so the processor must only write to block-specific storage (or
+   * to distinct positions of an array).
+   *
+   * @param n Range size
+   * @param blocks Number of blocks
+   * @param proc Range processor
+   */
+  public static void runRanges(int n, int blocks, RangeProcessor proc) {
+    if(blocks <= 1) {
+      proc.process(0, 0, n);
+      return;
+    }
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(blocks);
+    for(int b = 0; b < blocks; b++) {
+      final int block = b, start = (int) (n * (long) b / blocks), end = (int) (n * (long) (b + 1) / blocks);
+      tasks.add(ForkJoinTask.adapt(() -> proc.process(block, start, end)));
+    }
+    ParallelCore.getCore().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+  }
+
+  /**
+   * Process the rows {@code [0, n)} of a triangular matrix, where row x has x
+   * entries, in blocks with about the same number of entries each. When there
+   * is more than one block, the blocks are processed in parallel.
+   *
+   * @param n Number of rows
+   * @param blocks Number of blocks
+   * @param proc Range processor
+   */
+  public static void runTriangleRanges(int n, int blocks, RangeProcessor proc) {
+    if(blocks <= 1) {
+      proc.process(0, 0, n);
+      return;
+    }
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(blocks);
+    for(int b = 0, start = 0; b < blocks; b++) {
+      // The first r rows have about r*r/2 entries.
+      final int block = b, s = start;
+      final int e = b + 1 < blocks ? (int) (n * Math.sqrt((b + 1) / (double) blocks)) : n;
+      tasks.add(ForkJoinTask.adapt(() -> proc.process(block, s, e)));
+      start = e;
+    }
+    ParallelCore.getCore().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+  }
+
+  /**
+   * Processor for a range of indexes, used by {@link #runRanges} and
+   * {@link #runTriangleRanges}.
+   *
+   * @author ELKI Development Team
+   */
+  @FunctionalInterface
+  public interface RangeProcessor {
+    /**
+     * Process a range of indexes.
+     *
+     * @param block Block number
+     * @param start First index
+     * @param end End index (exclusive)
+     */
+    void process(int block, int start, int end);
+  }
+
   /**
    * Run for an array part, without step size.
    *
@@ -172,4 +335,173 @@ public final class ParallelExecutor {
       return inst;
     }
   }
+
+  /**
+   * Recursive fork-join task over a range of an array.
+   * <p>
+   * The range is split in halves as long as it is larger than the granularity
+   * and the current worker does not already have enough queued tasks for
+   * others to steal ("lazy binary splitting").
+   *
+   * @author ELKI Development Team
+   *
+   * @has - - - WorkerState
+   */
+  protected static class ForkJoinRunner extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum number of queued tasks before we stop splitting.
+     */
+    private static final int SURPLUS = 3;
+
+    /**
+     * Array IDs to process
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Start position
+     */
+    private int start;
+
+    /**
+     * End position
+     */
+    private int end;
+
+    /**
+     * Minimum size to split.
+     */
+    private int granularity;
+
+    /**
+     * The processor masters that own the instances.
+     */
+    private Processor[] procs;
+
+    /**
+     * State of each worker thread.
+     */
+    private ConcurrentHashMap<Thread, WorkerState> workers;
+
+    /**
+     * Next forked sibling, for joining.
+     */
+    private ForkJoinRunner next;
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position
+     * @param granularity Minimum size to split
+     * @param procs Processors to run
+     * @param workers Per-thread worker states
+     */
+    protected ForkJoinRunner(ArrayDBIDs ids, int start, int end, int granularity, Processor[] procs, ConcurrentHashMap<Thread, WorkerState> workers) {
+      super();
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.granularity = granularity;
+      this.procs = procs;
+      this.workers = workers;
+    }
+
+    @Override
+    protected void compute() {
+      int s = start, e = end;
+      ForkJoinRunner pending = null;
+      while(e - s > granularity && getSurplusQueuedTaskCount() <= SURPLUS) {
+        final int mid = (s + e) >>> 1;
+        ForkJoinRunner right = new ForkJoinRunner(ids, mid, e, granularity, procs, workers);
+        right.next = pending;
+        right.fork();
+        pending = right;
+        e = mid;
+      }
+      workers.computeIfAbsent(Thread.currentThread(), t -> new WorkerState(procs)).process(ids, s, e);
+      for(; pending != null; pending = pending.next) {
+        pending.join();
+      }
+    }
+  }
+
+  /**
+   * Processor and variable instances of a single worker thread.
+   *
+   * @author ELKI Development Team
+   *
+   * @assoc - - - Processor
+   */
+  protected static class WorkerState implements Executor {
+    /**
+     * The processor masters that own the instances.
+     */
+    private Processor[] procs;
+
+    /**
+     * Processor instances.
+     */
+    private Processor.Instance[] instances;
+
+    /**
+     * Variables map.
+     */
+    private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param procs Processors to run
+     */
+    protected WorkerState(Processor[] procs) {
+      super();
+      this.procs = procs;
+      this.instances = new Processor.Instance[procs.length];
+      for(int i = 0; i < procs.length; i++) {
+        instances[i] = procs[i].instantiate(this);
+      }
+    }
+
+    /**
+     * Process a range of the array.
+     *
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position
+     */
+    protected void process(ArrayDBIDs ids, int start, int end) {
+      for(DBIDArrayIter iter = ids.iter().seek(start); iter.valid() && iter.getOffset() < end; iter.advance()) {
+        for(int i = 0; i < instances.length; i++) {
+          instances[i].map(iter);
+        }
+      }
+    }
+
+    /**
+     * Invoke the processor cleanup for all instances.
+     */
+    protected void cleanup() {
+      for(int i = 0; i < instances.length; i++) {
+        procs[i].cleanup(instances[i]);
+      }
+    }
+
+    @Override
+    public <I extends Instance<?>> I getInstance(SharedVariable<I> parent) {
+      @SuppressWarnings("unchecked")
+      I inst = (I) variables.get(parent);
+      if(inst == null) {
+        inst = parent.instantiate();
+        variables.put(parent, inst);
+      }
+      return inst;
+    }
+  }
 }
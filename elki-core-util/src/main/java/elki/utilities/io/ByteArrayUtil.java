@@ -494,9 +494,10 @@ public final class ByteArrayUtil {
     CharsetDecoder decoder = charset.newDecoder();
 
     /**
-     * Constructor. Protected: use static instance!
+     * Constructor. Public for deserialization of bundle headers, otherwise
+     * use the static instance!
      */
-    private StringSerializer() {
+    public StringSerializer() {
       super();
     }
 
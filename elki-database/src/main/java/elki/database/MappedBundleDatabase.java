@@ -0,0 +1,436 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import elki.data.ByteBufferDoubleVector;
+import elki.data.ByteBufferFloatVector;
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeInformationSerializer;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.DBID;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.AbstractMappedVectorRelation;
+import elki.database.relation.DBIDView;
+import elki.database.relation.MappedDoubleVectorRelation;
+import elki.database.relation.MappedFloatVectorRelation;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.Relation;
+import elki.datasource.bundle.BundleReader;
+import elki.datasource.bundle.BundleWriter;
+import elki.index.Index;
+import elki.index.IndexFactory;
+import elki.logging.Logging;
+import elki.logging.statistics.Duration;
+import elki.result.Metadata;
+import elki.utilities.documentation.Description;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.ByteArrayUtil;
+import elki.utilities.io.ByteBufferSerializer;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.FileParameter;
+import elki.utilities.optionhandling.parameters.ObjectListParameter;
+
+/**
+ * Static database that memory-maps a bundle file written by
+ * {@link BundleWriter}, and serves dense vectors directly from the mapping
+ * instead of loading them onto the Java heap.
+ * <p>
+ * Vector columns of fixed dimensionality written with one of the
+ * {@link DoubleVector} or {@link FloatVector} serializers are served as
+ * {@link ByteBufferDoubleVector} or {@link ByteBufferFloatVector} views into
+ * the mapped file; the operating system pages the data in and out as needed.
+ * This allows processing data sets larger than the Java heap, and repeated
+ * runs on the same file benefit from the operating system file cache.
+ * <p>
+ * If the bundle only contains such vector columns, all records have the same
+ * size and the database opens without reading the data. Otherwise, the file
+ * is scanned once to locate the vectors, and all other columns (e.g., labels)
+ * are loaded into memory. Object IDs stored in the bundle are not used; the
+ * database always assigns a static range of DBIDs. Filters are not supported;
+ * apply them before writing the bundle.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @composed - - - AbstractMappedVectorRelation
+ * @assoc - reads - BundleWriter
+ */
+@Description("Database serving dense vectors directly from a memory-mapped bundle file.")
+public class MappedBundleDatabase extends AbstractDatabase {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedBundleDatabase.class);
+
+  /**
+   * Overlap of segments, to allow records to cross segment boundaries.
+   */
+  private static final int SEGMENT_OVERLAP = 1 << 20;
+
+  /**
+   * Bundle file to map.
+   */
+  private Path file;
+
+  /**
+   * IDs of this database
+   */
+  private DBIDRange ids;
+
+  /**
+   * The DBID representation we use
+   */
+  private DBIDView idrep;
+
+  /**
+   * Constructor.
+   *
+   * @param file Bundle file to map
+   * @param indexFactories Indexes to add
+   */
+  public MappedBundleDatabase(Path file, Collection<? extends IndexFactory<?>> indexFactories) {
+    super();
+    this.file = file;
+    if(indexFactories != null) {
+      this.indexFactories.addAll(indexFactories);
+    }
+  }
+
+  @Override
+  public void initialize() {
+    if(file == null) {
+      return; // Supposedly we initialized already.
+    }
+    try (FileChannel channel = FileChannel.open(file)) {
+      map(channel);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error mapping bundle file " + file, e);
+    }
+    // Run at most once.
+    file = null;
+    // fire insertion event
+    eventManager.fireObjectsInserted(ids);
+  }
+
+  /**
+   * Map the bundle file and build the relations.
+   *
+   * @param channel Input channel
+   * @throws IOException on IO errors
+   */
+  private void map(FileChannel channel) throws IOException {
+    final long size = channel.size();
+    // Read the header, see BundleReader.
+    ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, Math.min(size, 1L << AbstractMappedVectorRelation.SEGMENT_BITS));
+    if(header.getInt() != BundleReader.MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int numcol = header.getInt();
+    SimpleTypeInformation<?>[] types = new SimpleTypeInformation<?>[numcol];
+    ByteBufferSerializer<?>[] sers = new ByteBufferSerializer<?>[numcol];
+    for(int i = 0; i < numcol; i++) {
+      try {
+        types[i] = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(header);
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+      }
+      sers[i] = types[i].getSerializer();
+    }
+    final boolean hasids = numcol > 0 && DBID.class.isAssignableFrom(types[0].getRestrictionClass());
+    final long start = header.position();
+
+    // Find the columns we can serve from the mapping.
+    int[] prefix = new int[numcol], width = new int[numcol];
+    boolean fixed = !hasids;
+    long stride = 0, maxvec = 0;
+    for(int i = hasids ? 1 : 0; i < numcol; i++) {
+      prefix[i] = prefixSize(types[i]);
+      if(prefix[i] < 0) {
+        fixed = false;
+        continue;
+      }
+      width[i] = valueSize(sers[i]);
+      final long vsize = width[i] * (long) ((VectorFieldTypeInformation<?>) types[i]).getDimensionality();
+      stride += prefix[i] + vsize;
+      maxvec = Math.max(maxvec, vsize);
+    }
+    ByteBuffer[] segments = mapSegments(channel, size, (int) Math.max(maxvec, fixed ? 0 : SEGMENT_OVERLAP));
+
+    if(fixed) {
+      if(stride == 0 || (size - start) % stride != 0) {
+        throw new AbortException("File size does not match the record layout of the bundle.");
+      }
+      final long n = (size - start) / stride;
+      if(n > Integer.MAX_VALUE) {
+        throw new AbortException("Too many objects in bundle: " + n);
+      }
+      ids = DBIDUtil.generateStaticDBIDRange((int) n);
+      addIDView();
+      for(int i = 0, off = 0; i < numcol; i++) {
+        final VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) types[i];
+        final int dim = type.getDimensionality();
+        addRelation(width[i] == ByteArrayUtil.SIZE_FLOAT ? //
+            new MappedFloatVectorRelation(null, dim, getLabels(type), ids, segments, start + off + prefix[i], stride) : //
+            new MappedDoubleVectorRelation(null, dim, getLabels(type), ids, segments, start + off + prefix[i], stride));
+        off += prefix[i] + width[i] * dim;
+      }
+      return;
+    }
+
+    // Scan the file once to locate the vectors and load other columns.
+    long[][] positions = new long[numcol][];
+    @SuppressWarnings("unchecked")
+    List<Object>[] objects = (List<Object>[]) new List<?>[numcol];
+    for(int i = hasids ? 1 : 0; i < numcol; i++) {
+      if(prefix[i] >= 0) {
+        positions[i] = new long[1024];
+      }
+      else {
+        objects[i] = new ArrayList<>();
+      }
+    }
+    int n = 0;
+    try {
+      for(long pos = start; pos < size; n++) {
+        final int seg = (int) (pos >>> AbstractMappedVectorRelation.SEGMENT_BITS);
+        final long segstart = ((long) seg) << AbstractMappedVectorRelation.SEGMENT_BITS;
+        final ByteBuffer buffer = segments[seg].duplicate();
+        buffer.position((int) (pos - segstart));
+        for(int i = 0; i < numcol; i++) {
+          if(positions[i] != null) {
+            if(n == positions[i].length) {
+              positions[i] = Arrays.copyOf(positions[i], n + (n >>> 1));
+            }
+            final int vstart = buffer.position() + prefix[i];
+            positions[i][n] = segstart + vstart;
+            buffer.position(vstart + width[i] * ((VectorFieldTypeInformation<?>) types[i]).getDimensionality());
+          }
+          else if(objects[i] != null) {
+            objects[i].add(sers[i].fromByteBuffer(buffer));
+          }
+          else {
+            sers[i].fromByteBuffer(buffer); // Skip stored DBID
+          }
+        }
+        pos = segstart + buffer.position();
+      }
+    }
+    catch(BufferUnderflowException | IllegalArgumentException e) {
+      throw new AbortException("Bundle file is truncated, or a record is larger than the segment overlap.", e);
+    }
+    ids = DBIDUtil.generateStaticDBIDRange(n);
+    addIDView();
+    DBIDArrayIter it = ids.iter();
+    for(int i = hasids ? 1 : 0; i < numcol; i++) {
+      if(positions[i] != null) {
+        final VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) types[i];
+        final int dim = type.getDimensionality();
+        addRelation(width[i] == ByteArrayUtil.SIZE_FLOAT ? //
+            new MappedFloatVectorRelation(null, dim, getLabels(type), ids, segments, positions[i]) : //
+            new MappedDoubleVectorRelation(null, dim, getLabels(type), ids, segments, positions[i]));
+        positions[i] = null;
+        continue;
+      }
+      @SuppressWarnings("unchecked")
+      SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) types[i];
+      WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+      for(it.seek(0); it.valid(); it.advance()) {
+        store.put(it, objects[i].get(it.getOffset()));
+      }
+      objects[i] = null;
+      addRelation(new MaterializedRelation<>(null, ometa, ids, store));
+    }
+  }
+
+  /**
+   * Map the file in overlapping segments.
+   *
+   * @param channel Input channel
+   * @param size File size
+   * @param overlap Overlap of segments
+   * @return Mapped segments
+   * @throws IOException on IO errors
+   */
+  private static ByteBuffer[] mapSegments(FileChannel channel, long size, int overlap) throws IOException {
+    final long segsize = 1L << AbstractMappedVectorRelation.SEGMENT_BITS;
+    ByteBuffer[] segments = new ByteBuffer[(int) Math.max(1, (size + segsize - 1) >>> AbstractMappedVectorRelation.SEGMENT_BITS)];
+    for(int i = 0; i < segments.length; i++) {
+      final long begin = i * segsize;
+      segments[i] = channel.map(MapMode.READ_ONLY, begin, Math.min(size - begin, segsize + overlap));
+    }
+    return segments;
+  }
+
+  /**
+   * Size of the dimensionality prefix of vectors of the given type.
+   *
+   * @param type Column type
+   * @return Prefix size, or -1 if the column cannot be served from the mapping
+   */
+  private static int prefixSize(SimpleTypeInformation<?> type) {
+    if(!(type instanceof VectorFieldTypeInformation)) {
+      return -1;
+    }
+    VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    ByteBufferSerializer<?> ser = vtype.getSerializer();
+    // Vectors larger than the segment overlap cannot be mapped.
+    if(vtype.mindim() != vtype.maxdim() || vtype.getDimensionality() > (SEGMENT_OVERLAP >>> 3)) {
+      return -1;
+    }
+    if(ser instanceof DoubleVector.SmallSerializer || ser instanceof FloatVector.SmallSerializer) {
+      return ByteArrayUtil.SIZE_BYTE;
+    }
+    if(ser instanceof DoubleVector.ShortSerializer || ser instanceof FloatVector.ShortSerializer) {
+      return ByteArrayUtil.SIZE_SHORT;
+    }
+    if(ser instanceof DoubleVector.VariableSerializer || ser instanceof FloatVector.VariableSerializer) {
+      return ByteArrayUtil.getUnsignedVarintSize(vtype.getDimensionality());
+    }
+    return -1;
+  }
+
+  /**
+   * Size of a single value written by a vector serializer.
+   *
+   * @param ser Serializer
+   * @return Value size
+   */
+  private static int valueSize(ByteBufferSerializer<?> ser) {
+    return ser instanceof FloatVector.SmallSerializer || ser instanceof FloatVector.ShortSerializer //
+        || ser instanceof FloatVector.VariableSerializer ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE;
+  }
+
+  /**
+   * Get the column labels of a vector type.
+   *
+   * @param type Vector type
+   * @return Labels, or {@code null}
+   */
+  private static String[] getLabels(VectorFieldTypeInformation<?> type) {
+    final int dim = type.getDimensionality();
+    String[] labels = new String[dim];
+    boolean haslabels = false;
+    for(int d = 0; d < dim; d++) {
+      haslabels |= (labels[d] = type.getLabel(d)) != null;
+    }
+    return haslabels ? labels : null;
+  }
+
+  /**
+   * Add the DBID relation.
+   */
+  private void addIDView() {
+    this.idrep = new DBIDView(this.ids);
+    relations.add(this.idrep);
+    Metadata.hierarchyOf(this).addChild(idrep);
+  }
+
+  /**
+   * Add a relation, and instantiate the matching indexes.
+   *
+   * @param relation New relation
+   */
+  private void addRelation(Relation<?> relation) {
+    relations.add(relation);
+    Metadata.hierarchyOf(this).addChild(relation);
+
+    // Try to add indexes where appropriate
+    for(IndexFactory<?> factory : indexFactories) {
+      if(factory.getInputTypeRestriction().isAssignableFromType(relation.getDataTypeInformation())) {
+        @SuppressWarnings("unchecked")
+        final IndexFactory<Object> ofact = (IndexFactory<Object>) factory;
+        @SuppressWarnings("unchecked")
+        final Relation<Object> orep = (Relation<Object>) relation;
+        final Index index = ofact.instantiate(orep);
+        Duration duration = LOG.isStatistics() ? LOG.newDuration(index.getClass().getName() + ".construction").begin() : null;
+        index.initialize();
+        if(duration != null) {
+          LOG.statistics(duration.end());
+        }
+        Metadata.hierarchyOf(relation).addChild(index);
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author ELKI Development Team
+   */
+  public static class Par extends AbstractDatabase.Par {
+    /**
+     * Option to specify the bundle file to map.
+     */
+    public static final OptionID BUNDLE_ID = new OptionID("db.bundle", "Bundle file to memory-map.");
+
+    /**
+     * Bundle file to map.
+     */
+    protected Path file;
+
+    /**
+     * Indexes to add.
+     */
+    private Collection<? extends IndexFactory<?>> indexFactories;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new FileParameter(BUNDLE_ID, FileParameter.FileType.INPUT_FILE) //
+          .grab(config, x -> file = Paths.get(x));
+      new ObjectListParameter<IndexFactory<?>>(INDEX_ID, IndexFactory.class) //
+          .setOptional(true) //
+          .grab(config, x -> indexFactories = x);
+    }
+
+    @Override
+    public MappedBundleDatabase make() {
+      return new MappedBundleDatabase(file, indexFactories);
+    }
+  }
+}
@@ -22,16 +22,24 @@ package elki.database;
 
 import java.util.Collection;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
+import elki.data.NumberVector;
 import elki.data.type.SimpleTypeInformation;
+import elki.data.type.VectorFieldTypeInformation;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDataStore;
 import elki.database.ids.ArrayStaticDBIDs;
 import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRange;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
+import elki.database.relation.AbstractPackedVectorRelation;
 import elki.database.relation.DBIDView;
 import elki.database.relation.MaterializedRelation;
+import elki.database.relation.PackedDoubleVectorRelation;
+import elki.database.relation.PackedFloatVectorRelation;
 import elki.database.relation.Relation;
 import elki.datasource.DatabaseConnection;
 import elki.datasource.FileBasedDatabaseConnection;
@@ -42,7 +50,9 @@ import elki.logging.Logging;
 import elki.logging.statistics.Duration;
 import elki.result.Metadata;
 import elki.utilities.documentation.Description;
+import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
 import elki.utilities.optionhandling.parameters.ObjectListParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -50,6 +60,10 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * This database class uses array-based storage and thus does not allow for
  * dynamic insert, delete and update operations. However, array access is
  * expected to be faster and use less memory.
+ * <p>
+ * Dense double and float vectors of fixed dimensionality can optionally be
+ * stored in packed primitive arrays (see {@link VectorStorage}), which avoids
+ * the overhead of one array per vector, and keeps the data contiguous.
  *
  * @author Arthur Zimek
  * @author Erich Schubert
@@ -81,6 +95,33 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Storage layout for dense numerical vectors.
+   */
+  protected VectorStorage vectorStorage;
+
+  /**
+   * Storage layout for dense numerical vectors.
+   *
+   * @author ELKI Development Team
+   */
+  public enum VectorStorage {
+    /**
+     * One object per vector, as produced by the parser.
+     */
+    OBJECTS,
+    /**
+     * Packed arrays of double precision values, for {@link DoubleVector}
+     * columns.
+     */
+    PACKED_DOUBLE,
+    /**
+     * Packed arrays of single precision values, for {@link FloatVector} and
+     * {@link DoubleVector} columns (with reduced precision).
+     */
+    PACKED_FLOAT,
+  }
+
   /**
    * Constructor.
    *
@@ -88,8 +129,20 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<? extends IndexFactory<?>> indexFactories) {
+    this(databaseConnection, indexFactories, VectorStorage.OBJECTS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param vectorStorage Storage layout for dense numerical vectors
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<? extends IndexFactory<?>> indexFactories, VectorStorage vectorStorage) {
     super();
     this.databaseConnection = databaseConnection;
+    this.vectorStorage = vectorStorage;
     this.ids = null;
     this.idrep = null;
 
@@ -150,11 +203,24 @@ public class StaticArrayDatabase extends AbstractDatabase {
       SimpleTypeInformation<?> meta = bundle.meta(i);
       @SuppressWarnings("unchecked")
       SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-      WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-      for(it.seek(0); it.valid(); it.advance()) {
-        store.put(it, bundle.data(it.getOffset(), i));
+      Relation<?> relation;
+      if(canPack(meta)) {
+        AbstractPackedVectorRelation<?> packed = makePacked((VectorFieldTypeInformation<?>) meta);
+        for(it.seek(0); it.valid(); it.advance()) {
+          packed.set(it, (NumberVector) bundle.data(it.getOffset(), i));
+        }
+        relation = packed;
+        @SuppressWarnings("unchecked")
+        SimpleTypeInformation<Object> pmeta = (SimpleTypeInformation<Object>) packed.getDataTypeInformation();
+        ometa = pmeta;
+      }
+      else {
+        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+        for(it.seek(0); it.valid(); it.advance()) {
+          store.put(it, bundle.data(it.getOffset(), i));
+        }
+        relation = new MaterializedRelation<>(null, ometa, ids, store);
       }
-      Relation<?> relation = new MaterializedRelation<>(null, ometa, ids, store);
       relations.add(relation);
       Metadata.hierarchyOf(this).addChild(relation);
 
@@ -180,6 +246,51 @@ public class StaticArrayDatabase extends AbstractDatabase {
     eventManager.fireObjectsInserted(ids);
   }
 
+  /**
+   * Test whether a column can be stored in packed form.
+   *
+   * @param meta Column type
+   * @return {@code true} for vectors of the packed type and fixed
+   *         dimensionality
+   */
+  private boolean canPack(SimpleTypeInformation<?> meta) {
+    if(vectorStorage == VectorStorage.OBJECTS || !(ids instanceof DBIDRange) || !(meta instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    Class<?> cls = vmeta.getRestrictionClass();
+    if(vmeta.mindim() != vmeta.maxdim() || !(cls == DoubleVector.class || //
+        (vectorStorage == VectorStorage.PACKED_FLOAT && cls == FloatVector.class))) {
+      if(NumberVector.class.isAssignableFrom(cls)) {
+        LOG.verbose("Not packing column of type " + vmeta + ", storing objects.");
+      }
+      return false;
+    }
+    if(vectorStorage == VectorStorage.PACKED_FLOAT && cls == DoubleVector.class) {
+      LOG.verbose("Packing double precision column of type " + vmeta + " with single precision.");
+    }
+    return true;
+  }
+
+  /**
+   * Make a packed relation for a vector column.
+   *
+   * @param meta Column type
+   * @return Empty relation
+   */
+  private AbstractPackedVectorRelation<?> makePacked(VectorFieldTypeInformation<?> meta) {
+    final int dim = meta.getDimensionality();
+    String[] labels = new String[dim];
+    boolean haslabels = false;
+    for(int d = 0; d < dim; d++) {
+      haslabels |= (labels[d] = meta.getLabel(d)) != null;
+    }
+    labels = haslabels ? labels : null;
+    return vectorStorage == VectorStorage.PACKED_FLOAT ? //
+        new PackedFloatVectorRelation(null, dim, labels, (DBIDRange) ids) : //
+        new PackedDoubleVectorRelation(null, dim, labels, (DBIDRange) ids);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -191,6 +302,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @author Erich Schubert
    */
   public static class Par extends AbstractDatabase.Par {
+    /**
+     * Option to choose the storage layout of dense vectors.
+     */
+    public static final OptionID VECTOR_STORAGE_ID = new OptionID("db.vectors", "Storage layout for dense double and float vectors: one object per vector, or packed arrays with double or single precision. Other vector types are stored as objects.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
@@ -201,6 +317,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<? extends IndexFactory<?>> indexFactories;
 
+    /**
+     * Storage layout for dense numerical vectors.
+     */
+    protected VectorStorage vectorStorage = VectorStorage.OBJECTS;
+
     @Override
     public void configure(Parameterization config) {
       super.configure(config);
@@ -211,11 +332,13 @@ public class StaticArrayDatabase extends AbstractDatabase {
       new ObjectListParameter<IndexFactory<?>>(INDEX_ID, IndexFactory.class) //
           .setOptional(true) //
           .grab(config, x -> indexFactories = x);
+      new EnumParameter<VectorStorage>(VECTOR_STORAGE_ID, VectorStorage.class, VectorStorage.OBJECTS) //
+          .grab(config, x -> vectorStorage = x);
     }
 
     @Override
     public StaticArrayDatabase make() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, vectorStorage);
     }
   }
 }
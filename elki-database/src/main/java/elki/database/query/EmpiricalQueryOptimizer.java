@@ -305,6 +305,9 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   private <O> DistancePriorityIndex<O> makeMatrixIndex(Relation<? extends O> relation, Distance<? super O> distance) {
     // TODO: make sure there is not matrix already!
+    // The matrix is stored off-heap, and the direct memory limit defaults to
+    // the heap size, so the heap size is only a rough guide. Hence we only
+    // add automatic matrixes up to a fixed size.
     if(matrixIndex == null || relation.size() > 65536) {
       return null;
     }
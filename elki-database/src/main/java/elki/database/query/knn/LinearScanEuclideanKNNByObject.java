@@ -20,6 +20,8 @@
  */
 package elki.database.query.knn;
 
+import java.util.List;
+
 import elki.data.NumberVector;
 import elki.database.ids.*;
 import elki.database.query.distance.PrimitiveDistanceQuery;
@@ -67,4 +69,9 @@ public class LinearScanEuclideanKNNByObject<O extends NumberVector> extends Line
     }
     return heap.toKNNListSqrt();
   }
+
+  @Override
+  public List<KNNList> getKNNBatch(ArrayDBIDs ids, int k) {
+    return linearScanBatch(SquaredEuclideanDistance.STATIC, ids, k, true);
+  }
 }
@@ -20,12 +20,18 @@
  */
 package elki.database.query.knn;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import elki.database.ids.*;
 import elki.database.query.LinearScanQuery;
 import elki.database.query.distance.DistanceQuery;
 
 /**
  * Instance of this query for a particular database.
+ * <p>
+ * Batches of queries are processed by blocks of the data, such that each block
+ * of data objects is compared to all queries before moving on.
  *
  * @author Erich Schubert
  * @since 0.4.0
@@ -34,7 +40,12 @@ import elki.database.query.distance.DistanceQuery;
  * 
  * @param <O> relation object type
  */
-public class LinearScanKNNByDBID<O> implements KNNSearcher<DBIDRef>, LinearScanQuery {
+public class LinearScanKNNByDBID<O> implements KNNSearcher<DBIDRef>, BatchKNNSearcher, LinearScanQuery {
+  /**
+   * Number of data objects processed together in a block.
+   */
+  private static final int BLOCKSIZE = 256;
+
   /**
    * Hold the distance function to be used.
    */
@@ -61,4 +72,39 @@ public class LinearScanKNNByDBID<O> implements KNNSearcher<DBIDRef>, LinearScanQ
     }
     return heap.toKNNList();
   }
+
+  @Override
+  public List<KNNList> getKNNBatch(ArrayDBIDs ids, int k) {
+    final DistanceQuery<O> dq = distanceQuery;
+    final int size = ids.size();
+    final KNNHeap[] heaps = new KNNHeap[size];
+    final double[] max = new double[size];
+    for(int j = 0; j < size; j++) {
+      heaps[j] = DBIDUtil.newHeap(k);
+      max[j] = Double.POSITIVE_INFINITY;
+    }
+    final ArrayDBIDs data = DBIDUtil.ensureArray(dq.getRelation().getDBIDs());
+    final int n = data.size();
+    DBIDArrayIter qi = ids.iter(), di = data.iter();
+    // Compare each block of data objects to all queries
+    for(int start = 0; start < n; start += BLOCKSIZE) {
+      final int end = Math.min(start + BLOCKSIZE, n);
+      for(qi.seek(0); qi.valid(); qi.advance()) {
+        final int j = qi.getOffset();
+        final KNNHeap heap = heaps[j];
+        double m = max[j];
+        for(di.seek(start); di.getOffset() < end; di.advance()) {
+          final double dist = dq.distance(qi, di);
+          m = dist <= m ? heap.insert(dist, di) : m;
+        }
+        max[j] = m;
+      }
+    }
+    List<KNNList> result = new ArrayList<>(size);
+    for(int j = 0; j < size; j++) {
+      result.add(heaps[j].toKNNList());
+      heaps[j] = null;
+    }
+    return result;
+  }
 }
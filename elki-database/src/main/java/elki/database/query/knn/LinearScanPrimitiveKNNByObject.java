@@ -20,6 +20,9 @@
  */
 package elki.database.query.knn;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import elki.database.ids.*;
 import elki.database.query.LinearScanQuery;
 import elki.database.query.distance.PrimitiveDistanceQuery;
@@ -31,6 +34,9 @@ import elki.distance.PrimitiveDistance;
  * <p>
  * This is a subtle optimization: for primitive queries, it is clearly faster to
  * retrieve the query object from the relation only once!
+ * <p>
+ * Batches of queries are processed in blocks, so that each data object is
+ * retrieved only once per block of queries.
  * 
  * @author Erich Schubert
  * @since 0.4.0
@@ -40,7 +46,12 @@ import elki.distance.PrimitiveDistance;
  * 
  * @param <O> relation object type
  */
-public class LinearScanPrimitiveKNNByObject<O> implements KNNSearcher<O>, LinearScanQuery {
+public class LinearScanPrimitiveKNNByObject<O> implements KNNSearcher<O>, BatchKNNSearcher, LinearScanQuery {
+  /**
+   * Number of queries processed together in a batch.
+   */
+  private static final int BLOCKSIZE = 64;
+
   /**
    * Unboxed distance function.
    */
@@ -74,4 +85,52 @@ public class LinearScanPrimitiveKNNByObject<O> implements KNNSearcher<O>, Linear
     }
     return heap.toKNNList();
   }
+
+  @Override
+  public List<KNNList> getKNNBatch(ArrayDBIDs ids, int k) {
+    return linearScanBatch(rawdist, ids, k, false);
+  }
+
+  /**
+   * Perform a linear scan for a batch of queries, in blocks of queries.
+   *
+   * @param dist Distance function
+   * @param ids Query points
+   * @param k Number of neighbors requested
+   * @param sqrt Take the square root of the resulting distances
+   * @return neighbors, in the same order as the query points
+   */
+  protected List<KNNList> linearScanBatch(PrimitiveDistance<? super O> dist, ArrayDBIDs ids, int k, boolean sqrt) {
+    final Relation<? extends O> relation = this.relation;
+    final int size = ids.size();
+    List<KNNList> result = new ArrayList<>(size);
+    @SuppressWarnings("unchecked")
+    final O[] queries = (O[]) new Object[Math.min(BLOCKSIZE, size)];
+    final KNNHeap[] heaps = new KNNHeap[queries.length];
+    final double[] max = new double[queries.length];
+    DBIDArrayIter qi = ids.iter();
+    for(int start = 0; start < size; start += BLOCKSIZE) {
+      final int b = Math.min(BLOCKSIZE, size - start);
+      for(int j = 0; j < b; j++) {
+        queries[j] = relation.get(qi.seek(start + j));
+        heaps[j] = DBIDUtil.newHeap(k);
+        max[j] = Double.POSITIVE_INFINITY;
+      }
+      // Retrieve each object once, and compare it to all queries in the block
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        final O obj = relation.get(iter);
+        for(int j = 0; j < b; j++) {
+          final double d = dist.distance(queries[j], obj);
+          if(d <= max[j]) {
+            max[j] = heaps[j].insert(d, iter);
+          }
+        }
+      }
+      for(int j = 0; j < b; j++) {
+        result.add(sqrt ? heaps[j].toKNNListSqrt() : heaps[j].toKNNList());
+        heaps[j] = null;
+      }
+    }
+    return result;
+  }
 }
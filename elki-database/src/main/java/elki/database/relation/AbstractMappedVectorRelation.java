@@ -0,0 +1,166 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import java.nio.ByteBuffer;
+
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+
+/**
+ * Base class for relations serving dense vectors of a fixed dimensionality
+ * directly from (memory-mapped) byte buffers, without copying them onto the
+ * Java heap.
+ * <p>
+ * Because a single buffer is limited to 2 GB, the file is addressed in
+ * segments of 2<sup>30</sup> bytes. The segment containing the first value of
+ * a vector must also contain all remaining values, i.e., consecutive segments
+ * are expected to overlap by at least the size of one vector.
+ * <p>
+ * The position of each vector is either computed from a fixed record stride,
+ * or looked up in an array of positions.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @param <V> Vector type
+ */
+public abstract class AbstractMappedVectorRelation<V extends NumberVector> implements Relation<V> {
+  /**
+   * Number of bits for addressing within a segment.
+   */
+  public static final int SEGMENT_BITS = 30;
+
+  /**
+   * Mask for addressing within a segment.
+   */
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+  /**
+   * The DBIDs this is supposed to be defined for.
+   */
+  protected final DBIDRange ids;
+
+  /**
+   * Dimensionality.
+   */
+  protected final int dim;
+
+  /**
+   * Buffer segments.
+   */
+  private final ByteBuffer[] segments;
+
+  /**
+   * Position of the first vector, when using a fixed stride.
+   */
+  private final long base;
+
+  /**
+   * Record stride in bytes, when using a fixed stride.
+   */
+  private final long stride;
+
+  /**
+   * Positions of the vectors, or {@code null} when using a fixed stride.
+   */
+  private final long[] positions;
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<V> type;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   *
+   * @param name Relation name
+   * @param type Type information
+   * @param ids Object IDs
+   * @param segments Buffer segments
+   * @param base Position of the first vector
+   * @param stride Record stride in bytes
+   * @param positions Positions of each vector; overrides base and stride
+   */
+  protected AbstractMappedVectorRelation(String name, VectorFieldTypeInformation<V> type, DBIDRange ids, ByteBuffer[] segments, long base, long stride, long[] positions) {
+    super();
+    assert positions == null || positions.length >= ids.size();
+    this.name = name;
+    this.type = type;
+    this.ids = ids;
+    this.dim = type.getDimensionality();
+    this.segments = segments;
+    this.base = base;
+    this.stride = stride;
+    this.positions = positions;
+  }
+
+  /**
+   * Create a vector view.
+   *
+   * @param buffer Buffer segment
+   * @param offset Offset within the segment
+   * @return Vector
+   */
+  protected abstract V makeVector(ByteBuffer buffer, int offset);
+
+  @Override
+  public V get(DBIDRef id) {
+    final int off = ids.getOffset(id);
+    final long pos = positions != null ? positions[off] : base + off * stride;
+    return makeVector(segments[(int) (pos >>> SEGMENT_BITS)], (int) (pos & SEGMENT_MASK));
+  }
+
+  @Override
+  public SimpleTypeInformation<V> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public DBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return name != null ? name : type.toString();
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+
+/**
+ * Base class for relations storing dense vectors of a fixed dimensionality
+ * in packed primitive arrays, instead of one object per vector.
+ * <p>
+ * To stay below the Java array size limit, the rows are stored in chunks of
+ * at most 2<sup>30</sup> values each. Within a chunk, the values of each row
+ * are contiguous (row-major order).
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @param <V> Vector type
+ */
+public abstract class AbstractPackedVectorRelation<V extends NumberVector> implements Relation<V> {
+  /**
+   * Maximum number of values per chunk.
+   */
+  private static final int MAX_CHUNK_BITS = 30;
+
+  /**
+   * The DBIDs this is supposed to be defined for.
+   */
+  protected final DBIDRange ids;
+
+  /**
+   * Dimensionality.
+   */
+  protected final int dim;
+
+  /**
+   * Number of bits for addressing rows within a chunk.
+   */
+  protected final int shift;
+
+  /**
+   * Mask for addressing rows within a chunk.
+   */
+  protected final int mask;
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<V> type;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   *
+   * @param name Relation name
+   * @param type Type information
+   * @param ids Object IDs
+   */
+  public AbstractPackedVectorRelation(String name, VectorFieldTypeInformation<V> type, DBIDRange ids) {
+    super();
+    this.name = name;
+    this.type = type;
+    this.ids = ids;
+    this.dim = type.getDimensionality();
+    int s = MAX_CHUNK_BITS;
+    while(s > 0 && (((long) dim) << s) > (1L << MAX_CHUNK_BITS)) {
+      --s;
+    }
+    this.shift = s;
+    this.mask = (1 << s) - 1;
+  }
+
+  /**
+   * Number of chunks needed to store all rows.
+   *
+   * @return Number of chunks
+   */
+  protected int numChunks() {
+    return (int) ((ids.size() + (long) mask) >>> shift);
+  }
+
+  /**
+   * Number of values in a given chunk.
+   *
+   * @param chunk Chunk number
+   * @return Chunk size
+   */
+  protected int chunkSize(int chunk) {
+    return Math.min(ids.size() - (chunk << shift), 1 << shift) * dim;
+  }
+
+  /**
+   * Store a vector.
+   *
+   * @param id Object ID
+   * @param vec Vector
+   */
+  public abstract void set(DBIDRef id, NumberVector vec);
+
+  @Override
+  public SimpleTypeInformation<V> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public DBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return name != null ? name : type.toString();
+  }
+}
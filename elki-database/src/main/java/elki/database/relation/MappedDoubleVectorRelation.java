@@ -0,0 +1,74 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import java.nio.ByteBuffer;
+
+import elki.data.ByteBufferDoubleVector;
+import elki.data.DoubleVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDRange;
+
+/**
+ * Relation serving double precision vectors from (memory-mapped) byte
+ * buffers, as lightweight {@link ByteBufferDoubleVector} views, which are
+ * {@link DoubleVector}s.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @has - - - ByteBufferDoubleVector
+ */
+public class MappedDoubleVectorRelation extends AbstractMappedVectorRelation<DoubleVector> {
+  /**
+   * Constructor for records of a fixed size.
+   *
+   * @param name Relation name
+   * @param dim Dimensionality
+   * @param labels Column labels, may be {@code null}
+   * @param ids Object IDs
+   * @param segments Buffer segments
+   * @param base Position of the first vector
+   * @param stride Record stride in bytes
+   */
+  public MappedDoubleVectorRelation(String name, int dim, String[] labels, DBIDRange ids, ByteBuffer[] segments, long base, long stride) {
+    super(name, new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim, labels), ids, segments, base, stride, null);
+  }
+
+  /**
+   * Constructor for records of variable size.
+   *
+   * @param name Relation name
+   * @param dim Dimensionality
+   * @param labels Column labels, may be {@code null}
+   * @param ids Object IDs
+   * @param segments Buffer segments
+   * @param positions Position of each vector
+   */
+  public MappedDoubleVectorRelation(String name, int dim, String[] labels, DBIDRange ids, ByteBuffer[] segments, long[] positions) {
+    super(name, new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim, labels), ids, segments, 0, 0, positions);
+  }
+
+  @Override
+  protected DoubleVector makeVector(ByteBuffer buffer, int offset) {
+    return new ByteBufferDoubleVector(buffer, offset, dim);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.PackedDoubleVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+
+/**
+ * Relation storing dense vectors in packed {@code double[]} arrays, and
+ * returning {@link PackedDoubleVector} views, which are {@link DoubleVector}s.
+ * <p>
+ * This avoids the per-object overhead of separate arrays, and keeps the data
+ * contiguous in memory for linear scans. Views are created on demand, and are
+ * cheap short-lived objects.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @has - - - PackedDoubleVector
+ */
+public class PackedDoubleVectorRelation extends AbstractPackedVectorRelation<DoubleVector> {
+  /**
+   * Data storage.
+   */
+  private final double[][] data;
+
+  /**
+   * Constructor.
+   *
+   * @param name Relation name
+   * @param dim Dimensionality
+   * @param ids Object IDs
+   */
+  public PackedDoubleVectorRelation(String name, int dim, DBIDRange ids) {
+    this(name, dim, null, ids);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param name Relation name
+   * @param dim Dimensionality
+   * @param labels Column labels, may be {@code null}
+   * @param ids Object IDs
+   */
+  public PackedDoubleVectorRelation(String name, int dim, String[] labels, DBIDRange ids) {
+    super(name, new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim, labels), ids);
+    this.data = new double[numChunks()][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[chunkSize(i)];
+    }
+  }
+
+  @Override
+  public DoubleVector get(DBIDRef id) {
+    final int off = ids.getOffset(id);
+    return new PackedDoubleVector(data[off >>> shift], (off & mask) * dim, dim);
+  }
+
+  @Override
+  public void set(DBIDRef id, NumberVector vec) {
+    assert vec.getDimensionality() == dim;
+    final int off = ids.getOffset(id);
+    final double[] chunk = data[off >>> shift];
+    for(int i = 0, j = (off & mask) * dim; i < dim; i++, j++) {
+      chunk[j] = vec.doubleValue(i);
+    }
+  }
+}
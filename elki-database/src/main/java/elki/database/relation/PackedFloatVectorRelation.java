@@ -0,0 +1,92 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import elki.data.FloatVector;
+import elki.data.NumberVector;
+import elki.data.PackedFloatVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+
+/**
+ * Relation storing dense vectors in packed {@code float[]} arrays, and
+ * returning {@link PackedFloatVector} views, which are {@link FloatVector}s.
+ * <p>
+ * This avoids the per-object overhead of separate arrays, and keeps the data
+ * contiguous in memory for linear scans. Views are created on demand, and are
+ * cheap short-lived objects. Values are stored in single precision, which
+ * halves the memory again.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @has - - - PackedFloatVector
+ */
+public class PackedFloatVectorRelation extends AbstractPackedVectorRelation<FloatVector> {
+  /**
+   * Data storage.
+   */
+  private final float[][] data;
+
+  /**
+   * Constructor.
+   *
+   * @param name Relation name
+   * @param dim Dimensionality
+   * @param ids Object IDs
+   */
+  public PackedFloatVectorRelation(String name, int dim, DBIDRange ids) {
+    this(name, dim, null, ids);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param name Relation name
+   * @param dim Dimensionality
+   * @param labels Column labels, may be {@code null}
+   * @param ids Object IDs
+   */
+  public PackedFloatVectorRelation(String name, int dim, String[] labels, DBIDRange ids) {
+    super(name, new VectorFieldTypeInformation<>(FloatVector.FACTORY, dim, labels), ids);
+    this.data = new float[numChunks()][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new float[chunkSize(i)];
+    }
+  }
+
+  @Override
+  public FloatVector get(DBIDRef id) {
+    final int off = ids.getOffset(id);
+    return new PackedFloatVector(data[off >>> shift], (off & mask) * dim, dim);
+  }
+
+  @Override
+  public void set(DBIDRef id, NumberVector vec) {
+    assert vec.getDimensionality() == dim;
+    final int off = ids.getOffset(id);
+    final float[] chunk = data[off >>> shift];
+    for(int i = 0, j = (off & mask) * dim; i < dim; i++, j++) {
+      chunk[j] = vec.floatValue(i);
+    }
+  }
+}
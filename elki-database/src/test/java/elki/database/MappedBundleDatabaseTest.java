@@ -0,0 +1,195 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.ByteBufferDoubleVector;
+import elki.data.ByteBufferFloatVector;
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.MappedDoubleVectorRelation;
+import elki.database.relation.MappedFloatVectorRelation;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.datasource.bundle.BundleWriter;
+import elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Unit test for the memory-mapped bundle database.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class MappedBundleDatabaseTest {
+  @Test
+  public void testVectorsOnly() throws IOException {
+    double[][] data = makeData();
+    Path file = writeBundle(new ArrayAdapterDatabaseConnection(data).loadData());
+    try {
+      Database db = new MappedBundleDatabase(file, null);
+      db.initialize();
+      Relation<? extends NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+      assertTrue("Not mapped.", rel instanceof MappedDoubleVectorRelation);
+      assertEquals("Wrong size.", data.length, rel.size());
+      int i = 0;
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+        NumberVector v = rel.get(it);
+        assertTrue(v instanceof ByteBufferDoubleVector);
+        assertEquals("Wrong dimensionality.", data[i].length, v.getDimensionality());
+        for(int d = 0; d < data[i].length; d++) {
+          assertEquals("Value differs.", data[i][d], v.doubleValue(d), 0.);
+        }
+      }
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testDoubleVectorRequest() throws IOException {
+    double[][] data = makeData();
+    Path file = writeBundle(new ArrayAdapterDatabaseConnection(data).loadData());
+    try {
+      Database db = new MappedBundleDatabase(file, null);
+      db.initialize();
+      // Must be compatible with double vector requests
+      Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      assertTrue("Not mapped.", rel instanceof MappedDoubleVectorRelation);
+      int i = 0;
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+        DoubleVector v = rel.get(it);
+        assertArrayEquals("Value differs.", data[i], v.toArray(), 0.);
+      }
+      assertEquals("Not all objects seen.", data.length, i);
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testWithLabelsAndIDs() throws IOException {
+    double[][] data = makeData();
+    String[] labels = new String[data.length];
+    for(int i = 0; i < labels.length; i++) {
+      labels[i] = "obj" + i;
+    }
+    Path file = writeBundle(new ArrayAdapterDatabaseConnection(data, labels, 1000).loadData());
+    try {
+      Database db = new MappedBundleDatabase(file, null);
+      db.initialize();
+      Relation<? extends NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+      assertTrue("Not mapped.", rel instanceof MappedDoubleVectorRelation);
+      Relation<String> lrel = db.getRelation(TypeUtil.STRING);
+      assertEquals("Wrong size.", data.length, rel.size());
+      int i = 0;
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+        NumberVector v = rel.get(it);
+        for(int d = 0; d < data[i].length; d++) {
+          assertEquals("Value differs.", data[i][d], v.doubleValue(d), 0.);
+        }
+        assertEquals("Label differs.", labels[i], lrel.get(it));
+      }
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testFloat() throws IOException {
+    double[][] data = makeData();
+    List<FloatVector> vecs = new ArrayList<>(data.length);
+    for(double[] row : data) {
+      vecs.add(FloatVector.FACTORY.newNumberVector(row));
+    }
+    VectorFieldTypeInformation<FloatVector> type = new VectorFieldTypeInformation<>(FloatVector.FACTORY, data[0].length, FloatVector.SHORT_SERIALIZER);
+    Path file = writeBundle(MultipleObjectsBundle.makeSimple(type, vecs));
+    try {
+      Database db = new MappedBundleDatabase(file, null);
+      db.initialize();
+      // Must be compatible with float vector requests
+      Relation<FloatVector> rel = db.getRelation(TypeUtil.FLOAT_VECTOR_FIELD);
+      assertTrue("Not mapped.", rel instanceof MappedFloatVectorRelation);
+      int i = 0;
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+        FloatVector v = rel.get(it);
+        assertTrue(v instanceof ByteBufferFloatVector);
+        for(int d = 0; d < data[i].length; d++) {
+          assertEquals("Value differs.", (float) data[i][d], v.floatValue(d), 0.f);
+          assertEquals("Value differs.", (float) data[i][d], v.getValue(d).floatValue(), 0.f);
+        }
+      }
+      assertEquals("Not all objects seen.", data.length, i);
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+
+  /**
+   * Write a bundle to a temporary file.
+   *
+   * @param bundle Bundle
+   * @return File name
+   * @throws IOException on errors
+   */
+  private static Path writeBundle(MultipleObjectsBundle bundle) throws IOException {
+    Path file = Files.createTempFile("elki-test", ".bundle");
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+    }
+    return file;
+  }
+
+  /**
+   * Generate a random data set.
+   *
+   * @return Data
+   */
+  private static double[][] makeData() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[1000][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[] { rnd.nextDouble(), rnd.nextInt(100), rnd.nextGaussian(), rnd.nextInt(10) };
+    }
+    return data;
+  }
+}
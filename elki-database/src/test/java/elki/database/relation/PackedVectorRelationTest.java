@@ -0,0 +1,151 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
+import elki.data.IntegerVector;
+import elki.data.NumberVector;
+import elki.data.PackedDoubleVector;
+import elki.data.PackedFloatVector;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.StaticArrayDatabase.VectorStorage;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Unit test for the packed vector relations.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class PackedVectorRelationTest {
+  @Test
+  public void testPackedDouble() {
+    double[][] data = makeData();
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null, VectorStorage.PACKED_DOUBLE);
+    db.initialize();
+    // Must be compatible with double vector requests
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertTrue("Not packed.", rel instanceof PackedDoubleVectorRelation);
+    assertEquals("Wrong dimensionality.", 4, RelationUtil.dimensionality(rel));
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      DoubleVector v = rel.get(it);
+      assertTrue(v instanceof PackedDoubleVector);
+      for(int d = 0; d < data[i].length; d++) {
+        assertEquals("Value differs.", data[i][d], v.doubleValue(d), 0.);
+      }
+    }
+    assertEquals("Not all objects seen.", data.length, i);
+  }
+
+  @Test
+  public void testPackedFloat() {
+    double[][] data = makeData();
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null, VectorStorage.PACKED_FLOAT);
+    db.initialize();
+    // Must be compatible with float vector requests
+    Relation<FloatVector> rel = db.getRelation(TypeUtil.FLOAT_VECTOR_FIELD);
+    assertTrue("Not packed.", rel instanceof PackedFloatVectorRelation);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      FloatVector v = rel.get(it);
+      assertTrue(v instanceof PackedFloatVector);
+      for(int d = 0; d < data[i].length; d++) {
+        assertEquals("Value differs.", (float) data[i][d], v.floatValue(d), 0.f);
+      }
+    }
+    assertEquals("Not all objects seen.", data.length, i);
+  }
+
+  @Test
+  public void testOtherTypesNotPacked() {
+    double[][] data = makeData();
+    List<IntegerVector> vecs = new ArrayList<>(data.length);
+    for(double[] row : data) {
+      vecs.add(IntegerVector.STATIC.newNumberVector(row));
+    }
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(IntegerVector.STATIC, 4), vecs);
+    Database db = new StaticArrayDatabase(() -> bundle, null, VectorStorage.PACKED_FLOAT);
+    db.initialize();
+    // Integer vectors must not be converted to floats silently
+    Relation<IntegerVector> rel = db.getRelation(VectorFieldTypeInformation.typeRequest(IntegerVector.class));
+    assertFalse("Integer vectors packed.", rel instanceof AbstractPackedVectorRelation);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      assertTrue(rel.get(it) instanceof IntegerVector);
+    }
+    assertEquals("Not all objects seen.", data.length, i);
+  }
+
+  @Test
+  public void testChunking() {
+    // Large dimensionality, to force multiple chunks. Only the address
+    // computation is tested, without allocating the memory.
+    final int dim = 1 << 28;
+    AbstractPackedVectorRelation<FloatVector> rel = new AbstractPackedVectorRelation<FloatVector>(null, new VectorFieldTypeInformation<>(FloatVector.FACTORY, dim), DBIDUtil.generateStaticDBIDRange(7)) {
+      @Override
+      public FloatVector get(DBIDRef id) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void set(DBIDRef id, NumberVector vec) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    assertEquals("Wrong rows per chunk.", 2, rel.shift);
+    assertEquals("Wrong number of chunks.", 2, rel.numChunks());
+    assertEquals("Wrong chunk size.", 4 * dim, rel.chunkSize(0));
+    assertEquals("Wrong chunk size.", 3 * dim, rel.chunkSize(1));
+  }
+
+  /**
+   * Generate a random data set.
+   *
+   * @return Data
+   */
+  private static double[][] makeData() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[1000][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[] { rnd.nextDouble(), rnd.nextInt(100), rnd.nextGaussian(), rnd.nextInt(10) };
+    }
+    return data;
+  }
+}
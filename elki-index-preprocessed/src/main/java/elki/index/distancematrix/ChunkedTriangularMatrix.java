@@ -0,0 +1,173 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.distancematrix;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Strict lower triangle of a symmetric matrix, stored off-heap in chunks of
+ * direct buffers.
+ * <p>
+ * Position \(\tfrac{x(x-1)}{2}+y\) stores the value of \((x,y)\) for
+ * \(y&lt;x\), i.e., the rows are stored consecutively. Because the storage is
+ * split into chunks, it is not limited by the maximum Java array size, and as
+ * the chunks are not on the Java heap, they do not need to be copied by the
+ * garbage collector. The memory is limited by the
+ * {@code -XX:MaxDirectMemorySize} setting of the JVM instead (which defaults to
+ * the maximum heap size).
+ * <p>
+ * Values can optionally be stored with single precision, halving the memory
+ * requirements.
+ * <p>
+ * Concurrent writes to different positions are safe.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class ChunkedTriangularMatrix {
+  /**
+   * Number of bits for the position within a chunk.
+   */
+  private static final int CHUNK_BITS = 27;
+
+  /**
+   * Mask for the position within a chunk.
+   */
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+  /**
+   * Number of rows (and columns).
+   */
+  private final int rows;
+
+  /**
+   * Double precision chunks, or {@code null}.
+   */
+  private final DoubleBuffer[] dchunks;
+
+  /**
+   * Single precision chunks, or {@code null}.
+   */
+  private final FloatBuffer[] fchunks;
+
+  /**
+   * Constructor.
+   *
+   * @param rows Number of rows (and columns)
+   * @param singlePrecision Store values with single precision only
+   */
+  public ChunkedTriangularMatrix(int rows, boolean singlePrecision) {
+    this.rows = rows;
+    final long size = triangleSize(rows);
+    final int nchunks = (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+    final int bytes = singlePrecision ? Float.BYTES : Double.BYTES;
+    dchunks = singlePrecision ? null : new DoubleBuffer[nchunks];
+    fchunks = singlePrecision ? new FloatBuffer[nchunks] : null;
+    for(int i = 0; i < nchunks; i++) {
+      final int len = (int) Math.min(CHUNK_MASK + 1, size - ((long) i << CHUNK_BITS));
+      ByteBuffer buf = ByteBuffer.allocateDirect(len * bytes).order(ByteOrder.nativeOrder());
+      if(singlePrecision) {
+        fchunks[i] = buf.asFloatBuffer();
+      }
+      else {
+        dchunks[i] = buf.asDoubleBuffer();
+      }
+    }
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  public static long triangleSize(int x) {
+    return ((long) x * (x - 1)) >>> 1;
+  }
+
+  /**
+   * Position of the value of a pair.
+   *
+   * @param x First index
+   * @param y Second index, must be different from x
+   * @return Position
+   */
+  public static long position(int x, int y) {
+    return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
+  }
+
+  /**
+   * Get the value at a position.
+   *
+   * @param pos Position
+   * @return Value
+   */
+  public double get(long pos) {
+    final int c = (int) (pos >>> CHUNK_BITS), i = (int) (pos & CHUNK_MASK);
+    return dchunks != null ? dchunks[c].get(i) : fchunks[c].get(i);
+  }
+
+  /**
+   * Set the value at a position.
+   *
+   * @param pos Position
+   * @param value Value
+   */
+  public void set(long pos, double value) {
+    final int c = (int) (pos >>> CHUNK_BITS), i = (int) (pos & CHUNK_MASK);
+    if(dchunks != null) {
+      dchunks[c].put(i, value);
+    }
+    else {
+      fchunks[c].put(i, (float) value);
+    }
+  }
+
+  /**
+   * Number of rows (and columns) of the matrix.
+   *
+   * @return Number of rows
+   */
+  public int rows() {
+    return rows;
+  }
+
+  /**
+   * Number of stored values.
+   *
+   * @return Size
+   */
+  public long size() {
+    return triangleSize(rows);
+  }
+
+  /**
+   * Memory used by the stored values.
+   *
+   * @return Size in bytes
+   */
+  public long byteSize() {
+    return size() * (dchunks != null ? Double.BYTES : Float.BYTES);
+  }
+}
@@ -21,6 +21,8 @@
 package elki.index.distancematrix;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 
 import elki.data.type.TypeInformation;
 import elki.database.ids.*;
@@ -36,12 +38,14 @@ import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.datastructures.QuickSelect;
 import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
 import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -49,10 +53,14 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * <p>
  * This class uses a linear memory layout (not a ragged array), and assumes
  * symmetry as well as strictness. This way, it only stores the upper triangle
- * matrix with double precision. It has to store (n-1) * (n-2) distance values
- * in memory, requiring 8 * (n-1) * (n-2) bytes. Since Java has a size limit of
- * arrays of 31 bits (signed integer), we can store at most \(2^16\) objects
- * (precisely, 65536 objects) in a single array, which needs about 16 GB of RAM.
+ * matrix with double precision. It has to store n * (n-1) / 2 distance values
+ * in memory, requiring 4 * n * (n-1) bytes (or half of that with single
+ * precision). The values are stored off-heap in a
+ * {@link ChunkedTriangularMatrix}, so the matrix is not limited by the maximum
+ * Java array size, but by the {@code -XX:MaxDirectMemorySize} of the JVM.
+ * <p>
+ * The matrix is computed in parallel, using
+ * {@link ParallelExecutor#runTriangleRanges}.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -60,6 +68,7 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * @has - - - PrecomputedDistanceQuery
  * @has - - - PrecomputedKNNQuery
  * @has - - - PrecomputedRangeQuery
+ * @composed - - - ChunkedTriangularMatrix
  *
  * @param <O> Object type
  */
@@ -69,6 +78,11 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    */
   private static final Logging LOG = Logging.getLogger(PrecomputedDistanceMatrix.class);
 
+  /**
+   * Minimum number of distances to use multiple threads.
+   */
+  private static final long PARALLEL_THRESHOLD = 1L << 16;
+
   /**
    * Data relation.
    */
@@ -79,10 +93,15 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    */
   protected final Distance<? super O> distance;
 
+  /**
+   * Store distances with single precision only.
+   */
+  protected final boolean singlePrecision;
+
   /**
    * Distance matrix.
    */
-  private double[] matrix = null;
+  private ChunkedTriangularMatrix matrix = null;
 
   /**
    * DBID range.
@@ -97,10 +116,23 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    * @param distance Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DBIDRange range, Distance<? super O> distance) {
+    this(relation, range, distance, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param range DBID range
+   * @param distance Distance function
+   * @param singlePrecision Store distances with single precision only
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DBIDRange range, Distance<? super O> distance, boolean singlePrecision) {
     super();
     this.refrelation = new WeakReference<>(relation);
     this.ids = range;
     this.distance = distance;
+    this.singlePrecision = singlePrecision;
 
     if(!distance.isSymmetric()) {
       throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
@@ -109,28 +141,29 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
 
   @Override
   public void initialize() {
-    if(ids.size() > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
-    }
-    DistanceQuery<O> distanceQuery = distance.instantiate(refrelation.get());
-
-    final int msize = triangleSize(ids.size());
-    matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
+    matrix = new ChunkedTriangularMatrix(ids.size(), singlePrecision);
     Duration timer = LOG.newDuration(getClass().getName() + ".precomputation-time").begin();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = distanceQuery.distance(ix, iy);
-        pos++;
-      }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
-      }
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", ids.size(), LOG) : null;
+    final int n = ids.size(), blocks = ParallelExecutor.numBlocks(triangleSize(n), PARALLEL_THRESHOLD, n);
+    // Distance queries need not be thread safe, so use one per block.
+    final List<DistanceQuery<O>> queries = new ArrayList<>(blocks);
+    for(int b = 0; b < blocks; b++) {
+      queries.add(distance.instantiate(refrelation.get()));
     }
+    // Row x has x entries, so use blocks of about the same number of entries.
+    ParallelExecutor.runTriangleRanges(n, blocks, (block, start, end) -> {
+      final DistanceQuery<O> distanceQuery = queries.get(block);
+      final DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+        final int x = ix.getOffset();
+        // y < x -- must match {@link ChunkedTriangularMatrix#position}!
+        long pos = triangleSize(x);
+        for(iy.seek(0); iy.getOffset() < x; iy.advance(), pos++) {
+          matrix.set(pos, distanceQuery.distance(ix, iy));
+        }
+        LOG.incrementProcessed(prog);
+      }
+    });
     LOG.ensureCompleted(prog);
     LOG.statistics(timer.end());
   }
@@ -141,25 +174,15 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    * @param x Offset
    * @return Size of complete triangle
    */
-  protected static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
-  }
-
-  /**
-   * Array offset computation.
-   *
-   * @param x X parameter
-   * @param y Y parameter
-   * @return Array offset
-   */
-  private int getOffset(int x, int y) {
-    return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
+  protected static long triangleSize(int x) {
+    return ChunkedTriangularMatrix.triangleSize(x);
   }
 
   @Override
   public void logStatistics() {
     if(matrix != null) {
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.size()));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-bytes", matrix.byteSize()));
     }
   }
 
@@ -207,7 +230,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       final int x = ids.getOffset(id1), y = ids.getOffset(id2);
-      return (x != y) ? matrix[getOffset(x, y)] : 0.;
+      return (x != y) ? matrix.get(ChunkedTriangularMatrix.position(x, y)) : 0.;
     }
 
     @Override
@@ -237,9 +260,9 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
       result.add(0., id);
       final int x = ids.getOffset(id);
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++, pos++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -248,7 +271,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1, size = ids.size(); y < size; pos += y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -275,16 +298,16 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
       double max = Double.POSITIVE_INFINITY;
       final int x = ids.getOffset(id);
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++, pos++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         max = dist <= max ? heap.insert(dist, it.seek(y)) : max;
       }
       assert (pos == triangleSize(x + 1));
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1, size = ids.size(); y < size; pos += y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         max = dist <= max ? heap.insert(dist, it.seek(y)) : max;
       }
       return heap.toKNNList();
@@ -337,7 +360,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
       off = 0;
       threshold = Double.POSITIVE_INFINITY;
       int x = ids.getOffset(query);
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       // Initialize ids:
       idx[0] = x;
       for(int y = 0; y < x; y++) {
@@ -348,10 +371,12 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
       }
       // Initialize distances:
       dists[0] = 0;
-      System.arraycopy(matrix, pos, dists, 1, x);
+      for(int y = 0; y < x; y++, pos++) {
+        dists[y + 1] = matrix.get(pos);
+      }
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1, size = dists.length; y < size; pos += y++) {
-        dists[y] = matrix[pos];
+        dists[y] = matrix.get(pos);
       }
       sorted = 1;
       return this;
@@ -471,14 +496,30 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
      */
     protected final Distance<? super O> distance;
 
+    /**
+     * Store distances with single precision only.
+     */
+    protected final boolean singlePrecision;
+
     /**
      * Constructor.
      *
      * @param distance Distance function
      */
     public Factory(Distance<? super O> distance) {
+      this(distance, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param singlePrecision Store distances with single precision only
+     */
+    public Factory(Distance<? super O> distance, boolean singlePrecision) {
       super();
       this.distance = distance;
+      this.singlePrecision = singlePrecision;
     }
 
     @Override
@@ -487,7 +528,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
       if(!(rids instanceof DBIDRange)) {
         throw new AbortException("Distance matrixes are currently only supported for DBID ranges (as used by static databases; not on modifiable databases) for performance reasons (Patches welcome).");
       }
-      return new PrecomputedDistanceMatrix<>(relation, (DBIDRange) rids, distance);
+      return new PrecomputedDistanceMatrix<>(relation, (DBIDRange) rids, distance, singlePrecision);
     }
 
     @Override
@@ -510,20 +551,31 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
        */
       public static final OptionID DISTANCE_ID = new OptionID("matrix.distance", "Distance function for the precomputed distance matrix.");
 
+      /**
+       * Flag to store distances with single precision only.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store distances with single precision only, to halve the memory requirements.");
+
       /**
        * Nested distance function.
        */
       protected Distance<? super O> distanceFunction;
 
+      /**
+       * Store distances with single precision only.
+       */
+      protected boolean singlePrecision;
+
       @Override
       public void configure(Parameterization config) {
         new ObjectParameter<Distance<? super O>>(DISTANCE_ID, Distance.class) //
             .grab(config, x -> distanceFunction = x);
+        new Flag(FLOAT_ID).grab(config, x -> singlePrecision = x);
       }
 
       @Override
       public Factory<O> make() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, singlePrecision);
       }
     }
   }
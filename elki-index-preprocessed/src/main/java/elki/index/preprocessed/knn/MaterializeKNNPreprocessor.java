@@ -20,11 +20,15 @@
  */
 package elki.index.preprocessed.knn;
 
+import java.util.ArrayDeque;
+import java.util.List;
+
 import javax.swing.event.EventListenerList;
 
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.knn.PreprocessorKNNQuery;
 import elki.database.relation.Relation;
@@ -35,6 +39,9 @@ import elki.logging.progress.FiniteProgress;
 import elki.logging.progress.StepProgress;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
 import elki.utilities.documentation.Description;
 import elki.utilities.documentation.Title;
 
@@ -43,6 +50,11 @@ import elki.utilities.documentation.Title;
  * distances) to each database object.
  * <p>
  * Automatically added by the query optimizer if memory permits.
+ * <p>
+ * The initial materialization runs on all available cores, using
+ * {@link ParallelExecutor}; each worker uses its own kNN searcher, and submits
+ * its queries in batches. If no searcher can be obtained that does not depend
+ * on this preprocessor, the neighbors are computed by a single thread.
  *
  * @author Erich Schubert
  * @since 0.2
@@ -50,6 +62,7 @@ import elki.utilities.documentation.Title;
  * @has - - - Distance
  * @has - - - KNNSearcher
  * @has - - - KNNListener
+ * @composed - - - KNNBatchProcessor
  *
  * @param <O> the type of database objects the preprocessor can be applied to
  */
@@ -61,11 +74,21 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   private static final Logging LOG = Logging.getLogger(MaterializeKNNPreprocessor.class);
 
+  /**
+   * Number of queries passed to the kNN searcher at once, per worker.
+   */
+  private static final int BATCH_SIZE = 256;
+
   /**
    * KNNSearcher instance to use.
    */
   protected final KNNSearcher<DBIDRef> knnQuery;
 
+  /**
+   * Query builder, to obtain a kNN searcher for each worker thread.
+   */
+  private final QueryBuilder<O> queryBuilder;
+
   /**
    * Holds the listener.
    */
@@ -80,7 +103,8 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   public MaterializeKNNPreprocessor(Relation<O> relation, Distance<? super O> distance, int k) {
     super(relation, distance, k);
-    this.knnQuery = new QueryBuilder<>(distanceQuery).noCache().kNNByDBID(k);
+    this.queryBuilder = new QueryBuilder<>(distanceQuery).noCache();
+    this.knnQuery = queryBuilder.kNNByDBID(k);
     assert !(knnQuery instanceof PreprocessorKNNQuery) : knnQuery.toString();
   }
 
@@ -95,7 +119,8 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
   public MaterializeKNNPreprocessor(Relation<O> relation, DistanceQuery<O> distanceQuery, int k, boolean noopt) {
     super(relation, distanceQuery, k);
     QueryBuilder<O> qb = new QueryBuilder<>(distanceQuery).noCache();
-    this.knnQuery = (noopt ? qb.cheapOnly() : qb).kNNByDBID(k);
+    this.queryBuilder = noopt ? qb.cheapOnly() : qb;
+    this.knnQuery = queryBuilder.kNNByDBID(k);
     assert !(knnQuery instanceof PreprocessorKNNQuery) : knnQuery.toString();
   }
 
@@ -114,21 +139,21 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
     Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
     FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
-    // Try bulk
-    final boolean ismetric = getDistanceQuery().getDistance().isMetric();
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      if(ismetric && storage.get(iter) != null) {
-        log.incrementProcessed(progress);
-        continue; // Previously computed (duplicate point?)
-      }
-      KNNList knn = knnQuery.getKNN(iter, k);
-      storage.put(iter, knn);
-      if(ismetric) {
-        for(DoubleDBIDListIter it = knn.iter(); it.valid() && it.doubleValue() == 0.; it.advance()) {
-          storage.put(it, knn); // Reuse
-        }
+    // kNN searchers need not be thread safe, so every worker needs its own.
+    // These must not be served by this preprocessor (e.g., when added to a
+    // dynamic database before the first insertion), which is not complete.
+    KNNSearcher<DBIDRef> other = queryBuilder.kNNByDBID(k);
+    if(other instanceof PreprocessorKNNQuery && ((PreprocessorKNNQuery) other).getPreprocessor() == this) {
+      KNNBatchProcessor.Instance inst = new KNNBatchProcessor(log, progress).new Instance(knnQuery);
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        inst.map(iter);
       }
-      log.incrementProcessed(progress);
+      inst.flush();
+    }
+    else {
+      KNNBatchProcessor proc = new KNNBatchProcessor(log, progress);
+      proc.searchers.add(other);
+      ParallelExecutor.run(ids, proc);
     }
     log.ensureCompleted(progress);
     if(duration != null) {
@@ -339,6 +364,119 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     return LOG;
   }
 
+  /**
+   * Processor to materialize the kNN of each object. Each worker collects the
+   * objects into batches, and stores the results when a batch is complete.
+   * <p>
+   * kNN searchers are usually not thread safe, so each instance uses its own.
+   * They are recycled, as the executor may create more instances than threads.
+   *
+   * @author ELKI Development Team
+   *
+   * @has - - - Instance
+   */
+  private class KNNBatchProcessor implements Processor {
+    /**
+     * Logger to report progress to.
+     */
+    private final Logging log;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private final FiniteProgress progress;
+
+    /**
+     * Unused kNN searchers.
+     */
+    private final ArrayDeque<KNNSearcher<DBIDRef>> searchers = new ArrayDeque<>();
+
+    /**
+     * Constructor.
+     *
+     * @param log Logger to report progress to
+     * @param progress Progress, may be {@code null}
+     */
+    KNNBatchProcessor(Logging log, FiniteProgress progress) {
+      super();
+      this.log = log;
+      this.progress = progress;
+      searchers.add(knnQuery);
+    }
+
+    @Override
+    public synchronized Instance instantiate(Executor executor) {
+      KNNSearcher<DBIDRef> knnq = searchers.poll();
+      return new Instance(knnq != null ? knnq : queryBuilder.kNNByDBID(k));
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      MaterializeKNNPreprocessor<?>.KNNBatchProcessor.Instance instance = (MaterializeKNNPreprocessor<?>.KNNBatchProcessor.Instance) inst;
+      instance.flush();
+      synchronized(this) {
+        searchers.add(instance.knnq);
+      }
+    }
+
+    /**
+     * Instance for a single worker.
+     *
+     * @author ELKI Development Team
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * kNN searcher of this worker.
+       */
+      private final KNNSearcher<DBIDRef> knnq;
+
+      /**
+       * Current batch of queries.
+       */
+      private final ArrayModifiableDBIDs batch = DBIDUtil.newArray(BATCH_SIZE);
+
+      /**
+       * Constructor.
+       *
+       * @param knnq kNN searcher
+       */
+      Instance(KNNSearcher<DBIDRef> knnq) {
+        super();
+        this.knnq = knnq;
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        batch.add(id);
+        if(batch.size() >= BATCH_SIZE) {
+          flush();
+        }
+      }
+
+      /**
+       * Process the current batch, and store the results.
+       */
+      void flush() {
+        if(batch.isEmpty()) {
+          return;
+        }
+        List<KNNList> knns = BatchKNNSearcher.getKNNBatch(knnq, batch, k);
+        // The storage need not be thread safe (e.g., for dynamic databases)
+        synchronized(storage) {
+          DBIDIter bi = batch.iter();
+          for(KNNList knn : knns) {
+            storage.put(bi, knn);
+            bi.advance();
+          }
+        }
+        if(progress != null) {
+          progress.incrementProcessed(knns.size(), log);
+        }
+        batch.clear();
+      }
+    }
+  }
+
   /**
    * The parameterizable factory.
    *
@@ -77,37 +77,37 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
   /**
    * Log prefix.
    */
-  private String prefix = getClass().getCanonicalName();
+  protected String prefix = getClass().getCanonicalName();
 
   /**
    * Random generator
    */
-  private final RandomFactory rnd;
+  protected final RandomFactory rnd;
 
   /**
    * early termination parameter
    */
-  private double delta = 0.001;
+  protected double delta = 0.001;
 
   /**
    * sample rate
    */
-  private double rho = 1.0;
+  protected double rho = 1.0;
 
   /**
    * maximum number of iterations
    */
-  private int iterations = 100;
+  protected int iterations = 100;
 
   /**
    * Do not use initial neighbors
    */
-  private boolean noInitialNeighbors;
+  protected boolean noInitialNeighbors;
 
   /**
    * store for neighbors
    */
-  private WritableDataStore<KNNHeap> store;
+  protected WritableDataStore<KNNHeap> store;
 
   /**
    * Constructor.
@@ -132,9 +132,10 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
 
   @Override
   protected void preprocess() {
+    final Logging log = getLogger();
     final DBIDs ids = relation.getDBIDs();
     final long starttime = System.currentTimeMillis();
-    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("KNNGraph iteration", LOG) : null;
+    IndefiniteProgress progress = log.isVerbose() ? new IndefiniteProgress("KNNGraph iteration", log) : null;
 
     // to add query point itself in the end, internally (k-1) is used
     final int internal_k = k - 1;
@@ -142,112 +143,70 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     // kNN store
     store = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNHeap.class);
     // store for new reverse neighbors
-    WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
-    // store for new reverse neighbors
-    WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
+    final WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
+    // store for old reverse neighbors
+    final WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
     // Sample of new forward neighbors.
-    WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
+    final WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
     // data structures for new and sampled new neighbors
-    WritableDataStore<HashSetModifiableDBIDs> flag = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
-
-    // Initialize data structures:
-    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
-      store.put(iditer, DBIDUtil.newHeap(internal_k));
-      newReverseNeighbors.put(iditer, DBIDUtil.newHashSet(internal_k));
-      oldReverseNeighbors.put(iditer, DBIDUtil.newHashSet(internal_k));
-    }
+    final WritableDataStore<HashSetModifiableDBIDs> flag = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
 
     // this variable is the sampling size
     final int items = (int) Math.ceil(rho * internal_k);
 
-    long counter_all = 0;
-
+    // Initialize data structures, sequentially because of the random sampling
     Random rand = rnd.getSingleThreadedRandom();
-
-    // initialize neighbors (depends on -setInitialNeighbors option)
     for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      store.put(iditer, DBIDUtil.newHeap(internal_k));
       // initialize sampled NN
-      ModifiableDBIDs sampleNew = DBIDUtil.randomSampleExcept(ids, iditer, items, rand);
-      sampleNewNeighbors.put(iditer, DBIDUtil.newHashSet(sampleNew));
+      sampleNewNeighbors.put(iditer, DBIDUtil.newHashSet(DBIDUtil.randomSampleExcept(ids, iditer, items, rand)));
       // initialize RNN
-      ModifiableDBIDs sampleRev = DBIDUtil.randomSampleExcept(ids, iditer, items, rand);
-      newReverseNeighbors.put(iditer, DBIDUtil.newHashSet(sampleRev));
+      newReverseNeighbors.put(iditer, DBIDUtil.newHashSet(DBIDUtil.randomSampleExcept(ids, iditer, items, rand)));
+      oldReverseNeighbors.put(iditer, DBIDUtil.newHashSet(internal_k));
       // initialize new neighbors
       flag.put(iditer, DBIDUtil.newHashSet());
-      // initialize store
-      if(!noInitialNeighbors) {
-        HashSetModifiableDBIDs flags = flag.get(iditer);
-        for(DBIDIter siter = sampleNew.iter(); siter.valid(); siter.advance()) {
-          if(add(iditer, siter, distanceQuery.distance(iditer, siter))) {
-            flags.add(siter);
-          }
-        }
-        counter_all += sampleNew.size();
-      }
     }
+    // initialize neighbors (depends on -setInitialNeighbors option)
+    long counter_all = noInitialNeighbors ? 0 : run(ids, (cur, r) -> initialNeighbors(cur, sampleNewNeighbors.get(cur), flag.get(cur)));
 
     final int size = relation.size();
     double rate = 0.0;
     int iter = 0;
 
     for(; iter < iterations; iter++) {
-      long counter = 0;
-
-      // iterate through dataset
-      for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-        // determine new and old neighbors
-        HashSetModifiableDBIDs newNeighbors = flag.get(iditer);
-        HashSetModifiableDBIDs oldNeighbors = DBIDUtil.newHashSet();
-        KNNHeap heap = store.get(iditer);
-        for(DoubleDBIDIter heapiter = heap.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
-          if(!newNeighbors.contains(heapiter)) {
-            oldNeighbors.add(heapiter);
-          }
-        }
-
-        // Sampling
-        HashSetModifiableDBIDs sampleNew = sampleNewNeighbors.get(iditer);
-
-        HashSetModifiableDBIDs newRev = newReverseNeighbors.get(iditer);
-        newRev.removeDBIDs(sampleNew);
-        boundSize(newRev, items);
-
-        HashSetModifiableDBIDs oldRev = oldReverseNeighbors.get(iditer);
-        oldRev.removeDBIDs(oldNeighbors);
-        boundSize(oldRev, items);
-        counter += processNewNeighbors(flag, sampleNew, oldNeighbors, newRev, oldRev);
-      }
+      // Local joins
+      long counter = run(ids, (cur, r) -> localJoin(cur, flag, sampleNewNeighbors.get(cur), newReverseNeighbors.get(cur), oldReverseNeighbors.get(cur), items, r));
       counter_all += counter;
-      if(LOG.isStatistics()) {
-        LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", counter_all * .5 / (size * (size - 1L))));
+      if(log.isStatistics()) {
+        log.statistics(new DoubleStatistic(prefix + ".scan-rate", counter_all * .5 / (size * (size - 1L))));
       }
 
       // t is the number of new neighbors
-      int t = sampleNew(ids, sampleNewNeighbors, flag, items);
+      long t = run(ids, (cur, r) -> sampleNew(cur, sampleNewNeighbors.get(cur), flag.get(cur), items, r));
 
       // calculate old and new reverse neighbors
       clearAll(ids, newReverseNeighbors);
       clearAll(ids, oldReverseNeighbors);
-      reverse(sampleNewNeighbors, newReverseNeighbors, oldReverseNeighbors);
+      run(ids, (cur, r) -> reverse(cur, sampleNewNeighbors.get(cur), newReverseNeighbors, oldReverseNeighbors));
 
       rate = (double) t / (double) (internal_k * size);
-      if(LOG.isStatistics()) {
-        LOG.statistics(new DoubleStatistic(prefix + ".update-rate", rate));
+      if(log.isStatistics()) {
+        log.statistics(new DoubleStatistic(prefix + ".update-rate", rate));
       }
       if(counter < delta * internal_k * size) {
-        LOG.verbose("KNNGraph terminated because we performaned delta*k*size distance computations.");
+        log.verbose("KNNGraph terminated because we performaned delta*k*size distance computations.");
         break;
       }
       if(rate < delta) {
-        LOG.verbose("KNNGraph terminated because update rate got smaller than delta.");
+        log.verbose("KNNGraph terminated because update rate got smaller than delta.");
         break;
       }
-      LOG.incrementProcessed(progress);
+      log.incrementProcessed(progress);
     }
-    if(LOG.isVerbose() && iter == iterations) {
-      LOG.verbose("KNNGraph terminated because the maximum number of iterations was reached.");
+    if(log.isVerbose() && iter == iterations) {
+      log.verbose("KNNGraph terminated because the maximum number of iterations was reached.");
     }
-    LOG.setCompleted(progress);
+    log.setCompleted(progress);
     // convert store to storage
     storage = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_DB, KNNList.class);
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
@@ -261,9 +220,86 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
       storage.put(iditer, tempHeap.toKNNList());
     }
     final long end = System.currentTimeMillis();
-    if(LOG.isStatistics()) {
-      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", end - starttime));
+    if(log.isStatistics()) {
+      log.statistics(new LongStatistic(prefix + ".construction-time.ms", end - starttime));
+    }
+  }
+
+  /**
+   * Run a step on all objects.
+   * <p>
+   * This is the hook for parallel processing: the steps only modify the
+   * neighbors of other objects via {@link #addpair} and {@link #addReverse}.
+   *
+   * @param ids Objects to process
+   * @param step Step to run
+   * @return Sum of the counts returned by the step
+   */
+  protected long run(DBIDs ids, Step step) {
+    long total = 0;
+    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      total += step.process(iditer, rnd);
+    }
+    return total;
+  }
+
+  /**
+   * Initialize the neighbors of an object with the sampled neighbors.
+   *
+   * @param cur Current object
+   * @param sampleNew Sampled neighbors
+   * @param flags Flags to mark new neighbors
+   * @return Number of distance computations
+   */
+  private long initialNeighbors(DBIDRef cur, HashSetModifiableDBIDs sampleNew, HashSetModifiableDBIDs flags) {
+    for(DBIDIter siter = sampleNew.iter(); siter.valid(); siter.advance()) {
+      if(add(cur, siter, distanceQuery.distance(cur, siter))) {
+        flags.add(siter);
+      }
+    }
+    return sampleNew.size();
+  }
+
+  /**
+   * Perform the local join of an object.
+   *
+   * @param cur Current object
+   * @param flag Flags to mark new neighbors
+   * @param sampleNew Sampled new neighbors of the current object
+   * @param newRev New reverse neighbors of the current object
+   * @param oldRev Old reverse neighbors of the current object
+   * @param items Sample size
+   * @param rnd Random generator
+   * @return Number of distance computations
+   */
+  private long localJoin(DBIDRef cur, WritableDataStore<HashSetModifiableDBIDs> flag, HashSetModifiableDBIDs sampleNew, HashSetModifiableDBIDs newRev, HashSetModifiableDBIDs oldRev, int items, RandomFactory rnd) {
+    HashSetModifiableDBIDs oldNeighbors = oldNeighbors(cur, flag.get(cur));
+
+    // Sampling
+    newRev.removeDBIDs(sampleNew);
+    boundSize(newRev, items, rnd);
+
+    oldRev.removeDBIDs(oldNeighbors);
+    boundSize(oldRev, items, rnd);
+    return processNewNeighbors(flag, sampleNew, oldNeighbors, newRev, oldRev);
+  }
+
+  /**
+   * Determine the old neighbors of an object, i.e., the current neighbors that
+   * are not flagged as new.
+   *
+   * @param cur Current object
+   * @param newNeighbors Flags of new neighbors of the current object
+   * @return Old neighbors
+   */
+  protected HashSetModifiableDBIDs oldNeighbors(DBIDRef cur, HashSetDBIDs newNeighbors) {
+    HashSetModifiableDBIDs oldNeighbors = DBIDUtil.newHashSet();
+    for(DoubleDBIDIter heapiter = store.get(cur).unorderedIterator(); heapiter.valid(); heapiter.advance()) {
+      if(!newNeighbors.contains(heapiter)) {
+        oldNeighbors.add(heapiter);
+      }
     }
+    return oldNeighbors;
   }
 
   /**
@@ -272,7 +308,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * @param ids Ids to process
    * @param sets Sets to clear
    */
-  private void clearAll(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sets) {
+  protected void clearAll(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sets) {
     for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
       sets.get(it).clear();
     }
@@ -283,8 +319,9 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * 
    * @param set Set to process
    * @param items Maximum size
+   * @param rnd Random generator
    */
-  private void boundSize(HashSetModifiableDBIDs set, int items) {
+  private static void boundSize(HashSetModifiableDBIDs set, int items, RandomFactory rnd) {
     if(set.size() > items) {
       DBIDs sample = DBIDUtil.randomSample(set, items, rnd);
       set.clear().addDBIDs(sample);
@@ -304,7 +341,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * @param oldRev Old reverse neighbors
    * @return Number of new neighbors
    */
-  private int processNewNeighbors(WritableDataStore<HashSetModifiableDBIDs> flag, HashSetModifiableDBIDs newFwd, HashSetModifiableDBIDs oldFwd, HashSetModifiableDBIDs newRev, HashSetModifiableDBIDs oldRev) {
+  protected int processNewNeighbors(WritableDataStore<HashSetModifiableDBIDs> flag, HashSetModifiableDBIDs newFwd, HashSetModifiableDBIDs oldFwd, HashSetModifiableDBIDs newRev, HashSetModifiableDBIDs oldRev) {
     int counter = 0;
     // nn_new
     if(!newFwd.isEmpty()) {
@@ -390,7 +427,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * @param distance Distance
    * @return {@code true} if it was a new neighbor.
    */
-  private boolean add(DBIDRef cur, DBIDRef cand, double distance) {
+  protected boolean add(DBIDRef cur, DBIDRef cand, double distance) {
     KNNHeap neighbors = store.get(cur);
     if(neighbors.contains(cand)) {
       return false;
@@ -399,7 +436,14 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     return (distance <= newKDistance);
   }
 
-  private void addpair(WritableDataStore<HashSetModifiableDBIDs> newNeighbors, DBIDRef o1, DBIDRef o2) {
+  /**
+   * Add a pair of objects to each others neighbors, if they are close enough.
+   *
+   * @param newNeighbors Flags to mark new neighbors
+   * @param o1 First object
+   * @param o2 Second object
+   */
+  protected void addpair(WritableDataStore<HashSetModifiableDBIDs> newNeighbors, DBIDRef o1, DBIDRef o2) {
     final double distance = distanceQuery.distance(o1, o2);
     if(add(o1, o2, distance)) {
       newNeighbors.get(o1).add(o2);
@@ -410,49 +454,72 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
   }
 
   /**
-   * samples newNeighbors for every object
+   * Sample the new neighbors of an object.
    *
-   * @param ids All ids
-   * @param sampleNewNeighbors Output of sampled new neighbors
-   * @param newNeighborHash - new neighbors for every object
+   * @param cur Current object
+   * @param sampleNew Output of sampled new neighbors
+   * @param newNeighbors New neighbors of the current object
    * @param items Number of items to collect
+   * @param rnd Random generator
    * @return Number of new neighbors
    */
-  private int sampleNew(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors, WritableDataStore<HashSetModifiableDBIDs> newNeighborHash, int items) {
+  private long sampleNew(DBIDRef cur, HashSetModifiableDBIDs sampleNew, HashSetModifiableDBIDs newNeighbors, int items, RandomFactory rnd) {
     int t = 0;
-    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
-      KNNHeap realNeighbors = store.get(iditer);
-      HashSetModifiableDBIDs newNeighbors = newNeighborHash.get(iditer);
-      HashSetModifiableDBIDs realNewNeighbors = sampleNewNeighbors.get(iditer).clear(); // Reuse
-      for(DoubleDBIDIter heapiter = realNeighbors.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
-        if(newNeighbors.contains(heapiter)) {
-          realNewNeighbors.add(heapiter);
-          t++;
-        }
+    sampleNew.clear(); // Reuse
+    for(DoubleDBIDIter heapiter = store.get(cur).unorderedIterator(); heapiter.valid(); heapiter.advance()) {
+      if(newNeighbors.contains(heapiter)) {
+        sampleNew.add(heapiter);
+        t++;
       }
-      boundSize(realNewNeighbors, items);
-
-      newNeighbors.removeDBIDs(realNewNeighbors);
-      newNeighborHash.put(iditer, newNeighbors);
     }
+    boundSize(sampleNew, items, rnd);
+    newNeighbors.removeDBIDs(sampleNew);
     return t;
   }
 
   /**
-   * calculates new and old neighbors for database
-   * 
-   * @param sampleNewHash new neighbors for every object
+   * Add an object to the reverse neighbors of its current neighbors.
+   *
+   * @param cur Current object
+   * @param sampleNew Sampled new neighbors of the current object
    * @param newReverseNeighbors new reverse neighbors
    * @param oldReverseNeighbors old reverse neighbors
+   * @return Zero
    */
-  private void reverse(WritableDataStore<HashSetModifiableDBIDs> sampleNewHash, WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors, WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors) {
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      KNNHeap heap = store.get(iditer);
-      HashSetDBIDs newNeighbors = sampleNewHash.get(iditer);
-      for(DoubleDBIDIter heapiter = heap.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
-        (newNeighbors.contains(heapiter) ? newReverseNeighbors : oldReverseNeighbors).get(heapiter).add(iditer);
-      }
+  private long reverse(DBIDRef cur, HashSetDBIDs sampleNew, WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors, WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors) {
+    for(DoubleDBIDIter heapiter = store.get(cur).unorderedIterator(); heapiter.valid(); heapiter.advance()) {
+      addReverse(sampleNew.contains(heapiter) ? newReverseNeighbors : oldReverseNeighbors, heapiter, cur);
     }
+    return 0;
+  }
+
+  /**
+   * Add an object to the reverse neighbors of another object.
+   *
+   * @param reverse Reverse neighbors store
+   * @param neighbor Neighbor to modify
+   * @param cur Object to add
+   */
+  protected void addReverse(WritableDataStore<HashSetModifiableDBIDs> reverse, DBIDRef neighbor, DBIDRef cur) {
+    reverse.get(neighbor).add(cur);
+  }
+
+  /**
+   * A single step of the algorithm, processing one object and returning a
+   * count.
+   *
+   * @author ELKI Development Team
+   */
+  @FunctionalInterface
+  protected interface Step {
+    /**
+     * Process a single object.
+     *
+     * @param cur Current object
+     * @param rnd Random generator to use
+     * @return Count
+     */
+    long process(DBIDRef cur, RandomFactory rnd);
   }
 
   @Override
@@ -477,27 +544,27 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     /**
      * Random generator
      */
-    private final RandomFactory rnd;
+    protected final RandomFactory rnd;
 
     /**
      * early termination parameter
      */
-    private final double delta;
+    protected final double delta;
 
     /**
      * sample rate
      */
-    private final double rho;
+    protected final double rho;
 
     /**
      * set initial neighbors?
      */
-    private final boolean noInitialNeighbors;
+    protected final boolean noInitialNeighbors;
 
     /**
      * maximum number of iterations
      */
-    private final int iterations;
+    protected final int iterations;
 
     /**
      * Constructor.
@@ -562,27 +629,27 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
       /**
        * Random generator
        */
-      private RandomFactory rnd;
+      protected RandomFactory rnd;
 
       /**
        * early termination parameter
        */
-      private double delta;
+      protected double delta;
 
       /**
        * sample rate
        */
-      private double rho;
+      protected double rho;
 
       /**
        * No initial neighbors
        */
-      private boolean noInitialNeighbors;
+      protected boolean noInitialNeighbors;
 
       /**
        * maximum number of iterations
        */
-      private int iterations;
+      protected int iterations;
 
       @Override
       public void configure(Parameterization config) {
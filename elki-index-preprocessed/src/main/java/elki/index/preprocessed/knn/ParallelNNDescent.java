@@ -0,0 +1,264 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.preprocessed.knn;
+
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Multi-threaded variant of {@link NNDescent}.
+ * <p>
+ * The local joins of each iteration run in parallel using
+ * {@link ParallelExecutor}. As a join updates the neighbor heaps of other
+ * objects, updates are guarded by striped locks: each object is mapped to one
+ * of a fixed number of lock objects, and a thread holds at most one lock at a
+ * time. Distances are computed outside of the locks.
+ * <p>
+ * Sampling and termination are the same as in the single-threaded version,
+ * but the result depends on the thread scheduling, and hence is not
+ * reproducible with a fixed random seed.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @param <O> Object type
+ */
+public class ParallelNNDescent<O> extends NNDescent<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNNDescent.class);
+
+  /**
+   * Lock stripes.
+   */
+  private Object[] locks;
+
+  /**
+   * Bit mask for choosing a lock stripe.
+   */
+  private int mask;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distance distance function
+   * @param k k
+   * @param rnd Random generator
+   * @param delta Delta threshold
+   * @param rho Rho threshold
+   * @param noInitialNeighbors Do not use initial neighbors
+   * @param iterations Maximum number of iterations
+   */
+  public ParallelNNDescent(Relation<O> relation, Distance<? super O> distance, int k, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+    super(relation, distance, k, rnd, delta, rho, noInitialNeighbors, iterations);
+  }
+
+  @Override
+  protected void preprocess() {
+    // Use plenty of stripes, to make contention unlikely
+    final int stripes = Integer.highestOneBit(Math.max(1, ParallelCore.getCore().getParallelism()) << 6) << 1;
+    locks = new Object[stripes];
+    for(int i = 0; i < stripes; i++) {
+      locks[i] = new Object();
+    }
+    mask = stripes - 1;
+    try {
+      super.preprocess();
+    }
+    finally {
+      locks = null;
+    }
+  }
+
+  @Override
+  protected long run(DBIDs ids, Step step) {
+    StepProcessor proc = new StepProcessor(step);
+    ParallelExecutor.run(ids, proc);
+    return proc.total;
+  }
+
+  @Override
+  protected HashSetModifiableDBIDs oldNeighbors(DBIDRef cur, HashSetDBIDs newNeighbors) {
+    synchronized(lock(cur)) {
+      return super.oldNeighbors(cur, newNeighbors);
+    }
+  }
+
+  @Override
+  protected void addpair(WritableDataStore<HashSetModifiableDBIDs> newNeighbors, DBIDRef o1, DBIDRef o2) {
+    final double distance = distanceQuery.distance(o1, o2);
+    synchronized(lock(o1)) {
+      if(add(o1, o2, distance)) {
+        newNeighbors.get(o1).add(o2);
+      }
+    }
+    synchronized(lock(o2)) {
+      if(add(o2, o1, distance)) {
+        newNeighbors.get(o2).add(o1);
+      }
+    }
+  }
+
+  @Override
+  protected void addReverse(WritableDataStore<HashSetModifiableDBIDs> reverse, DBIDRef neighbor, DBIDRef cur) {
+    synchronized(lock(neighbor)) {
+      reverse.get(neighbor).add(cur);
+    }
+  }
+
+  /**
+   * Get the lock stripe of an object.
+   *
+   * @param id Object
+   * @return Lock object
+   */
+  private Object lock(DBIDRef id) {
+    return locks[id.internalGetIndex() & mask];
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Run a single step of the algorithm in parallel, summing the counts.
+   *
+   * @author ELKI Development Team
+   */
+  private class StepProcessor implements Processor {
+    /**
+     * Step to run.
+     */
+    private final Step step;
+
+    /**
+     * Total count of all instances.
+     */
+    long total;
+
+    /**
+     * Constructor.
+     *
+     * @param step Step to run
+     */
+    StepProcessor(Step step) {
+      this.step = step;
+    }
+
+    @Override
+    public synchronized Processor.Instance instantiate(Executor executor) {
+      // Each worker gets its own random generator
+      return new Instance(new RandomFactory(rnd.getSingleThreadedRandom().nextLong()));
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      total += ((ParallelNNDescent<?>.StepProcessor.Instance) inst).count;
+    }
+
+    /**
+     * Instance of a single worker.
+     *
+     * @author ELKI Development Team
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Random generator.
+       */
+      private final RandomFactory rnd;
+
+      /**
+       * Count of this instance.
+       */
+      long count;
+
+      /**
+       * Constructor.
+       *
+       * @param rnd Random generator
+       */
+      Instance(RandomFactory rnd) {
+        this.rnd = rnd;
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        count += step.process(id, rnd);
+      }
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author ELKI Development Team
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends NNDescent.Factory<O> {
+    /**
+     * Constructor.
+     *
+     * @param k K
+     * @param distance distance function
+     * @param rnd Random generator
+     * @param delta Delta threshold
+     * @param rho Rho threshold
+     * @param noInitialNeighbors Do not use initial neighbors
+     * @param iterations Maximum number of iterations
+     */
+    public Factory(int k, Distance<? super O> distance, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+      super(k, distance, rnd, delta, rho, noInitialNeighbors, iterations);
+    }
+
+    @Override
+    public ParallelNNDescent<O> instantiate(Relation<O> relation) {
+      return new ParallelNNDescent<>(relation, distance, k, rnd, delta, rho, noInitialNeighbors, iterations);
+    }
+
+    /**
+     * Parameterization class
+     *
+     * @author ELKI Development Team
+     *
+     * @hidden
+     *
+     * @param <O> Object type
+     */
+    public static class Par<O> extends NNDescent.Factory.Par<O> {
+      @Override
+      public ParallelNNDescent.Factory<O> make() {
+        return new ParallelNNDescent.Factory<>(k, distance, rnd, delta, rho, noInitialNeighbors, iterations);
+      }
+    }
+  }
+}
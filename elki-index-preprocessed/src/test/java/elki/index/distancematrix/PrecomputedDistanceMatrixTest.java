@@ -20,6 +20,7 @@
  */
 package elki.index.distancematrix;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -29,9 +30,11 @@ import elki.data.DoubleVector;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
 import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
 import elki.database.relation.Relation;
 import elki.distance.CosineDistance;
 import elki.distance.minkowski.EuclideanDistance;
@@ -60,6 +63,46 @@ public class PrecomputedDistanceMatrixTest extends AbstractIndexStructureTest {
     assertSinglePoint(factory, PrecomputedDistanceMatrix.PrecomputedKNNQuery.class, PrecomputedDistanceMatrix.PrecomputedRangeQuery.class);
   }
 
+  /**
+   * Single precision storage, compared to the exact distances.
+   */
+  @Test
+  public void testFloatPrecision() {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(StaticArrayDatabase.Par.INDEX_ID, PrecomputedDistanceMatrix.Factory.class) //
+        .addParameter(PrecomputedDistanceMatrix.Factory.Par.DISTANCE_ID, EuclideanDistance.class) //
+        .addFlag(PrecomputedDistanceMatrix.Factory.Par.FLOAT_ID);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().distanceQuery();
+    assertTrue("Distance matrix not used.", dq instanceof PrecomputedDistanceMatrix.PrecomputedDistanceQuery);
+    for(DBIDIter a = relation.iterDBIDs(); a.valid(); a.advance()) {
+      for(DBIDIter b = relation.iterDBIDs(); b.valid(); b.advance()) {
+        final double exact = EuclideanDistance.STATIC.distance(relation.get(a), relation.get(b));
+        assertEquals("Distance differs.", exact, dq.distance(a, b), 1e-7 * exact);
+      }
+    }
+  }
+
+  /**
+   * Compute the matrix with multiple threads, compared to the exact distances.
+   */
+  @Test
+  public void testParallel() {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(StaticArrayDatabase.Par.INDEX_ID, PrecomputedDistanceMatrix.Factory.class) //
+        .addParameter(PrecomputedDistanceMatrix.Factory.Par.DISTANCE_ID, EuclideanDistance.class);
+    Database db = AbstractSimpleAlgorithmTest.withParallelism(4, () -> AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams));
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().distanceQuery();
+    assertTrue("Distance matrix not used.", dq instanceof PrecomputedDistanceMatrix.PrecomputedDistanceQuery);
+    for(DBIDIter a = relation.iterDBIDs(); a.valid(); a.advance()) {
+      for(DBIDIter b = relation.iterDBIDs(); b.valid(); b.advance()) {
+        assertEquals("Distance differs.", EuclideanDistance.STATIC.distance(relation.get(a), relation.get(b)), dq.distance(a, b), 0.);
+      }
+    }
+  }
+
   /**
    * This test is to validate the odd optimized sorting logic for partial search
    * based on the distance matrix, which tries to combine benefits of
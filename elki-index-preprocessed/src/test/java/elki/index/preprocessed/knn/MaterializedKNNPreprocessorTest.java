@@ -20,6 +20,7 @@
  */
 package elki.index.preprocessed.knn;
 
+import static elki.algorithm.AbstractSimpleAlgorithmTest.withParallelism;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
@@ -32,7 +33,9 @@ import elki.data.DoubleVector;
 import elki.data.NumberVector;
 import elki.data.VectorUtil;
 import elki.data.type.TypeUtil;
+import elki.database.Database;
 import elki.database.HashmapDatabase;
+import elki.database.StaticArrayDatabase;
 import elki.database.UpdatableDatabase;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
@@ -44,6 +47,7 @@ import elki.database.relation.RelationUtil;
 import elki.datasource.FileBasedDatabaseConnection;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.distance.minkowski.EuclideanDistance;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.ELKIBuilder;
 
@@ -121,6 +125,67 @@ public class MaterializedKNNPreprocessorTest {
     testKNNQueries(relation, lin_knn_query, preproc_knn_query, k);
   }
 
+  @Test
+  public void testParallel() {
+    Relation<DoubleVector> relation = loadStatic();
+    final boolean workstealing = ParallelExecutor.isWorkStealing();
+    try {
+      for(boolean ws : new boolean[] { false, true }) {
+        ParallelExecutor.setWorkStealing(ws);
+        MaterializeKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNPreprocessor<>(relation, EuclideanDistance.STATIC, k);
+        withParallelism(4, () -> {
+          preproc.initialize();
+          return preproc;
+        });
+        assertMaterialized(relation, preproc);
+      }
+    }
+    finally {
+      ParallelExecutor.setWorkStealing(workstealing);
+    }
+  }
+
+  /**
+   * The workers must not use the preprocessor while it is materialized, even
+   * if it was already added to the relation.
+   */
+  @Test
+  public void testAddedBeforeInitialize() {
+    Relation<DoubleVector> relation = loadStatic();
+    MaterializeKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNPreprocessor<>(relation, EuclideanDistance.STATIC, k);
+    Metadata.hierarchyOf(relation).addChild(preproc);
+    withParallelism(4, () -> {
+      preproc.initialize();
+      return preproc;
+    });
+    assertMaterialized(relation, preproc);
+  }
+
+  private static Relation<DoubleVector> loadStatic() {
+    Database db = new ELKIBuilder<>(StaticArrayDatabase.class) //
+        .with(FileBasedDatabaseConnection.Par.INPUT_ID, MaterializedKNNPreprocessorTest.class.getClassLoader().getResource(dataset)) //
+        .build();
+    db.initialize();
+    return db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
+
+  /**
+   * Compare to the searcher used for materialization.
+   *
+   * @param relation Relation
+   * @param preproc Preprocessor
+   */
+  private void assertMaterialized(Relation<DoubleVector> relation, MaterializeKNNPreprocessor<DoubleVector> preproc) {
+    KNNSearcher<DBIDRef> pre_knn_query = preproc.kNNByDBID(preproc.getDistanceQuery(), k, 0);
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList knn = preproc.knnQuery.getKNN(iter, k), pre_knn = pre_knn_query.getKNN(iter, k);
+      assertEquals("kNN sizes do not agree.", knn.size(), pre_knn.size());
+      for(DoubleDBIDListIter it = knn.iter(), pre = pre_knn.iter(); it.valid(); it.advance(), pre.advance()) {
+        assertEquals("kNN distances do not agree.", it.doubleValue(), pre.doubleValue(), 1e-15);
+      }
+    }
+  }
+
   public static void testKNNQueries(Relation<DoubleVector> rep, KNNSearcher<DBIDRef> lin_knn_query, KNNSearcher<DBIDRef> preproc_knn_query, int k) {
     assertNotEquals("Preprocessor knn query class incorrect.", lin_knn_query.getClass(), preproc_knn_query.getClass());
     for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
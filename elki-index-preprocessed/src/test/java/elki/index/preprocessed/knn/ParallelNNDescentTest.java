@@ -0,0 +1,100 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.preprocessed.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.knn.LinearScanKNNByDBID;
+import elki.database.query.knn.PreprocessorKNNQuery;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the parallel NNDescent.
+ * <p>
+ * As the result depends on thread scheduling, we only check the recall.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class ParallelNNDescentTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  @Test
+  public void testPreprocessor() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DBIDRef> lin_knn_query = new LinearScanKNNByDBID<>(distanceQuery);
+
+    final boolean ws = ParallelExecutor.isWorkStealing();
+    try {
+      for(boolean stealing : new boolean[] { false, true }) {
+        ParallelExecutor.setWorkStealing(stealing);
+        ParallelNNDescent<DoubleVector> preproc = new ELKIBuilder<ParallelNNDescent.Factory<DoubleVector>>(ParallelNNDescent.Factory.class) //
+            .with(NNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistance()) //
+            .with(NNDescent.Factory.K_ID, k) //
+            .with(NNDescent.Factory.Par.SEED_ID, 0) //
+            .with(NNDescent.Factory.Par.DELTA_ID, 0.1) //
+            .with(NNDescent.Factory.Par.RHO_ID, 0.5) //
+            .build().instantiate(relation);
+        KNNSearcher<DBIDRef> preproc_knn_query = preproc.kNNByDBID(distanceQuery, k, 0);
+        assertTrue("Preprocessor knn query class incorrect.", preproc_knn_query instanceof PreprocessorKNNQuery);
+
+        int errors = 0;
+        for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+          KNNList lin_knn = lin_knn_query.getKNN(iter, k);
+          KNNList pre_knn = preproc_knn_query.getKNN(iter, k);
+          assertEquals("kNN sizes do not agree.", lin_knn.size(), pre_knn.size());
+          for(DoubleDBIDListIter lin = lin_knn.iter(), pre = pre_knn.iter(); lin.valid(); lin.advance(), pre.advance()) {
+            assertTrue("Approximate kNN closer than exact kNN.", lin.doubleValue() <= pre.doubleValue());
+            errors += DBIDUtil.equal(lin, pre) || lin.doubleValue() == pre.doubleValue() ? 0 : 1;
+          }
+        }
+        // Sequential version has about 16 errors with this seed
+        assertTrue("Too many errors: " + errors, errors <= 50);
+      }
+    }
+    finally {
+      ParallelExecutor.setWorkStealing(ws);
+    }
+  }
+}
@@ -244,6 +244,10 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       }
       // the last one caused the page to overflow.
       leafCapacity = cap - 1;
+      // when serialized, an overflowing node including the header must fit
+      while(!isInMemory() && leafCapacity > 0 && serializedNodeSize(sl, leafCapacity) > getPageSize()) {
+        --leafCapacity;
+      }
     }
     catch(IOException e) {
       throw new AbortException("Error determining page sizes.", e);
@@ -262,6 +266,9 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
         cap++;
       }
       dirCapacity = cap - 1;
+      while(!isInMemory() && dirCapacity > 0 && serializedNodeSize(sl, dirCapacity) > getPageSize()) {
+        --dirCapacity;
+      }
     }
     catch(IOException e) {
       throw new AbortException("Error determining page sizes.", e);
@@ -297,6 +304,31 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     }
   }
 
+  /**
+   * Compute the serialized size of a node, as written by a persistent page
+   * file: page type, page id, leaf flag, number of entries, capacity and the
+   * entries.
+   *
+   * @param entry Example entry
+   * @param num Number of entries
+   * @return Size in bytes
+   * @throws IOException on errors
+   */
+  private static int serializedNodeSize(SpatialEntry entry, int num) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(baos);
+    oos.writeInt(0);
+    oos.writeInt(0);
+    oos.writeBoolean(false);
+    oos.writeInt(0);
+    oos.writeInt(0);
+    for(int i = 0; i < num; i++) {
+      entry.writeExternal(oos);
+    }
+    oos.close();
+    return baos.size();
+  }
+
   /**
    * Test whether a bulk insert is still possible.
    *
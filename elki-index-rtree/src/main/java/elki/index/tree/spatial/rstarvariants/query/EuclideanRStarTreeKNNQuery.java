@@ -71,7 +71,7 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
   }
 
   @Override
-  public KNNList getKNN(O obj, int k) {
+  protected KNNList getKNN(O obj, int k, double bound) {
     if(k < 1) {
       throw new IllegalArgumentException("At least one neighbor has to be requested!");
     }
@@ -81,7 +81,8 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
     final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(knnList.getK() << 1, 21));
 
     // expand root
-    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getRootID());
+    final double sqbound = bound * bound;
+    double maxDist = expandNode(obj, knnList, pq, sqbound, sqbound, tree.getRootID());
 
     // search in tree
     while(!pq.isEmpty()) {
@@ -91,12 +92,12 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
       }
       int nodeID = pq.peekValue();
       pq.poll(); // Remove from heap.
-      maxDist = expandNode(obj, knnList, pq, maxDist, nodeID);
+      maxDist = expandNode(obj, knnList, pq, maxDist, sqbound, nodeID);
     }
     return knnList.toKNNListSqrt();
   }
 
-  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, final int nodeID) {
+  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, double sqbound, final int nodeID) {
     AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
     // data node
     if(node.isLeaf()) {
@@ -104,7 +105,7 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
         SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
         double distance = SQUARED.minDist(entry, object);
         tree.statistics.countDistanceCalculation();
-        maxDist = distance <= maxDist ? knnList.insert(distance, entry.getDBID()) : maxDist;
+        maxDist = distance <= maxDist ? Math.min(sqbound, knnList.insert(distance, entry.getDBID())) : maxDist;
       }
     }
     // directory node
@@ -115,7 +116,7 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
         tree.statistics.countDistanceCalculation();
         // Greedy expand, bypassing the queue
         if(distance <= 0) {
-          expandNode(object, knnList, pq, maxDist, entry.getPageID());
+          maxDist = expandNode(object, knnList, pq, maxDist, sqbound, entry.getPageID());
         }
         else if(distance <= maxDist) {
           pq.add(distance, entry.getPageID());
@@ -20,10 +20,20 @@
  */
 package elki.index.tree.spatial.rstarvariants.query;
 
+import java.util.Arrays;
+import java.util.List;
+
 import elki.data.spatial.SpatialComparable;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDListIter;
 import elki.database.ids.KNNHeap;
 import elki.database.ids.KNNList;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.relation.Relation;
 import elki.distance.SpatialPrimitiveDistance;
@@ -42,6 +52,11 @@ import elki.utilities.documentation.Reference;
  * G. R. Hjaltason, H. Samet<br>
  * Ranking in spatial databases<br>
  * 4th Symp. Advances in Spatial Databases (SSD'95)
+ * <p>
+ * Batches of queries are processed in the order of the leaves of the tree,
+ * so that consecutive queries are close to each other. The neighbors of the
+ * previous query then provide an upper bound for the k-distance of the next
+ * query, which allows pruning from the start.
  *
  * @author Erich Schubert
  * @since 0.4.0
@@ -54,7 +69,7 @@ import elki.utilities.documentation.Reference;
     booktitle = "4th Symp. Advances in Spatial Databases (SSD'95)", //
     url = "https://doi.org/10.1007/3-540-60159-7_6", //
     bibkey = "DBLP:conf/ssd/HjaltasonS95")
-public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSearcher<O> {
+public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSearcher<O>, BatchKNNSearcher {
   /**
    * The index to use
    */
@@ -70,6 +85,11 @@ public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSea
    */
   protected Relation<? extends O> relation;
 
+  /**
+   * Rank of each object in the order of the tree leaves, for batch queries.
+   */
+  private WritableIntegerDataStore ranks;
+
   /**
    * Constructor.
    * 
@@ -86,6 +106,18 @@ public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSea
 
   @Override
   public KNNList getKNN(O obj, int k) {
+    return getKNN(obj, k, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Get the k nearest neighbors, given an upper bound of the k-distance.
+   *
+   * @param obj Query object
+   * @param k Number of neighbors requested
+   * @param bound Upper bound of the k-distance
+   * @return neighbors
+   */
+  protected KNNList getKNN(O obj, int k, double bound) {
     if(k < 1) {
       throw new IllegalArgumentException("At least one neighbor has to be requested!");
     }
@@ -95,7 +127,7 @@ public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSea
     final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(knnList.getK() << 1, 21));
 
     // expand root
-    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getRootID());
+    double maxDist = expandNode(obj, knnList, pq, bound, bound, tree.getRootID());
 
     // search in tree
     while(!pq.isEmpty()) {
@@ -105,12 +137,12 @@ public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSea
       }
       int nodeID = pq.peekValue();
       pq.poll(); // Remove from heap.
-      maxDist = expandNode(obj, knnList, pq, maxDist, nodeID);
+      maxDist = expandNode(obj, knnList, pq, maxDist, bound, nodeID);
     }
     return knnList.toKNNList();
   }
 
-  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, final int nodeID) {
+  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, double bound, final int nodeID) {
     AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
     // data node
     if(node.isLeaf()) {
@@ -118,7 +150,7 @@ public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSea
         SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
         double dist = distance.minDist(entry, object);
         tree.statistics.countDistanceCalculation();
-        maxDist = dist <= maxDist ? knnList.insert(dist, entry.getDBID()) : maxDist;
+        maxDist = dist <= maxDist ? Math.min(bound, knnList.insert(dist, entry.getDBID())) : maxDist;
       }
     }
     // directory node
@@ -129,7 +161,7 @@ public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSea
         tree.statistics.countDistanceCalculation();
         // Greedy expand, bypassing the queue
         if(dist <= 0) {
-          expandNode(object, knnList, pq, maxDist, entry.getPageID());
+          maxDist = expandNode(object, knnList, pq, maxDist, bound, entry.getPageID());
         }
         else if(dist <= maxDist) {
           pq.add(dist, entry.getPageID());
@@ -138,4 +170,85 @@ public class RStarTreeKNNSearcher<O extends SpatialComparable> implements KNNSea
     }
     return maxDist;
   }
+
+  @Override
+  public List<KNNList> getKNNBatch(ArrayDBIDs ids, int k) {
+    final int[] order = leafOrder(ids);
+    KNNList[] result = new KNNList[order.length];
+    DBIDArrayIter qi = ids.iter();
+    KNNList prev = null;
+    for(int i : order) {
+      final O obj = relation.get(qi.seek(i));
+      result[i] = prev = getKNN(obj, k, prev != null ? kDistanceBound(obj, prev, k) : Double.POSITIVE_INFINITY);
+    }
+    return Arrays.asList(result);
+  }
+
+  /**
+   * Upper bound of the k-distance of a query, using the neighbors of a
+   * previous query.
+   *
+   * @param obj Query object
+   * @param prev Neighbors of a previous query
+   * @param k Number of neighbors requested
+   * @return Upper bound of the k-distance
+   */
+  private double kDistanceBound(O obj, KNNList prev, int k) {
+    if(prev.size() < k) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double max = 0.;
+    DoubleDBIDListIter it = prev.iter();
+    for(int i = 0; i < k; i++, it.advance()) {
+      max = Math.max(max, distance.distance(obj, relation.get(it)));
+      tree.statistics.countDistanceCalculation();
+    }
+    // Allow for rounding differences to the distances computed in the tree.
+    return max * (1 + 1e-10);
+  }
+
+  /**
+   * Sort a batch of queries by the order of the tree leaves.
+   *
+   * @param ids Queries
+   * @return Permutation of the query offsets
+   */
+  private int[] leafOrder(ArrayDBIDs ids) {
+    if(ranks == null) {
+      ranks = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      rankLeaves(tree.getRootID(), 0);
+    }
+    final int size = ids.size();
+    long[] keys = new long[size];
+    DBIDArrayIter it = ids.iter();
+    for(int i = 0; i < size; i++, it.advance()) {
+      keys[i] = (((long) ranks.intValue(it)) << 32) | i;
+    }
+    Arrays.sort(keys);
+    int[] order = new int[size];
+    for(int i = 0; i < size; i++) {
+      order[i] = (int) keys[i];
+    }
+    return order;
+  }
+
+  /**
+   * Assign ranks to the objects in the order of the tree leaves.
+   *
+   * @param nodeID Current node
+   * @param rank Next rank to assign
+   * @return Next rank to assign
+   */
+  private int rankLeaves(int nodeID, int rank) {
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      if(node.isLeaf()) {
+        ranks.putInt(((SpatialPointLeafEntry) node.getEntry(i)).getDBID(), rank++);
+      }
+      else {
+        rank = rankLeaves(((SpatialDirectoryEntry) node.getEntry(i)).getPageID(), rank);
+      }
+    }
+    return rank;
+  }
 }
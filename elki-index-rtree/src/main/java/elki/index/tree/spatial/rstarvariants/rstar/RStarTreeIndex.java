@@ -37,15 +37,22 @@ import elki.database.relation.Relation;
 import elki.index.DistancePriorityIndex;
 import elki.index.DynamicIndex;
 import elki.index.tree.IndexTreePath;
+import elki.index.tree.LeafEntry;
 import elki.index.tree.spatial.SpatialEntry;
 import elki.index.tree.spatial.SpatialPointLeafEntry;
 import elki.index.tree.spatial.rstarvariants.RTreeSettings;
 import elki.index.tree.spatial.rstarvariants.query.RStarTreeUtil;
 import elki.logging.Logging;
 import elki.persistent.PageFile;
+import elki.utilities.exceptions.AbortException;
 
 /**
  * The common use of the rstar tree: indexing number vectors.
+ * <p>
+ * When used with a persistent page file that already exists, the tree is
+ * reopened from the file instead of being rebuilt. The file must have been
+ * built from the same relation, i.e., with the same data and DBIDs; if the
+ * stored objects do not match the relation, initialization is aborted.
  * 
  * @author Erich Schubert
  * @since 0.4.0
@@ -88,7 +95,33 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
   @Override
   public void initialize() {
     super.initialize();
+    if(initialized) {
+      checkStoredObjects();
+      LOG.verbose("R*-tree was loaded from an existing page file.");
+      return;
+    }
     insertAll(relation.getDBIDs()); // Will check for actual bulk load!
+    flush();
+  }
+
+  /**
+   * Verify that a tree loaded from an existing page file contains exactly the
+   * objects of the relation. Otherwise, the page file is closed and the
+   * initialization is aborted.
+   */
+  private void checkStoredObjects() {
+    final DBIDs ids = relation.getDBIDs();
+    int stored = 0, unknown = 0;
+    for(SpatialEntry leaf : getLeaves()) {
+      RStarTreeNode node = getNode(leaf);
+      for(int i = 0; i < node.getNumEntries(); i++, stored++) {
+        unknown += ids.contains(((LeafEntry) node.getEntry(i)).getDBID()) ? 0 : 1;
+      }
+    }
+    if(stored != ids.size() || unknown > 0) {
+      close();
+      throw new AbortException("The existing page file contains " + stored + " objects (" + unknown + " not in the relation), but the relation has " + ids.size() + ". Delete the page file to rebuild the index.");
+    }
   }
 
   /**
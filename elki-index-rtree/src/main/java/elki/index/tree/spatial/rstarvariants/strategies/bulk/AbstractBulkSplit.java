@@ -21,7 +21,12 @@
 package elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+import elki.parallel.ParallelCore;
+import elki.utilities.datastructures.QuickSelect;
 /**
  * Encapsulates the required parameters for a bulk split of a spatial index.
  * 
@@ -29,6 +34,11 @@ import java.util.List;
  * @since 0.4.0
  */
 public abstract class AbstractBulkSplit implements BulkSplit {
+  /**
+   * Minimum number of objects to partition in parallel.
+   */
+  protected static final int PARALLEL_THRESHOLD = 1 << 14;
+
   /**
    * Constructor
    */
@@ -85,4 +95,58 @@ public abstract class AbstractBulkSplit implements BulkSplit {
     }
     return partitions;
   }
-}
\ No newline at end of file
+
+  /**
+   * Partially sort a list such that all given positions are in place: no
+   * object before a position is larger than the object at this position, and
+   * no object after it is smaller.
+   * <p>
+   * The positions are processed by recursive bisection, which needs
+   * O(n log s) instead of O(n s) comparisons for s positions.
+   *
+   * @param objs Objects to sort
+   * @param c Comparator
+   * @param start Range start
+   * @param end Range end (exclusive)
+   * @param pos Positions, strictly increasing, in [start, end)
+   * @param lo First position to process
+   * @param hi Last position to process (exclusive)
+   * @param <T> Object type
+   */
+  protected static <T> void selectPositions(List<? extends T> objs, Comparator<? super T> c, int start, int end, int[] pos, int lo, int hi) {
+    while(lo < hi) {
+      final int mid = (lo + hi) >>> 1, p = pos[mid];
+      QuickSelect.quickSelect(objs, c, start, end, p);
+      selectPositions(objs, c, start, p, pos, lo, mid);
+      start = p + 1;
+      lo = mid + 1;
+    }
+  }
+
+  /**
+   * Run a partitioning task. Large tasks are run in the fork-join pool of the
+   * {@link ParallelCore}, so they can fork subtasks.
+   *
+   * @param size Number of objects
+   * @param task Task to run
+   */
+  protected static void invoke(int size, Runnable task) {
+    if(size >= PARALLEL_THRESHOLD && ParallelCore.getCore().getParallelism() > 1) {
+      ParallelCore.getCore().invoke(ForkJoinTask.adapt(task));
+    }
+    else {
+      task.run();
+    }
+  }
+
+  /**
+   * Check whether a range should be split into parallel subtasks.
+   *
+   * @param size Size of the range
+   * @return {@code true} when running in a fork-join pool, and the range is
+   *         large enough
+   */
+  protected static boolean forkSubtasks(int size) {
+    return size >= PARALLEL_THRESHOLD && ForkJoinTask.inForkJoinPool();
+  }
+}
@@ -23,10 +23,10 @@ package elki.index.tree.spatial.rstarvariants.strategies.bulk;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 import elki.data.spatial.SpatialComparable;
 import elki.data.spatial.SpatialSingleMeanComparator;
-import elki.utilities.datastructures.QuickSelect;
 import elki.utilities.optionhandling.Parameterizer;
 import net.jafama.FastMath;
 
@@ -57,12 +57,13 @@ public class AdaptiveSortTileRecursiveBulkSplit extends AbstractBulkSplit {
     final int dims = spatialObjects.get(0).getDimensionality();
     final int p = (int) FastMath.ceil(spatialObjects.size() / (double) maxEntries);
     List<List<T>> ret = new ArrayList<>(p);
-    strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
+    invoke(spatialObjects.size(), () -> strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret));
     return ret;
   }
 
   /**
-   * Recursively partition.
+   * Recursively partition. Large slabs are processed in parallel, when
+   * running in a fork-join pool.
    * 
    * @param objs Object list
    * @param start Subinterval start
@@ -76,6 +77,12 @@ public class AdaptiveSortTileRecursiveBulkSplit extends AbstractBulkSplit {
    */
   protected <T extends SpatialComparable> void strPartition(List<T> objs, int start, int end, int depth, int dims, int maxEntries, SpatialSingleMeanComparator c, List<List<T>> ret) {
     final int p = (int) FastMath.ceil((end - start) / (double) maxEntries);
+    // Fits into a single page: do not split further, as this may produce
+    // more pages than entries, and thus never converge.
+    if(p <= 1) {
+      ret.add(objs.subList(start, end));
+      return;
+    }
 
     // Compute min and max:
     double[] mm = new double[dims * 2];
@@ -117,15 +124,37 @@ public class AdaptiveSortTileRecursiveBulkSplit extends AbstractBulkSplit {
     }
 
     final double len = end - start; // double intentional!
+    // We don't completely sort, but only ensure the quantiles are invariant.
+    int[] bounds = new int[s];
+    int nb = 0;
+    for (int i = 1; i < s; i++) {
+      int e2 = start + (int) ((i * len) / s);
+      if (e2 > (nb > 0 ? bounds[nb - 1] : start) && e2 < end) {
+        bounds[nb++] = e2;
+      }
+    }
+    c.setDimension(sdim);
+    selectPositions(objs, c, start, end, bounds, 0, nb);
+    if (depth + 1 < dims && forkSubtasks(end - start)) {
+      // Descend into the slabs in parallel
+      List<ForkJoinTask<List<List<T>>>> tasks = new ArrayList<>(s);
+      for (int i = 0; i < s; i++) {
+        final int s2 = start + (int) ((i * len) / s);
+        final int e2 = start + (int) (((i + 1) * len) / s);
+        tasks.add(ForkJoinTask.adapt(() -> {
+          List<List<T>> sub = new ArrayList<>();
+          strPartition(objs, s2, e2, depth + 1, dims, maxEntries, new SpatialSingleMeanComparator(0), sub);
+          return sub;
+        }));
+      }
+      for (ForkJoinTask<List<List<T>>> task : ForkJoinTask.invokeAll(tasks)) {
+        ret.addAll(task.join());
+      }
+      return;
+    }
     for (int i = 0; i < s; i++) {
-      // We don't completely sort, but only ensure the quantile is invariant.
       int s2 = start + (int) ((i * len) / s);
       int e2 = start + (int) (((i + 1) * len) / s);
-      // LoggingUtil.warning("STR " + dim + " s2:" + s2 + " e2:" + e2);
-      if (e2 < end) {
-        c.setDimension(sdim);
-        QuickSelect.quickSelect(objs, c, s2, end, e2);
-      }
       if (depth + 1 == dims) {
         ret.add(objs.subList(s2, e2));
       } else {
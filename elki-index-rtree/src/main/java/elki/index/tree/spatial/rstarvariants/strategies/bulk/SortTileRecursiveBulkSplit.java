@@ -22,11 +22,11 @@ package elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 import elki.data.spatial.SpatialComparable;
 import elki.data.spatial.SpatialSingleMeanComparator;
 import elki.utilities.Alias;
-import elki.utilities.datastructures.QuickSelect;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.Parameterizer;
 import net.jafama.FastMath;
@@ -61,12 +61,13 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
     final int dims = spatialObjects.get(0).getDimensionality();
     final int p = (int) FastMath.ceil(spatialObjects.size() / (double) maxEntries);
     List<List<T>> ret = new ArrayList<>(p);
-    strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
+    invoke(spatialObjects.size(), () -> strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret));
     return ret;
   }
 
   /**
-   * Recursively partition.
+   * Recursively partition. Large slabs are processed in parallel, when
+   * running in a fork-join pool.
    * 
    * @param objs Object list
    * @param start Subinterval start
@@ -83,15 +84,37 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
     final int s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
 
     final double len = end - start; // double intentional!
+    // We don't completely sort, but only ensure the quantiles are invariant.
+    int[] bounds = new int[s];
+    int nb = 0;
+    for(int i = 1; i < s; i++) {
+      int e2 = start + (int) ((i * len) / s);
+      if(e2 > (nb > 0 ? bounds[nb - 1] : start) && e2 < end) {
+        bounds[nb++] = e2;
+      }
+    }
+    c.setDimension(depth);
+    selectPositions(objs, c, start, end, bounds, 0, nb);
+    if(depth + 1 < dims && forkSubtasks(end - start)) {
+      // Descend into the slabs in parallel
+      List<ForkJoinTask<List<List<T>>>> tasks = new ArrayList<>(s);
+      for(int i = 0; i < s; i++) {
+        final int s2 = start + (int) ((i * len) / s);
+        final int e2 = start + (int) (((i + 1) * len) / s);
+        tasks.add(ForkJoinTask.adapt(() -> {
+          List<List<T>> sub = new ArrayList<>();
+          strPartition(objs, s2, e2, depth + 1, dims, maxEntries, new SpatialSingleMeanComparator(depth + 1), sub);
+          return sub;
+        }));
+      }
+      for(ForkJoinTask<List<List<T>>> task : ForkJoinTask.invokeAll(tasks)) {
+        ret.addAll(task.join());
+      }
+      return;
+    }
     for(int i = 0; i < s; i++) {
-      // We don't completely sort, but only ensure the quantile is invariant.
       int s2 = start + (int) ((i * len) / s);
       int e2 = start + (int) (((i + 1) * len) / s);
-      // LoggingUtil.warning("STR " + dim + " s2:" + s2 + " e2:" + e2);
-      if(e2 < end) {
-        c.setDimension(depth);
-        QuickSelect.quickSelect(objs, c, s2, end, e2);
-      }
       if(depth + 1 == dims) {
         ret.add(objs.subList(s2, e2));
       }
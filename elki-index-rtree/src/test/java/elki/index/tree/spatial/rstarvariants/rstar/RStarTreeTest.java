@@ -61,6 +61,7 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     assertPrioritySearchEuclidean(factory, EuclideanRStarTreeDistancePrioritySearcher.class);
     assertExactCosine(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+    assertBatchEuclidean(factory);
   }
 
   /**
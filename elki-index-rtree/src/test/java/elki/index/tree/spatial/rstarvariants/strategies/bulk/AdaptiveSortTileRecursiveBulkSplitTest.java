@@ -52,4 +52,12 @@ public class AdaptiveSortTileRecursiveBulkSplitTest extends AbstractIndexStructu
     assertExactCosine(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  /**
+   * Compare the parallel partitioning to a single-threaded run.
+   */
+  @Test
+  public void testParallelPartition() {
+    SortTileRecursiveBulkSplitTest.assertParallelPartition(AdaptiveSortTileRecursiveBulkSplit.STATIC);
+  }
 }
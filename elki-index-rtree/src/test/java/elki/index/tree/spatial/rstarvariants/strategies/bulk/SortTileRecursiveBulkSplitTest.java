@@ -20,8 +20,17 @@
  */
 package elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
+import static elki.algorithm.AbstractSimpleAlgorithmTest.withParallelism;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
+import elki.data.DoubleVector;
 import elki.data.NumberVector;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
@@ -51,4 +60,37 @@ public class SortTileRecursiveBulkSplitTest extends AbstractIndexStructureTest {
     assertExactCosine(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  /**
+   * Compare the parallel partitioning to a single-threaded run.
+   */
+  @Test
+  public void testParallelPartition() {
+    assertParallelPartition(SortTileRecursiveBulkSplit.STATIC);
+  }
+
+  /**
+   * Partition random data with a single thread and with four threads, and
+   * assert that the partitions are identical.
+   *
+   * @param split Bulk split strategy
+   */
+  static void assertParallelPartition(BulkSplit split) {
+    Random r = new Random(0L);
+    List<DoubleVector> data = new ArrayList<>();
+    for(int i = 0; i < AbstractBulkSplit.PARALLEL_THRESHOLD * 3; i++) {
+      data.add(DoubleVector.wrap(new double[] { r.nextDouble(), r.nextDouble(), r.nextDouble() }));
+    }
+    List<DoubleVector> copy = new ArrayList<>(data);
+    List<List<DoubleVector>> seq = withParallelism(1, () -> split.partition(data, 10, 50));
+    List<List<DoubleVector>> par = withParallelism(4, () -> split.partition(copy, 10, 50));
+    assertEquals("Number of partitions differs.", seq.size(), par.size());
+    for(int i = 0; i < seq.size(); i++) {
+      List<DoubleVector> a = seq.get(i), b = par.get(i);
+      assertEquals("Partition size differs.", a.size(), b.size());
+      for(int j = 0; j < a.size(); j++) {
+        assertSame("Partition contents differ.", a.get(j), b.get(j));
+      }
+    }
+  }
 }
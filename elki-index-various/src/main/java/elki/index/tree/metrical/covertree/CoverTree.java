@@ -21,13 +21,18 @@
 package elki.index.tree.metrical.covertree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.*;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
@@ -264,7 +269,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     assert candidates.isEmpty();
     // Routing object is not yet handled:
     if(curSingleton && !node.children.isEmpty()) {
-      node.singletons.add(parentDist, cur); // Add as regular singleton.
+      node.singletons.add(0., cur); // Add as regular singleton.
     }
     // TODO: improve recycling of lists?
     return node;
@@ -333,6 +338,24 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
             new CoverTreePriorityDBIDSearcher() : null;
   }
 
+  /**
+   * Assign ranks to the objects in depth-first order of the tree.
+   *
+   * @param cur Current node
+   * @param ranks Output storage
+   * @param rank Next rank to assign
+   * @return Next rank to assign
+   */
+  private static int rankNodes(Node cur, WritableIntegerDataStore ranks, int rank) {
+    for(DoubleDBIDListIter it = cur.singletons.iter(); it.valid(); it.advance()) {
+      ranks.putInt(it, rank++);
+    }
+    for(Node c : cur.children) {
+      rank = rankNodes(c, ranks, rank);
+    }
+    return rank;
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -480,8 +503,19 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
      * @return results
      */
     protected KNNList doSearch(int k) {
+      return doSearch(k, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Do the main search, given an upper bound of the k-distance.
+     *
+     * @param k Number of neighbors to collect
+     * @param bound Upper bound of the k-distance
+     * @return results
+     */
+    protected KNNList doSearch(int k, double bound) {
       KNNHeap knnList = DBIDUtil.newHeap(k);
-      double d_k = Double.POSITIVE_INFINITY;
+      double d_k = bound;
       pq.clear();
       pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
 
@@ -491,7 +525,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
         final double prio = pq.peekKey(); // Minimum distance to cover
         pq.poll(); // Remove
 
-        if(knnList.size() >= k && prio > d_k) {
+        if(prio > d_k) {
           continue;
         }
         final double d = prio + cur.maxDist; // Restore distance to center.
@@ -515,7 +549,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
         else { // Leaf node
           // Consider routing object, too:
           if(d <= d_k) {
-            d_k = knnList.insert(d, it); // First element is a candidate now
+            d_k = Math.min(bound, knnList.insert(d, it)); // First element is a candidate now
           }
         }
         it.advance(); // Skip routing object.
@@ -524,7 +558,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
           if(Math.abs(d - it.doubleValue()) <= d_k) {
             final double d2 = queryDistance(it);
             if(d2 <= d_k) {
-              d_k = knnList.insert(d2, it);
+              d_k = Math.min(bound, knnList.insert(d2, it));
             }
           }
           it.advance();
@@ -570,18 +604,62 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
    *
    * @author Erich Schubert
    */
-  public class CoverTreeKNNDBIDSearcher extends CoverTreeKNNSearcher implements KNNSearcher<DBIDRef> {
+  public class CoverTreeKNNDBIDSearcher extends CoverTreeKNNSearcher implements KNNSearcher<DBIDRef>, BatchKNNSearcher {
     /**
      * Query reference.
      */
     private DBIDRef query;
 
+    /**
+     * Rank of each object in depth-first order of the tree, for batch queries.
+     */
+    private WritableIntegerDataStore ranks;
+
     @Override
     public KNNList getKNN(DBIDRef query, int k) {
       this.query = query;
       return doSearch(k);
     }
 
+    /**
+     * Process a batch of queries in depth-first order of the tree, so that
+     * consecutive queries are close to each other. The neighbors of the
+     * previous query then provide an upper bound for the k-distance of the
+     * next query, which allows pruning from the start.
+     */
+    @Override
+    public List<KNNList> getKNNBatch(ArrayDBIDs ids, int k) {
+      if(ranks == null) {
+        ranks = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+        rankNodes(root, ranks, 0);
+      }
+      final int size = ids.size();
+      long[] keys = new long[size];
+      DBIDArrayIter qi = ids.iter();
+      for(int i = 0; i < size; i++, qi.advance()) {
+        keys[i] = (((long) ranks.intValue(qi)) << 32) | i;
+      }
+      Arrays.sort(keys);
+      KNNList[] result = new KNNList[size];
+      KNNList prev = null;
+      for(long key : keys) {
+        final int i = (int) key;
+        this.query = qi.seek(i);
+        double bound = Double.POSITIVE_INFINITY;
+        if(prev != null && prev.size() >= k) {
+          bound = 0.;
+          DoubleDBIDListIter it = prev.iter();
+          for(int j = 0; j < k; j++, it.advance()) {
+            bound = Math.max(bound, queryDistance(it));
+          }
+          // Slack for rounding errors in the reconstructed distances:
+          bound += 1e-10 * (bound + root.maxDist);
+        }
+        result[i] = prev = doSearch(k, bound);
+      }
+      return Arrays.asList(result);
+    }
+
     @Override
     protected double queryDistance(DBIDRef it) {
       return distance(query, it);
@@ -792,12 +870,25 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
    *
    * @author Erich Schubert
    */
-  public class CoverTreePriorityDBIDSearcher extends CoverTreePrioritySearcher<DBIDRef> {
+  public class CoverTreePriorityDBIDSearcher extends CoverTreePrioritySearcher<DBIDRef> implements BatchKNNSearcher {
     /**
      * Query object
      */
     private DBIDRef query;
 
+    /**
+     * kNN searcher for batch queries.
+     */
+    private CoverTreeKNNDBIDSearcher batch;
+
+    @Override
+    public List<KNNList> getKNNBatch(ArrayDBIDs ids, int k) {
+      if(batch == null) {
+        batch = new CoverTreeKNNDBIDSearcher();
+      }
+      return batch.getKNNBatch(ids, k);
+    }
+
     @Override
     public PrioritySearcher<DBIDRef> search(DBIDRef query) {
       this.query = query;
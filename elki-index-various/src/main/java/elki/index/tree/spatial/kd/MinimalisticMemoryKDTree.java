@@ -587,6 +587,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
       this.query = query;
       this.threshold = Double.POSITIVE_INFINITY;
       this.pos = Integer.MIN_VALUE;
+      this.cur = null;
       this.heap.clear();
       this.heap.add(new PrioritySearchBranch(0, 0, sorted.size(), 0));
       return advance();
@@ -563,6 +563,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
       this.query = query;
       this.threshold = Double.POSITIVE_INFINITY;
       this.pos = Integer.MIN_VALUE;
+      this.cur = null;
       this.heap.clear();
       this.heap.add(new PrioritySearchBranch(0, 0, sorted.size(), 0));
       return advance();
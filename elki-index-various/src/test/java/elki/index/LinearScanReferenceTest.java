@@ -20,15 +20,33 @@
  */
 package elki.index;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
 import org.junit.Test;
 
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
 import elki.database.query.distance.LinearScanEuclideanPrioritySearcher;
 import elki.database.query.knn.LinearScanEuclideanKNNByObject;
+import elki.database.query.knn.LinearScanKNNByDBID;
 import elki.database.query.knn.LinearScanPrimitiveKNNByObject;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.LinearScanEuclideanRangeByObject;
 import elki.database.query.range.LinearScanPrimitiveDistanceRangeByObject;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
 
 /**
  * This unit test verifies that the linear scan produces the reference result.
@@ -45,6 +63,7 @@ public class LinearScanReferenceTest extends AbstractIndexStructureTest {
     assertExactEuclidean(null, LinearScanEuclideanKNNByObject.class, LinearScanEuclideanRangeByObject.class);
     assertPrioritySearchEuclidean(null, LinearScanEuclideanPrioritySearcher.class);
     assertSinglePoint(null, WrappedKNNDBIDByLookup.Linear.class, WrappedRangeDBIDByLookup.Linear.class);
+    assertBatchEuclidean(null);
   }
 
   /**
@@ -54,4 +73,27 @@ public class LinearScanReferenceTest extends AbstractIndexStructureTest {
   public void testExactCosine() {
     assertExactCosine(null, LinearScanPrimitiveKNNByObject.class, LinearScanPrimitiveDistanceRangeByObject.class);
   }
+
+  /**
+   * Test the batch queries of the linear scan by DBID, which is used for
+   * distances that are not primitive.
+   */
+  @Test
+  public void testBatchByDBID() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    LinearScanKNNByDBID<DoubleVector> knnq = new LinearScanKNNByDBID<>(new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    List<KNNList> batch = knnq.getKNNBatch(ids, k);
+    assertEquals("Wrong number of batch results", ids.size(), batch.size());
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      KNNList single = knnq.getKNN(it, k), res = batch.get(i);
+      assertEquals("Result size does not match at query " + i, single.size(), res.size());
+      for(DoubleDBIDListIter a = single.iter(), b = res.iter(); a.valid(); a.advance(), b.advance()) {
+        assertEquals("Distance does not match at query " + i, a.doubleValue(), b.doubleValue(), 0.);
+        assertTrue("Neighbor does not match at query " + i, DBIDUtil.equal(a, b));
+      }
+    }
+  }
 }
@@ -41,4 +41,13 @@ public class MinimalisticMemoryKDTreeTest extends AbstractIndexStructureTest {
     assertPrioritySearchEuclidean(factory, MinimalisticMemoryKDTree.KDTreePrioritySearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  /**
+   * Regression test: restarting an incomplete priority search returned no
+   * results.
+   */
+  @Test
+  public void testPrioritySearchRestart() {
+    assertPrioritySearchRestart(new ELKIBuilder<>(MinimalisticMemoryKDTree.Factory.class).build());
+  }
 }
@@ -41,4 +41,13 @@ public class SmallMemoryKDTreeTest extends AbstractIndexStructureTest {
     assertPrioritySearchEuclidean(factory, SmallMemoryKDTree.KDTreePrioritySearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  /**
+   * Regression test: restarting an incomplete priority search returned no
+   * results.
+   */
+  @Test
+  public void testPrioritySearchRestart() {
+    assertPrioritySearchRestart(new ELKIBuilder<>(SmallMemoryKDTree.Factory.class).build());
+  }
 }
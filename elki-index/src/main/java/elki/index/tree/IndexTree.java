@@ -23,6 +23,7 @@ package elki.index.tree;
 import elki.index.Index;
 import elki.logging.Logging;
 import elki.logging.statistics.LongStatistic;
+import elki.persistent.MemoryPageFile;
 import elki.persistent.PageFile;
 
 /**
@@ -92,10 +93,10 @@ public abstract class IndexTree<N extends Node<E>, E> implements Index {
   @Override
   public void initialize() {
     TreeIndexHeader header = createHeader();
+    rootEntry = createRootEntry();
     if(this.file.initialize(header)) {
       initializeFromFile(header, file);
     }
-    rootEntry = createRootEntry();
   }
 
   /**
@@ -312,6 +313,30 @@ public abstract class IndexTree<N extends Node<E>, E> implements Index {
     return file.getPageSize();
   }
 
+  /**
+   * Test whether the nodes are kept in main memory, and are not serialized to
+   * pages of limited size.
+   *
+   * @return {@code true} for in-memory page files
+   */
+  protected boolean isInMemory() {
+    return file instanceof MemoryPageFile;
+  }
+
+  /**
+   * Write all buffered changes to the backing storage.
+   */
+  protected void flush() {
+    file.flush();
+  }
+
+  /**
+   * Close the backing page file. The index must not be used afterwards.
+   */
+  public void close() {
+    file.close();
+  }
+
   /**
    * Directly access the backing page file, still used by the old xtree code.
    *
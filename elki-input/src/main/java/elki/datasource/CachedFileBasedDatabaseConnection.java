@@ -0,0 +1,326 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import elki.datasource.bundle.BundleReader;
+import elki.datasource.bundle.BundleWriter;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.datasource.filter.ObjectFilter;
+import elki.datasource.parser.Parser;
+import elki.logging.Logging;
+import elki.logging.statistics.Duration;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.FileUtil;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameterization.TrackParameters;
+import elki.utilities.optionhandling.parameterization.TrackedParameter;
+import elki.utilities.optionhandling.parameters.FileParameter;
+import elki.utilities.optionhandling.parameters.Parameter;
+
+/**
+ * File based database connection that keeps a binary cache of the parsed and
+ * filtered data.
+ * <p>
+ * The cache key is a SHA-256 digest of the input file contents combined with
+ * the parser and filter configuration. On the first run, the file is parsed as
+ * usual, and the resulting bundle is written in the compact format of
+ * {@link BundleWriter}. Subsequent runs on the same data with the same
+ * configuration load this file instead of parsing again, which is much faster
+ * for large text files, e.g., when running parameter sweeps.
+ * <p>
+ * To avoid reading the entire input for the digest on every run, a small
+ * stamp file keyed by the path, size, and modification time of a local input
+ * file refers to the cache file; the digest is only computed if there is no
+ * valid stamp, e.g., when the file was modified.
+ * <p>
+ * If the data cannot be serialized (i.e., a column type without a serializer)
+ * or the cache directory is not writable, the data is loaded without caching.
+ * Note that filters using an unseeded random generator will be "frozen" by the
+ * cache; use a fixed seed or {@link FileBasedDatabaseConnection} instead.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @composed - - - BundleReader
+ * @composed - - - BundleWriter
+ */
+public class CachedFileBasedDatabaseConnection extends FileBasedDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(CachedFileBasedDatabaseConnection.class);
+
+  /**
+   * Input file.
+   */
+  private URI infile;
+
+  /**
+   * Cache directory.
+   */
+  private Path cachedir;
+
+  /**
+   * Configuration (parser and filters) to include in the cache key.
+   */
+  private String configuration;
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters, can be null
+   * @param parser the parser to provide a database
+   * @param infile File to load the data from
+   * @param cachedir Directory to store cache files in
+   * @param configuration Parser and filter configuration, for the cache key
+   */
+  public CachedFileBasedDatabaseConnection(List<? extends ObjectFilter> filters, Parser parser, URI infile, Path cachedir, String configuration) {
+    super(filters, parser, infile);
+    this.infile = infile;
+    this.cachedir = cachedir;
+    this.configuration = configuration;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    Path cachefile = getCacheFile();
+    if(cachefile != null && Files.isReadable(cachefile)) {
+      Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".cache.load").begin() : null;
+      try (FileChannel channel = FileChannel.open(cachefile)) {
+        MultipleObjectsBundle bundle = new BundleReader(channel).asMultipleObjectsBundle();
+        if(duration != null) {
+          LOG.statistics(duration.end());
+        }
+        LOG.verbose("Loaded cached data from " + cachefile);
+        return bundle;
+      }
+      catch(IOException | RuntimeException e) {
+        LOG.warning("Could not read cache file " + cachefile + ", parsing input again.", e);
+      }
+    }
+    MultipleObjectsBundle bundle = super.loadData();
+    if(cachefile != null) {
+      writeCache(bundle, cachefile);
+    }
+    return bundle;
+  }
+
+  /**
+   * Get the name of the cache file for the current input and configuration.
+   *
+   * @return Cache file, or {@code null} if the input cannot be read.
+   */
+  protected Path getCacheFile() {
+    // Cheap check of size and modification time first:
+    Path stamp = getStampFile();
+    if(stamp != null && Files.isReadable(stamp)) {
+      try {
+        Path cachefile = cachedir.resolve(new String(Files.readAllBytes(stamp), StandardCharsets.UTF_8).trim());
+        if(Files.isReadable(cachefile)) {
+          return cachefile;
+        }
+      }
+      catch(IOException | InvalidPathException e) {
+        LOG.debug("Could not read stamp file " + stamp, e);
+      }
+    }
+    MessageDigest digest = newDigest();
+    try (InputStream in = FileUtil.open(infile)) {
+      byte[] buf = new byte[1 << 16];
+      for(int read; (read = in.read(buf)) >= 0;) {
+        digest.update(buf, 0, read);
+      }
+    }
+    catch(IOException e) {
+      LOG.warning("Could not compute digest of " + infile + ", not caching.", e);
+      return null;
+    }
+    Path cachefile = cachedir.resolve(makeKey(toHex(new StringBuilder(64), digest.digest()) + ":" + configuration) + ".bundle");
+    if(stamp != null) {
+      try {
+        Files.createDirectories(cachedir);
+        Files.write(stamp, cachefile.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+      }
+      catch(IOException e) {
+        LOG.debug("Could not write stamp file " + stamp, e);
+      }
+    }
+    return cachefile;
+  }
+
+  /**
+   * Get the stamp file for the size and modification time of the input.
+   *
+   * @return Stamp file, or {@code null} if the input is not a local file.
+   */
+  private Path getStampFile() {
+    if(!"file".equals(infile.getScheme())) {
+      return null;
+    }
+    try {
+      Path path = Paths.get(infile).toAbsolutePath();
+      BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
+      return cachedir.resolve(makeKey(path + ":" + attr.size() + ":" + attr.lastModifiedTime().toMillis() + ":" + configuration) + ".stamp");
+    }
+    catch(IOException | IllegalArgumentException | FileSystemNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Make a file name key by hashing the given string.
+   *
+   * @param key Key string
+   * @return File name prefix
+   */
+  private static String makeKey(String key) {
+    MessageDigest digest = newDigest();
+    digest.update(key.getBytes(StandardCharsets.UTF_8));
+    return toHex(new StringBuilder(80).append("elki-"), digest.digest()).toString();
+  }
+
+  /**
+   * Get a new SHA-256 message digest.
+   *
+   * @return Message digest
+   */
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch(NoSuchAlgorithmException e) {
+      throw new AbortException("SHA-256 is not supported by this JVM.", e);
+    }
+  }
+
+  /**
+   * Append bytes in hexadecimal notation.
+   *
+   * @param buf Output buffer
+   * @param bytes Bytes
+   * @return Output buffer
+   */
+  private static StringBuilder toHex(StringBuilder buf, byte[] bytes) {
+    for(byte b : bytes) {
+      buf.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return buf;
+  }
+
+  /**
+   * Write the cache file. The data is written to a temporary file first, and
+   * then moved into place, so that concurrent runs never see partial files.
+   *
+   * @param bundle Bundle to write
+   * @param cachefile Cache file
+   */
+  private void writeCache(MultipleObjectsBundle bundle, Path cachefile) {
+    Path tmp = null;
+    try {
+      Files.createDirectories(cachedir);
+      tmp = Files.createTempFile(cachedir, "elki-", ".tmp");
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+      }
+      Files.move(tmp, cachefile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      LOG.verbose("Cached parsed data in " + cachefile);
+    }
+    catch(IOException | AbortException e) {
+      LOG.warning("Could not write cache file " + cachefile + ": " + e.getMessage());
+      if(tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        }
+        catch(IOException e2) {
+          // Ignore.
+        }
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author ELKI Development Team
+   */
+  public static class Par extends FileBasedDatabaseConnection.Par {
+    /**
+     * Directory to store the cache files in.
+     */
+    public static final OptionID CACHE_ID = new OptionID("dbc.cache", "Directory to store the cached binary data in. Defaults to the temporary directory.");
+
+    /**
+     * Cache directory.
+     */
+    protected Path cachedir;
+
+    /**
+     * Parser and filter configuration.
+     */
+    protected String configuration;
+
+    @Override
+    public void configure(Parameterization config) {
+      TrackParameters track = new TrackParameters(config);
+      super.configure(track);
+      StringBuilder buf = new StringBuilder(200);
+      for(TrackedParameter p : track.getAllParameters()) {
+        Parameter<?> param = p.getParameter();
+        // The input file is covered by the digest of its contents.
+        if(param.getOptionID() != INPUT_ID && param.isDefined()) {
+          buf.append(param.getOptionID().getName()).append('=').append(param.getValueAsString()).append(' ');
+        }
+      }
+      this.configuration = buf.toString();
+      new FileParameter(CACHE_ID, FileParameter.FileType.OUTPUT_FILE) //
+          .setDefaultValue(Paths.get(System.getProperty("java.io.tmpdir")).toUri()) //
+          .grab(config, x -> cachedir = Paths.get(x));
+    }
+
+    @Override
+    public CachedFileBasedDatabaseConnection make() {
+      return new CachedFileBasedDatabaseConnection(filters, parser, infile, cachedir, configuration);
+    }
+  }
+}
@@ -20,12 +20,14 @@
  */
 package elki.datasource.filter;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import elki.data.type.SimpleTypeInformation;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.exceptions.AbortException;
 
 /**
@@ -38,6 +40,11 @@ import elki.utilities.exceptions.AbortException;
  * @param <O> Input object type
  */
 public abstract class AbstractConversionFilter<I, O> implements ObjectFilter {
+  /**
+   * Minimum number of objects to process in parallel.
+   */
+  protected static final int PARALLEL_THRESHOLD = 1 << 12;
+
   /**
    * A standard implementation of the filter process. First of all, all suitable
    * representations are found. Then (if {@link #prepareStart} returns true),
@@ -46,6 +53,10 @@ public abstract class AbstractConversionFilter<I, O> implements ObjectFilter {
    * In the main pass, each object is then filtered using
    * {@link #filterSingleObject}.
    * 
+   * For large data sets, filters can support parallel execution of both passes
+   * by implementing {@link #newPreparation}, {@link #mergePreparation}, and
+   * {@link #parallelFilter}.
+   * 
    * @param objects Objects to filter
    * @return Filtered bundle
    */
@@ -71,13 +82,38 @@ public abstract class AbstractConversionFilter<I, O> implements ObjectFilter {
       final SimpleTypeInformation<I> castType = (SimpleTypeInformation<I>) type;
 
       // When necessary, perform an initialization scan
+      final int n = objects.dataLength();
       if(prepareStart(castType)) {
-        FiniteProgress pprog = logger.isVerbose() ? new FiniteProgress("Preparing normalization", objects.dataLength(), logger) : null;
-        for(Object o : column) {
-          @SuppressWarnings("unchecked")
-          final I obj = (I) o;
-          prepareProcessInstance(obj);
-          logger.incrementProcessed(pprog);
+        FiniteProgress pprog = logger.isVerbose() ? new FiniteProgress("Preparing normalization", n, logger) : null;
+        final int blocks = ParallelExecutor.numBlocks(n, PARALLEL_THRESHOLD, n);
+        Preparation<I> first = blocks > 1 ? newPreparation() : null;
+        if(first != null) {
+          // Compute partial statistics in parallel, and merge them in order.
+          final List<Preparation<I>> partials = new ArrayList<>(blocks);
+          partials.add(first);
+          for(int b = 1; b < blocks; b++) {
+            partials.add(newPreparation());
+          }
+          ParallelExecutor.runRanges(n, blocks, (b, start, end) -> {
+            final Preparation<I> partial = partials.get(b);
+            for(int i = start; i < end; i++) {
+              @SuppressWarnings("unchecked")
+              final I obj = (I) column.get(i);
+              partial.prepareProcessInstance(obj);
+              logger.incrementProcessed(pprog);
+            }
+          });
+          for(Preparation<I> partial : partials) {
+            mergePreparation(partial);
+          }
+        }
+        else {
+          for(Object o : column) {
+            @SuppressWarnings("unchecked")
+            final I obj = (I) o;
+            prepareProcessInstance(obj);
+            logger.incrementProcessed(pprog);
+          }
         }
         logger.ensureCompleted(pprog);
         prepareComplete();
@@ -88,14 +124,16 @@ public abstract class AbstractConversionFilter<I, O> implements ObjectFilter {
       bundle.appendColumn(convertedType(castType), castColumn);
 
       // Normalization scan
-      FiniteProgress nprog = logger.isVerbose() ? new FiniteProgress("Data normalization", objects.dataLength(), logger) : null;
-      for(int i = 0; i < objects.dataLength(); i++) {
-        @SuppressWarnings("unchecked")
-        final I obj = (I) column.get(i);
-        final O normalizedObj = filterSingleObject(obj);
-        castColumn.set(i, normalizedObj);
-        logger.incrementProcessed(nprog);
-      }
+      FiniteProgress nprog = logger.isVerbose() ? new FiniteProgress("Data normalization", n, logger) : null;
+      ParallelExecutor.runRanges(n, parallelFilter() ? ParallelExecutor.numBlocks(n, PARALLEL_THRESHOLD, n) : 1, (b, start, end) -> {
+        for(int i = start; i < end; i++) {
+          @SuppressWarnings("unchecked")
+          final I obj = (I) column.get(i);
+          final O normalizedObj = filterSingleObject(obj);
+          castColumn.set(i, normalizedObj);
+          logger.incrementProcessed(nprog);
+        }
+      });
       logger.ensureCompleted(nprog);
     }
     return bundle;
@@ -160,6 +198,54 @@ public abstract class AbstractConversionFilter<I, O> implements ObjectFilter {
     // optional - default NOOP.
   }
 
+  /**
+   * Create a new, empty, container for the partial statistics of a parallel
+   * initialization scan. Filters that do not support this (the default) are
+   * initialized with a sequential scan using {@link #prepareProcessInstance}.
+   *
+   * @return Partial statistics, or {@code null}
+   */
+  protected Preparation<I> newPreparation() {
+    return null;
+  }
+
+  /**
+   * Merge partial statistics of a parallel initialization scan. This is called
+   * in the order of the data, before {@link #prepareComplete}.
+   *
+   * @param partial Partial statistics
+   */
+  protected void mergePreparation(Preparation<I> partial) {
+    throw new AbortException("Parallel preparation not implemented, but newPreparation not null?");
+  }
+
+  /**
+   * Return "true" when {@link #filterSingleObject} does not modify the filter
+   * state, and can be called from multiple threads concurrently.
+   *
+   * @return true or false
+   */
+  protected boolean parallelFilter() {
+    return false;
+  }
+
+  /**
+   * Partial statistics of an initialization scan on a part of the data.
+   *
+   * @author ELKI Development Team
+   *
+   * @param <I> Input object type
+   */
+  @FunctionalInterface
+  protected interface Preparation<I> {
+    /**
+     * Process a single object during initialization.
+     *
+     * @param obj Object to process
+     */
+    void prepareProcessInstance(I obj);
+  }
+
   @Override
   public String toString() {
     return getClass().getName();
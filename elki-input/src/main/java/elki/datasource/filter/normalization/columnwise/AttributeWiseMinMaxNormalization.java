@@ -20,6 +20,8 @@
  */
 package elki.datasource.filter.normalization.columnwise;
 
+import java.util.Arrays;
+
 import elki.data.NumberVector;
 import elki.data.type.SimpleTypeInformation;
 import elki.data.type.TypeUtil;
@@ -107,6 +109,17 @@ public class AttributeWiseMinMaxNormalization<V extends NumberVector> extends Ab
         minima[i] = Double.MAX_VALUE;
       }
     }
+    updateMinMax(minima, maxima, featureVector);
+  }
+
+  /**
+   * Update the minima and maxima with a feature vector.
+   *
+   * @param minima Minima
+   * @param maxima Maxima
+   * @param featureVector Feature vector
+   */
+  private static void updateMinMax(double[] minima, double[] maxima, NumberVector featureVector) {
     if(minima.length != featureVector.getDimensionality()) {
       throw new IllegalArgumentException("FeatureVectors differ in length.");
     }
@@ -121,6 +134,60 @@ public class AttributeWiseMinMaxNormalization<V extends NumberVector> extends Ab
     }
   }
 
+  @Override
+  protected Preparation<V> newPreparation() {
+    return new MinMaxPreparation();
+  }
+
+  @Override
+  protected void mergePreparation(Preparation<V> partial) {
+    MinMaxPreparation p = (MinMaxPreparation) partial;
+    if(p.minima == null) {
+      return; // No data in this partition.
+    }
+    if(minima.length == 0 || maxima.length == 0) {
+      minima = p.minima;
+      maxima = p.maxima;
+      return;
+    }
+    if(minima.length != p.minima.length) {
+      throw new IllegalArgumentException("FeatureVectors differ in length.");
+    }
+    for(int d = 0; d < minima.length; d++) {
+      minima[d] = p.minima[d] < minima[d] ? p.minima[d] : minima[d];
+      maxima[d] = p.maxima[d] > maxima[d] ? p.maxima[d] : maxima[d];
+    }
+  }
+
+  @Override
+  protected boolean parallelFilter() {
+    return true;
+  }
+
+  /**
+   * Minima and maxima of a part of the data.
+   *
+   * @author ELKI Development Team
+   */
+  private class MinMaxPreparation implements Preparation<V> {
+    /**
+     * Minima and maxima.
+     */
+    double[] minima, maxima;
+
+    @Override
+    public void prepareProcessInstance(V featureVector) {
+      if(minima == null) {
+        final int dimensionality = featureVector.getDimensionality();
+        minima = new double[dimensionality];
+        maxima = new double[dimensionality];
+        Arrays.fill(maxima, -Double.MAX_VALUE);
+        Arrays.fill(minima, Double.MAX_VALUE);
+      }
+      updateMinMax(minima, maxima, featureVector);
+    }
+  }
+
   @Override
   protected V filterSingleObject(V featureVector) {
     if(minima.length != featureVector.getDimensionality()) {
@@ -107,6 +107,16 @@ public class AttributeWiseVarianceNormalization<V extends NumberVector> extends
     if(mvs == null || mvs.length == 0) {
       mvs = MeanVariance.newArray(featureVector.getDimensionality());
     }
+    updateMeanVariance(mvs, featureVector);
+  }
+
+  /**
+   * Update the mean and variance statistics with a feature vector.
+   *
+   * @param mvs Statistics
+   * @param featureVector Feature vector
+   */
+  private static void updateMeanVariance(MeanVariance[] mvs, NumberVector featureVector) {
     for(int d = 0; d < featureVector.getDimensionality(); d++) {
       final double v = featureVector.doubleValue(d);
       if(v > Double.NEGATIVE_INFINITY && v < Double.POSITIVE_INFINITY) {
@@ -115,6 +125,54 @@ public class AttributeWiseVarianceNormalization<V extends NumberVector> extends
     }
   }
 
+  @Override
+  protected Preparation<V> newPreparation() {
+    return new MeanVariancePreparation();
+  }
+
+  @Override
+  protected void mergePreparation(Preparation<V> partial) {
+    MeanVariance[] pmvs = ((MeanVariancePreparation) partial).mvs;
+    if(pmvs == null) {
+      return; // No data in this partition.
+    }
+    if(mvs == null || mvs.length == 0) {
+      mvs = pmvs;
+      return;
+    }
+    if(mvs.length != pmvs.length) {
+      throw new IllegalArgumentException("FeatureVectors differ in length.");
+    }
+    for(int d = 0; d < mvs.length; d++) {
+      mvs[d].put(pmvs[d]);
+    }
+  }
+
+  @Override
+  protected boolean parallelFilter() {
+    return true;
+  }
+
+  /**
+   * Mean and variance statistics of a part of the data.
+   *
+   * @author ELKI Development Team
+   */
+  private class MeanVariancePreparation implements Preparation<V> {
+    /**
+     * Statistics.
+     */
+    MeanVariance[] mvs;
+
+    @Override
+    public void prepareProcessInstance(V featureVector) {
+      if(mvs == null) {
+        mvs = MeanVariance.newArray(featureVector.getDimensionality());
+      }
+      updateMeanVariance(mvs, featureVector);
+    }
+  }
+
   @Override
   protected void prepareComplete() {
     StringBuilder buf = LOG.isVerbose() ? new StringBuilder(300) : null;
@@ -104,11 +104,6 @@ public class GlobalPrincipalComponentAnalysisTransform<O extends NumberVector> e
    */
   double[][] proj = null;
 
-  /**
-   * Projection buffer.
-   */
-  double[] buf = null;
-
   /**
    * Vector for data set centering.
    */
@@ -157,6 +152,16 @@ public class GlobalPrincipalComponentAnalysisTransform<O extends NumberVector> e
     covmat.put(obj);
   }
 
+  @Override
+  protected Preparation<O> newPreparation() {
+    return new CovariancePreparation(covmat.getDimensionality());
+  }
+
+  @Override
+  protected void mergePreparation(Preparation<O> partial) {
+    covmat.put(((CovariancePreparation) partial).covmat);
+  }
+
   @Override
   protected void prepareComplete() {
     mean = covmat.getMeanVector();
@@ -174,18 +179,49 @@ public class GlobalPrincipalComponentAnalysisTransform<O extends NumberVector> e
       EigenPair ep = pcares.getEigenPairs()[d];
       plusTimesEquals(proj[d], ep.getEigenvector(), mode == Mode.FULL ? 1. / FastMath.sqrt(ep.getEigenvalue()) : 1.);
     }
-    buf = new double[dim];
   }
 
   @Override
   protected O filterSingleObject(O obj) {
-    // Shift by mean and copy to scratch buffer
+    // Shift by mean and copy to a scratch buffer
+    double[] buf = new double[mean.length];
     for(int i = 0; i < mean.length; i++) {
       buf[i] = obj.doubleValue(i) - mean[i];
     }
     return factory.newNumberVector(times(proj, buf));
   }
 
+  @Override
+  protected boolean parallelFilter() {
+    return true;
+  }
+
+  /**
+   * Covariance matrix of a part of the data.
+   *
+   * @author ELKI Development Team
+   */
+  private class CovariancePreparation implements Preparation<O> {
+    /**
+     * Covariance matrix builder.
+     */
+    CovarianceMatrix covmat;
+
+    /**
+     * Constructor.
+     *
+     * @param dim Dimensionality
+     */
+    CovariancePreparation(int dim) {
+      covmat = new CovarianceMatrix(dim);
+    }
+
+    @Override
+    public void prepareProcessInstance(O obj) {
+      covmat.put(obj);
+    }
+  }
+
   @Override
   protected SimpleTypeInformation<? super O> getInputTypeRestriction() {
     return TypeUtil.NUMBER_VECTOR_FIELD;
@@ -75,7 +75,7 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
   /**
    * Keeps the indices of the attributes to be treated as a string label.
    */
-  private long[] labelIndices;
+  protected long[] labelIndices;
 
   /**
    * Vector factory class.
@@ -205,34 +205,32 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
       return ret;
     }
     try {
-      while(reader.nextLineExceptComments()) {
-        if(parseLineInternal()) {
-          final int curdim = curvec.getDimensionality();
-          if(curdim > maxdim || mindim > curdim) {
-            mindim = (curdim < mindim) ? curdim : mindim;
-            maxdim = (curdim > maxdim) ? curdim : maxdim;
-            if(mindim != maxdim && LOG.isVerbose()) {
-              LOG.verbose("Non-uniform column width detected in input line " + reader.getLineNumber() + ", widening data type to " + mindim + "-" + maxdim + " dimensions.");
-            }
-            buildMeta();
-            nextevent = Event.NEXT_OBJECT;
-            return Event.META_CHANGED;
+      if(nextLineInternal()) {
+        final int curdim = curvec.getDimensionality();
+        if(curdim > maxdim || mindim > curdim) {
+          mindim = (curdim < mindim) ? curdim : mindim;
+          maxdim = (curdim > maxdim) ? curdim : maxdim;
+          if(mindim != maxdim && LOG.isVerbose()) {
+            LOG.verbose("Non-uniform column width detected in input line " + getLineNumber() + ", widening data type to " + mindim + "-" + maxdim + " dimensions.");
           }
-          else if(curlbl != null && meta != null && haslabels && meta.size() == 1) {
-            buildMeta();
-            nextevent = Event.NEXT_OBJECT;
-            return Event.META_CHANGED;
-          }
-          return Event.NEXT_OBJECT;
+          buildMeta();
+          nextevent = Event.NEXT_OBJECT;
+          return Event.META_CHANGED;
+        }
+        else if(curlbl != null && meta != null && haslabels && meta.size() == 1) {
+          buildMeta();
+          nextevent = Event.NEXT_OBJECT;
+          return Event.META_CHANGED;
         }
+        return Event.NEXT_OBJECT;
       }
       if(maxdim == 0) {
-        throw new AbortException("No numeric data was read in line " + reader.getLineNumber() + ". Verify the column separator; for textual data use other parsers.");
+        throw new AbortException("No numeric data was read in line " + getLineNumber() + ". Verify the column separator; for textual data use other parsers.");
       }
       return Event.END_OF_STREAM;
     }
     catch(IOException e) {
-      throw new IllegalArgumentException("Error while parsing line " + reader.getLineNumber() + ".");
+      throw new IllegalArgumentException("Error while parsing line " + getLineNumber() + ".");
     }
   }
 
@@ -242,6 +240,15 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
     unique.clear();
   }
 
+  /**
+   * Get the number of the input line of the current object, for messages.
+   *
+   * @return Line number
+   */
+  protected int getLineNumber() {
+    return reader.getLineNumber();
+  }
+
   /**
    * Update the meta element.
    */
@@ -265,6 +272,23 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
     return (rnum == 0) ? curvec : curlbl;
   }
 
+  /**
+   * Read and parse the next line containing an object, skipping comments and
+   * label rows. The result is passed via {@link #curvec} and {@link #curlbl}.
+   *
+   * @return {@code true} when an object was read, {@code false} at the end of
+   *         the stream.
+   * @throws IOException on read errors
+   */
+  protected boolean nextLineInternal() throws IOException {
+    while(reader.nextLineExceptComments()) {
+      if(parseLineInternal()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Internal method for parsing a single line. Used by both line based parsing
    * as well as block parsing. This saves the building of meta data for each
@@ -0,0 +1,316 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Matcher;
+
+import elki.data.LabelList;
+import elki.data.NumberVector;
+import elki.logging.Logging;
+import elki.parallel.ParallelCore;
+import elki.utilities.datastructures.arraylike.IntegerArray;
+
+/**
+ * Parser for a simple CSV type of format, as {@link NumberVectorLabelParser},
+ * but tokenizing and converting the input with multiple threads.
+ * <p>
+ * The input is read sequentially in chunks of complete lines. A number of
+ * chunks is then parsed in parallel, and the resulting objects are reported in
+ * the original order. This produces the same result as the single-threaded
+ * parser, and can still be used for streaming.
+ * <p>
+ * Each chunk is parsed by a separate instance of the parser (see
+ * {@link #makeChunkParser}), using {@link #parseLineInternal} and
+ * {@link #createVector}.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorLabelParser<V extends NumberVector> extends NumberVectorLabelParser<V> {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorLabelParser.class);
+
+  /**
+   * Number of lines per chunk.
+   */
+  private static final int CHUNKSIZE = 1 << 12;
+
+  /**
+   * Input format.
+   */
+  protected CSVReaderFormat format;
+
+  /**
+   * Parsed chunks of the current round.
+   */
+  private Chunk[] chunks;
+
+  /**
+   * Current chunk and position within the chunk.
+   */
+  private int chunk, pos;
+
+  /**
+   * Input line number of the current object.
+   */
+  private int curline;
+
+  /**
+   * End of input reached.
+   */
+  private boolean eof;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory) {
+    super(format, labelIndices, factory);
+    this.format = format;
+  }
+
+  /**
+   * Constructor with defaults.
+   *
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(NumberVector.Factory<V> factory) {
+    this(CSVReaderFormat.DEFAULT_FORMAT, null, factory);
+  }
+
+  @Override
+  public void initStream(InputStream in) {
+    super.initStream(in);
+    chunks = null;
+    chunk = pos = curline = 0;
+    eof = false;
+  }
+
+  @Override
+  protected boolean nextLineInternal() throws IOException {
+    while(true) {
+      if(chunks == null || chunk == chunks.length) {
+        if(eof || !readChunks()) {
+          curline = reader.getLineNumber();
+          return false;
+        }
+      }
+      final Chunk c = chunks[chunk];
+      if(pos == c.vecs.size()) {
+        chunks[chunk++] = null; // Allow garbage collection
+        pos = 0;
+        continue;
+      }
+      @SuppressWarnings("unchecked")
+      V vec = (V) c.vecs.get(pos);
+      LabelList lbls = c.labels.get(pos);
+      curline = c.lines.get(pos++);
+      // Label row, if this is the first row.
+      if(curvec == null && vec == null) {
+        columnnames = new ArrayList<>(lbls.size());
+        for(int i = 0; i < lbls.size(); i++) {
+          columnnames.add(lbls.get(i));
+        }
+        haslabels = false;
+        curlbl = null;
+        continue;
+      }
+      for(int i = 0; i < lbls.size(); i++) {
+        haslabels = true;
+        labels.add(unique.addOrGet(lbls.get(i)));
+      }
+      // Otherwise, an object without attributes (attributes is empty here).
+      curvec = vec != null ? vec : createVector();
+      curlbl = LabelList.make(labels);
+      labels.clear();
+      return true;
+    }
+  }
+
+  /**
+   * Read the next chunks of lines, and parse them in parallel.
+   *
+   * @return {@code false} if no more lines were read.
+   * @throws IOException on read errors
+   */
+  private boolean readChunks() throws IOException {
+    final int numchunks = ParallelCore.getCore().getParallelism() << 1;
+    List<String[]> lines = new ArrayList<>(numchunks);
+    List<int[]> linenums = new ArrayList<>(numchunks);
+    while(lines.size() < numchunks && !eof) {
+      String[] buf = new String[CHUNKSIZE];
+      int[] nums = new int[CHUNKSIZE];
+      int size = 0;
+      while(size < CHUNKSIZE && !(eof = !reader.nextLine())) {
+        nums[size] = reader.getLineNumber(); // Blank lines are skipped.
+        buf[size++] = reader.getBuffer().toString();
+      }
+      if(size > 0) {
+        lines.add(size < CHUNKSIZE ? Arrays.copyOf(buf, size) : buf);
+        linenums.add(nums);
+      }
+    }
+    if(lines.isEmpty()) {
+      return false;
+    }
+    chunks = new Chunk[lines.size()];
+    chunk = pos = 0;
+    if(chunks.length == 1) {
+      chunks[0] = parseChunk(lines.get(0), linenums.get(0));
+    }
+    else {
+      List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.length);
+      for(int i = 0; i < chunks.length; i++) {
+        final int c = i;
+        tasks.add(ForkJoinTask.adapt(() -> chunks[c] = parseChunk(lines.get(c), linenums.get(c))));
+      }
+      ParallelCore.getCore().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+    for(Chunk c : chunks) {
+      warnedPrecision |= c.warnedPrecision;
+    }
+    return true;
+  }
+
+  /**
+   * Make a parser for a chunk of lines. Subclasses that override
+   * {@link #createVector} must also override this method, to return an
+   * instance of their own class.
+   *
+   * @return New parser
+   */
+  protected NumberVectorLabelParser<V> makeChunkParser() {
+    return new NumberVectorLabelParser<>(format, labelIndices, factory);
+  }
+
+  /**
+   * Parse a chunk of lines with a new parser instance. This must not modify
+   * this parser.
+   *
+   * @param lines Lines to parse
+   * @param linenums Input line numbers of the lines
+   * @return Parsed chunk
+   */
+  private Chunk parseChunk(String[] lines, int[] linenums) {
+    NumberVectorLabelParser<V> parser = makeChunkParser();
+    parser.warnedPrecision = warnedPrecision;
+    Matcher comment = format.comment != null ? format.comment.matcher("") : null;
+    Chunk c = new Chunk(lines.length);
+    for(int l = 0; l < lines.length; l++) {
+      final String line = lines[l];
+      if(comment != null && comment.reset(line).matches()) {
+        continue;
+      }
+      parser.tokenizer.initialize(line, 0, line.length());
+      if(parser.parseLineInternal()) {
+        c.vecs.add(parser.curvec);
+        c.labels.add(parser.curlbl);
+      }
+      else { // Label row, if first in the input.
+        c.vecs.add(null);
+        c.labels.add(LabelList.make(parser.columnnames));
+      }
+      c.lines.add(linenums[l]);
+    }
+    parser.tokenizer.cleanup();
+    c.warnedPrecision = parser.warnedPrecision;
+    return c;
+  }
+
+  @Override
+  public void cleanup() {
+    super.cleanup();
+    chunks = null;
+  }
+
+  @Override
+  protected int getLineNumber() {
+    return curline;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parsed chunk of lines.
+   *
+   * @author ELKI Development Team
+   */
+  private static class Chunk {
+    /**
+     * Parsed vectors, {@code null} for label rows.
+     */
+    List<NumberVector> vecs;
+
+    /**
+     * Labels of each line, or column names of label rows.
+     */
+    List<LabelList> labels;
+
+    /**
+     * Input line number of each line.
+     */
+    IntegerArray lines;
+
+    /**
+     * Whether a precision warning was emitted.
+     */
+    boolean warnedPrecision;
+
+    /**
+     * Constructor.
+     *
+     * @param size Expected size
+     */
+    Chunk(int size) {
+      vecs = new ArrayList<>(size);
+      labels = new ArrayList<>(size);
+      lines = new IntegerArray(size);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author ELKI Development Team
+   */
+  public static class Par<V extends NumberVector> extends NumberVectorLabelParser.Par<V> {
+    @Override
+    public ParallelNumberVectorLabelParser<V> make() {
+      return new ParallelNumberVectorLabelParser<>(format, labelIndices, factory);
+    }
+  }
+}
@@ -20,11 +20,17 @@
  */
 package elki.datasource;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
 import java.util.zip.GZIPInputStream;
 
 import elki.data.DoubleVector;
@@ -32,9 +38,11 @@ import elki.data.type.FieldTypeInformation;
 import elki.data.type.SimpleTypeInformation;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.datasource.filter.ObjectFilter;
 import elki.datasource.parser.NumberVectorLabelParser;
+import elki.parallel.ParallelCore;
 
 /**
  * Abstract base class for testing data sources.
@@ -113,4 +121,52 @@ public abstract class AbstractDataSourceTest {
     assertTrue("Expected a vector field", meta instanceof FieldTypeInformation);
     return ((FieldTypeInformation) meta).getDimensionality();
   }
+
+  /**
+   * Apply a filter to random data, using a single thread and using multiple
+   * threads, and compare the results.
+   *
+   * @param filter Filter factory, to use a fresh filter for each run
+   * @param size Number of vectors, to exceed the parallel threshold
+   * @param tol Tolerance
+   */
+  protected static void assertParallelFilter(Supplier<ObjectFilter> filter, int size, double tol) {
+    MultipleObjectsBundle sequential = filterRandomData(filter.get(), size, 1);
+    MultipleObjectsBundle parallel = filterRandomData(filter.get(), size, 4);
+    assertEquals("Size differs", sequential.dataLength(), parallel.dataLength());
+    for(int row = 0; row < sequential.dataLength(); row++) {
+      DoubleVector v1 = get(sequential, row, 0, DoubleVector.class);
+      DoubleVector v2 = get(parallel, row, 0, DoubleVector.class);
+      assertArrayEquals("Parallel result differs", v1.toArray(), v2.toArray(), tol);
+    }
+  }
+
+  /**
+   * Filter random data with a fixed parallelism.
+   *
+   * @param filter Filter
+   * @param size Number of vectors
+   * @param threads Number of threads
+   * @return Filtered bundle
+   */
+  private static MultipleObjectsBundle filterRandomData(ObjectFilter filter, int size, int threads) {
+    final int dim = 3;
+    Random rnd = new Random(0L);
+    List<DoubleVector> data = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = rnd.nextGaussian() * (d + 1) + d;
+      }
+      data.add(DoubleVector.wrap(v));
+    }
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim), data);
+    ParallelCore.getCore().setParallelism(threads);
+    try {
+      return filter.filter(bundle);
+    }
+    finally {
+      ParallelCore.getCore().setParallelism(0);
+    }
+  }
 }
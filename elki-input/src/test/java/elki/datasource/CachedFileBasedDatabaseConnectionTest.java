@@ -0,0 +1,133 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.datasource.filter.normalization.columnwise.AttributeWiseMinMaxNormalization;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the cached file based database connection.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class CachedFileBasedDatabaseConnectionTest extends AbstractDataSourceTest {
+  /**
+   * Modification time to detect rewritten cache files.
+   */
+  private static final FileTime OLD = FileTime.fromMillis(0);
+
+  @Test
+  public void testCache() throws IOException {
+    Path dir = Files.createTempDirectory("elki-cache-test");
+    Path input = dir.resolve("input.csv");
+    try (InputStream is = open(UNITTEST + "normalization-test-1.csv")) {
+      Files.copy(is, input);
+    }
+    try {
+      MultipleObjectsBundle parsed = load(input, dir, false);
+      assertEquals("Cache file not written.", 1, countFiles(dir, ".bundle"));
+      // Backdate the cache file, to detect rewrites.
+      Path bundle = findFile(dir, ".bundle");
+      Files.setLastModifiedTime(bundle, OLD);
+      MultipleObjectsBundle cached = load(input, dir, false);
+      assertEquals("Cache file not reused.", OLD, Files.getLastModifiedTime(bundle));
+      assertBundleEquals(parsed, cached);
+      // A touched file is verified by its checksum, and needs a new stamp.
+      Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 10000));
+      assertBundleEquals(parsed, load(input, dir, false));
+      assertEquals("Cache file not reused.", OLD, Files.getLastModifiedTime(bundle));
+      assertEquals("Stamp file not written.", 2, countFiles(dir, ".stamp"));
+      // A damaged cache file is ignored, and the input is parsed again.
+      byte[] head = Arrays.copyOf(Files.readAllBytes(bundle), 100);
+      Files.write(bundle, head);
+      Files.setLastModifiedTime(bundle, OLD);
+      assertBundleEquals(parsed, load(input, dir, false));
+      assertNotEquals("Cache file not repaired.", OLD, Files.getLastModifiedTime(bundle));
+      assertBundleEquals(parsed, load(input, dir, false));
+      // Different filters must not share the cache
+      MultipleObjectsBundle normalized = load(input, dir, true);
+      assertEquals("Filters not part of the cache key.", 2, countFiles(dir, ".bundle"));
+      assertBundleEquals(normalized, load(input, dir, true));
+      assertEquals(2, countFiles(dir, ".bundle"));
+      // Modified contents must not use the old cache
+      Files.write(input, "1,2,3\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      assertEquals("Modified file not parsed again.", parsed.dataLength() + 1, load(input, dir, false).dataLength());
+      assertEquals("Modified file not parsed again.", 3, countFiles(dir, ".bundle"));
+    }
+    finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for(Path p : (Iterable<Path>) files::iterator) {
+          Files.delete(p);
+        }
+      }
+      Files.delete(dir);
+    }
+  }
+
+  private static MultipleObjectsBundle load(Path input, Path dir, boolean normalize) {
+    ELKIBuilder<CachedFileBasedDatabaseConnection> builder = new ELKIBuilder<>(CachedFileBasedDatabaseConnection.class) //
+        .with(FileBasedDatabaseConnection.Par.INPUT_ID, input.toUri()) //
+        .with(CachedFileBasedDatabaseConnection.Par.CACHE_ID, dir.toUri());
+    if(normalize) {
+      builder.with(AbstractDatabaseConnection.Par.FILTERS_ID, AttributeWiseMinMaxNormalization.class);
+    }
+    return builder.build().loadData();
+  }
+
+  private static long countFiles(Path dir, String suffix) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(p -> p.getFileName().toString().endsWith(suffix)).count();
+    }
+  }
+
+  private static Path findFile(Path dir, String suffix) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(p -> p.getFileName().toString().endsWith(suffix)).findFirst().get();
+    }
+  }
+
+  private static void assertBundleEquals(MultipleObjectsBundle expected, MultipleObjectsBundle actual) {
+    assertEquals("Number of columns", expected.metaLength(), actual.metaLength());
+    assertEquals("Number of rows", expected.dataLength(), actual.dataLength());
+    for(int i = 0; i < expected.dataLength(); i++) {
+      for(int j = 0; j < expected.metaLength(); j++) {
+        assertEquals(expected.data(i, j).toString(), actual.data(i, j).toString());
+      }
+    }
+  }
+}
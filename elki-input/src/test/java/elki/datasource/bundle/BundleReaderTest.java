@@ -0,0 +1,87 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.datasource.ArrayAdapterDatabaseConnection;
+
+/**
+ * Test reading bundle files in multiple mapped segments.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class BundleReaderTest {
+  @Test
+  public void testSegments() throws IOException {
+    Random rnd = new Random(0L);
+    double[][] data = new double[2000][5];
+    String[] labels = new String[data.length];
+    for(int i = 0; i < data.length; i++) {
+      for(int d = 0; d < data[i].length; d++) {
+        data[i][d] = rnd.nextDouble();
+      }
+      labels[i] = "obj" + i;
+    }
+    MultipleObjectsBundle bundle = new ArrayAdapterDatabaseConnection(data, labels, 1000).loadData();
+    Path file = Files.createTempFile("elki-test", ".bundle");
+    try {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+      }
+      MultipleObjectsBundle whole, segmented;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        whole = new BundleReader(channel).asMultipleObjectsBundle();
+      }
+      // Small segments, such that records cross the segment boundaries.
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        assertTrue("Test file too small.", channel.size() > 100 * 1000);
+        segmented = new BundleReader(channel, 1000).asMultipleObjectsBundle();
+      }
+      assertBundleEquals(bundle, whole);
+      assertBundleEquals(bundle, segmented);
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+
+  private static void assertBundleEquals(MultipleObjectsBundle expected, MultipleObjectsBundle actual) {
+    assertEquals("Number of columns", expected.metaLength(), actual.metaLength());
+    assertEquals("Number of rows", expected.dataLength(), actual.dataLength());
+    for(int i = 0; i < expected.dataLength(); i++) {
+      for(int j = 0; j < expected.metaLength(); j++) {
+        assertEquals(expected.data(i, j).toString(), actual.data(i, j).toString());
+      }
+    }
+  }
+}
@@ -96,4 +96,12 @@ public class AttributeWiseMinMaxNormalizationTest extends AbstractDataSourceTest
       assertEquals("Maximum not as expected", 1., mms[col].getMax(), 0.);
     }
   }
+
+  /**
+   * Compare the parallel preparation to the sequential result.
+   */
+  @Test
+  public void testParallel() {
+    assertParallelFilter(() -> new ELKIBuilder<AttributeWiseMinMaxNormalization<DoubleVector>>(AttributeWiseMinMaxNormalization.class).build(), 10000, 0.);
+  }
 }
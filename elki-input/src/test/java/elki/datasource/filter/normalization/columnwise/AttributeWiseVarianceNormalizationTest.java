@@ -97,4 +97,12 @@ public class AttributeWiseVarianceNormalizationTest extends AbstractDataSourceTe
       assertEquals("Variance not as expected", 1., mvs[col].getPopulationVariance(), 1e-15);
     }
   }
+
+  /**
+   * Compare the parallel preparation to the sequential result.
+   */
+  @Test
+  public void testParallel() {
+    assertParallelFilter(() -> new ELKIBuilder<AttributeWiseVarianceNormalization<DoubleVector>>(AttributeWiseVarianceNormalization.class).build(), 10000, 1e-10);
+  }
 }
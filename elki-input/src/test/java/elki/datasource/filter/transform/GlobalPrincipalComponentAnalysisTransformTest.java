@@ -102,4 +102,12 @@ public class GlobalPrincipalComponentAnalysisTransformTest extends AbstractDataS
       assertEquals("Mean not as expected", 0., mvs[col], 1e-13);
     }
   }
+
+  /**
+   * Compare the parallel preparation to the sequential result.
+   */
+  @Test
+  public void testParallel() {
+    assertParallelFilter(() -> new ELKIBuilder<GlobalPrincipalComponentAnalysisTransform<DoubleVector>>(GlobalPrincipalComponentAnalysisTransform.class).build(), 10000, 1e-10);
+  }
 }
@@ -0,0 +1,149 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.datasource.bundle.BundleStreamSource.Event;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.parallel.ParallelCore;
+
+/**
+ * Test the parallel number vector parser against the sequential parser.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class ParallelNumberVectorLabelParserTest {
+  @Test
+  public void compareToSequential() {
+    // Use enough lines to span multiple chunks.
+    StringBuilder buf = new StringBuilder();
+    buf.append("x y z label\n");
+    for(int i = 0; i < 10000; i++) {
+      if(i % 1000 == 0) {
+        buf.append("# comment ").append(i).append('\n');
+      }
+      buf.append(i * .5).append(' ').append(-i).append(' ').append(i % 7).append(" c").append(i % 3).append('\n');
+    }
+    byte[] data = buf.toString().getBytes(StandardCharsets.UTF_8);
+    MultipleObjectsBundle seq = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(data));
+    MultipleObjectsBundle par = new ParallelNumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(data));
+    assertEquals("Length", 10000, seq.dataLength());
+    assertEquals("Length", seq.dataLength(), par.dataLength());
+    assertEquals("Columns", seq.metaLength(), par.metaLength());
+    for(int j = 0; j < seq.metaLength(); j++) {
+      assertEquals("Column type", seq.meta(j).toString(), par.meta(j).toString());
+    }
+    VectorFieldTypeInformation<?> t1 = (VectorFieldTypeInformation<?>) seq.meta(0), t2 = (VectorFieldTypeInformation<?>) par.meta(0);
+    assertEquals("Column name", "y", t1.getLabel(1));
+    for(int d = 0; d < t1.getDimensionality(); d++) {
+      assertEquals("Column name", t1.getLabel(d), t2.getLabel(d));
+    }
+    for(int i = 0; i < seq.dataLength(); i++) {
+      NumberVector v1 = (NumberVector) seq.data(i, 0), v2 = (NumberVector) par.data(i, 0);
+      assertEquals("Dimensionality", v1.getDimensionality(), v2.getDimensionality());
+      for(int d = 0; d < v1.getDimensionality(); d++) {
+        assertEquals("Value", v1.doubleValue(d), v2.doubleValue(d), 0.);
+      }
+      assertEquals("Labels", seq.data(i, 1).toString(), par.data(i, 1).toString());
+    }
+  }
+
+  @Test
+  public void testLineNumbers() {
+    // Spread comments and blank lines over multiple rounds of chunks.
+    StringBuilder buf = new StringBuilder();
+    for(int i = 0; i < 40000; i++) {
+      if(i % 997 == 0) {
+        buf.append("# comment ").append(i).append('\n');
+      }
+      if(i % 1009 == 0) {
+        buf.append('\n');
+      }
+      buf.append(i).append(' ').append(-i).append('\n');
+    }
+    byte[] data = buf.toString().getBytes(StandardCharsets.UTF_8);
+    NumberVectorLabelParser<DoubleVector> seq = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    ParallelNumberVectorLabelParser<DoubleVector> par = new ParallelNumberVectorLabelParser<>(DoubleVector.FACTORY);
+    ParallelCore.getCore().setParallelism(2);
+    try {
+      seq.initStream(new ByteArrayInputStream(data));
+      par.initStream(new ByteArrayInputStream(data));
+      int objects = 0;
+      for(Event e; (e = seq.nextEvent()) != Event.END_OF_STREAM;) {
+        assertEquals("Event", e, par.nextEvent());
+        assertEquals("Line number of object " + objects, seq.getLineNumber(), par.getLineNumber());
+        objects += e == Event.NEXT_OBJECT ? 1 : 0;
+      }
+      assertEquals("Event", Event.END_OF_STREAM, par.nextEvent());
+      assertEquals("Objects", 40000, objects);
+      assertEquals("Line number at the end", seq.getLineNumber(), par.getLineNumber());
+    }
+    finally {
+      ParallelCore.getCore().setParallelism(0);
+      seq.cleanup();
+      par.cleanup();
+    }
+  }
+
+  @Test
+  public void testCreateVector() {
+    StringBuilder buf = new StringBuilder();
+    for(int i = 0; i < 10000; i++) {
+      buf.append(i).append(' ').append(-i).append('\n');
+    }
+    byte[] data = buf.toString().getBytes(StandardCharsets.UTF_8);
+    ParallelCore.getCore().setParallelism(2);
+    try {
+      MultipleObjectsBundle par = new ParallelNumberVectorLabelParser<DoubleVector>(DoubleVector.FACTORY) {
+        @Override
+        protected NumberVectorLabelParser<DoubleVector> makeChunkParser() {
+          return new NumberVectorLabelParser<DoubleVector>(format, labelIndices, factory) {
+            @Override
+            protected DoubleVector createVector() {
+              attributes.add(1.);
+              return super.createVector();
+            }
+          };
+        }
+      }.parse(new ByteArrayInputStream(data));
+      assertEquals("Length", 10000, par.dataLength());
+      for(int i = 0; i < par.dataLength(); i++) {
+        NumberVector v = (NumberVector) par.data(i, 0);
+        assertEquals("Dimensionality", 3, v.getDimensionality());
+        assertEquals("Value", i, v.doubleValue(0), 0.);
+        assertEquals("Value", 1., v.doubleValue(2), 0.);
+      }
+    }
+    finally {
+      ParallelCore.getCore().setParallelism(0);
+    }
+  }
+}
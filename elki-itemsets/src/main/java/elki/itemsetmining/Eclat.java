@@ -24,6 +24,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import elki.data.BitVector;
 import elki.data.SparseFeatureVector;
@@ -37,9 +39,17 @@ import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
+import elki.logging.statistics.StringStatistic;
+import elki.parallel.ParallelCore;
 import elki.result.FrequentItemsetsResult;
 import elki.result.Metadata;
+import elki.utilities.datastructures.BitsUtil;
 import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
  * Eclat is a depth-first discovery algorithm for mining frequent itemsets.
@@ -49,12 +59,16 @@ import elki.utilities.documentation.Reference;
  * prefix lattice, stopping traversal when the minimum support is no longer
  * satisfied.
  * <p>
- * This implementation is the basic algorithm only, and does not use diffsets.
- * Columns are represented using a sparse representation, which theoretically is
- * beneficial when the density is less than 1/31. This corresponds roughly to a
- * minimum support of 3% for 1-itemsets. When searching for itemsets with a
- * larger minimum support, it may be desirable to use a dense bitset
- * representation instead and/or implement an automatic switching technique!
+ * Columns can be represented in different ways, see {@link Mode}: using a
+ * sparse representation, which theoretically needs less memory when the
+ * density is less than 1/31 (this corresponds roughly to a minimum support of
+ * 3% for 1-itemsets), using dense bitsets, which are much faster to intersect,
+ * or using the diffsets of dEclat, which are small on very dense data. By
+ * default, the representation is chosen automatically based on the density of
+ * the frequent 1-itemsets and a memory budget.
+ * <p>
+ * On large data sets, the equivalence classes of the first level (i.e., all
+ * itemsets with the same first item) are processed in parallel.
  * <p>
  * Performance of this implementation is probably surpassed with a low-level C
  * implementation based on SIMD bitset operations as long as support of an
@@ -65,6 +79,12 @@ import elki.utilities.documentation.Reference;
  * New Algorithms for Fast Discovery of Association Rules<br>
  * M. J. Zaki, S. Parthasarathy, M. Ogihara, W. Li<br>
  * Proc. 3rd ACM SIGKDD '97 Int. Conf. on Knowledge Discovery and Data Mining
+ * <p>
+ * Diffsets:
+ * <p>
+ * M. J. Zaki, K. Gouda<br>
+ * Fast vertical mining using diffsets<br>
+ * Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -77,6 +97,11 @@ import elki.utilities.documentation.Reference;
     booktitle = "Proc. 3rd ACM SIGKDD '97 Int. Conf. on Knowledge Discovery and Data Mining", //
     url = "http://www.aaai.org/Library/KDD/1997/kdd97-060.php", //
     bibkey = "DBLP:conf/kdd/ZakiPOL97")
+@Reference(authors = "M. J. Zaki, K. Gouda", //
+    title = "Fast vertical mining using diffsets", //
+    booktitle = "Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining", //
+    url = "https://doi.org/10.1145/956750.956788", //
+    bibkey = "DBLP:conf/kdd/ZakiG03")
 public class Eclat extends AbstractFrequentItemsetAlgorithm {
   /**
    * Class logger.
@@ -88,6 +113,47 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
    */
   private static final String STAT = Eclat.class.getName() + ".";
 
+  /**
+   * Minimum number of transactions for mining in parallel.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+  /**
+   * Column representation.
+   *
+   * @author ELKI Development Team
+   */
+  public enum Mode {
+    /**
+     * Choose automatically, based on the density of the frequent items.
+     */
+    AUTO,
+    /**
+     * Sorted lists of transaction ids, for sparse data.
+     */
+    TIDLIST,
+    /**
+     * Dense bitsets of transactions, the fastest unless the data is very sparse
+     * or too large.
+     */
+    BITSET,
+    /**
+     * Sorted lists of transaction ids on the first level, diffsets (dEclat)
+     * below, for very dense data that is too large for bitsets.
+     */
+    DIFFSET
+  }
+
+  /**
+   * Column representation to use.
+   */
+  protected Mode mode;
+
+  /**
+   * Memory budget for bitsets in megabytes, 0 for half of the maximum heap.
+   */
+  protected int memorylimit;
+
   /**
    * Constructor.
    *
@@ -96,7 +162,23 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
    * @param maxlength Maximum length
    */
   public Eclat(double minsupp, int minlength, int maxlength) {
+    this(minsupp, minlength, maxlength, Mode.AUTO, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   * @param mode Column representation
+   * @param memorylimit Memory budget for bitsets in megabytes, 0 for half of
+   *        the maximum heap
+   */
+  public Eclat(double minsupp, int minlength, int maxlength, Mode mode, int memorylimit) {
     super(minsupp, minlength, maxlength);
+    this.mode = mode;
+    this.memorylimit = memorylimit;
   }
 
   @Override
@@ -117,17 +199,32 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     // Compute absolute minsupport
     final int minsupp = getMinimumSupport(relation.size());
 
+    Mode mode = this.mode;
+    int[] counts = null;
+    if(mode == Mode.AUTO || mode == Mode.BITSET) {
+      counts = countItemSupport(relation, dim);
+      mode = mode == Mode.AUTO ? chooseMode(counts, minsupp, relation.size()) : mode;
+    }
+    LOG.statistics(new StringStatistic(STAT + "mode", mode.name()));
+
     LOG.verbose("Build 1-dimensional transaction lists.");
     Duration ctime = LOG.newDuration(STAT + "eclat.transposition.time").begin();
-    DBIDs[] idx = buildIndex(relation, dim, minsupp);
+    final DBIDs[] idx = mode == Mode.BITSET ? null : buildIndex(relation, dim, minsupp);
+    final long[][] bits = mode == Mode.BITSET ? buildBitsets(relation, counts, minsupp) : null;
     LOG.statistics(ctime.end());
 
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", idx.length, LOG) : null;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", dim, LOG) : null;
     Duration etime = LOG.newDuration(STAT + "eclat.extraction.time").begin();
-    final List<Itemset> solution = new ArrayList<>();
-    for(int i = 0; i < idx.length; i++) {
-      LOG.incrementProcessed(prog);
-      extractItemsets(idx, i, minsupp, solution);
+    final List<Itemset> solution;
+    switch(mode){
+    case BITSET:
+      solution = mineClasses(dim, relation.size(), prog, (i, buf, sol) -> extractBitsets(bits, i, minsupp, buf, sol));
+      break;
+    case DIFFSET:
+      solution = mineClasses(dim, relation.size(), prog, (i, buf, sol) -> extractDiffsets(idx, i, minsupp, buf, sol));
+      break;
+    default:
+      solution = mineClasses(dim, relation.size(), prog, (i, buf, sol) -> extractItemsets(idx, i, minsupp, buf, sol));
     }
     LOG.ensureCompleted(prog);
     Collections.sort(solution);
@@ -139,9 +236,112 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return result;
   }
 
-  // TODO: implement diffsets.
-  private void extractItemsets(DBIDs[] idx, int start, int minsupp, List<Itemset> solution) {
-    int[] buf = new int[idx.length];
+  /**
+   * Choose the column representation based on the density of the frequent
+   * items.
+   * <p>
+   * A sorted list uses 32 bits per transaction containing the item, a bitset
+   * one bit per transaction. Because the word-wise intersection of bitsets is
+   * much faster than merging lists, bitsets are used down to a density of
+   * 1/128, unless they would exceed the memory budget (by default, half of
+   * the maximum heap). In this case, dense data uses diffsets, which quickly
+   * become much smaller than the transaction lists.
+   * <p>
+   * While mining, the equivalence classes only store the support of their
+   * members, and each worker materializes one bitset per recursion level. This
+   * is usually small compared to the bitsets of all frequent items.
+   *
+   * @param counts Item support
+   * @param minsupp Minimum support
+   * @param size Number of transactions
+   * @return Mode to use
+   */
+  Mode chooseMode(int[] counts, int minsupp, int size) {
+    long total = 0;
+    int numfreq = 0;
+    for(int c : counts) {
+      if(c >= minsupp) {
+        total += c;
+        ++numfreq;
+      }
+    }
+    final double density = numfreq > 0 ? total / (numfreq * (double) size) : 0.;
+    final long bitsetbytes = (numfreq * (long) ((size + 63) >>> 6)) << 3;
+    final long budget = memorylimit > 0 ? ((long) memorylimit) << 20 : Runtime.getRuntime().maxMemory() >>> 1;
+    if(density >= 1. / 128 && bitsetbytes <= budget) {
+      return Mode.BITSET;
+    }
+    return density < .5 ? Mode.TIDLIST : Mode.DIFFSET;
+  }
+
+  /**
+   * Number of workers to use for mining the equivalence classes.
+   *
+   * @param size Number of transactions
+   * @return Number of workers, 1 for sequential processing
+   */
+  static int numWorkers(int size) {
+    final int p = ParallelCore.getCore().getParallelism();
+    return size < PARALLEL_THRESHOLD || p <= 1 ? 1 : p;
+  }
+
+  /**
+   * Process the equivalence classes of the first level, in parallel on large
+   * data sets.
+   * <p>
+   * Every worker takes the next first item, and collects the itemsets into its
+   * own list; the lists are merged afterwards.
+   *
+   * @param dim Number of items
+   * @param size Number of transactions
+   * @param prog Progress
+   * @param miner Mining function for one equivalence class
+   * @return Itemsets found (unsorted)
+   */
+  private static List<Itemset> mineClasses(int dim, int size, FiniteProgress prog, ClassMiner miner) {
+    final int p = numWorkers(size);
+    if(p <= 1) {
+      List<Itemset> solution = new ArrayList<>();
+      int[] buf = new int[dim];
+      for(int i = 0; i < dim; i++) {
+        LOG.incrementProcessed(prog);
+        miner.mine(i, buf, solution);
+      }
+      return solution;
+    }
+    // The first items have the largest classes, so start with them.
+    final AtomicInteger next = new AtomicInteger();
+    List<List<Itemset>> partial = new ArrayList<>(p);
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(p);
+    for(int w = 0; w < p; w++) {
+      final List<Itemset> part = new ArrayList<>();
+      partial.add(part);
+      tasks.add(ForkJoinTask.adapt(() -> {
+        int[] buf = new int[dim];
+        for(int i = next.getAndIncrement(); i < dim; i = next.getAndIncrement()) {
+          LOG.incrementProcessed(prog);
+          miner.mine(i, buf, part);
+        }
+      }));
+    }
+    ParallelCore.getCore().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    List<Itemset> solution = new ArrayList<>();
+    for(List<Itemset> part : partial) {
+      solution.addAll(part);
+    }
+    return solution;
+  }
+
+  /**
+   * Mine the itemsets beginning with the given item, using tid lists.
+   *
+   * @param idx Transaction lists
+   * @param start First item
+   * @param minsupp Minimum support
+   * @param buf Item buffer
+   * @param solution Output
+   */
+  private void extractItemsets(DBIDs[] idx, int start, int minsupp, int[] buf, List<Itemset> solution) {
     DBIDs iset = idx[start];
     if(iset == null || iset.size() < minsupp) {
       return;
@@ -167,16 +367,181 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
         continue;
       }
       buf[depth] = i;
-      int[] items = Arrays.copyOf(buf, depth1);
       if(depth1 >= minlength) {
-        solution.add(new SparseItemset(items, ids.size()));
+        solution.add(new SparseItemset(Arrays.copyOf(buf, depth1), ids.size()));
       }
-      if(depth1 <= maxlength) {
+      if(depth1 < maxlength) {
         extractItemsets(ids, idx, buf, depth1, i + 1, minsupp, solution);
       }
     }
   }
 
+  /**
+   * Mine the itemsets beginning with the given item, using diffsets.
+   * <p>
+   * The diffset of an itemset PXY is d(PXY) = d(PY) \ d(PX), and its support
+   * is supp(PX) - |d(PXY)|. On the second level, d(XY) = t(X) \ t(Y).
+   *
+   * @param idx Transaction lists
+   * @param start First item
+   * @param minsupp Minimum support
+   * @param buf Item buffer
+   * @param solution Output
+   */
+  private void extractDiffsets(DBIDs[] idx, int start, int minsupp, int[] buf, List<Itemset> solution) {
+    DBIDs iset = idx[start];
+    if(iset == null || iset.size() < minsupp) {
+      return;
+    }
+    if(minlength <= 1) {
+      solution.add(new OneItemset(start, iset.size()));
+    }
+    if(maxlength <= 1) {
+      return;
+    }
+    // Build the equivalence class of the second level.
+    final int supp = iset.size();
+    int[] items = new int[idx.length - start - 1], supps = new int[items.length];
+    DBIDs[] sets = new DBIDs[items.length];
+    int n = 0;
+    for(int i = start + 1; i < idx.length; i++) {
+      if(idx[i] == null) {
+        continue;
+      }
+      DBIDs diff = mergeDiff(iset, idx[i]);
+      if(supp - diff.size() >= minsupp) {
+        items[n] = i;
+        supps[n] = supp - diff.size();
+        sets[n++] = diff;
+      }
+    }
+    buf[0] = start;
+    extractDiffsets(items, sets, supps, n, buf, 1, minsupp, solution);
+  }
+
+  /**
+   * Process an equivalence class of diffsets.
+   *
+   * @param items Last item of each class member
+   * @param sets Diffsets of the class members
+   * @param supps Support of the class members
+   * @param n Number of class members
+   * @param buf Prefix buffer
+   * @param depth Prefix length
+   * @param minsupp Minimum support
+   * @param solution Output
+   */
+  private void extractDiffsets(int[] items, DBIDs[] sets, int[] supps, int n, int[] buf, int depth, int minsupp, List<Itemset> solution) {
+    final int depth1 = depth + 1;
+    for(int a = 0; a < n; a++) {
+      buf[depth] = items[a];
+      if(depth1 >= minlength) {
+        solution.add(new SparseItemset(Arrays.copyOf(buf, depth1), supps[a]));
+      }
+      if(depth1 >= maxlength || a + 1 == n) {
+        continue;
+      }
+      int[] nitems = new int[n - a - 1], nsupps = new int[nitems.length];
+      DBIDs[] nsets = new DBIDs[nitems.length];
+      int m = 0;
+      for(int b = a + 1; b < n; b++) {
+        DBIDs diff = mergeDiff(sets[b], sets[a]);
+        if(supps[a] - diff.size() >= minsupp) {
+          nitems[m] = items[b];
+          nsupps[m] = supps[a] - diff.size();
+          nsets[m++] = diff;
+        }
+      }
+      extractDiffsets(nitems, nsets, nsupps, m, buf, depth1, minsupp, solution);
+    }
+  }
+
+  /**
+   * Mine the itemsets beginning with the given item, using bitsets.
+   *
+   * @param bits Transaction bitsets
+   * @param start First item
+   * @param minsupp Minimum support
+   * @param buf Item buffer
+   * @param solution Output
+   */
+  private void extractBitsets(long[][] bits, int start, int minsupp, int[] buf, List<Itemset> solution) {
+    long[] iset = bits[start];
+    if(iset == null) {
+      return;
+    }
+    if(minlength <= 1) {
+      solution.add(new OneItemset(start, BitsUtil.cardinality(iset)));
+    }
+    if(maxlength <= 1) {
+      return;
+    }
+    // Build the equivalence class of the second level.
+    int[] items = new int[bits.length - start - 1], supps = new int[items.length];
+    int n = 0;
+    for(int i = start + 1; i < bits.length; i++) {
+      if(bits[i] == null) {
+        continue;
+      }
+      int supp = BitsUtil.intersectionSize(iset, bits[i]);
+      if(supp >= minsupp) {
+        items[n] = i;
+        supps[n++] = supp;
+      }
+    }
+    buf[0] = start;
+    extractBitsets(bits, iset, items, supps, n, buf, 1, minsupp, solution);
+  }
+
+  /**
+   * Process an equivalence class of bitsets.
+   * <p>
+   * Only the bitset of the common prefix is kept. The bitset of a class member
+   * is the intersection of the prefix with the bitset of its last item, and is
+   * materialized only while extending this member, so every recursion level
+   * needs one bitset.
+   *
+   * @param bits Transaction bitsets of the items
+   * @param prefix Bitset of the common prefix
+   * @param items Last item of each class member
+   * @param supps Support of the class members
+   * @param n Number of class members
+   * @param buf Prefix buffer
+   * @param depth Prefix length
+   * @param minsupp Minimum support
+   * @param solution Output
+   */
+  private void extractBitsets(long[][] bits, long[] prefix, int[] items, int[] supps, int n, int[] buf, int depth, int minsupp, List<Itemset> solution) {
+    final int depth1 = depth + 1;
+    long[] set = null; // Reused for all class members
+    for(int a = 0; a < n; a++) {
+      buf[depth] = items[a];
+      if(depth1 >= minlength) {
+        solution.add(new SparseItemset(Arrays.copyOf(buf, depth1), supps[a]));
+      }
+      if(depth1 >= maxlength || a + 1 == n) {
+        continue;
+      }
+      if(set == null) {
+        set = BitsUtil.copy(prefix);
+      }
+      else {
+        System.arraycopy(prefix, 0, set, 0, prefix.length);
+      }
+      BitsUtil.andI(set, bits[items[a]]);
+      int[] nitems = new int[n - a - 1], nsupps = new int[nitems.length];
+      int m = 0;
+      for(int b = a + 1; b < n; b++) {
+        int supp = BitsUtil.intersectionSize(set, bits[items[b]]);
+        if(supp >= minsupp) {
+          nitems[m] = items[b];
+          nsupps[m++] = supp;
+        }
+      }
+      extractBitsets(bits, set, nitems, nsupps, m, buf, depth1, minsupp, solution);
+    }
+  }
+
   private DBIDs mergeJoin(DBIDs first, DBIDs second) {
     assert (!(first instanceof HashSetDBIDs));
     assert (!(second instanceof HashSetDBIDs));
@@ -200,6 +565,39 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return ids;
   }
 
+  /**
+   * Compute the difference of two sorted lists.
+   *
+   * @param first First list
+   * @param second Second list
+   * @return Sorted list of all elements in first, but not in second
+   */
+  private DBIDs mergeDiff(DBIDs first, DBIDs second) {
+    assert (!(first instanceof HashSetDBIDs));
+    assert (!(second instanceof HashSetDBIDs));
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+
+    DBIDIter i1 = first.iter(), i2 = second.iter();
+    while(i1.valid() && i2.valid()) {
+      int c = DBIDUtil.compare(i1, i2);
+      if(c < 0) {
+        ids.add(i1);
+        i1.advance();
+      }
+      else if(c > 0) {
+        i2.advance();
+      }
+      else {
+        i1.advance();
+        i2.advance();
+      }
+    }
+    for(; i1.valid(); i1.advance()) {
+      ids.add(i1);
+    }
+    return ids;
+  }
+
   private DBIDs[] buildIndex(Relation<BitVector> relation, int dim, int minsupp) {
     ArrayModifiableDBIDs[] idx = new ArrayModifiableDBIDs[dim];
     for(int i = 0; i < dim; i++) {
@@ -224,15 +622,109 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return idx;
   }
 
+  /**
+   * Count the support of each 1-item.
+   *
+   * @param relation Data
+   * @param dim Maximum dimensionality
+   * @return Item counts
+   */
+  private int[] countItemSupport(Relation<BitVector> relation, int dim) {
+    final int[] counts = new int[dim];
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        counts[bv.iterDim(it)]++;
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Build dense bitsets of the transactions containing each frequent item.
+   *
+   * @param relation Data
+   * @param counts Item support
+   * @param minsupp Minimum support
+   * @return Bitsets, {@code null} for non-frequent items
+   */
+  private long[][] buildBitsets(Relation<BitVector> relation, int[] counts, int minsupp) {
+    final int size = relation.size();
+    long[][] bits = new long[counts.length][];
+    for(int i = 0; i < counts.length; i++) {
+      bits[i] = counts[i] >= minsupp ? BitsUtil.zero(size) : null;
+    }
+    int t = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance(), t++) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        long[] b = bits[bv.iterDim(it)];
+        if(b != null) {
+          BitsUtil.setI(b, t);
+        }
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * Mining function for one equivalence class of the first level.
+   *
+   * @author ELKI Development Team
+   */
+  @FunctionalInterface
+  private interface ClassMiner {
+    /**
+     * Mine all itemsets beginning with the given item.
+     *
+     * @param item First item
+     * @param buf Item buffer
+     * @param solution Output
+     */
+    void mine(int item, int[] buf, List<Itemset> solution);
+  }
+
   /**
    * Parameterization class.
    * 
    * @author Erich Schubert
    */
   public static class Par extends AbstractFrequentItemsetAlgorithm.Par {
+    /**
+     * Column representation.
+     */
+    public static final OptionID MODE_ID = new OptionID("eclat.mode", //
+        "Column representation: sparse transaction lists, dense bitsets, diffsets, or automatic choice by density.");
+
+    /**
+     * Memory budget for bitsets.
+     */
+    public static final OptionID MEMORY_ID = new OptionID("eclat.memory", //
+        "Memory budget in megabytes for choosing bitsets automatically; 0 for half of the maximum heap size.");
+
+    /**
+     * Column representation.
+     */
+    protected Mode mode = Mode.AUTO;
+
+    /**
+     * Memory budget for bitsets in megabytes.
+     */
+    protected int memorylimit = 0;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new EnumParameter<Mode>(MODE_ID, Mode.class, Mode.AUTO) //
+          .grab(config, x -> mode = x);
+      new IntParameter(MEMORY_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> memorylimit = x);
+    }
+
     @Override
     public Eclat make() {
-      return new Eclat(minsupp, minlength, maxlength);
+      return new Eclat(minsupp, minlength, maxlength, mode, memorylimit);
     }
   }
 }
@@ -24,6 +24,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import elki.data.BitVector;
 import elki.data.SparseFeatureVector;
@@ -39,11 +41,16 @@ import elki.logging.progress.IndefiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
 import elki.result.FrequentItemsetsResult;
 import elki.result.Metadata;
 import elki.utilities.Priority;
 import elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
 import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
  * FP-Growth is an algorithm for mining the frequent itemsets by using a
@@ -57,7 +64,10 @@ import elki.utilities.documentation.Reference;
  * item combinations.
  * <p>
  * This implementation is in-memory only, and has not yet been carefully
- * optimized.
+ * optimized. On large data sets, the conditional trees of the different
+ * suffix items are mined in parallel. As every worker builds its own
+ * conditional trees, this increases the memory use; an optional memory budget
+ * can be used to limit the number of concurrent workers.
  * <p>
  * The worst case memory use probably is \(O(\min(n\cdot l,i^l))\) where i is
  * the
@@ -95,6 +105,21 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    */
   private static final String STAT = FPGrowth.class.getName() + ".";
 
+  /**
+   * Minimum number of transactions for mining in parallel.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+  /**
+   * Estimated memory use of a tree node, in bytes.
+   */
+  private static final int NODE_BYTES = 64;
+
+  /**
+   * Memory budget for parallel mining in megabytes, 0 for no limit.
+   */
+  protected int memorylimit;
+
   /**
    * Constructor.
    *
@@ -103,7 +128,21 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @param maxlength Maximum length
    */
   public FPGrowth(double minsupp, int minlength, int maxlength) {
+    this(minsupp, minlength, maxlength, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support (relative or absolute)
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   * @param memorylimit Memory budget for parallel mining in megabytes, 0 for
+   *        no limit
+   */
+  public FPGrowth(double minsupp, int minlength, int maxlength, int memorylimit) {
     super(minsupp, minlength, maxlength);
+    this.memorylimit = memorylimit;
   }
 
   @Override
@@ -161,26 +200,26 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     Duration etime = LOG.newDuration(STAT + "fp-growth.extraction.time").begin();
     final IndefiniteProgress itemp = LOG.isVerbose() ? new IndefiniteProgress("Frequent itemsets", LOG) : null;
     final List<Itemset> solution = new ArrayList<>();
-    // Start extraction with the least frequent items
-    tree.extract(minsupp, minlength, maxlength, true, new FPTree.Collector() {
-      @Override
-      public void collect(int support, int[] data, int start, int plen) {
-        // Always translate the indexes back to the original values via 'idx'!
-        if(plen - start == 1) {
-          solution.add(new OneItemset(idx[data[start]], support));
-          LOG.incrementProcessed(itemp);
-          return;
-        }
-        // Copy from buffer to a permanent storage
-        int[] indices = new int[plen - start];
-        for(int i = start, j = 0; i < plen; i++) {
-          indices[j++] = idx[data[i]]; // Translate to original items
-        }
-        Arrays.sort(indices);
-        solution.add(new SparseItemset(indices, support));
-        LOG.incrementProcessed(itemp);
+    final int workers = numWorkers(relation.size(), tree.nodes);
+    if(workers > 1) {
+      LOG.statistics(new LongStatistic(STAT + "workers", workers));
+      // Every worker collects into its own list, merged afterwards.
+      List<List<Itemset>> partial = new ArrayList<>(workers);
+      FPTree.Collector[] cols = new FPTree.Collector[workers];
+      for(int i = 0; i < workers; i++) {
+        List<Itemset> part = new ArrayList<>();
+        partial.add(part);
+        cols[i] = collector(part, idx, itemp);
       }
-    });
+      tree.extractParallel(minsupp, minlength, maxlength, cols);
+      for(List<Itemset> part : partial) {
+        solution.addAll(part);
+      }
+    }
+    else {
+      // Start extraction with the least frequent items
+      tree.extract(minsupp, minlength, maxlength, true, collector(solution, idx, itemp));
+    }
     LOG.setCompleted(itemp);
     Collections.sort(solution);
     LOG.statistics(etime.end());
@@ -191,6 +230,54 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     return result;
   }
 
+  /**
+   * Collector that translates the itemsets back to the original items.
+   *
+   * @param solution Output list
+   * @param idx Index (item rank to dimension)
+   * @param itemp Progress
+   * @return Collector
+   */
+  private static FPTree.Collector collector(List<Itemset> solution, int[] idx, IndefiniteProgress itemp) {
+    return (support, data, start, plen) -> {
+      // Always translate the indexes back to the original values via 'idx'!
+      if(plen - start == 1) {
+        solution.add(new OneItemset(idx[data[start]], support));
+        LOG.incrementProcessed(itemp);
+        return;
+      }
+      // Copy from buffer to a permanent storage
+      int[] indices = new int[plen - start];
+      for(int i = start, j = 0; i < plen; i++) {
+        indices[j++] = idx[data[i]]; // Translate to original items
+      }
+      Arrays.sort(indices);
+      solution.add(new SparseItemset(indices, support));
+      LOG.incrementProcessed(itemp);
+    };
+  }
+
+  /**
+   * Number of workers to use for mining the conditional trees.
+   *
+   * @param size Number of transactions
+   * @param nodes Number of nodes in the FP-tree
+   * @return Number of workers, 1 for sequential processing
+   */
+  int numWorkers(int size, long nodes) {
+    int p = ParallelCore.getCore().getParallelism();
+    if(size < PARALLEL_THRESHOLD || p <= 1) {
+      return 1;
+    }
+    if(memorylimit > 0) {
+      // Rough estimate: the conditional trees of one worker will usually not
+      // exceed the size of the full tree.
+      final long perworker = Math.max(1L, nodes * NODE_BYTES);
+      p = (int) Math.min(p, Math.max(1L, (((long) memorylimit) << 20) / perworker));
+    }
+    return p;
+  }
+
   /**
    * Count the support of each 1-item.
    *
@@ -357,6 +444,38 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       LOG.ensureCompleted(prog);
     }
 
+    /**
+     * Extract itemsets in parallel, partitioned by the suffix item.
+     * <p>
+     * Each worker repeatedly takes the next suffix item, and mines its
+     * conditional trees with its own buffers and collector. The tree itself is
+     * only read, and hence not destructed.
+     *
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param cols Itemset collectors, one per worker
+     */
+    public void extractParallel(int minsupp, int minlength, int maxlength, Collector[] cols) {
+      final int stop = (minlength > 1) ? minlength - 1 : 0;
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", header.length - stop, LOG) : null;
+      // Start with the least frequent items, as in the sequential version.
+      final AtomicInteger next = new AtomicInteger(header.length - 1);
+      List<ForkJoinTask<?>> tasks = new ArrayList<>(cols.length);
+      for(Collector col : cols) {
+        tasks.add(ForkJoinTask.adapt(() -> {
+          int[] buf = new int[header.length], buf2 = new int[header.length],
+              buf3 = new int[header.length];
+          for(int j = next.getAndDecrement(); j >= stop; j = next.getAndDecrement()) {
+            extract(minsupp, minlength, maxlength, j, buf, 0, buf2, buf3, false, col);
+            LOG.incrementProcessed(prog);
+          }
+        }));
+      }
+      ParallelCore.getCore().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+      LOG.ensureCompleted(prog);
+    }
+
     /**
      * Extract itemsets ending in the given item.
      *
@@ -436,8 +555,9 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       if(plen >= minlength && plen <= maxlength) {
         col.collect(support, postfix, 0, plen);
       }
+      // The projected tree is private, and can always be destructed.
       for(int j = last; j >= 0; j--) {
-        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, destruct, col);
+        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, true, col);
       }
       if(destruct) {
         header[item] = null;
@@ -673,9 +793,29 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @author Erich Schubert
    */
   public static class Par extends AbstractFrequentItemsetAlgorithm.Par {
+    /**
+     * Memory budget for parallel mining.
+     */
+    public static final OptionID MEMORY_ID = new OptionID("fpgrowth.memory", //
+        "Memory budget in megabytes for mining conditional trees in parallel. " //
+            + "Limits the number of concurrent workers; 0 for no limit.");
+
+    /**
+     * Memory budget for parallel mining in megabytes.
+     */
+    protected int memorylimit = 0;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new IntParameter(MEMORY_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> memorylimit = x);
+    }
+
     @Override
     public FPGrowth make() {
-      return new FPGrowth(minsupp, minlength, maxlength);
+      return new FPGrowth(minsupp, minlength, maxlength, memorylimit);
     }
   }
 }
@@ -22,6 +22,9 @@ package elki.itemsetmining;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
 import elki.algorithm.AbstractSimpleAlgorithmTest;
@@ -119,4 +122,60 @@ public class EclatTest extends AbstractSimpleAlgorithmTest {
         .with(Eclat.Par.MINSUPP_ID, 200).build().autorun(db);
     assertEquals("Size not as expected.", 184, res.getItemsets().size());
   }
+
+  @Test
+  public void testModes() {
+    Database db = makeSimpleDatabase(UNITTEST + "itemsets/zutaten.txt.gz", 16401, new ListParameterization() //
+        .addParameter(InputStreamDatabaseConnection.Par.PARSER_ID, SimpleTransactionParser.class));
+    for(Eclat.Mode mode : Eclat.Mode.values()) {
+      FrequentItemsetsResult res = new ELKIBuilder<>(Eclat.class) //
+          .with(Eclat.Par.MINSUPP_ID, 200) //
+          .with(Eclat.Par.MODE_ID, mode).build().autorun(db);
+      assertEquals("Size not as expected in mode " + mode, 184, res.getItemsets().size());
+      FrequentItemsetsResult res2 = new ELKIBuilder<>(Eclat.class) //
+          .with(Eclat.Par.MINSUPP_ID, 100) //
+          .with(Eclat.Par.MINLENGTH_ID, 2) //
+          .with(Eclat.Par.MAXLENGTH_ID, 2) //
+          .with(Eclat.Par.MODE_ID, mode).build().autorun(db);
+      assertEquals("Size not as expected in mode " + mode, 203, res2.getItemsets().size());
+    }
+  }
+
+  @Test
+  public void testChooseMode() {
+    // 1000 items in 100000 transactions need about 11.9 MB as bitsets.
+    int[] sparse = new int[1000], dense = new int[1000];
+    Arrays.fill(sparse, 1000);
+    Arrays.fill(dense, 60000);
+    Eclat small = new ELKIBuilder<>(Eclat.class) //
+        .with(Eclat.Par.MINSUPP_ID, 100) //
+        .with(Eclat.Par.MEMORY_ID, 10).build();
+    assertEquals("Bitsets exceed the memory budget.", Eclat.Mode.TIDLIST, small.chooseMode(sparse, 100, 100000));
+    assertEquals("Bitsets exceed the memory budget.", Eclat.Mode.DIFFSET, small.chooseMode(dense, 100, 100000));
+    Eclat large = new ELKIBuilder<>(Eclat.class) //
+        .with(Eclat.Par.MINSUPP_ID, 100) //
+        .with(Eclat.Par.MEMORY_ID, 20).build();
+    assertEquals("Bitsets fit into the memory budget.", Eclat.Mode.BITSET, large.chooseMode(sparse, 100, 100000));
+    assertEquals("Bitsets fit into the memory budget.", Eclat.Mode.BITSET, large.chooseMode(dense, 100, 100000));
+  }
+
+  @Test
+  public void testParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "itemsets/zutaten.txt.gz", 16401, new ListParameterization() //
+        .addParameter(InputStreamDatabaseConnection.Par.PARSER_ID, SimpleTransactionParser.class));
+    assertEquals("Equivalence classes not mined in parallel.", 4, (int) withParallelism(4, () -> Eclat.numWorkers(16401)));
+    for(Eclat.Mode mode : Eclat.Mode.values()) {
+      Eclat eclat = new ELKIBuilder<>(Eclat.class) //
+          .with(Eclat.Par.MINSUPP_ID, 200) //
+          .with(Eclat.Par.MODE_ID, mode).build();
+      List<Itemset> sequential = withParallelism(1, () -> eclat.autorun(db)).getItemsets();
+      List<Itemset> parallel = withParallelism(4, () -> eclat.autorun(db)).getItemsets();
+      assertEquals("Size not as expected in mode " + mode, 184, parallel.size());
+      assertEquals("Size not as expected in mode " + mode, sequential.size(), parallel.size());
+      for(int i = 0; i < sequential.size(); i++) {
+        assertEquals("Itemset differs in mode " + mode, sequential.get(i), parallel.get(i));
+        assertEquals("Support differs in mode " + mode, sequential.get(i).getSupport(), parallel.get(i).getSupport());
+      }
+    }
+  }
 }
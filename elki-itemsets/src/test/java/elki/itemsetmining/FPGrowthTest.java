@@ -22,6 +22,8 @@ package elki.itemsetmining;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.List;
+
 import org.junit.Test;
 
 import elki.algorithm.AbstractSimpleAlgorithmTest;
@@ -119,4 +121,28 @@ public class FPGrowthTest extends AbstractSimpleAlgorithmTest {
         .with(FPGrowth.Par.MINSUPP_ID, 200).build().autorun(db);
     assertEquals("Size not as expected.", 184, res.getItemsets().size());
   }
+
+  /**
+   * Mine in parallel with a memory budget that allows two workers only, and
+   * compare to the sequential result.
+   */
+  @Test
+  public void testMemoryLimit() {
+    Database db = makeSimpleDatabase(UNITTEST + "itemsets/zutaten.txt.gz", 16401, new ListParameterization() //
+        .addParameter(InputStreamDatabaseConnection.Par.PARSER_ID, SimpleTransactionParser.class));
+    // The FP-tree has 11016 nodes, about 0.7 MB by our estimate.
+    FPGrowth fp = new ELKIBuilder<>(FPGrowth.class) //
+        .with(FPGrowth.Par.MINSUPP_ID, 200) //
+        .with(FPGrowth.Par.MEMORY_ID, 2) //
+        .build();
+    assertEquals("Memory budget not applied.", 2, (int) withParallelism(4, () -> fp.numWorkers(16401, 11016)));
+    List<Itemset> sequential = withParallelism(1, () -> fp.autorun(db)).getItemsets();
+    List<Itemset> parallel = withParallelism(4, () -> fp.autorun(db)).getItemsets();
+    assertEquals("Size not as expected.", 184, parallel.size());
+    assertEquals("Size not as expected.", sequential.size(), parallel.size());
+    for(int i = 0; i < sequential.size(); i++) {
+      assertEquals("Itemset differs.", sequential.get(i), parallel.get(i));
+      assertEquals("Support differs.", sequential.get(i).getSupport(), parallel.get(i).getSupport());
+    }
+  }
 }
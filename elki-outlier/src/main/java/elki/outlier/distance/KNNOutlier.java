@@ -20,15 +20,21 @@
  */
 package elki.outlier.distance;
 
+import java.util.List;
+
 import elki.Algorithm;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.KNNList;
 import elki.database.query.QueryBuilder;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.relation.DoubleRelation;
 import elki.database.relation.MaterializedDoubleRelation;
@@ -94,6 +100,11 @@ public class KNNOutlier<O> implements OutlierAlgorithm {
    */
   private static final Logging LOG = Logging.getLogger(KNNOutlier.class);
 
+  /**
+   * Number of queries passed to the kNN searcher at once.
+   */
+  private static final int BATCH_SIZE = 4096;
+
   /**
    * Distance function used.
    */
@@ -133,13 +144,20 @@ public class KNNOutlier<O> implements OutlierAlgorithm {
     DoubleMinMax minmax = new DoubleMinMax();
     WritableDoubleDataStore knno_score = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
     // compute distance to the k nearest neighbor.
-    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-      // distance to the kth nearest neighbor
-      // (assuming the query point is always included, with distance 0)
-      final double dkn = knnQuery.getKNN(it, kplus).getKNNDistance();
-      knno_score.putDouble(it, dkn);
-      minmax.put(dkn);
-      LOG.incrementProcessed(prog);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    for(int start = 0; start < ids.size(); start += BATCH_SIZE) {
+      ArrayDBIDs batch = ids.slice(start, Math.min(start + BATCH_SIZE, ids.size()));
+      List<KNNList> knns = BatchKNNSearcher.getKNNBatch(knnQuery, batch, kplus);
+      DBIDIter it = batch.iter();
+      for(KNNList knn : knns) {
+        // distance to the kth nearest neighbor
+        // (assuming the query point is always included, with distance 0)
+        final double dkn = knn.getKNNDistance();
+        knno_score.putDouble(it, dkn);
+        minmax.put(dkn);
+        it.advance();
+        LOG.incrementProcessed(prog);
+      }
     }
     LOG.ensureCompleted(prog);
     DoubleRelation scoreres = new MaterializedDoubleRelation("kNN Outlier Score", relation.getDBIDs(), knno_score);
@@ -26,6 +26,7 @@ import elki.outlier.AbstractOutlierAlgorithmTest;
 import elki.outlier.lof.LOF;
 import elki.data.DoubleVector;
 import elki.database.Database;
+import elki.parallel.ParallelExecutor;
 import elki.result.outlier.OutlierResult;
 import elki.utilities.ELKIBuilder;
 
@@ -44,4 +45,20 @@ public class ParallelLOFTest extends AbstractOutlierAlgorithmTest {
     assertSingleScore(result, 1293, 1.1945314199156365);
     assertAUC(db, "Noise", result, 0.8921680672268908);
   }
+
+  @Test
+  public void testParallelLOFWorkStealing() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    boolean prev = ParallelExecutor.isWorkStealing();
+    try {
+      ParallelExecutor.setWorkStealing(true);
+      OutlierResult result = new ELKIBuilder<ParallelLOF<DoubleVector>>(ParallelLOF.class) //
+          .with(LOF.Par.K_ID, 10).build().autorun(db);
+      assertSingleScore(result, 1293, 1.1945314199156365);
+      assertAUC(db, "Noise", result, 0.8921680672268908);
+    }
+    finally {
+      ParallelExecutor.setWorkStealing(prev);
+    }
+  }
 }
@@ -63,6 +63,14 @@ public interface PageFile<P extends Page> {
    */
   void deletePage(int pageID);
 
+  /**
+   * Write all buffered changes to the backing storage, such that the file can
+   * be reopened later.
+   */
+  default void flush() {
+    // Nothing to do by default.
+  }
+
   /**
    * Closes this file.
    */
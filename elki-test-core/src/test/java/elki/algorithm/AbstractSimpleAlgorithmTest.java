@@ -22,12 +22,17 @@ package elki.algorithm;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+import java.util.function.Supplier;
+
 import elki.data.type.TypeUtil;
 import elki.database.Database;
 import elki.database.StaticArrayDatabase;
 import elki.datasource.AbstractDatabaseConnection;
+import elki.datasource.ArrayAdapterDatabaseConnection;
 import elki.datasource.FileBasedDatabaseConnection;
 import elki.datasource.filter.FixedDBIDsFilter;
+import elki.parallel.ParallelCore;
 import elki.utilities.ClassGenericsUtil;
 import elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -88,4 +93,53 @@ public abstract class AbstractSimpleAlgorithmTest {
     }
     return db;
   }
+
+  /**
+   * Generate a database of random vectors, drawn from a few Gaussian clusters
+   * with a fixed seed. This is useful to test code paths that are only used on
+   * large data sets.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Database
+   */
+  public static Database makeRandomDatabase(int size, int dim, long seed) {
+    Random rnd = new Random(seed);
+    double[][] centers = new double[5][dim];
+    for(double[] c : centers) {
+      for(int d = 0; d < dim; d++) {
+        c[d] = rnd.nextDouble();
+      }
+    }
+    double[][] data = new double[size][dim];
+    for(int i = 0; i < size; i++) {
+      double[] c = centers[rnd.nextInt(centers.length)];
+      for(int d = 0; d < dim; d++) {
+        data[i][d] = c[d] + rnd.nextGaussian() * .05;
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Run a computation with the given number of threads, e.g., to force the
+   * parallel code paths on a single-core machine.
+   *
+   * @param threads Number of threads
+   * @param task Computation
+   * @param <T> Result type
+   * @return Result
+   */
+  public static <T> T withParallelism(int threads, Supplier<T> task) {
+    ParallelCore.getCore().setParallelism(threads);
+    try {
+      return task.get();
+    }
+    finally {
+      ParallelCore.getCore().setParallelism(0);
+    }
+  }
 }
@@ -23,6 +23,7 @@ package elki.index;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.List;
 
 import elki.algorithm.AbstractSimpleAlgorithmTest;
 import elki.data.DoubleVector;
@@ -34,6 +35,7 @@ import elki.database.query.ExactPrioritySearcher;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
@@ -293,6 +295,37 @@ public abstract class AbstractIndexStructureTest {
     }
   }
 
+  /**
+   * Test helper: batch kNN queries must return the same results as individual
+   * queries.
+   * 
+   * @param factory Index factory
+   */
+  protected static void assertBatchEuclidean(IndexFactory<?> factory) {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, new FixedDBIDsFilter(0));
+    if(factory != null) {
+      inputparams.addParameter(StaticArrayDatabase.Par.INDEX_ID, factory);
+    }
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    KNNSearcher<DBIDRef> knnq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().kNNByDBID(k);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    // Also test a small k, where the bounds are tight
+    for(int kk : new int[] { 2, k }) {
+      List<? extends KNNList> batch = BatchKNNSearcher.getKNNBatch(knnq, ids, kk);
+      assertEquals("Wrong number of batch results", ids.size(), batch.size());
+      int i = 0;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+        KNNList single = knnq.getKNN(it, kk), res = batch.get(i);
+        assertEquals("Result size does not match at query " + i, single.size(), res.size());
+        for(DoubleDBIDListIter a = single.iter(), b = res.iter(); a.valid(); a.advance(), b.advance()) {
+          assertEquals("Distance does not match at query " + i, a.doubleValue(), b.doubleValue(), 0.);
+        }
+      }
+    }
+  }
+
   /**
    * Test helper
    * 
@@ -434,4 +467,32 @@ public abstract class AbstractIndexStructureTest {
       assertEquals("Incomplete results.", relation.size(), c);
     }
   }
+
+  /**
+   * Test that a priority search can be restarted after an incomplete search,
+   * as done, e.g., when searches are pruned by a distance bound.
+   *
+   * @param factory Index factory
+   */
+  protected static void assertPrioritySearchRestart(IndexFactory<?> factory) {
+    ListParameterization inputparams = new ListParameterization();
+    if(factory != null) {
+      inputparams.addParameter(StaticArrayDatabase.Par.INDEX_ID, factory);
+    }
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    PrioritySearcher<DBIDRef> prioq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().priorityByDBID();
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      // Abandon the previous search after a few results
+      int c = 0;
+      for(prioq.search(it); prioq.valid() && c < 10; prioq.advance()) {
+        ++c;
+      }
+      c = 0;
+      for(prioq.search(it); prioq.valid(); prioq.advance()) {
+        ++c;
+      }
+      assertEquals("Incomplete results after restarting.", relation.size(), c);
+    }
+  }
 }
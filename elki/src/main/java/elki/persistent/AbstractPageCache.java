@@ -0,0 +1,175 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import elki.logging.Logging;
+import elki.logging.statistics.Counter;
+import elki.logging.statistics.DoubleStatistic;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Abstract base class for page caches, that keep a limited number of pages of
+ * a backing page file in memory.
+ * <p>
+ * Cache hits and misses are counted, and reported via
+ * {@link #logStatistics()} along with the hit rate, if statistics logging is
+ * enabled.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @composed - - - PageFile
+ *
+ * @param <P> Page type
+ */
+public abstract class AbstractPageCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * The maximum number of objects in this cache.
+   */
+  protected int cacheSize;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Cache hits and misses.
+   */
+  private Counter hits, misses;
+
+  /**
+   * Constructor.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public AbstractPageCache(int cacheSizeBytes, PageFile<P> file) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    Logging log = getLogger();
+    this.hits = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".hits") : null;
+    this.misses = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".misses") : null;
+  }
+
+  /**
+   * Count a cache hit.
+   */
+  protected void countHit() {
+    if(hits != null) {
+      hits.increment();
+    }
+  }
+
+  /**
+   * Count a cache miss.
+   */
+  protected void countMiss() {
+    if(misses != null) {
+      misses.increment();
+    }
+  }
+
+  /**
+   * Write page through to disk, if it was modified.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(getLogger().isDebuggingFine()) {
+      getLogger().debugFine("Write to backing:" + page.getPageID());
+    }
+    if(page.isDirty()) {
+      file.writePage(page);
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    this.cacheSize = cacheSizeBytes / header.getPageSize();
+
+    if(this.cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+
+    if(getLogger().isDebugging()) {
+      getLogger().debug("Cache size is " + cacheSize + " pages.");
+    }
+    initializeCache();
+    return created;
+  }
+
+  /**
+   * Allocate the cache data structures, once the cache size is known.
+   */
+  protected abstract void initializeCache();
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    final Logging log = getLogger();
+    if(hits != null && misses != null && log.isStatistics()) {
+      log.statistics(hits);
+      log.statistics(misses);
+      final long total = hits.getValue() + misses.getValue();
+      if(total > 0) {
+        log.statistics(new DoubleStatistic(this.getClass().getName() + ".hitrate", hits.getValue() / (double) total));
+      }
+    }
+    file.logStatistics();
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import elki.logging.Logging;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+/**
+ * A page cache using the CLOCK (second chance) replacement strategy.
+ * <p>
+ * Pages are kept in a fixed number of frames, each with a reference bit that
+ * is set on every access. To make room, a clock hand sweeps over the frames,
+ * clearing the reference bits, and evicts the first page that has not been
+ * referenced since the last sweep. This approximates LRU, but a cache hit only
+ * sets a flag instead of reordering a list.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ *
+ * @param <P> Page type
+ */
+public class ClockCache<P extends Page> extends AbstractPageCache<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ClockCache.class);
+
+  /**
+   * Map from page ids to frames.
+   */
+  private Int2IntOpenHashMap map;
+
+  /**
+   * Cached pages; {@code null} for free frames.
+   */
+  private Page[] frames;
+
+  /**
+   * Page ids of the frames.
+   */
+  private int[] ids;
+
+  /**
+   * Reference bits.
+   */
+  private boolean[] referenced;
+
+  /**
+   * Number of frames in use so far.
+   */
+  private int used;
+
+  /**
+   * Position of the clock hand.
+   */
+  private int hand;
+
+  /**
+   * Constructor.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ClockCache(int cacheSizeBytes, PageFile<P> file) {
+    super(cacheSizeBytes, file);
+  }
+
+  @Override
+  protected void initializeCache() {
+    map = new Int2IntOpenHashMap(cacheSize);
+    map.defaultReturnValue(-1);
+    frames = new Page[cacheSize];
+    ids = new int[cacheSize];
+    referenced = new boolean[cacheSize];
+    used = hand = 0;
+  }
+
+  @Override
+  public synchronized P readPage(int pageID) {
+    countRead();
+    final int f = map.get(pageID);
+    if(f >= 0) {
+      countHit();
+      referenced[f] = true;
+      return getFrame(f);
+    }
+    countMiss();
+    P page = file.readPage(pageID);
+    if(page != null) {
+      insert(pageID, page);
+    }
+    return page;
+  }
+
+  @Override
+  public synchronized void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    final int f = map.get(pageID);
+    if(f >= 0) {
+      frames[f] = page;
+      referenced[f] = true;
+      return;
+    }
+    insert(pageID, page);
+  }
+
+  @Override
+  public synchronized void deletePage(int pageID) {
+    countWrite();
+    final int f = map.remove(pageID);
+    if(f >= 0) {
+      frames[f] = null;
+      referenced[f] = false;
+    }
+    file.deletePage(pageID);
+  }
+
+  /**
+   * Get the page in a frame.
+   *
+   * @param f Frame number
+   * @return Page
+   */
+  @SuppressWarnings("unchecked")
+  private P getFrame(int f) {
+    return (P) frames[f];
+  }
+
+  /**
+   * Insert a page into a free or evicted frame.
+   *
+   * @param pageID Page id
+   * @param page Page
+   */
+  private void insert(int pageID, P page) {
+    final int f = used < cacheSize ? used++ : evict();
+    frames[f] = page;
+    ids[f] = pageID;
+    referenced[f] = true;
+    map.put(pageID, f);
+  }
+
+  /**
+   * Advance the clock hand to the next page without reference bit, and evict
+   * this page.
+   *
+   * @return Free frame
+   */
+  private int evict() {
+    while(referenced[hand] && frames[hand] != null) {
+      referenced[hand] = false;
+      hand = hand + 1 < cacheSize ? hand + 1 : 0;
+    }
+    final int f = hand;
+    hand = hand + 1 < cacheSize ? hand + 1 : 0;
+    P page = getFrame(f);
+    if(page != null) {
+      expirePage(page);
+      map.remove(ids[f]);
+      frames[f] = null;
+    }
+    return f;
+  }
+
+  /**
+   * Write all modified pages to the underlying file. The pages remain cached.
+   */
+  @Override
+  public synchronized void flush() {
+    for(int f = 0; f < used; f++) {
+      P page = getFrame(f);
+      if(page != null) {
+        expirePage(page);
+      }
+    }
+    file.flush();
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public synchronized void clear() {
+    if(map != null) {
+      initializeCache();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
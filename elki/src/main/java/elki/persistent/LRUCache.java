@@ -20,14 +20,11 @@
  */
 package elki.persistent;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 import elki.logging.Logging;
-import elki.utilities.exceptions.AbortException;
 
 /**
  * An LRU cache, based on <code>LinkedHashMap</code>.<br>
@@ -38,37 +35,19 @@ import elki.utilities.exceptions.AbortException;
  * @author Elke Achtert
  * @since 0.1
  * 
- * @assoc - - - PageFile
- * 
  * @param <P> Page type
  */
-public class LRUCache<P extends Page> extends AbstractPageFile<P> {
+public class LRUCache<P extends Page> extends AbstractPageCache<P> {
   /**
    * Our class logger.
    */
   private static final Logging LOG = Logging.getLogger(LRUCache.class);
 
-  /**
-   * Cache size in bytes.
-   */
-  protected int cacheSizeBytes;
-
-  /**
-   * The maximum number of objects in this cache.
-   */
-  protected int cacheSize;
-
   /**
    * The map holding the objects of this cache.
    */
   private LinkedHashMap<Integer, P> map;
 
-  /**
-   * The underlying file of this cache. If an object is dropped it is written to
-   * the file.
-   */
-  protected PageFile<P> file;
-
   /**
    * Initializes this cache with the specified parameters.
    * 
@@ -77,8 +56,7 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    *        written to the file
    */
   public LRUCache(int cacheSizeBytes, PageFile<P> file) {
-    this.file = file;
-    this.cacheSizeBytes = cacheSizeBytes;
+    super(cacheSizeBytes, file);
   }
 
   /**
@@ -94,16 +72,20 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
     countRead();
     P page = map.get(pageID);
     if(page != null) {
+      countHit();
       if(LOG.isDebuggingFine()) {
         LOG.debugFine("Read from cache: " + pageID);
       }
     }
     else {
+      countMiss();
       if(LOG.isDebuggingFine()) {
         LOG.debugFine("Read from backing: " + pageID);
       }
       page = file.readPage(pageID);
-      map.put(pageID, page);
+      if(page != null) {
+        map.put(pageID, page);
+      }
     }
     return page;
   }
@@ -125,55 +107,8 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
     file.deletePage(pageID);
   }
 
-  /**
-   * Write page through to disk.
-   * 
-   * @param page page
-   */
-  protected void expirePage(P page) {
-    if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Write to backing:" + page.getPageID());
-    }
-    if (page.isDirty()) {
-      file.writePage(page);
-    }
-  }
-
-  @Override
-  public int setPageID(P page) {
-    int pageID = file.setPageID(page);
-    return pageID;
-  }
-
-  @Override
-  public int getNextPageID() {
-    return file.getNextPageID();
-  }
-
-  @Override
-  public void setNextPageID(int nextPageID) {
-    file.setNextPageID(nextPageID);
-  }
-
-  @Override
-  public int getPageSize() {
-    return file.getPageSize();
-  }
-
   @Override
-  public boolean initialize(PageHeader header) {
-    boolean created = file.initialize(header);
-    // Compute the actual cache size.
-    this.cacheSize = cacheSizeBytes / header.getPageSize();
-
-    if(this.cacheSize <= 0) {
-      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
-    }
-
-    if(LOG.isDebugging()) {
-      LOG.debug("LRU cache size is " + cacheSize + " pages.");
-    }
-
+  protected void initializeCache() {
     float hashTableLoadFactor = 0.75f;
     int hashTableCapacity = (int) Math.ceil(cacheSize / hashTableLoadFactor) + 1;
 
@@ -189,23 +124,18 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
         return false;
       }
     };
-    return created;
-  }
-
-  @Override
-  public void close() {
-    flush();
-    file.close();
   }
 
   /**
    * Flushes this caches by writing any entry to the underlying file.
    */
-  public void flush() {
+  @Override
+  public synchronized void flush() {
     for(P object : map.values()) {
       expirePage(object);
     }
     map.clear();
+    file.flush();
   }
 
   /**
@@ -231,27 +161,15 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    * 
    * @param cacheSize the cache size to be set
    */
-  public void setCacheSize(int cacheSize) {
+  public synchronized void setCacheSize(int cacheSize) {
     this.cacheSize = cacheSize;
 
-    long toDelete = map.size() - this.cacheSize;
-    if(toDelete <= 0) {
-      return;
+    // Iteration order is from least to most recently used.
+    Iterator<P> it = map.values().iterator();
+    for(int toDelete = map.size() - this.cacheSize; toDelete > 0 && it.hasNext(); toDelete--) {
+      expirePage(it.next());
+      it.remove();
     }
-
-    List<Integer> keys = new ArrayList<>(map.keySet());
-    Collections.reverse(keys);
-
-    for(Integer id : keys) {
-      P page = map.remove(id);
-      file.writePage(page);
-    }
-  }
-
-  @Override
-  public void logStatistics() {
-    super.logStatistics();
-    file.logStatistics();
   }
 
   @Override
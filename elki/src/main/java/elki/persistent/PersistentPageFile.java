@@ -33,8 +33,13 @@ import elki.utilities.exceptions.AbortException;
 
 /**
  * A PersistentPageFile stores objects persistently that implement the
- * <code>Page</code> interface. For convenience each page is represented by a
- * single file. All pages are stored in a specified directory.
+ * <code>Page</code> interface. All pages are stored in a single file, after
+ * the header of the page file.
+ * <p>
+ * If the file already exists, the page file is initialized from the existing
+ * file, which allows reopening a previously built index. Call {@link #flush()}
+ * or {@link #close()} to make the header and the list of empty pages
+ * persistent.
  * 
  * @author Elke Achtert
  * @since 0.1
@@ -81,18 +86,19 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   private boolean existed;
 
   /**
-   * Creates a new PersistentPageFile from an existing file.
+   * Creates a new PersistentPageFile, or opens an existing file.
    * 
    * @param pageSize the page size
+   * @param filename the name of the file
    * @param pageclass the class of pages to be used
    */
   public PersistentPageFile(int pageSize, Path filename, Class<P> pageclass) {
     super(pageSize);
     this.pageclass = pageclass;
-    // create from existing file
-    existed = Files.exists(filename);
     try {
-      file = FileChannel.open(filename, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      // create from existing file
+      existed = Files.exists(filename) && Files.size(filename) > 0;
+      file = FileChannel.open(filename, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
     }
     catch(IOException e) {
       throw new AbortException("IO error in loading persistent page file.", e);
@@ -172,18 +178,37 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   }
 
   /**
-   * Closes this file.
+   * Write the header and the list of empty pages to the file.
    */
   @Override
-  public void close() {
+  public synchronized void flush() {
     try {
-      super.close();
-      if(!emptyPages.isEmpty() && header instanceof TreeIndexHeader) {
-        // write the list of empty pages to the end of the file
-        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        // Discard a previous list of empty pages, and write the current list
+        // to the end of the file.
+        long end = ((long) (header.getReservedPages() + nextPageID)) * (long) pageSize;
+        if(file.size() > end) {
+          file.truncate(end);
+        }
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
       }
-      ((TreeIndexHeader) header).setLargestPageID(nextPageID);
       header.writeHeader(file);
+      file.force(false);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("Error writing page file header.", e);
+    }
+  }
+
+  /**
+   * Closes this file. The contents are kept, and can be reopened later.
+   */
+  @Override
+  public void close() {
+    try {
+      flush();
       file.close();
     }
     catch(IOException e) {
@@ -325,6 +350,10 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
         // init the header
         this.header = header;
         header.readHeader(file);
+        if(header.getPageSize() != pageSize) {
+          LOG.warning("Using the page size of the existing file: " + header.getPageSize());
+          pageSize = header.getPageSize();
+        }
 
         // reading empty nodes in Stack
         if(header instanceof TreeIndexHeader) {
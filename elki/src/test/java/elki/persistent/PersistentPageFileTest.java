@@ -0,0 +1,156 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.PagedIndexFactory;
+import elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeIndex;
+import elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Test reopening an R*-tree from a persistent page file.
+ *
+ * @author ELKI Development Team
+ * @since 0.7.6
+ */
+public class PersistentPageFileTest {
+  /**
+   * Number of neighbors to compare.
+   */
+  static final int K = 10;
+
+  /**
+   * Bulk load an R*-tree into a file, then reopen it.
+   */
+  @Test
+  public void testReopenRStarTree() throws IOException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = new QueryBuilder<>(rel, EuclideanDistance.STATIC).distanceQuery();
+    Path file = Files.createTempFile("elki-rstar", ".idx");
+    Files.delete(file); // Only reserve the name.
+    try {
+      RStarTreeIndex<NumberVector> built = makeTree(file, rel);
+      KNNSearcher<NumberVector> q1 = built.kNNByObject(dq, K, 0);
+      assertNotNull("No kNN query", q1);
+      List<KNNList> expected = new ArrayList<>(rel.size());
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        expected.add(q1.getKNN(rel.get(it), K));
+      }
+      final int height = built.getHeight();
+      built.close();
+      assertFalse("Page file should have been created.", Files.size(file) == 0);
+
+      RStarTreeIndex<NumberVector> reopened = makeTree(file, rel);
+      KNNSearcher<NumberVector> q2 = reopened.kNNByObject(dq, K, 0);
+      assertNotNull("No kNN query", q2);
+      assertEquals("Tree height differs", height, reopened.getHeight());
+      Iterator<KNNList> ex = expected.iterator();
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        KNNList k1 = ex.next(), k2 = q2.getKNN(rel.get(it), K);
+        assertEquals("Result size differs", k1.size(), k2.size());
+        for(DoubleDBIDListIter i1 = k1.iter(), i2 = k2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+          assertEquals("Distance differs", i1.doubleValue(), i2.doubleValue(), 0.);
+          assertTrue("Neighbor differs", DBIDUtil.equal(i1, i2) || i1.doubleValue() == k1.getKNNDistance());
+        }
+      }
+      reopened.close();
+    }
+    finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Reopening a page file for a different relation must fail.
+   */
+  @Test
+  public void testReopenMismatch() throws IOException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Database db2 = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/3clusters-and-noise-2d.csv", 330);
+    Relation<NumberVector> rel2 = db2.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Path file = Files.createTempFile("elki-rstar", ".idx");
+    Files.delete(file); // Only reserve the name.
+    try {
+      makeTree(file, rel).close();
+      try {
+        makeTree(file, rel2);
+        fail("Page file of a different relation was reopened.");
+      }
+      catch(AbortException e) {
+        // Expected.
+      }
+    }
+    finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Build or reopen an R*-tree on the given file.
+   *
+   * @param file File name
+   * @param rel Relation to index
+   * @return Tree
+   */
+  private static RStarTreeIndex<NumberVector> makeTree(Path file, Relation<NumberVector> rel) {
+    PersistentPageFileFactory<?> pf = new ELKIBuilder<>(PersistentPageFileFactory.class) //
+        .with(AbstractPageFileFactory.Par.PAGE_SIZE_ID, 300) //
+        .with(PersistentPageFileFactory.Par.FILE_ID, file.toString()) //
+        .build();
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Par.PAGEFILE_ID, pf) //
+        .with(AbstractRStarTreeFactory.Par.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+        .build();
+    RStarTreeIndex<NumberVector> tree = factory.instantiate(rel);
+    tree.initialize();
+    return tree;
+  }
+}